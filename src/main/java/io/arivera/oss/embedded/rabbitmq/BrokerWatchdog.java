@@ -0,0 +1,185 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+import io.arivera.oss.embedded.rabbitmq.util.DaemonThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Restarts the RabbitMQ Server of an {@link EmbeddedRabbitMq} whenever its process finishes unexpectedly, keeping track
+ * of how often that happens and for how long the server was down.
+ * <p>
+ * Restarts happen on a background thread, waiting a little longer after every failed attempt. Listeners are notified
+ * on that same thread, so they should return quickly.
+ *
+ * @see EmbeddedRabbitMqConfig.Builder#restartOnCrash(boolean)
+ * @see EmbeddedRabbitMq#getWatchdog()
+ */
+public class BrokerWatchdog {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BrokerWatchdog.class);
+
+  private static final DaemonThreadFactory THREAD_FACTORY = new DaemonThreadFactory("RabbitMQ-Watchdog");
+
+  private final EmbeddedRabbitMq broker;
+  private final List<Listener> listeners;
+
+  private final AtomicLong crashCount;
+  private final AtomicLong restartCount;
+  private final AtomicLong failedRestartCount;
+  private final AtomicLong totalDowntimeInMillis;
+  private volatile long downSinceMillis;
+
+  BrokerWatchdog(EmbeddedRabbitMq broker) {
+    this.broker = broker;
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.crashCount = new AtomicLong();
+    this.restartCount = new AtomicLong();
+    this.failedRestartCount = new AtomicLong();
+    this.totalDowntimeInMillis = new AtomicLong();
+    this.downSinceMillis = -1;
+  }
+
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Invoked whenever a server process started by the broker finishes, for whatever reason.
+   * <p>
+   * This is called from the thread that waits for the process, which must not block, so the broker is checked and
+   * restarted from a thread of its own.
+   *
+   * @param process the finished process, or {@code null} if it finished before the server was confirmed to be ready.
+   */
+  void processFinished(final Future<ProcessResult> process, final int exitValue) {
+    if (process == null || !broker.getConfig().shouldRestartOnCrash()) {
+      return;
+    }
+    THREAD_FACTORY.newThread(new Runnable() {
+      @Override
+      public void run() {
+        if (broker.isRunning(process)) {
+          recover(process, exitValue);
+        }
+      }
+    }).start();
+  }
+
+  private void recover(Future<ProcessResult> crashedProcess, int exitValue) {
+    EmbeddedRabbitMqConfig config = broker.getConfig();
+    long crashTime = System.currentTimeMillis();
+    downSinceMillis = crashTime;
+    crashCount.incrementAndGet();
+    LOGGER.warn("RabbitMQ Server '{}' finished unexpectedly (exit code: {}). Restarting it.",
+        config.getNodeName(), exitValue);
+    for (Listener listener : listeners) {
+      listener.brokerCrashed(config, exitValue);
+    }
+
+    long backoff = config.getRestartBackoffInMillis();
+    while (true) {
+      try {
+        Thread.sleep(backoff);
+      } catch (InterruptedException e) {
+        LOGGER.warn("Interrupted while waiting to restart RabbitMQ Server '{}'. Giving up.", config.getNodeName());
+        downSinceMillis = -1;
+        return;
+      }
+      try {
+        if (!broker.relaunch(crashedProcess)) {
+          LOGGER.debug("RabbitMQ Server '{}' was stopped before it could be restarted", config.getNodeName());
+          downSinceMillis = -1;
+          return;
+        }
+      } catch (StartupException e) {
+        failedRestartCount.incrementAndGet();
+        backoff = Math.min(backoff * 2, config.getMaxRestartBackoffInMillis());
+        LOGGER.warn("Could not restart RabbitMQ Server '{}'. Trying again in {}ms.", config.getNodeName(), backoff, e);
+        for (Listener listener : listeners) {
+          listener.restartFailed(config, e);
+        }
+        continue;
+      }
+      long downtime = System.currentTimeMillis() - crashTime;
+      totalDowntimeInMillis.addAndGet(downtime);
+      restartCount.incrementAndGet();
+      downSinceMillis = -1;
+      LOGGER.info("RabbitMQ Server '{}' restarted after being down for {}ms", config.getNodeName(), downtime);
+      for (Listener listener : listeners) {
+        listener.brokerRestarted(config, downtime);
+      }
+      return;
+    }
+  }
+
+  /**
+   * @return number of times the server finished without being stopped.
+   */
+  public long getCrashCount() {
+    return crashCount.get();
+  }
+
+  /**
+   * @return number of times the server was successfully restarted after a crash.
+   */
+  public long getRestartCount() {
+    return restartCount.get();
+  }
+
+  /**
+   * @return number of attempts to restart the server that failed.
+   */
+  public long getFailedRestartCount() {
+    return failedRestartCount.get();
+  }
+
+  /**
+   * Returns the sum of the time the server was down after each crash, including the time it has been down so far if
+   * it's being restarted right now.
+   */
+  public long getTotalDowntimeInMillis() {
+    long downSince = downSinceMillis;
+    long currentDowntime = downSince < 0 ? 0 : System.currentTimeMillis() - downSince;
+    return totalDowntimeInMillis.get() + currentDowntime;
+  }
+
+  /**
+   * Returns whether the server crashed and hasn't been restarted yet.
+   */
+  public boolean isRestarting() {
+    return downSinceMillis >= 0;
+  }
+
+  /**
+   * Receives notifications about crashes of the RabbitMQ Server and the attempts to restart it.
+   */
+  public interface Listener {
+
+    /**
+     * Invoked as soon as the server is found to have finished unexpectedly. Connections to it are lost by now.
+     */
+    void brokerCrashed(EmbeddedRabbitMqConfig config, int exitValue);
+
+    /**
+     * Invoked once the server is running again, on the same ports, so clients can reconnect right away.
+     */
+    void brokerRestarted(EmbeddedRabbitMqConfig config, long downtimeInMillis);
+
+    /**
+     * Invoked after every failed attempt to restart the server. Another attempt follows, unless the broker is stopped.
+     */
+    void restartFailed(EmbeddedRabbitMqConfig config, StartupException exception);
+  }
+}
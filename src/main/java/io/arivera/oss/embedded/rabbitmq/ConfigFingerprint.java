@@ -0,0 +1,33 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds a canonical representation of everything in a configuration that makes two brokers distinguishable: the
+ * version, download source, folders and environment variables (which include the ports).
+ * <p>
+ * Timeouts, caching flags and the process executor factory are left out on purpose since they don't affect the broker
+ * once it's running.
+ */
+class ConfigFingerprint {
+
+  private ConfigFingerprint() {
+  }
+
+  static String of(EmbeddedRabbitMqConfig config) {
+    StringBuilder fingerprint = new StringBuilder()
+        .append("version=").append(config.getVersion().getVersionAsString())
+        .append("\nsource=").append(config.getDownloadSource())
+        .append("\ntarget=").append(config.getDownloadTarget().getAbsolutePath())
+        .append("\nextraction=").append(config.getExtractionFolder().getAbsolutePath())
+        .append("\napp=").append(config.getAppFolder().getAbsolutePath());
+    if (config.getDataTemplateDefinitions() != null) {
+      fingerprint.append("\ndataTemplate=").append(config.getDataTemplateDefinitions().getAbsolutePath());
+    }
+    for (Map.Entry<String, String> envVar : new TreeMap<>(config.getEnvVars()).entrySet()) {
+      fingerprint.append("\nenv.").append(envVar.getKey()).append('=').append(envVar.getValue());
+    }
+    return fingerprint.toString();
+  }
+}
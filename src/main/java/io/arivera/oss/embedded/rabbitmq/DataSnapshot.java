@@ -0,0 +1,34 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import java.io.File;
+
+/**
+ * A copy of a broker's data taken at a known point in time, which can be used to bring the broker back to that state.
+ *
+ * @see EmbeddedRabbitMq#snapshotData()
+ * @see EmbeddedRabbitMq#restoreData(DataSnapshot)
+ */
+public class DataSnapshot {
+
+  private final File folder;
+  private final long creationTimeInMillis;
+
+  DataSnapshot(File folder, long creationTimeInMillis) {
+    this.folder = folder;
+    this.creationTimeInMillis = creationTimeInMillis;
+  }
+
+  /**
+   * @return location of the copied data.
+   */
+  public File getFolder() {
+    return folder;
+  }
+
+  /**
+   * @return milliseconds it took to take this snapshot.
+   */
+  public long getCreationTimeInMillis() {
+    return creationTimeInMillis;
+  }
+}
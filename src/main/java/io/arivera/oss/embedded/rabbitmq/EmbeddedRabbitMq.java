@@ -1,21 +1,52 @@
 package io.arivera.oss.embedded.rabbitmq;
 
+import io.arivera.oss.embedded.rabbitmq.apache.commons.lang3.StopWatch;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
 import io.arivera.oss.embedded.rabbitmq.download.DownloadException;
 import io.arivera.oss.embedded.rabbitmq.download.Downloader;
 import io.arivera.oss.embedded.rabbitmq.download.DownloaderFactory;
 import io.arivera.oss.embedded.rabbitmq.extract.ExtractionException;
 import io.arivera.oss.embedded.rabbitmq.extract.Extractor;
 import io.arivera.oss.embedded.rabbitmq.extract.ExtractorFactory;
+import io.arivera.oss.embedded.rabbitmq.helpers.DataSnapshotException;
+import io.arivera.oss.embedded.rabbitmq.helpers.DataSnapshotHelper;
+import io.arivera.oss.embedded.rabbitmq.helpers.DataTemplateHelper;
+import io.arivera.oss.embedded.rabbitmq.helpers.DetachedServerHelper;
 import io.arivera.oss.embedded.rabbitmq.helpers.ErlangVersionChecker;
 import io.arivera.oss.embedded.rabbitmq.helpers.ErlangVersionException;
+import io.arivera.oss.embedded.rabbitmq.helpers.LazyStartProxy;
+import io.arivera.oss.embedded.rabbitmq.helpers.PortConflictException;
+import io.arivera.oss.embedded.rabbitmq.helpers.RestartHelper;
 import io.arivera.oss.embedded.rabbitmq.helpers.ShutDownException;
 import io.arivera.oss.embedded.rabbitmq.helpers.ShutdownHelper;
+import io.arivera.oss.embedded.rabbitmq.helpers.SignalShutdownHelper;
 import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
 import io.arivera.oss.embedded.rabbitmq.helpers.StartupHelper;
+import io.arivera.oss.embedded.rabbitmq.util.CompletedFuture;
+import io.arivera.oss.embedded.rabbitmq.util.DaemonThreadFactory;
+import io.arivera.oss.embedded.rabbitmq.util.DirectoryUtils;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+import io.arivera.oss.embedded.rabbitmq.util.RandomPortSupplier;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.zeroturnaround.exec.ProcessResult;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This is the main class to interact with RabbitMQ.
@@ -35,11 +66,33 @@ import java.util.concurrent.Future;
  */
 public class EmbeddedRabbitMq {
 
-  private EmbeddedRabbitMqConfig config;
-  private Future<ProcessResult> rabbitMqProcess;
+  private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedRabbitMq.class);
+
+  private static final String SNAPSHOT_FOLDER_SUFFIX = "-snapshot";
+
+  private final boolean standbyAllowed;
+  private final BrokerWatchdog watchdog;
+  private volatile EmbeddedRabbitMqConfig config;
+  private volatile Future<ProcessResult> rabbitMqProcess;
+  private Future<StartupTimings> startup;
+  private LazyStartProxy lazyStartProxy;
+  private EmbeddedRabbitMq lazilyStartedBroker;
+  private DetachedServerHelper detachedServer;
+  private EmbeddedRabbitMq standby;
+  private volatile EmbeddedRabbitMq processOwner;
 
   public EmbeddedRabbitMq(EmbeddedRabbitMqConfig config) {
+    this(config, true);
+  }
+
+  /**
+   * Creates an instance that only keeps a warm standby if {@code standbyAllowed}, which standbys themselves aren't.
+   */
+  EmbeddedRabbitMq(EmbeddedRabbitMqConfig config, boolean standbyAllowed) {
     this.config = config;
+    this.standbyAllowed = standbyAllowed;
+    this.watchdog = new BrokerWatchdog(this);
+    this.processOwner = this;
   }
 
   /**
@@ -49,47 +102,606 @@ public class EmbeddedRabbitMq {
    * @throws DownloadException    when there's an issue downloading the appropriate artifact
    * @throws ExtractionException  when there's an issue extracting the files from the downloaded artifact
    * @throws StartupException     when there's an issue starting the RabbitMQ server
+   * @see #startAsync()
    */
   public void start() throws ErlangVersionException, DownloadException, ExtractionException, StartupException {
-    if (rabbitMqProcess != null) {
+    await(startAsync());
+  }
+
+  /**
+   * Starts the RabbitMQ server process without blocking the current thread.
+   * <p>
+   * The Erlang version check runs concurrently with the download and extraction of the artifact, since they are
+   * independent of each other. Only the launch of the RabbitMQ Server waits for all of them to complete.
+   * <p>
+   * If any of the stages fail, the returned future will fail with the same exception {@link #start()} would throw,
+   * wrapped in an {@link ExecutionException}.
+   *
+   * @return a future that completes once the RabbitMQ Server has been confirmed to be running, providing information
+   *     about how long each of the stages took.
+   */
+  public Future<StartupTimings> startAsync() {
+    return startAsync(true);
+  }
+
+  /**
+   * Same as {@link #startAsync()}, but optionally skipping the Erlang version check, download and extraction.
+   * <p>
+   * This is meant for brokers sharing an installation that was already {@link #prepare() prepared}, since extracting
+   * the same artifact again would overwrite the files other brokers are running from.
+   * <p>
+   * If a {@link EmbeddedRabbitMqConfig.Builder#keepWarmStandby(boolean) warm standby} is available, the installation
+   * isn't prepared either and the standby takes over instead of a new server being started.
+   */
+  synchronized Future<StartupTimings> startAsync(boolean prepareInstallation) {
+    if (isStartedOrStarting()) {
+      throw new IllegalStateException("Start shouldn't be called more than once unless stop() has been called before.");
+    }
+
+    final StopWatch stopWatch = StopWatch.createStarted();
+    final StartupTimings timings = new StartupTimings();
+    if (adoptDetachedServer()) {
+      stopWatch.stop();
+      timings.record(StartupTimings.Stage.SERVER_STARTUP, stopWatch.getTime());
+      timings.recordTotal(stopWatch.getTime());
+      startup = new CompletedFuture<>(timings);
+      return startup;
+    }
+
+    final EmbeddedRabbitMq standbyBroker = standby;
+    standby = null;
+    ExecutorService executor = Executors.newFixedThreadPool(3, new DaemonThreadFactory("RabbitMQ-Startup"));
+
+    final List<Future<?>> preparation = prepareInstallation && standbyBroker == null
+        ? submitPreparation(executor, timings)
+        : Collections.<Future<?>>emptyList();
+    startup = executor.submit(new Callable<StartupTimings>() {
+      @Override
+      public StartupTimings call() {
+        for (Future<?> stage : preparation) {
+          await(stage);
+        }
+        if (standbyBroker == null || !takeOver(standbyBroker, timings)) {
+          try {
+            run(timings);
+          } catch (RuntimeException e) {
+            deleteDerivedNodeFolders();
+            throw e;
+          }
+        }
+        stopWatch.stop();
+        timings.recordTotal(stopWatch.getTime());
+        LOGGER.info("RabbitMQ Server started in {}ms. Stages: {}", stopWatch.getTime(), timings);
+        startStandby();
+        return timings;
+      }
+    });
+
+    executor.shutdown();
+    return startup;
+  }
+
+  /**
+   * Listens on the configured AMQP port right away, but only starts the RabbitMQ Server once a client connects to it.
+   * <p>
+   * The server runs on an internal port, bound to the loopback interface, and all traffic is forwarded to it. This is
+   * useful when the broker might not be needed at all, since nothing is downloaded or started until it is.
+   * <p>
+   * Since the server might not be running, operations other than {@link #stop()} aren't supported in this mode. Commands
+   * like {@code rabbitmqctl} can still be used through {@link #getConfig()} once a client has connected.
+   *
+   * @throws StartupException when the configured AMQP port can't be bound. Any issue starting the server is only
+   *                          reported in the logs, and the connecting client is disconnected.
+   */
+  public synchronized void startLazily() throws StartupException {
+    if (isStartedOrStarting()) {
       throw new IllegalStateException("Start shouldn't be called more than once unless stop() has been called before.");
     }
+    String ipAddress = config.getEnvVars().get(RabbitMqEnvVar.NODE_IP_ADDRESS.getEnvVarName());
+    InetSocketAddress listenAddress = ipAddress == null || ipAddress.isEmpty()
+        ? new InetSocketAddress(config.getRabbitMqPort())
+        : new InetSocketAddress(ipAddress, config.getRabbitMqPort());
+    InetAddress loopbackAddress = InetAddress.getLoopbackAddress();
+    int internalPort = new RandomPortSupplier().get();
+
+    final EmbeddedRabbitMq broker = new EmbeddedRabbitMq(NodeConfigs.lazyBackendConfig(config, internalPort));
+    LazyStartProxy proxy = new LazyStartProxy(listenAddress, new InetSocketAddress(loopbackAddress, internalPort),
+        new Runnable() {
+          @Override
+          public void run() {
+            broker.start();
+          }
+        });
+    try {
+      proxy.start();
+    } catch (IOException e) {
+      throw new StartupException("Could not listen on " + listenAddress, e);
+    }
+    lazyStartProxy = proxy;
+    lazilyStartedBroker = broker;
+  }
+
+  /**
+   * Adopts a detached server left running by a previous JVM, if reusing them is enabled and there's one started with an
+   * identical configuration.
+   * <p>
+   * This must happen before the installation is prepared, since extracting the artifact again would overwrite the files
+   * the adopted server is running from.
+   *
+   * @see EmbeddedRabbitMqConfig.Builder#reuseDetachedServer(boolean)
+   */
+  private boolean adoptDetachedServer() {
+    if (!shouldRunDetached()) {
+      return false;
+    }
+    DetachedServerHelper helper = new DetachedServerHelper(config, ConfigFingerprint.of(config));
+    Future<ProcessResult> adopted = helper.adopt();
+    if (adopted == null) {
+      return false;
+    }
+    rabbitMqProcess = adopted;
+    detachedServer = helper;
+    return true;
+  }
 
-    check();
-    download();
-    extract();
-    run();
+  private boolean shouldRunDetached() {
+    if (!config.shouldReuseDetachedServer()) {
+      return false;
+    }
+    if (OperatingSystem.detect() == OperatingSystem.WINDOWS) {
+      LOGGER.warn("Detached RabbitMQ Servers can't be reused on Windows. Starting one attached to this JVM instead.");
+      return false;
+    }
+    return true;
   }
 
-  private void check() throws ErlangVersionException {
+  private boolean isStartedOrStarting() {
+    return rabbitMqProcess != null || lazyStartProxy != null || (startup != null && !startup.isDone());
+  }
+
+  /**
+   * Checks the Erlang version, downloads and extracts the artifact, without starting the RabbitMQ Server.
+   * <p>
+   * Blocks the current thread until all stages complete.
+   */
+  void prepare() throws ErlangVersionException, DownloadException, ExtractionException {
+    ExecutorService executor = Executors.newFixedThreadPool(2, new DaemonThreadFactory("RabbitMQ-Preparation"));
+    try {
+      for (Future<?> stage : submitPreparation(executor, new StartupTimings())) {
+        await(stage);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Submits the Erlang version check concurrently with the download and extraction, which depend on each other.
+   */
+  private List<Future<?>> submitPreparation(ExecutorService executor, final StartupTimings timings) {
+    Future<?> erlangCheck = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        check(timings);
+      }
+    });
+    Future<?> installation = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        download(timings);
+        extract(timings);
+      }
+    });
+    return Arrays.<Future<?>>asList(erlangCheck, installation);
+  }
+
+  private void check(StartupTimings timings) throws ErlangVersionException {
+    StopWatch stopWatch = StopWatch.createStarted();
+    checkErlangVersion();
+    timings.record(StartupTimings.Stage.ERLANG_CHECK, stopWatch.getTime());
+  }
+
+  void checkErlangVersion() throws ErlangVersionException {
     new ErlangVersionChecker(config).check();
   }
 
-  private void download() throws DownloadException {
+  private void download(StartupTimings timings) throws DownloadException {
+    StopWatch stopWatch = StopWatch.createStarted();
+    downloadArtifact();
+    timings.record(StartupTimings.Stage.DOWNLOAD, stopWatch.getTime());
+  }
+
+  void downloadArtifact() throws DownloadException {
     Downloader downloader = new DownloaderFactory(config).getNewInstance();
     downloader.run();
   }
 
-  private void extract() throws ExtractionException {
+  private void extract(StartupTimings timings) throws ExtractionException {
+    StopWatch stopWatch = StopWatch.createStarted();
+    extractArtifact();
+    timings.record(StartupTimings.Stage.EXTRACTION, stopWatch.getTime());
+  }
+
+  void extractArtifact() throws ExtractionException {
     Extractor extractor = new ExtractorFactory(config).getNewInstance();
     extractor.run();
   }
 
-  private void run() throws StartupException {
-    rabbitMqProcess = new StartupHelper(config).call();
+  private void run(StartupTimings timings) throws StartupException {
+    if (config.getInstanceFolder() != null) {
+      createInstanceFolders();
+    }
+    boolean usesDataTemplate = config.getDataTemplateDefinitions() != null;
+    if (usesDataTemplate) {
+      StopWatch stopWatch = StopWatch.createStarted();
+      if (config.isDerivedNode()) {
+        // A template would be created for every port, and never used again
+        new DataTemplateHelper(config).resetData();
+      } else {
+        new DataTemplateHelper(config).seed();
+      }
+      timings.record(StartupTimings.Stage.DATA_TEMPLATE, stopWatch.getTime());
+    }
+    StopWatch stopWatch = StopWatch.createStarted();
+    launch(timings);
+    timings.record(StartupTimings.Stage.SERVER_STARTUP, stopWatch.getTime());
+    if (usesDataTemplate && config.isDerivedNode()) {
+      StopWatch importWatch = StopWatch.createStarted();
+      new DataTemplateHelper(config).importDefinitions();
+      timings.record(StartupTimings.Stage.DATA_TEMPLATE,
+          timings.getDurationInMillis(StartupTimings.Stage.DATA_TEMPLATE) + importWatch.getTime());
+    }
+  }
+
+  private void createInstanceFolders() throws StartupException {
+    Map<String, String> envVars = config.getEnvVars();
+    List<File> folders = Arrays.asList(
+        new File(envVars.get(RabbitMqEnvVar.MNESIA_BASE.getEnvVarName())),
+        new File(envVars.get(RabbitMqEnvVar.LOG_BASE.getEnvVarName())),
+        new File(envVars.get(RabbitMqEnvVar.ENABLED_PLUGINS_FILE.getEnvVarName())).getAbsoluteFile().getParentFile());
+    for (File folder : folders) {
+      try {
+        Files.createDirectories(folder.toPath());
+      } catch (IOException e) {
+        throw new StartupException("Could not create folder " + folder, e);
+      }
+    }
+  }
+
+  private void launch(StartupTimings timings) throws StartupException {
+    if (shouldRunDetached()) {
+      // Detached servers are meant to outlive this JVM, so they aren't registered to be stopped when it exits.
+      DetachedServerHelper helper = new DetachedServerHelper(config, ConfigFingerprint.of(config));
+      rabbitMqProcess = helper.start();
+      detachedServer = helper;
+    } else {
+      rabbitMqProcess = startOnAvailablePorts(timings);
+      ShutdownCoordinator.register(this);
+    }
+  }
+
+  /**
+   * Starts the server, picking new ports and starting again if a {@link EmbeddedRabbitMqConfig#hasRandomPort() random
+   * port} turns out to be taken by another process by the time the server binds it.
+   */
+  Future<ProcessResult> startOnAvailablePorts(StartupTimings timings) throws StartupException {
+    int retries = 0;
+    while (true) {
+      try {
+        return startWatched(timings);
+      } catch (PortConflictException e) {
+        if (!config.hasRandomPort() || retries >= config.getPortConflictRetries()) {
+          throw e;
+        }
+        retries++;
+        int takenPort = config.getRabbitMqPort();
+        config = NodeConfigs.reallocatePorts(config);
+        LOGGER.warn("Port {} was taken by another process. Starting RabbitMQ Server on port {} instead (retry {} of {})",
+            takenPort, config.getRabbitMqPort(), retries, config.getPortConflictRetries());
+      }
+    }
+  }
+
+  /**
+   * Starts the server, letting the {@link BrokerWatchdog watchdog} of the instance it belongs to know when it finishes.
+   */
+  private Future<ProcessResult> startWatched(StartupTimings timings) throws StartupException {
+    final AtomicReference<Future<ProcessResult>> process = new AtomicReference<>();
+    StartupHelper startupHelper = new StartupHelper(config);
+    process.set(startupHelper
+        // Stopped gracefully by the ShutdownCoordinator when the JVM exits, rather than destroyed
+        .destroyOnExit(false)
+        .onProcessFinished(new StartupHelper.PublishingProcessListener.Subscriber() {
+          @Override
+          public void processFinished(int exitValue) {
+            EmbeddedRabbitMq.this.processFinished(process.get(), exitValue);
+          }
+        })
+        .call());
+    timings.recordBootPhases(startupHelper.getBootPhaseTimings());
+    return process.get();
+  }
+
+  /**
+   * Lets the watchdog of the instance the given process belongs to know it finished, which is a different one than
+   * this instance once it {@link #takeOver(EmbeddedRabbitMq, StartupTimings) took over} as a standby.
+   */
+  void processFinished(Future<ProcessResult> process, int exitValue) {
+    processOwner.watchdog.processFinished(process, exitValue);
+  }
+
+  /**
+   * Returns whether the given process is the one running the server of this instance right now.
+   */
+  synchronized boolean isRunning(Future<ProcessResult> process) {
+    return rabbitMqProcess == process;
+  }
+
+  /**
+   * Starts the server again, with the same configuration, after the given process finished unexpectedly.
+   *
+   * @return {@code false} if the server was stopped or started again in the meantime, so there's nothing to do.
+   * @throws StartupException if there's an issue starting the RabbitMQ server
+   */
+  synchronized boolean relaunch(Future<ProcessResult> finishedProcess) throws StartupException {
+    if (rabbitMqProcess != finishedProcess) {
+      return false;
+    }
+    rabbitMqProcess = startWatched(new StartupTimings());
+    return true;
+  }
+
+  /**
+   * Makes the given standby server the one this instance represents, once it has finished starting.
+   *
+   * @return whether the standby took over. If it failed to start, a new server has to be started instead.
+   */
+  private boolean takeOver(EmbeddedRabbitMq standbyBroker, StartupTimings timings) {
+    final StopWatch stopWatch = StopWatch.createStarted();
+    try {
+      await(standbyBroker.startup);
+    } catch (RuntimeException e) {
+      LOGGER.warn("Standby RabbitMQ Server '{}' failed to start. Starting a new one instead.",
+          standbyBroker.config.getNodeName(), e);
+      return false;
+    }
+    config = standbyBroker.config;
+    rabbitMqProcess = standbyBroker.rabbitMqProcess;
+    standbyBroker.processOwner = this;
+    ShutdownCoordinator.unregister(standbyBroker);
+    ShutdownCoordinator.register(this);
+    timings.record(StartupTimings.Stage.SERVER_STARTUP, stopWatch.getTime());
+    LOGGER.info("Standby RabbitMQ Server '{}' took over on port {}", config.getNodeName(), config.getRabbitMqPort());
+    return true;
+  }
+
+  /**
+   * Starts booting a standby server in the background, if enabled, to take over on the next {@link #start()}.
+   */
+  private synchronized void startStandby() {
+    if (!standbyAllowed || !config.shouldKeepWarmStandby() || config.shouldReuseDetachedServer() || standby != null) {
+      return;
+    }
+    // Kept enabled, so a standby that takes over boots the next one
+    standby = createStandby(new EmbeddedRabbitMqConfig.Builder(NodeConfigs.deriveNodeConfig(config))
+        .keepWarmStandby(true)
+        .build());
+    standby.startAsync(false);
+    LOGGER.debug("Booting standby RabbitMQ Server '{}' in the background", standby.config.getNodeName());
+  }
+
+  EmbeddedRabbitMq createStandby(EmbeddedRabbitMqConfig standbyConfig) {
+    return new EmbeddedRabbitMq(standbyConfig, false);
+  }
+
+  /**
+   * Stops the {@link EmbeddedRabbitMqConfig.Builder#keepWarmStandby(boolean) warm standby} server, if there's one.
+   * <p>
+   * Otherwise, the standby keeps running until the JVM exits, ready to take over on the next {@link #start()}.
+   *
+   * @throws ShutDownException if there's an issue shutting down the standby RabbitMQ server
+   */
+  public synchronized void stopStandby() throws ShutDownException {
+    EmbeddedRabbitMq standbyBroker = standby;
+    standby = null;
+    if (standbyBroker == null) {
+      return;
+    }
+    try {
+      await(standbyBroker.startup);
+    } catch (RuntimeException e) {
+      LOGGER.debug("Standby RabbitMQ Server failed to start, so there's nothing to stop", e);
+      return;
+    }
+    standbyBroker.stop();
+  }
+
+  /**
+   * Blocks until the given stage finishes, re-throwing the original exception if it failed.
+   */
+  static <T> T await(Future<T> stage) {
+    try {
+      return stage.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new StartupException("Interrupted while waiting for RabbitMQ to start", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new StartupException("Unexpected error while starting RabbitMQ", cause);
+    }
+  }
+
+  /**
+   * Takes a snapshot of the broker's data (users, virtual hosts, queues, messages, etc.) once it has reached a
+   * known-good state, so it can later be brought back to it using {@link #restoreData(DataSnapshot)}.
+   * <p>
+   * The snapshot is stored next to the broker's data folder, replacing any previous snapshot. The RabbitMQ application
+   * is stopped while the data is copied and started again afterwards.
+   *
+   * @throws RabbitMqCommandException if the RabbitMQ application can't be stopped or started again.
+   * @throws DataSnapshotException    if the data can't be copied.
+   * @see EmbeddedRabbitMqConfig#getMnesiaFolder()
+   */
+  public synchronized DataSnapshot snapshotData() throws RabbitMqCommandException, DataSnapshotException {
+    if (rabbitMqProcess == null) {
+      throw new IllegalStateException("Snapshots can only be taken after 'start()' was successful.");
+    }
+    StopWatch stopWatch = StopWatch.createStarted();
+    File snapshotFolder = new File(config.getMnesiaFolder().getPath() + SNAPSHOT_FOLDER_SUFFIX);
+    new DataSnapshotHelper(config).createSnapshot(snapshotFolder);
+    stopWatch.stop();
+    LOGGER.info("Took snapshot of RabbitMQ data into '{}' in {}ms", snapshotFolder, stopWatch.getTime());
+    return new DataSnapshot(snapshotFolder, stopWatch.getTime());
+  }
+
+  /**
+   * Brings the broker back to the state it had when the given snapshot was taken.
+   * <p>
+   * Just like when the snapshot was taken, the RabbitMQ application is stopped, its data folder is replaced with a copy
+   * of the snapshot and the application is started again, without the Erlang node having to boot again. Unlike a
+   * {@link io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl#forceReset() reset}, it also brings back any users, virtual
+   * hosts, etc. defined before the snapshot was taken.
+   *
+   * @return milliseconds it took to restore the snapshot, including stopping and starting the application.
+   * @throws RabbitMqCommandException if the RabbitMQ application can't be stopped or started again.
+   * @throws DataSnapshotException    if the data can't be copied.
+   */
+  public synchronized long restoreData(DataSnapshot snapshot) throws RabbitMqCommandException, DataSnapshotException {
+    if (rabbitMqProcess == null) {
+      throw new IllegalStateException("Snapshots can only be restored after 'start()' was successful.");
+    }
+    StopWatch stopWatch = StopWatch.createStarted();
+    new DataSnapshotHelper(config).restoreSnapshot(snapshot.getFolder());
+    stopWatch.stop();
+    LOGGER.info("Restored RabbitMQ data from '{}' in {}ms", snapshot.getFolder(), stopWatch.getTime());
+    return stopWatch.getTime();
+  }
+
+  /**
+   * Restarts the RabbitMQ application without stopping the Erlang node it runs in.
+   * <p>
+   * This is faster than a {@link #stop()} followed by a {@link #start()}, since neither the Erlang VM has to boot again
+   * nor the node has to register itself again, while still exercising the recovery of durable queues, messages, etc.
+   *
+   * @return milliseconds it took for the application to stop, start and be confirmed ready again.
+   * @throws ShutDownException if there's an issue stopping the RabbitMQ application
+   * @throws StartupException  if there's an issue starting the RabbitMQ application again
+   * @see EmbeddedRabbitMqConfig#getReadinessCheckFactory()
+   */
+  public synchronized long restartApp() throws ShutDownException, StartupException {
+    if (rabbitMqProcess == null) {
+      throw new IllegalStateException("Restart shouldn't be called unless 'start()' was successful.");
+    }
+    StopWatch stopWatch = StopWatch.createStarted();
+    new RestartHelper(config).run();
+    stopWatch.stop();
+    LOGGER.info("RabbitMQ application restarted in {}ms", stopWatch.getTime());
+    return stopWatch.getTime();
+  }
+
+  public EmbeddedRabbitMqConfig getConfig() {
+    return config;
+  }
+
+  /**
+   * Returns the watchdog that restarts the server if it crashes, which keeps track of crashes and downtime and notifies
+   * its listeners about them.
+   * <p>
+   * It only acts if {@link EmbeddedRabbitMqConfig.Builder#restartOnCrash(boolean) enabled}.
+   */
+  public BrokerWatchdog getWatchdog() {
+    return watchdog;
   }
 
   /**
    * Submits the command to stop RabbitMQ and blocks the current thread until the shutdown is completed.
+   * <p>
+   * A {@link EmbeddedRabbitMqConfig.Builder#keepWarmStandby(boolean) warm standby}, if any, is left running to take
+   * over on the next {@link #start()}. Use {@link #stopStandby()} to stop it as well.
    *
    * @throws ShutDownException if there's an issue shutting down the RabbitMQ server
+   * @see EmbeddedRabbitMqConfig.Builder#useSignalShutdown(boolean)
+   * @see EmbeddedRabbitMqConfig.Builder#reuseDetachedServer(boolean)
    */
-  public void stop() throws ShutDownException {
+  public synchronized void stop() throws ShutDownException {
+    if (lazyStartProxy != null) {
+      stopLazilyStartedBroker();
+      return;
+    }
     if (rabbitMqProcess == null) {
       throw new IllegalStateException("Stop shouldn't be called unless 'start()' was successful.");
     }
-    new ShutdownHelper(config, rabbitMqProcess).run();
+    boolean detached = detachedServer != null;
+    if (detached) {
+      detachedServer.stop(rabbitMqProcess);
+      detachedServer = null;
+    } else if (rabbitMqProcess.isDone()) {
+      LOGGER.debug("RabbitMQ Server process already finished. Nothing to stop.");
+    } else if (config.shouldUseSignalShutdown()) {
+      new SignalShutdownHelper(config, rabbitMqProcess).run();
+    } else {
+      new ShutdownHelper(config, rabbitMqProcess).run();
+    }
     rabbitMqProcess = null;
+    startup = null;
+    ShutdownCoordinator.unregister(this);
+    if (!detached) {
+      deleteDerivedNodeFolders();
+    }
+  }
+
+  /**
+   * Deletes the folders of a {@link NodeConfigs#deriveNodeConfig(EmbeddedRabbitMqConfig) derived node} once its server
+   * is gone. Their names are based on a port picked at random, so no other node would ever use them again.
+   */
+  private void deleteDerivedNodeFolders() {
+    if (!config.isDerivedNode()) {
+      return;
+    }
+    List<File> folders = Arrays.asList(config.getMnesiaFolder(), config.getInstanceFolder());
+    for (File folder : folders) {
+      try {
+        DirectoryUtils.delete(folder);
+      } catch (IOException e) {
+        LOGGER.warn("Could not delete folder {} of RabbitMQ node '{}'", folder, config.getNodeName(), e);
+      }
+    }
+    try {
+      Files.deleteIfExists(config.getPidFile().toPath());
+    } catch (IOException e) {
+      LOGGER.warn("Could not delete pid file of RabbitMQ node '{}'", config.getNodeName(), e);
+    }
+  }
+
+  /**
+   * Kills the RabbitMQ Server right away, without waiting for it to exit nor for any {@link #stop()} in progress.
+   */
+  void kill() {
+    Future<ProcessResult> process = rabbitMqProcess;
+    if (process != null) {
+      new SignalShutdownHelper(config, process).kill();
+    }
+  }
+
+  private void stopLazilyStartedBroker() throws ShutDownException {
+    LazyStartProxy proxy = lazyStartProxy;
+    EmbeddedRabbitMq broker = lazilyStartedBroker;
+    lazyStartProxy = null;
+    lazilyStartedBroker = null;
+    try {
+      proxy.close();
+    } catch (IOException e) {
+      throw new ShutDownException("Could not stop listening on port " + config.getRabbitMqPort(), e);
+    } finally {
+      if (proxy.isBackendStarted()) {
+        broker.stop();
+      }
+    }
   }
 
 }
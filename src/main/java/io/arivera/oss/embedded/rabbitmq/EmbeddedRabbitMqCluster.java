@@ -0,0 +1,237 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.apache.commons.lang3.StopWatch;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommand;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl;
+import io.arivera.oss.embedded.rabbitmq.download.DownloadException;
+import io.arivera.oss.embedded.rabbitmq.extract.ExtractionException;
+import io.arivera.oss.embedded.rabbitmq.helpers.ErlangVersionException;
+import io.arivera.oss.embedded.rabbitmq.helpers.ShutDownException;
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+import io.arivera.oss.embedded.rabbitmq.util.DaemonThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs several RabbitMQ nodes clustered together.
+ * <p>
+ * Each node runs with its own node name, AMQP port and distribution port, using a configuration derived from the one
+ * given to the cluster. All nodes share the same installation, which is only downloaded and extracted once.
+ * <p>
+ * Example use:
+ * <pre>
+ * {@code
+ *   EmbeddedRabbitMqCluster cluster = new EmbeddedRabbitMqCluster.Builder(config).nodeCount(3).build();
+ *   cluster.start();
+ *   int port = cluster.getNode(0).getConfig().getRabbitMqPort();
+ *   // ...
+ *   cluster.stop();
+ * }
+ * </pre>
+ * All nodes are started in parallel, and all but the first one join the first one's cluster in parallel as well.
+ */
+public class EmbeddedRabbitMqCluster {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedRabbitMqCluster.class);
+
+  private final EmbeddedRabbitMqConfig config;
+  private final List<EmbeddedRabbitMq> nodes;
+  private long timeToClusterReadyInMillis = -1;
+  private boolean started = false;
+
+  EmbeddedRabbitMqCluster(EmbeddedRabbitMqConfig config, int nodeCount) {
+    this.config = config;
+    List<EmbeddedRabbitMq> nodes = new ArrayList<>(nodeCount);
+    for (int i = 0; i < nodeCount; i++) {
+      nodes.add(new EmbeddedRabbitMq(NodeConfigs.deriveNodeConfig(config)));
+    }
+    this.nodes = Collections.unmodifiableList(nodes);
+  }
+
+  /**
+   * Starts all nodes and clusters them together, blocking the current thread until the cluster is ready.
+   * <p>
+   * If any node fails to start or to join the cluster, the nodes that did start are stopped.
+   *
+   * @throws ErlangVersionException when there's an issue with the system's Erlang version
+   * @throws DownloadException    when there's an issue downloading the appropriate artifact
+   * @throws ExtractionException  when there's an issue extracting the files from the downloaded artifact
+   * @throws StartupException     when there's an issue starting any of the nodes or clustering them
+   */
+  public synchronized void start()
+      throws ErlangVersionException, DownloadException, ExtractionException, StartupException {
+    if (started) {
+      throw new IllegalStateException("Start shouldn't be called more than once unless stop() has been called before.");
+    }
+    final StopWatch stopWatch = StopWatch.createStarted();
+    new EmbeddedRabbitMq(config).prepare();
+
+    List<Future<StartupTimings>> startups = new ArrayList<>();
+    for (EmbeddedRabbitMq node : nodes) {
+      startups.add(node.startAsync(false));
+    }
+    List<EmbeddedRabbitMq> startedNodes = new ArrayList<>();
+    RuntimeException startupFailure = null;
+    for (int i = 0; i < nodes.size(); i++) {
+      // All startups are waited for, even after a failure, so that every node that did start can be stopped.
+      try {
+        EmbeddedRabbitMq.await(startups.get(i));
+        startedNodes.add(nodes.get(i));
+      } catch (RuntimeException e) {
+        startupFailure = startupFailure == null ? e : startupFailure;
+      }
+    }
+    if (startupFailure != null) {
+      stopQuietly(startedNodes);
+      throw startupFailure;
+    }
+    LOGGER.info("Started {} RabbitMQ nodes in {}ms", nodes.size(), stopWatch.getTime());
+
+    try {
+      joinCluster();
+    } catch (RabbitMqCommandException e) {
+      stopQuietly(nodes);
+      throw new StartupException("Could not cluster RabbitMQ nodes together", e);
+    }
+
+    stopWatch.stop();
+    timeToClusterReadyInMillis = stopWatch.getTime();
+    started = true;
+    LOGGER.info("RabbitMQ cluster of {} nodes ready in {}ms", nodes.size(), timeToClusterReadyInMillis);
+  }
+
+  private void joinCluster() throws RabbitMqCommandException {
+    final String seedNodeName = nodes.get(0).getConfig().getNodeName();
+    ExecutorService executor = Executors.newCachedThreadPool(new DaemonThreadFactory("RabbitMQ-Cluster"));
+    try {
+      List<Future<?>> joins = new ArrayList<>();
+      for (final EmbeddedRabbitMq node : nodes.subList(1, nodes.size())) {
+        joins.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws RabbitMqCommandException {
+            join(node, seedNodeName);
+            return null;
+          }
+        }));
+      }
+      for (Future<?> join : joins) {
+        EmbeddedRabbitMq.await(join);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void join(EmbeddedRabbitMq node, String seedNodeName) throws RabbitMqCommandException {
+    final StopWatch stopWatch = StopWatch.createStarted();
+    RabbitMqCtl rabbitMqCtl = new RabbitMqCtl(node.getConfig());
+    long timeout = config.getDefaultRabbitMqCtlTimeoutInMillis();
+    RabbitMqCommand.awaitSuccess(rabbitMqCtl.stopApp(), timeout, "stop_app");
+    RabbitMqCommand.awaitSuccess(rabbitMqCtl.joinCluster(seedNodeName), timeout, "join_cluster");
+    RabbitMqCommand.awaitSuccess(rabbitMqCtl.startApp(), timeout, "start_app");
+    LOGGER.debug("Node '{}' joined cluster of '{}' in {}ms",
+        node.getConfig().getNodeName(), seedNodeName, stopWatch.getTime());
+  }
+
+  /**
+   * Stops all nodes, in reverse order of how they joined the cluster. Their data is deleted along with them, so a
+   * cluster started again is formed anew.
+   *
+   * @throws ShutDownException if any of the nodes couldn't be stopped. All other nodes are stopped regardless.
+   */
+  public synchronized void stop() throws ShutDownException {
+    if (!started) {
+      throw new IllegalStateException("Stop shouldn't be called unless 'start()' was successful.");
+    }
+    started = false;
+    ShutDownException failure = stopQuietly(nodes);
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Stops the given nodes in reverse order, carrying on if any of them fails to stop.
+   *
+   * @return the last failure, if any.
+   */
+  private static ShutDownException stopQuietly(List<EmbeddedRabbitMq> nodesToStop) {
+    ShutDownException failure = null;
+    for (int i = nodesToStop.size() - 1; i >= 0; i--) {
+      try {
+        nodesToStop.get(i).stop();
+      } catch (ShutDownException e) {
+        LOGGER.warn("Could not stop RabbitMQ node '{}'", nodesToStop.get(i).getConfig().getNodeName(), e);
+        failure = e;
+      }
+    }
+    return failure;
+  }
+
+  /**
+   * @return all nodes in the cluster. The first one is the node all others joined.
+   */
+  public List<EmbeddedRabbitMq> getNodes() {
+    return nodes;
+  }
+
+  public EmbeddedRabbitMq getNode(int index) {
+    return nodes.get(index);
+  }
+
+  /**
+   * @return milliseconds it took from the call to {@link #start()} until all nodes joined the cluster, or {@code -1} if
+   *     the cluster hasn't been started successfully.
+   */
+  public synchronized long getTimeToClusterReadyInMillis() {
+    return timeToClusterReadyInMillis;
+  }
+
+  /**
+   * A user-friendly way to create a new {@link EmbeddedRabbitMqCluster} instance.
+   */
+  public static class Builder {
+
+    private final EmbeddedRabbitMqConfig config;
+    private int nodeCount;
+
+    /**
+     * @param config the configuration every node in the cluster is derived from. The node name, port and distribution
+     *               port will be overridden for each node.
+     */
+    public Builder(EmbeddedRabbitMqConfig config) {
+      this.config = config;
+      this.nodeCount = 3;
+    }
+
+    /**
+     * Defines how many nodes the cluster will have.
+     * <p>
+     * Default value is {@code 3}
+     */
+    public Builder nodeCount(int nodeCount) {
+      this.nodeCount = nodeCount;
+      return this;
+    }
+
+    /**
+     * Builds a new cluster, which won't start any node until {@link EmbeddedRabbitMqCluster#start()} is called.
+     */
+    public EmbeddedRabbitMqCluster build() {
+      if (nodeCount < 1) {
+        throw new IllegalArgumentException("Cluster must have at least one node but got nodeCount=" + nodeCount);
+      }
+      return new EmbeddedRabbitMqCluster(config, nodeCount);
+    }
+  }
+}
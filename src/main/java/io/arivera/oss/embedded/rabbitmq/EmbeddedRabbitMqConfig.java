@@ -5,6 +5,10 @@ import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommand;
 import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl;
 import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqPlugins;
 import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqServer;
+import io.arivera.oss.embedded.rabbitmq.helpers.AmqpHandshakeReadinessCheck;
+import io.arivera.oss.embedded.rabbitmq.helpers.ReadinessCheck;
+import io.arivera.oss.embedded.rabbitmq.util.Digests;
+import io.arivera.oss.embedded.rabbitmq.util.HostNameSupplier;
 import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
 import io.arivera.oss.embedded.rabbitmq.util.RandomPortSupplier;
 
@@ -12,7 +16,10 @@ import java.io.File;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -33,6 +40,13 @@ import java.util.concurrent.TimeUnit;
  */
 public class EmbeddedRabbitMqConfig {
 
+  private static final String DEFAULT_NODE_NAME_PREFIX = "rabbit@";
+  private static final String DEFAULT_MNESIA_BASE_PATH = "var/lib/rabbitmq/mnesia";
+  private static final String INSTANCES_FOLDER = "instances";
+  private static final int DIST_PORT_OFFSET = 20000;
+  private static final String DEFAULT_DOWNLOAD_DIGEST_ALGORITHM = "SHA-256";
+  private static final long DEFAULT_DOWNLOAD_THROUGHPUT_WINDOW_IN_MILLIS = 10000;
+
   private final Version version;
 
   private final URL downloadSource;
@@ -52,6 +66,33 @@ public class EmbeddedRabbitMqConfig {
   private final Map<String, String> envVars;
   private final RabbitMqCommand.ProcessExecutorFactory processExecutorFactory;
   private final Proxy downloadProxy;
+  private final ReadinessCheck.Factory readinessCheckFactory;
+  private final boolean useSignalShutdown;
+  private final long signalShutdownGracePeriodInMillis;
+  private final boolean reuseDetachedServer;
+  private final long detachedServerTtlInMillis;
+  private final boolean keepWarmStandby;
+  private final File dataTemplateDefinitions;
+  private final File instanceFolder;
+  private final boolean derivedNode;
+  private final Map<String, String> explicitEnvVars;
+  private final boolean randomPort;
+  private final int portConflictRetries;
+  private final boolean restartOnCrash;
+  private final long restartBackoffInMillis;
+  private final long maxRestartBackoffInMillis;
+  private final boolean launchErlDirectly;
+  private final boolean adaptiveStartupTimeout;
+  private final double startupTimeoutSafetyFactor;
+  private final long minStartupTimeoutInMillis;
+  private final long maxStartupTimeoutInMillis;
+  private final int parallelDownloadConnections;
+  private final boolean resumeDownloads;
+  private final String downloadDigestAlgorithm;
+  private final String downloadChecksum;
+  private final long minDownloadBytesPerSecond;
+  private final long downloadThroughputWindowInMillis;
+  private final List<URL> downloadMirrors;
 
   protected EmbeddedRabbitMqConfig(Version version,
                                    URL downloadSource,
@@ -66,7 +107,33 @@ public class EmbeddedRabbitMqConfig {
                                    boolean cacheDownload, boolean deleteCachedFile,
                                    Map<String, String> envVars,
                                    RabbitMqCommand.ProcessExecutorFactory processExecutorFactory,
-                                   Proxy downloadProxy ) {
+                                   Proxy downloadProxy,
+                                   ReadinessCheck.Factory readinessCheckFactory,
+                                   boolean useSignalShutdown,
+                                   long signalShutdownGracePeriodInMillis,
+                                   boolean reuseDetachedServer,
+                                   long detachedServerTtlInMillis,
+                                   boolean keepWarmStandby,
+                                   File dataTemplateDefinitions,
+                                   File instanceFolder,
+                                   boolean derivedNode,
+                                   boolean randomPort,
+                                   int portConflictRetries,
+                                   boolean restartOnCrash,
+                                   long restartBackoffInMillis,
+                                   long maxRestartBackoffInMillis,
+                                   boolean launchErlDirectly,
+                                   boolean adaptiveStartupTimeout,
+                                   double startupTimeoutSafetyFactor,
+                                   long minStartupTimeoutInMillis,
+                                   long maxStartupTimeoutInMillis,
+                                   int parallelDownloadConnections,
+                                   boolean resumeDownloads,
+                                   String downloadDigestAlgorithm,
+                                   String downloadChecksum,
+                                   long minDownloadBytesPerSecond,
+                                   long downloadThroughputWindowInMillis,
+                                   List<URL> downloadMirrors) {
     this.version = version;
     this.downloadSource = downloadSource;
     this.downloadTarget = downloadTarget;
@@ -79,9 +146,50 @@ public class EmbeddedRabbitMqConfig {
     this.erlangCheckTimeoutInMillis = erlangCheckTimeoutInMillis;
     this.shouldCacheDownload = cacheDownload;
     this.deleteCachedFileOnErrors = deleteCachedFile;
-    this.envVars = envVars;
+    this.explicitEnvVars = envVars;
+    this.envVars = instanceFolder == null ? envVars : withInstanceFolder(envVars, instanceFolder);
     this.processExecutorFactory = processExecutorFactory;
     this.downloadProxy = downloadProxy;
+    this.readinessCheckFactory = readinessCheckFactory;
+    this.useSignalShutdown = useSignalShutdown;
+    this.signalShutdownGracePeriodInMillis = signalShutdownGracePeriodInMillis;
+    this.reuseDetachedServer = reuseDetachedServer;
+    this.detachedServerTtlInMillis = detachedServerTtlInMillis;
+    this.keepWarmStandby = keepWarmStandby;
+    this.dataTemplateDefinitions = dataTemplateDefinitions;
+    this.instanceFolder = instanceFolder;
+    this.derivedNode = derivedNode;
+    this.randomPort = randomPort;
+    this.portConflictRetries = portConflictRetries;
+    this.restartOnCrash = restartOnCrash;
+    this.restartBackoffInMillis = restartBackoffInMillis;
+    this.maxRestartBackoffInMillis = maxRestartBackoffInMillis;
+    this.launchErlDirectly = launchErlDirectly;
+    this.adaptiveStartupTimeout = adaptiveStartupTimeout;
+    this.startupTimeoutSafetyFactor = startupTimeoutSafetyFactor;
+    this.minStartupTimeoutInMillis = minStartupTimeoutInMillis;
+    this.maxStartupTimeoutInMillis = maxStartupTimeoutInMillis;
+    this.parallelDownloadConnections = parallelDownloadConnections;
+    this.resumeDownloads = resumeDownloads;
+    this.downloadDigestAlgorithm = downloadDigestAlgorithm;
+    this.downloadChecksum = downloadChecksum;
+    this.minDownloadBytesPerSecond = minDownloadBytesPerSecond;
+    this.downloadThroughputWindowInMillis = downloadThroughputWindowInMillis;
+    this.downloadMirrors = downloadMirrors;
+  }
+
+  /**
+   * Points every folder and file RabbitMQ writes to at the given folder, unless defined explicitly.
+   */
+  private static Map<String, String> withInstanceFolder(Map<String, String> envVars, File instanceFolder) {
+    Map<String, String> instanceEnvVars = new HashMap<>();
+    instanceEnvVars.put(RabbitMqEnvVar.MNESIA_BASE.getEnvVarName(), new File(instanceFolder, "mnesia").getPath());
+    instanceEnvVars.put(RabbitMqEnvVar.LOG_BASE.getEnvVarName(), new File(instanceFolder, "log").getPath());
+    instanceEnvVars.put(RabbitMqEnvVar.ENABLED_PLUGINS_FILE.getEnvVarName(),
+        new File(instanceFolder, "enabled_plugins").getPath());
+    instanceEnvVars.put(RabbitMqEnvVar.PID_FILE.getEnvVarName(), new File(instanceFolder, "rabbitmq.pid").getPath());
+    instanceEnvVars.putAll(envVars);
+    return instanceEnvVars;
   }
 
   public long getDownloadReadTimeoutInMillis() {
@@ -108,6 +216,14 @@ public class EmbeddedRabbitMqConfig {
     return downloadSource;
   }
 
+  /**
+   * Returns every URL the artifact can be downloaded from, starting with the {@link #getDownloadSource() download
+   * source}, which has more than one element when downloading from a {@link MirroredArtifactRepository}.
+   */
+  public List<URL> getDownloadMirrors() {
+    return downloadMirrors;
+  }
+
   public File getDownloadTarget() {
     return downloadTarget;
   }
@@ -128,10 +244,22 @@ public class EmbeddedRabbitMqConfig {
     return appFolder;
   }
 
+  /**
+   * Returns the environment variables used for the execution of all RabbitMQ commands, including those pointing at the
+   * {@link #getInstanceFolder() instance folder}, if one is used.
+   */
   public Map<String, String> getEnvVars() {
     return envVars;
   }
 
+  /**
+   * Returns only the environment variables that were defined explicitly, leaving out those derived from the instance
+   * folder.
+   */
+  Map<String, String> getExplicitEnvVars() {
+    return explicitEnvVars;
+  }
+
   public RabbitMqCommand.ProcessExecutorFactory getProcessExecutorFactory() {
     return processExecutorFactory;
   }
@@ -154,10 +282,232 @@ public class EmbeddedRabbitMqConfig {
     }
   }
 
+  /**
+   * Returns the port used for clustering and CLI tools as defined by the {@link #envVars} or the port RabbitMQ would use
+   * by default, which is the {@link #getRabbitMqPort() AMQP port} plus 20000.
+   */
+  public int getDistributionPort() {
+    String portValue = this.envVars.get(RabbitMqEnvVar.DIST_PORT.getEnvVarName());
+    if (portValue == null) {
+      return getRabbitMqPort() + DIST_PORT_OFFSET;
+    } else {
+      return Integer.parseInt(portValue);
+    }
+  }
+
+  /**
+   * Returns whether the AMQP port was picked at random, in which case another one can be picked if it turns out to be
+   * taken by the time the server binds it.
+   *
+   * @see Builder#randomPort()
+   */
+  public boolean hasRandomPort() {
+    return randomPort;
+  }
+
+  public int getPortConflictRetries() {
+    return portConflictRetries;
+  }
+
+  public boolean shouldRestartOnCrash() {
+    return restartOnCrash;
+  }
+
+  public long getRestartBackoffInMillis() {
+    return restartBackoffInMillis;
+  }
+
+  public long getMaxRestartBackoffInMillis() {
+    return maxRestartBackoffInMillis;
+  }
+
+  public boolean shouldLaunchErlDirectly() {
+    return launchErlDirectly;
+  }
+
+  public boolean shouldUseAdaptiveStartupTimeout() {
+    return adaptiveStartupTimeout;
+  }
+
+  public double getStartupTimeoutSafetyFactor() {
+    return startupTimeoutSafetyFactor;
+  }
+
+  public long getMinStartupTimeoutInMillis() {
+    return minStartupTimeoutInMillis;
+  }
+
+  public long getMaxStartupTimeoutInMillis() {
+    return maxStartupTimeoutInMillis;
+  }
+
+  /**
+   * Returns how many connections to download the artifact with, each fetching a range of its bytes.
+   *
+   * @see Builder#parallelDownloadConnections(int)
+   */
+  public int getParallelDownloadConnections() {
+    return parallelDownloadConnections;
+  }
+
+  /**
+   * Returns whether an interrupted download is continued where it stopped instead of starting over.
+   *
+   * @see Builder#resumeDownloads(boolean)
+   */
+  public boolean shouldResumeDownloads() {
+    return resumeDownloads;
+  }
+
+  /**
+   * Returns the algorithm the digest of the downloaded artifact is computed with, as named by
+   * {@link java.security.MessageDigest#getInstance(String)}.
+   *
+   * @see Builder#downloadChecksum(String, String)
+   */
+  public String getDownloadDigestAlgorithm() {
+    return downloadDigestAlgorithm;
+  }
+
+  /**
+   * Returns the hex-encoded digest the downloaded artifact is expected to have, or {@code null} if it isn't known.
+   *
+   * @see Builder#downloadChecksum(String, String)
+   */
+  public String getDownloadChecksum() {
+    return downloadChecksum;
+  }
+
+  /**
+   * Returns the least throughput, in bytes per second, a download connection must sustain, or {@code 0} if any is
+   * accepted.
+   *
+   * @see Builder#minDownloadThroughput(long, long)
+   */
+  public long getMinDownloadBytesPerSecond() {
+    return minDownloadBytesPerSecond;
+  }
+
+  /**
+   * Returns how long the throughput of a download connection is measured over before it's compared with the least one
+   * accepted.
+   *
+   * @see Builder#minDownloadThroughput(long, long)
+   */
+  public long getDownloadThroughputWindowInMillis() {
+    return downloadThroughputWindowInMillis;
+  }
+
+  /**
+   * Returns the RabbitMQ node name as defined by the {@link #envVars} or the default name RabbitMQ would use, which is
+   * {@code rabbit@} followed by the short host name of this machine.
+   */
+  public String getNodeName() {
+    String nodeName = this.envVars.get(RabbitMqEnvVar.NODENAME.getEnvVarName());
+    if (nodeName == null) {
+      return DEFAULT_NODE_NAME_PREFIX + new HostNameSupplier().get();
+    } else {
+      return nodeName;
+    }
+  }
+
+  /**
+   * Returns the folder under which RabbitMQ creates the Mnesia database folder of each node, as defined by the
+   * {@link #envVars} or the default folder for the current Operating System.
+   */
+  public File getMnesiaBaseFolder() {
+    String mnesiaBase = this.envVars.get(RabbitMqEnvVar.MNESIA_BASE.getEnvVarName());
+    if (mnesiaBase != null) {
+      return new File(mnesiaBase);
+    } else if (OperatingSystem.detect() == OperatingSystem.WINDOWS) {
+      return new File(new File(System.getenv("APPDATA"), "RabbitMQ"), "db");
+    } else {
+      return new File(appFolder, DEFAULT_MNESIA_BASE_PATH);
+    }
+  }
+
+  /**
+   * Returns the folder where this node stores its data (the Mnesia database), as defined by the {@link #envVars} or the
+   * default folder RabbitMQ would use for this node.
+   */
+  public File getMnesiaFolder() {
+    String mnesiaDir = this.envVars.get(RabbitMqEnvVar.MNESIA_DIR.getEnvVarName());
+    if (mnesiaDir != null) {
+      return new File(mnesiaDir);
+    } else if (OperatingSystem.detect() == OperatingSystem.WINDOWS) {
+      return new File(getMnesiaBaseFolder(), getNodeName() + "-mnesia");
+    } else {
+      return new File(getMnesiaBaseFolder(), getNodeName());
+    }
+  }
+
+  /**
+   * Returns the file where the node writes the process id of its Erlang VM, as defined by the {@link #envVars} or the
+   * default file RabbitMQ would use for this node.
+   */
+  public File getPidFile() {
+    String pidFile = this.envVars.get(RabbitMqEnvVar.PID_FILE.getEnvVarName());
+    if (pidFile != null) {
+      return new File(pidFile);
+    } else {
+      return new File(getMnesiaFolder().getPath() + ".pid");
+    }
+  }
+
   public Proxy getDownloadProxy() {
     return downloadProxy;
   }
 
+  public ReadinessCheck.Factory getReadinessCheckFactory() {
+    return readinessCheckFactory;
+  }
+
+  public boolean shouldUseSignalShutdown() {
+    return useSignalShutdown;
+  }
+
+  public long getSignalShutdownGracePeriodInMillis() {
+    return signalShutdownGracePeriodInMillis;
+  }
+
+  public boolean shouldReuseDetachedServer() {
+    return reuseDetachedServer;
+  }
+
+  public long getDetachedServerTtlInMillis() {
+    return detachedServerTtlInMillis;
+  }
+
+  public boolean shouldKeepWarmStandby() {
+    return keepWarmStandby;
+  }
+
+  /**
+   * @return definitions file the data template is initialized with, or {@code null} if no data template is used.
+   * @see Builder#dataTemplate(File)
+   */
+  public File getDataTemplateDefinitions() {
+    return dataTemplateDefinitions;
+  }
+
+  /**
+   * Returns the folder this node keeps its data, logs, enabled plugins and pid file in, or {@code null} if they are kept
+   * in the installation folder, as RabbitMQ does by default.
+   *
+   * @see Builder#useInstanceFolder(boolean)
+   */
+  public File getInstanceFolder() {
+    return instanceFolder;
+  }
+
+  /**
+   * Returns whether this is the configuration of a node derived from another one, whose name is based on a port picked
+   * at random, so it's different on every run.
+   */
+  boolean isDerivedNode() {
+    return derivedNode;
+  }
+
   /**
    * A user-friendly way to create a new {@link EmbeddedRabbitMqConfig} instance.
    * <p>
@@ -192,6 +542,31 @@ public class EmbeddedRabbitMqConfig {
     private ArtifactRepository artifactRepository;
     private RabbitMqCommand.ProcessExecutorFactory processExecutorFactory;
     private Proxy downloadProxy = null;
+    private ReadinessCheck.Factory readinessCheckFactory;
+    private boolean useSignalShutdown;
+    private long signalShutdownGracePeriodInMillis;
+    private boolean reuseDetachedServer;
+    private long detachedServerTtlInMillis;
+    private boolean keepWarmStandby;
+    private File dataTemplateDefinitions;
+    private boolean useInstanceFolder;
+    private boolean derivedNode;
+    private boolean randomPort;
+    private int portConflictRetries;
+    private boolean restartOnCrash;
+    private long restartBackoffInMillis;
+    private long maxRestartBackoffInMillis;
+    private boolean launchErlDirectly;
+    private boolean adaptiveStartupTimeout;
+    private double startupTimeoutSafetyFactor;
+    private long minStartupTimeoutInMillis;
+    private long maxStartupTimeoutInMillis;
+    private int parallelDownloadConnections;
+    private boolean resumeDownloads;
+    private String downloadDigestAlgorithm;
+    private String downloadChecksum;
+    private long minDownloadBytesPerSecond;
+    private long downloadThroughputWindowInMillis;
 
     /**
      * Creates a new instance of the Configuration Builder.
@@ -210,6 +585,83 @@ public class EmbeddedRabbitMqConfig {
       this.artifactRepository = OfficialArtifactRepository.GITHUB;
       this.envVars = new HashMap<>();
       this.processExecutorFactory = new RabbitMqCommand.ProcessExecutorFactory();
+      this.readinessCheckFactory = new AmqpHandshakeReadinessCheck.Factory();
+      this.useSignalShutdown = false;
+      this.signalShutdownGracePeriodInMillis = TimeUnit.SECONDS.toMillis(5);
+      this.reuseDetachedServer = false;
+      this.detachedServerTtlInMillis = TimeUnit.HOURS.toMillis(1);
+      this.keepWarmStandby = false;
+      this.dataTemplateDefinitions = null;
+      this.useInstanceFolder = false;
+      this.derivedNode = false;
+      this.randomPort = false;
+      this.portConflictRetries = 3;
+      this.restartOnCrash = false;
+      this.restartBackoffInMillis = TimeUnit.SECONDS.toMillis(1);
+      this.maxRestartBackoffInMillis = TimeUnit.SECONDS.toMillis(30);
+      this.launchErlDirectly = false;
+      this.adaptiveStartupTimeout = false;
+      this.startupTimeoutSafetyFactor = 3;
+      this.minStartupTimeoutInMillis = TimeUnit.SECONDS.toMillis(3);
+      this.maxStartupTimeoutInMillis = TimeUnit.MINUTES.toMillis(2);
+      this.parallelDownloadConnections = 1;
+      this.resumeDownloads = false;
+      this.downloadDigestAlgorithm = DEFAULT_DOWNLOAD_DIGEST_ALGORITHM;
+      this.downloadChecksum = null;
+      this.minDownloadBytesPerSecond = 0;
+      this.downloadThroughputWindowInMillis = DEFAULT_DOWNLOAD_THROUGHPUT_WINDOW_IN_MILLIS;
+    }
+
+    /**
+     * Creates a new instance of the Configuration Builder pre-populated with the values of an existing configuration.
+     * <p>
+     * This is useful to derive a slightly different configuration (like another port) from an existing one. The
+     * artifact will be downloaded from the exact same URL the given configuration uses.
+     */
+    public Builder(EmbeddedRabbitMqConfig config) {
+      this.downloadConnectionTimeoutInMillis = config.getDownloadConnectionTimeoutInMillis();
+      this.downloadReadTimeoutInMillis = config.getDownloadReadTimeoutInMillis();
+      this.defaultRabbitMqCtlTimeoutInMillis = config.getDefaultRabbitMqCtlTimeoutInMillis();
+      this.rabbitMqServerInitializationTimeoutInMillis = config.getRabbitMqServerInitializationTimeoutInMillis();
+      this.erlangCheckTimeoutInMillis = config.getErlangCheckTimeoutInMillis();
+      this.cacheDownload = config.shouldCachedDownload();
+      this.deleteCachedFile = config.shouldDeleteCachedFileOnErrors();
+      this.downloadTarget = config.getDownloadTarget();
+      this.extractionFolder = config.getExtractionFolder();
+      this.version = config.getVersion();
+      List<ArtifactRepository> mirrors = new ArrayList<>();
+      for (URL mirror : config.getDownloadMirrors()) {
+        mirrors.add(new SingleArtifactRepository(mirror));
+      }
+      this.artifactRepository = mirrors.size() == 1 ? mirrors.get(0) : new MirroredArtifactRepository(mirrors);
+      this.envVars = new HashMap<>(config.getExplicitEnvVars());
+      this.processExecutorFactory = config.getProcessExecutorFactory();
+      this.downloadProxy = config.getDownloadProxy();
+      this.readinessCheckFactory = config.getReadinessCheckFactory();
+      this.useSignalShutdown = config.shouldUseSignalShutdown();
+      this.signalShutdownGracePeriodInMillis = config.getSignalShutdownGracePeriodInMillis();
+      this.reuseDetachedServer = config.shouldReuseDetachedServer();
+      this.detachedServerTtlInMillis = config.getDetachedServerTtlInMillis();
+      this.keepWarmStandby = config.shouldKeepWarmStandby();
+      this.dataTemplateDefinitions = config.getDataTemplateDefinitions();
+      this.useInstanceFolder = config.getInstanceFolder() != null;
+      this.derivedNode = config.isDerivedNode();
+      this.randomPort = config.hasRandomPort();
+      this.portConflictRetries = config.getPortConflictRetries();
+      this.restartOnCrash = config.shouldRestartOnCrash();
+      this.restartBackoffInMillis = config.getRestartBackoffInMillis();
+      this.maxRestartBackoffInMillis = config.getMaxRestartBackoffInMillis();
+      this.launchErlDirectly = config.shouldLaunchErlDirectly();
+      this.adaptiveStartupTimeout = config.shouldUseAdaptiveStartupTimeout();
+      this.startupTimeoutSafetyFactor = config.getStartupTimeoutSafetyFactor();
+      this.minStartupTimeoutInMillis = config.getMinStartupTimeoutInMillis();
+      this.maxStartupTimeoutInMillis = config.getMaxStartupTimeoutInMillis();
+      this.parallelDownloadConnections = config.getParallelDownloadConnections();
+      this.resumeDownloads = config.shouldResumeDownloads();
+      this.downloadDigestAlgorithm = config.getDownloadDigestAlgorithm();
+      this.downloadChecksum = config.getDownloadChecksum();
+      this.minDownloadBytesPerSecond = config.getMinDownloadBytesPerSecond();
+      this.downloadThroughputWindowInMillis = config.getDownloadThroughputWindowInMillis();
     }
 
     @Beta
@@ -248,6 +700,7 @@ public class EmbeddedRabbitMqConfig {
      * Default is {@link OfficialArtifactRepository#RABBITMQ}
      *
      * @see OfficialArtifactRepository
+     * @see MirroredArtifactRepository
      */
     public Builder downloadFrom(ArtifactRepository repository) {
       this.artifactRepository = repository;
@@ -390,6 +843,7 @@ public class EmbeddedRabbitMqConfig {
         return this.randomPort();
       } else {
         this.envVar(RabbitMqEnvVar.NODE_PORT, String.valueOf(port));
+        this.randomPort = false;
         return this;
       }
     }
@@ -398,10 +852,32 @@ public class EmbeddedRabbitMqConfig {
      * Defines the port that this RabbitMQ broker node will run on.
      * <p>
      * The port is defined by setting the environment variable {@link RabbitMqEnvVar#NODE_PORT}
+     * <p>
+     * Since the port is only known to be available at the time it's picked, another process may bind it before the
+     * server does. If that happens, the server is started again on a new random port, up to
+     * {@link #portConflictRetries(int)} times.
      */
     public Builder randomPort() {
-      int randomPort = new RandomPortSupplier().get();
-      return port(randomPort);
+      this.envVar(RabbitMqEnvVar.NODE_PORT, String.valueOf(new RandomPortSupplier().get()));
+      this.randomPort = true;
+      return this;
+    }
+
+    /**
+     * Defines how many times the server is started again on new ports when the {@link #randomPort() random port} it
+     * was given turns out to be in use by another process.
+     * <p>
+     * The conflict is detected as soon as the server reports it, instead of waiting for the
+     * {@link #rabbitMqServerInitializationTimeoutInMillis(long) initialization timeout} to expire. An explicitly defined
+     * {@link RabbitMqEnvVar#DIST_PORT distribution port} is replaced as well, since the server doesn't reliably report
+     * which of the ports was taken. Use {@link EmbeddedRabbitMq#getConfig()} to find out the ports in use after
+     * starting. Ports defined with {@link #port(int)} are never replaced.
+     * <p>
+     * Default value is {@code 3}
+     */
+    public Builder portConflictRetries(int portConflictRetries) {
+      this.portConflictRetries = portConflictRetries;
+      return this;
     }
 
     /**
@@ -420,6 +896,343 @@ public class EmbeddedRabbitMqConfig {
       return this;
     }
 
+    /**
+     * Defines how to determine the RabbitMQ Server is ready to be used once its process has been started.
+     * <p>
+     * Default value is {@link AmqpHandshakeReadinessCheck.Factory}, which waits for the AMQP port to answer a protocol
+     * handshake. Use {@link io.arivera.oss.embedded.rabbitmq.helpers.LogPatternReadinessCheck.Factory} to wait for
+     * the server to log its startup completion instead.
+     */
+    public Builder readinessCheck(ReadinessCheck.Factory factory) {
+      this.readinessCheckFactory = factory;
+      return this;
+    }
+
+    /**
+     * Defines whether the RabbitMQ Server should be stopped by sending a {@code SIGTERM} signal straight to its Erlang
+     * VM instead of executing {@code rabbitmqctl stop}, which saves launching another Erlang VM just to send the
+     * request. If the VM doesn't exit within the {@link #signalShutdownGracePeriodInMillis(long) grace period}, it's
+     * killed with {@code SIGKILL}.
+     * <p>
+     * Only supported on UNIX-like systems. On Windows, {@code rabbitmqctl stop} is always used.
+     * <p>
+     * Default value is {@code false}
+     */
+    public Builder useSignalShutdown(boolean useSignalShutdown) {
+      this.useSignalShutdown = useSignalShutdown;
+      return this;
+    }
+
+    /**
+     * Defines how long to wait after sending {@code SIGTERM} before resorting to {@code SIGKILL}.
+     * <p>
+     * Default value is 5 seconds.
+     *
+     * @see #useSignalShutdown(boolean)
+     */
+    public Builder signalShutdownGracePeriodInMillis(long signalShutdownGracePeriodInMillis) {
+      this.signalShutdownGracePeriodInMillis = signalShutdownGracePeriodInMillis;
+      return this;
+    }
+
+    /**
+     * Defines whether the RabbitMQ Server should be started detached from this JVM, so it keeps running after the JVM
+     * exits and can be reused by a later JVM starting a server with an identical configuration.
+     * <p>
+     * A descriptor of the running server is written to the {@link #extractionFolder(File) extraction folder}. When
+     * starting, a live server matching the descriptor is adopted instead of booting a new one. Adopted servers aren't
+     * stopped when the JVM exits, only when {@link EmbeddedRabbitMq#stop()} is invoked or their
+     * {@link #detachedServerTtlInMillis(long) time-to-live} expires.
+     * <p>
+     * Only supported on UNIX-like systems. On Windows, the server is always started attached to this JVM.
+     * <p>
+     * Default value is {@code false}
+     */
+    public Builder reuseDetachedServer(boolean reuseDetachedServer) {
+      this.reuseDetachedServer = reuseDetachedServer;
+      return this;
+    }
+
+    /**
+     * Defines how long a detached server keeps running after being started or last adopted by a JVM, unless stopped
+     * explicitly before.
+     * <p>
+     * Default value is 1 hour.
+     *
+     * @see #reuseDetachedServer(boolean)
+     */
+    public Builder detachedServerTtlInMillis(long detachedServerTtlInMillis) {
+      this.detachedServerTtlInMillis = detachedServerTtlInMillis;
+      return this;
+    }
+
+    /**
+     * Defines whether a second RabbitMQ Server should be kept booting in the background while the current one is in use,
+     * so that the next {@link EmbeddedRabbitMq#start()} after a {@link EmbeddedRabbitMq#stop()} only has to hand over
+     * to it instead of waiting for a whole new boot.
+     * <p>
+     * The standby server runs with the same configuration but its own AMQP port, distribution port, node name and data
+     * folder, which are the ones {@link EmbeddedRabbitMq#getConfig()} reports once it takes over. This costs the
+     * resources of a second server, and is ignored when {@link #reuseDetachedServer(boolean) reusing detached servers}.
+     * <p>
+     * Default value is {@code false}
+     */
+    public Builder keepWarmStandby(boolean keepWarmStandby) {
+      this.keepWarmStandby = keepWarmStandby;
+      return this;
+    }
+
+    /**
+     * Defines a definitions file (users, virtual hosts, queues, exchanges, bindings, etc. as exported by
+     * {@code rabbitmqctl export_definitions}) to seed the data folder of the node with on every start.
+     * <p>
+     * The first start boots the node on an empty data folder, imports the definitions, stops the node and keeps a copy
+     * of its data folder as a template. From then on, every start replaces the data folder with a copy of the template
+     * before booting, which skips creating the database schema and declaring the definitions again. Any data left by a
+     * previous run is discarded.
+     * <p>
+     * Templates are kept in the {@link #extractionFolder(File) extraction folder}, one per RabbitMQ version, node name
+     * and definitions content, since a data folder can't be used by a node with a different name. Nodes derived by
+     * {@link EmbeddedRabbitMqPool}, {@link EmbeddedRabbitMqCluster} and {@link #keepWarmStandby(boolean) warm standbys}
+     * are named after a port picked at random, so they don't use templates: their data folder is emptied before
+     * booting, and the definitions are imported once they're running.
+     * <p>
+     * Importing definitions requires RabbitMQ 3.8.2 or later.
+     * <p>
+     * Default value is {@code null}, meaning no template is used.
+     */
+    public Builder dataTemplate(File definitionsFile) {
+      this.dataTemplateDefinitions = definitionsFile;
+      return this;
+    }
+
+    /**
+     * Defines whether this node should keep its data, logs, enabled plugins and pid file in a folder of its own, named
+     * after the node, under {@code instances} in the {@link #extractionFolder(File) extraction folder}.
+     * <p>
+     * By default, RabbitMQ keeps them inside the installation folder, so nodes sharing an installation would share the
+     * enabled plugins and log folder, too. With a folder per instance, a single extracted installation can serve any
+     * number of nodes running at the same time, as long as each has its own node name and ports. Environment variables
+     * defined explicitly still take precedence.
+     * <p>
+     * Nodes derived by {@link EmbeddedRabbitMqPool}, {@link EmbeddedRabbitMqCluster} and
+     * {@link #keepWarmStandby(boolean) warm standbys} always use a folder of their own.
+     * <p>
+     * Default value is {@code false}
+     */
+    public Builder useInstanceFolder(boolean useInstanceFolder) {
+      this.useInstanceFolder = useInstanceFolder;
+      return this;
+    }
+
+    Builder derivedNode(boolean derivedNode) {
+      this.derivedNode = derivedNode;
+      return this;
+    }
+
+    /**
+     * Defines whether the RabbitMQ Server should be started again, with the same ports and data folder, whenever its
+     * process finishes without {@link EmbeddedRabbitMq#stop()} having been called. For example, when the Erlang VM is
+     * killed for running out of memory.
+     * <p>
+     * Restarts wait for {@link #restartBackoffInMillis(long)} first, doubling the wait after each failed attempt up to
+     * {@link #maxRestartBackoffInMillis(long)}, and keep being attempted until one succeeds or the broker is stopped.
+     * Crashes, restarts and downtime are accounted for by {@link EmbeddedRabbitMq#getWatchdog()}, which also notifies
+     * listeners so clients can reconnect as soon as the server is back.
+     * <p>
+     * This doesn't apply to {@link #reuseDetachedServer(boolean) detached servers}, which aren't child processes of this
+     * JVM.
+     * <p>
+     * Default value is {@code false}
+     */
+    public Builder restartOnCrash(boolean restartOnCrash) {
+      this.restartOnCrash = restartOnCrash;
+      return this;
+    }
+
+    /**
+     * Defines how long to wait before the first attempt to restart a crashed server.
+     * <p>
+     * Default value is 1 second.
+     *
+     * @see #restartOnCrash(boolean)
+     */
+    public Builder restartBackoffInMillis(long restartBackoffInMillis) {
+      this.restartBackoffInMillis = restartBackoffInMillis;
+      return this;
+    }
+
+    /**
+     * Defines the longest wait between attempts to restart a crashed server.
+     * <p>
+     * Default value is 30 seconds.
+     *
+     * @see #restartOnCrash(boolean)
+     */
+    public Builder maxRestartBackoffInMillis(long maxRestartBackoffInMillis) {
+      this.maxRestartBackoffInMillis = maxRestartBackoffInMillis;
+      return this;
+    }
+
+    /**
+     * Defines whether the RabbitMQ Server should be started by executing the {@code erl} command it boots on directly,
+     * instead of going through the {@code rabbitmq-server} script, which sources other scripts and runs several helper
+     * processes before the actual Erlang VM starts.
+     * <p>
+     * The first start runs the script with a stand-in {@code erl} command that records the command line and environment
+     * instead of booting, and caches them in the {@link #extractionFolder(File) extraction folder}. The AMQP and
+     * distribution ports, node name and the data, log and pid file locations are kept as placeholders, so the cached
+     * command serves every node of the same version and installation folder that only differs in those values. The
+     * script is still used on Windows, or whenever the command can't be recorded.
+     * <p>
+     * Default value is {@code false}
+     */
+    @Beta
+    public Builder launchErlDirectly(boolean launchErlDirectly) {
+      this.launchErlDirectly = launchErlDirectly;
+      return this;
+    }
+
+    /**
+     * Defines whether the time to wait for the RabbitMQ Server to start should be derived from how long it took to boot
+     * before, instead of using the fixed {@link #rabbitMqServerInitializationTimeoutInMillis(long)}.
+     * <p>
+     * The boot durations of each version on each host are always recorded in a small file in the download folder. Once
+     * there are enough of them, the timeout becomes their 99th percentile multiplied by the
+     * {@link #startupTimeoutSafetyFactor(double)}, but never less than {@link #minStartupTimeoutInMillis(long)} nor more
+     * than {@link #maxStartupTimeoutInMillis(long)}. Until then, the fixed timeout is used. Boots that time out are
+     * recorded as having taken as long as the timeout, so the timeout grows if it turns out to be too short.
+     * <p>
+     * Default value is {@code false}
+     */
+    public Builder adaptiveStartupTimeout(boolean adaptiveStartupTimeout) {
+      this.adaptiveStartupTimeout = adaptiveStartupTimeout;
+      return this;
+    }
+
+    /**
+     * Defines how many times longer than the 99th percentile of previous boots to wait for the server to start.
+     * <p>
+     * Default value is {@code 3}
+     *
+     * @see #adaptiveStartupTimeout(boolean)
+     */
+    public Builder startupTimeoutSafetyFactor(double startupTimeoutSafetyFactor) {
+      this.startupTimeoutSafetyFactor = startupTimeoutSafetyFactor;
+      return this;
+    }
+
+    /**
+     * Defines the least time to wait for the server to start, however fast previous boots were.
+     * <p>
+     * Default value is 3 seconds.
+     *
+     * @see #adaptiveStartupTimeout(boolean)
+     */
+    public Builder minStartupTimeoutInMillis(long minStartupTimeoutInMillis) {
+      this.minStartupTimeoutInMillis = minStartupTimeoutInMillis;
+      return this;
+    }
+
+    /**
+     * Defines the most time to wait for the server to start, however slow previous boots were.
+     * <p>
+     * Default value is 2 minutes.
+     *
+     * @see #adaptiveStartupTimeout(boolean)
+     */
+    public Builder maxStartupTimeoutInMillis(long maxStartupTimeoutInMillis) {
+      this.maxStartupTimeoutInMillis = maxStartupTimeoutInMillis;
+      return this;
+    }
+
+    /**
+     * Downloads the artifact over the given number of concurrent connections, each fetching a range of its bytes, which
+     * is usually faster on high-latency links.
+     * <p>
+     * If the server doesn't support range requests or doesn't tell the size of the artifact, it's downloaded as a single
+     * stream.
+     * <p>
+     * Default value is {@code 1}, which downloads the artifact as a single stream.
+     */
+    public Builder parallelDownloadConnections(int parallelDownloadConnections) {
+      this.parallelDownloadConnections = parallelDownloadConnections;
+      return this;
+    }
+
+    /**
+     * Keeps partially downloaded files, even if {@link #deleteDownloadedFileOnErrors(boolean)} is enabled, and
+     * continues downloading them where they stopped, provided the artifact didn't change on the server in the meantime.
+     * <p>
+     * This applies to downloads over a single connection (see {@link #parallelDownloadConnections(int)}) from servers
+     * that support range requests.
+     * <p>
+     * Default value is {@code false}
+     */
+    public Builder resumeDownloads(boolean resumeDownloads) {
+      this.resumeDownloads = resumeDownloads;
+      return this;
+    }
+
+
+    /**
+     * Defines the SHA-256 digest the downloaded artifact is expected to have.
+     *
+     * @see #downloadChecksum(String, String)
+     */
+    public Builder downloadChecksum(String sha256Hex) {
+      return downloadChecksum(DEFAULT_DOWNLOAD_DIGEST_ALGORITHM, sha256Hex);
+    }
+
+    /**
+     * Defines the digest the downloaded artifact is expected to have, computed with the given algorithm.
+     * <p>
+     * The digest of the artifact is always computed while it's downloaded, and recorded in a file next to it named after
+     * the algorithm (such as {@code rabbitmq-server.tar.xz.sha256}). If it doesn't match the expected one, the download
+     * fails before the artifact is extracted. A cached artifact is only re-used if its recorded digest matches.
+     * <p>
+     * By default, the digest is computed with SHA-256 and no particular value is expected.
+     *
+     * @param algorithm digest algorithm, as named by {@link java.security.MessageDigest#getInstance(String)}
+     * @param hexDigest expected digest, hex-encoded, or {@code null} to accept any digest.
+     * @throws IllegalArgumentException if the algorithm isn't supported.
+     */
+    public Builder downloadChecksum(String algorithm, String hexDigest) {
+      Digests.newDigest(algorithm);
+      this.downloadDigestAlgorithm = algorithm;
+      this.downloadChecksum = hexDigest;
+      return this;
+    }
+
+
+    /**
+     * Aborts a download connection whose throughput stays below the given number of bytes per second for 10 seconds.
+     *
+     * @see #minDownloadThroughput(long, long)
+     */
+    public Builder minDownloadThroughput(long bytesPerSecond) {
+      return minDownloadThroughput(bytesPerSecond, DEFAULT_DOWNLOAD_THROUGHPUT_WINDOW_IN_MILLIS);
+    }
+
+    /**
+     * Aborts a download connection whose throughput, measured over the given window, is below the given number of bytes
+     * per second. When downloading from a {@link MirroredArtifactRepository}, the download then continues from the
+     * next mirror. A connection that stalls completely is aborted by the {@link #downloadReadTimeoutInMillis(long) read
+     * timeout} instead.
+     * <p>
+     * Default value is {@code 0}, which accepts any throughput.
+     *
+     * @param bytesPerSecond least throughput of each connection, such as each of the {@link
+     *                       #parallelDownloadConnections(int) parallel connections}.
+     * @param windowInMillis how long the throughput is measured over, which is also how long a new connection is given
+     *                       before it's first measured.
+     */
+    public Builder minDownloadThroughput(long bytesPerSecond, long windowInMillis) {
+      this.minDownloadBytesPerSecond = bytesPerSecond;
+      this.downloadThroughputWindowInMillis = windowInMillis;
+      return this;
+    }
+
     public Builder downloadProxy(String hostname, int port) {
       return downloadProxy(new Proxy(Proxy.Type.HTTP, new InetSocketAddress(hostname, port)));
     }
@@ -443,7 +1256,10 @@ public class EmbeddedRabbitMqConfig {
         version = PredefinedVersion.LATEST;
       }
 
-      URL downloadSource = artifactRepository.getUrl(version, os);
+      List<URL> downloadMirrors = artifactRepository instanceof MirroredArtifactRepository
+          ? ((MirroredArtifactRepository) artifactRepository).getUrls(version, os)
+          : Collections.singletonList(artifactRepository.getUrl(version, os));
+      URL downloadSource = downloadMirrors.get(0);
 
       if (downloadTarget == null) {
         String filename = downloadSource.getPath().substring(downloadSource.getPath().lastIndexOf("/"));
@@ -456,17 +1272,50 @@ public class EmbeddedRabbitMqConfig {
 
       File appAbsPath = new File(extractionFolder.toString(), version.getExtractionFolder());
 
+      File instanceFolder = null;
+      if (useInstanceFolder) {
+        String nodeName = envVars.get(RabbitMqEnvVar.NODENAME.getEnvVarName());
+        instanceFolder = new File(new File(extractionFolder, INSTANCES_FOLDER),
+            nodeName == null ? DEFAULT_NODE_NAME_PREFIX + new HostNameSupplier().get() : nodeName);
+      }
+
       return new EmbeddedRabbitMqConfig(
           version,
           downloadSource, downloadTarget, extractionFolder, appAbsPath,
-          downloadConnectionTimeoutInMillis, downloadReadTimeoutInMillis,
+          downloadReadTimeoutInMillis, downloadConnectionTimeoutInMillis,
           defaultRabbitMqCtlTimeoutInMillis,
           rabbitMqServerInitializationTimeoutInMillis,
           erlangCheckTimeoutInMillis,
           cacheDownload, deleteCachedFile,
           envVars,
           processExecutorFactory,
-          downloadProxy);
+          downloadProxy,
+          readinessCheckFactory,
+          useSignalShutdown,
+          signalShutdownGracePeriodInMillis,
+          reuseDetachedServer,
+          detachedServerTtlInMillis,
+          keepWarmStandby,
+          dataTemplateDefinitions,
+          instanceFolder,
+          derivedNode,
+          randomPort,
+          portConflictRetries,
+          restartOnCrash,
+          restartBackoffInMillis,
+          maxRestartBackoffInMillis,
+          launchErlDirectly,
+          adaptiveStartupTimeout,
+          startupTimeoutSafetyFactor,
+          minStartupTimeoutInMillis,
+          maxStartupTimeoutInMillis,
+          parallelDownloadConnections,
+          resumeDownloads,
+          downloadDigestAlgorithm,
+          downloadChecksum,
+          minDownloadBytesPerSecond,
+          downloadThroughputWindowInMillis,
+          downloadMirrors);
     }
 
   }
@@ -0,0 +1,416 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommand;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl;
+import io.arivera.oss.embedded.rabbitmq.download.DownloadException;
+import io.arivera.oss.embedded.rabbitmq.extract.ExtractionException;
+import io.arivera.oss.embedded.rabbitmq.helpers.DetachedServerHelper;
+import io.arivera.oss.embedded.rabbitmq.helpers.ErlangVersionException;
+import io.arivera.oss.embedded.rabbitmq.helpers.LeaseFile;
+import io.arivera.oss.embedded.rabbitmq.helpers.ShutDownException;
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+import io.arivera.oss.embedded.rabbitmq.util.InterProcessLock;
+import io.arivera.oss.embedded.rabbitmq.util.ProcessIds;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shares a single RabbitMQ broker among all JVMs on the same host that use an identical configuration, like the forks
+ * Maven Surefire creates when {@code forkCount} is greater than 1.
+ * <p>
+ * The first {@link #acquire(EmbeddedRabbitMqConfig) acquisition} starts the broker
+ * {@link EmbeddedRabbitMqConfig.Builder#reuseDetachedServer(boolean) detached} from its JVM, so it survives that JVM
+ * exiting while others still use it. Further acquisitions, from any JVM, adopt it. Each acquisition is given a
+ * {@link Lease} on the broker along with a virtual host of its own, so leases don't see each other's queues, exchanges,
+ * etc.
+ * <p>
+ * Leases are recorded in a file next to the broker's descriptor and are only changed while holding a lock on it. The
+ * broker is started, or adopted, under a lock of its own instead, so leases can be released while it boots. A lease is
+ * recorded before its broker is started, which keeps the last lease of another JVM being closed meanwhile from stopping
+ * it. The broker is stopped when the last lease is closed, after unlocking the lease file. It's marked as stopping
+ * meanwhile, so an acquisition in between waits for it to stop and starts a new one instead of adopting it. Leases
+ * still open when their JVM exits are closed then, and those of JVMs that died without closing them are discarded by
+ * the next acquisition. If the broker is never stopped, it stops itself once its
+ * {@link EmbeddedRabbitMqConfig.Builder#detachedServerTtlInMillis(long) time-to-live} expires, and the leases granted
+ * on it are discarded once another broker is started in its place.
+ * <p>
+ * Example use:
+ * <pre>
+ * {@code
+ *   try (EmbeddedRabbitMqHostRegistry.Lease lease = EmbeddedRabbitMqHostRegistry.acquire(config)) {
+ *     String virtualHost = lease.getVirtualHost();
+ *     int port = lease.getBroker().getConfig().getRabbitMqPort();
+ *     // ...
+ *   }
+ * }
+ * </pre>
+ * Only supported on UNIX-like systems.
+ */
+public class EmbeddedRabbitMqHostRegistry {
+
+  /**
+   * User given access to the virtual host of every lease. It's the only user a new broker has.
+   */
+  public static final String USER = "guest";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedRabbitMqHostRegistry.class);
+
+  private static final String BROKER_PID_SEPARATOR = "@";
+  /**
+   * Entry of the lease file recording the broker being stopped since its last lease was closed, if any. It's not a
+   * lease, but has the same value: the pid of the JVM stopping it, followed by the broker's pid.
+   */
+  private static final String STOPPING_KEY = "stopping";
+  private static final long STOPPING_POLL_INTERVAL_IN_MILLIS = 100;
+  private static final AtomicInteger LEASE_COUNTER = new AtomicInteger();
+  private static final Set<Lease> OPEN_LEASES = Collections.synchronizedSet(new LinkedHashSet<Lease>());
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        List<Lease> leases;
+        synchronized (OPEN_LEASES) {
+          leases = new ArrayList<>(OPEN_LEASES);
+        }
+        for (Lease lease : leases) {
+          try {
+            lease.close();
+          } catch (RuntimeException e) {
+            LOGGER.warn("Could not release lease on virtual host '{}'", lease.getVirtualHost(), e);
+          }
+        }
+      }
+    }, "RabbitMQ-Host-Registry"));
+  }
+
+  private EmbeddedRabbitMqHostRegistry() {
+  }
+
+  /**
+   * Provides a lease on the broker shared by all JVMs on this host using the given configuration, starting it only if
+   * none is running yet.
+   *
+   * @throws ErlangVersionException when there's an issue with the system's Erlang version
+   * @throws DownloadException    when there's an issue downloading the appropriate artifact
+   * @throws ExtractionException  when there's an issue extracting the files from the downloaded artifact
+   * @throws StartupException     when there's an issue starting the RabbitMQ server, creating the virtual host or
+   *                              recording the lease
+   */
+  public static Lease acquire(EmbeddedRabbitMqConfig config)
+      throws ErlangVersionException, DownloadException, ExtractionException, StartupException {
+    final EmbeddedRabbitMqConfig sharedConfig = new EmbeddedRabbitMqConfig.Builder(config)
+        .reuseDetachedServer(true)
+        .build();
+    final LeaseFile leaseFile = new LeaseFile(getLeaseFile(sharedConfig));
+    final String pid = ProcessIds.current();
+    final String virtualHost = "lease-" + pid + "-" + LEASE_COUNTER.incrementAndGet();
+
+    // Reserved before the broker is started, so the last lease of another JVM being closed meanwhile doesn't stop it.
+    final List<String> discardedVirtualHosts = new ArrayList<>();
+    final String stopping = updateLeases(leaseFile, new LeaseFile.Update<String>() {
+      @Override
+      public String apply(Map<String, String> leases) {
+        discardedVirtualHosts.addAll(discardAbandonedLeases(leases));
+        leases.put(virtualHost, pid);
+        return leases.get(STOPPING_KEY);
+      }
+    });
+
+    Lease lease;
+    try {
+      EmbeddedRabbitMq broker = new EmbeddedRabbitMq(sharedConfig);
+      final String brokerPid = startOrAdopt(broker, stopping);
+      discardedVirtualHosts.addAll(updateLeases(leaseFile, new LeaseFile.Update<List<String>>() {
+        @Override
+        public List<String> apply(Map<String, String> leases) {
+          List<String> discarded = discardLeasesOfStoppedBrokers(leases, brokerPid);
+          leases.put(virtualHost, pid + BROKER_PID_SEPARATOR + brokerPid);
+          LOGGER.info("Leased virtual host '{}' on shared RabbitMQ Server. Leases: {}", virtualHost, countLeases(leases));
+          return discarded;
+        }
+      }));
+      for (String discardedVirtualHost : discardedVirtualHosts) {
+        deleteVirtualHostQuietly(sharedConfig, discardedVirtualHost);
+      }
+      createVirtualHost(sharedConfig, virtualHost);
+      lease = new Lease(broker, brokerPid, leaseFile, virtualHost);
+    } catch (RuntimeException e) {
+      removeLeaseQuietly(leaseFile, virtualHost);
+      throw e;
+    }
+    OPEN_LEASES.add(lease);
+    return lease;
+  }
+
+  static File getLeaseFile(EmbeddedRabbitMqConfig config) {
+    return new File(config.getExtractionFolder(), "embedded-rabbitmq-" + config.getNodeName() + ".leases");
+  }
+
+  static File getBootLockFile(EmbeddedRabbitMqConfig config) {
+    return new File(config.getExtractionFolder(), "embedded-rabbitmq-" + config.getNodeName() + ".boot.lock");
+  }
+
+  /**
+   * Starts the broker, or adopts the one already running, while holding a lock of its own rather than the one on the
+   * lease file, so leases can still be released while a broker boots.
+   *
+   * @param stopping the {@link #STOPPING_KEY} entry seen when the lease was reserved, if any. The broker it refers to
+   *                 is waited for to stop rather than adopted, since it's stopped regardless.
+   * @return the process id of the broker's Erlang VM.
+   */
+  private static String startOrAdopt(EmbeddedRabbitMq broker, String stopping) throws StartupException {
+    EmbeddedRabbitMqConfig config = broker.getConfig();
+    File bootLockFile = getBootLockFile(config);
+    String brokerPid;
+    try (InterProcessLock ignored = InterProcessLock.acquire(bootLockFile)) {
+      if (stopping != null) {
+        awaitStop(config, stopping);
+      }
+      broker.start();
+      // Read while still holding the lock, since no other JVM can start a broker in its place meanwhile
+      brokerPid = new DetachedServerHelper(config, ConfigFingerprint.of(config)).getServerPid();
+    } catch (IOException e) {
+      throw new StartupException("Could not lock " + bootLockFile, e);
+    }
+    if (brokerPid == null) {
+      throw new StartupException("Could not tell the process id of shared RabbitMQ Server");
+    }
+    return brokerPid;
+  }
+
+  /**
+   * Blocks until the broker another JVM is stopping exits, or that JVM exits without stopping it, in which case the
+   * broker is adopted as usual.
+   */
+  private static void awaitStop(EmbeddedRabbitMqConfig config, String stopping) throws StartupException {
+    String[] pids = stopping.split(BROKER_PID_SEPARATOR);
+    long timeout = config.getDefaultRabbitMqCtlTimeoutInMillis();
+    long deadline = System.currentTimeMillis() + timeout;
+    LOGGER.info("Waiting for shared RabbitMQ Server (pid {}) to stop before starting a new one", pids[1]);
+    while (ProcessIds.isAlive(pids[1]) && ProcessIds.isAlive(pids[0])) {
+      if (System.currentTimeMillis() > deadline) {
+        throw new StartupException("Shared RabbitMQ Server (pid " + pids[1] + ") did not stop within " + timeout
+            + "ms after its last lease was released");
+      }
+      try {
+        Thread.sleep(STOPPING_POLL_INTERVAL_IN_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new StartupException("Interrupted while waiting for shared RabbitMQ Server to stop", e);
+      }
+    }
+  }
+
+  private static void createVirtualHost(EmbeddedRabbitMqConfig config, String virtualHost) throws StartupException {
+    try {
+      RabbitMqCtl rabbitMqCtl = new RabbitMqCtl(config);
+      long timeout = config.getDefaultRabbitMqCtlTimeoutInMillis();
+      RabbitMqCommand.awaitSuccess(rabbitMqCtl.addVhost(virtualHost), timeout, "add_vhost");
+      RabbitMqCommand.awaitSuccess(rabbitMqCtl.setPermissions(virtualHost, USER, ".*", ".*", ".*"), timeout,
+          "set_permissions");
+    } catch (RabbitMqCommandException e) {
+      throw new StartupException("Could not create virtual host '" + virtualHost + "'", e);
+    }
+  }
+
+  private static <T> T updateLeases(LeaseFile leaseFile, LeaseFile.Update<T> update) throws StartupException {
+    try {
+      return leaseFile.update(update);
+    } catch (IOException e) {
+      throw new StartupException("Could not record lease in " + leaseFile.getFile(), e);
+    }
+  }
+
+  private static void removeLeaseQuietly(LeaseFile leaseFile, final String virtualHost) {
+    try {
+      leaseFile.update(new LeaseFile.Update<Void>() {
+        @Override
+        public Void apply(Map<String, String> leases) {
+          leases.remove(virtualHost);
+          return null;
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.warn("Could not remove lease on virtual host '{}' from {}", virtualHost, leaseFile.getFile(), e);
+    }
+  }
+
+  /**
+   * Removes the leases of JVMs that exited without closing them, as well as the {@link #STOPPING_KEY} entry of a JVM
+   * that exited while stopping the broker.
+   *
+   * @return the virtual hosts of the removed leases, which are left for the caller to delete.
+   */
+  private static List<String> discardAbandonedLeases(Map<String, String> leases) {
+    List<String> discarded = new ArrayList<>();
+    for (Iterator<Map.Entry<String, String>> it = leases.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, String> lease = it.next();
+      String holderPid = lease.getValue().split(BROKER_PID_SEPARATOR)[0];
+      if (!ProcessIds.isAlive(holderPid)) {
+        it.remove();
+        if (!STOPPING_KEY.equals(lease.getKey())) {
+          LOGGER.info("Discarding lease on virtual host '{}' since its JVM (pid {}) exited", lease.getKey(), holderPid);
+          discarded.add(lease.getKey());
+        }
+      }
+    }
+    return discarded;
+  }
+
+  /**
+   * Removes the leases granted on a broker other than the given one, which stopped since, such as once its
+   * time-to-live expired, along with the {@link #STOPPING_KEY} entry of such a broker. Leases only reserved so far are
+   * kept, since they're waiting for the given broker.
+   *
+   * @return the virtual hosts of the removed leases, which are left for the caller to delete.
+   */
+  private static List<String> discardLeasesOfStoppedBrokers(Map<String, String> leases, String brokerPid) {
+    List<String> discarded = new ArrayList<>();
+    for (Iterator<Map.Entry<String, String>> it = leases.entrySet().iterator(); it.hasNext(); ) {
+      Map.Entry<String, String> lease = it.next();
+      String[] pids = lease.getValue().split(BROKER_PID_SEPARATOR);
+      if (pids.length > 1 && !pids[1].equals(brokerPid)) {
+        it.remove();
+        if (!STOPPING_KEY.equals(lease.getKey())) {
+          LOGGER.info("Discarding lease on virtual host '{}' since the RabbitMQ Server it was granted on (pid {}) "
+              + "stopped", lease.getKey(), pids[1]);
+          discarded.add(lease.getKey());
+        }
+      }
+    }
+    return discarded;
+  }
+
+  private static int countLeases(Map<String, String> leases) {
+    return leases.containsKey(STOPPING_KEY) ? leases.size() - 1 : leases.size();
+  }
+
+  private static void deleteVirtualHostQuietly(EmbeddedRabbitMqConfig config, String virtualHost) {
+    try {
+      // Leases still open when the JVM exits are closed from a shutdown hook.
+      RabbitMqCommand.awaitSuccess(new RabbitMqCtl(config).destroyOnExit(false).deleteVhost(virtualHost),
+          config.getDefaultRabbitMqCtlTimeoutInMillis(), "delete_vhost");
+    } catch (RabbitMqCommandException e) {
+      LOGGER.warn("Could not delete virtual host '{}'", virtualHost, e);
+    }
+  }
+
+  /**
+   * A lease on the shared broker, along with a virtual host no other lease uses. Closing it deletes the virtual host,
+   * and stops the broker if no other lease, from any JVM, remains. Closing a lease more than once has no effect.
+   */
+  public static class Lease implements Closeable {
+
+    private final EmbeddedRabbitMq broker;
+    private final String brokerPid;
+    private final LeaseFile leaseFile;
+    private final String virtualHost;
+    private boolean closed = false;
+
+    private Lease(EmbeddedRabbitMq broker, String brokerPid, LeaseFile leaseFile, String virtualHost) {
+      this.broker = broker;
+      this.brokerPid = brokerPid;
+      this.leaseFile = leaseFile;
+      this.virtualHost = virtualHost;
+    }
+
+    /**
+     * @return running broker shared by all leases. It must not be stopped directly.
+     */
+    public EmbeddedRabbitMq getBroker() {
+      return broker;
+    }
+
+    /**
+     * @return virtual host only this lease uses, which {@link #USER} has full access to.
+     */
+    public String getVirtualHost() {
+      return virtualHost;
+    }
+
+    /**
+     * Releases the lease. The lease file is only locked to update it: the virtual hosts are deleted, or the broker is
+     * stopped, once it's unlocked again, since that takes a while.
+     */
+    @Override
+    public synchronized void close() throws ShutDownException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      OPEN_LEASES.remove(this);
+      final String stopping = ProcessIds.current() + BROKER_PID_SEPARATOR + brokerPid;
+      List<String> virtualHostsToDelete;
+      try {
+        virtualHostsToDelete = leaseFile.update(new LeaseFile.Update<List<String>>() {
+          @Override
+          public List<String> apply(Map<String, String> leases) {
+            if (leases.remove(virtualHost) == null) {
+              LOGGER.info("Lease on virtual host '{}' was already discarded, since the shared RabbitMQ Server it was "
+                  + "granted on stopped", virtualHost);
+              return Collections.emptyList();
+            }
+            if (!ProcessIds.isAlive(brokerPid)) {
+              LOGGER.info("Shared RabbitMQ Server (pid {}) already stopped", brokerPid);
+              return Collections.emptyList();
+            }
+            List<String> discarded = discardAbandonedLeases(leases);
+            if (countLeases(leases) == 0) {
+              // Stopped once the file is unlocked. Acquisitions meanwhile wait for it to stop rather than adopt it.
+              leases.put(STOPPING_KEY, stopping);
+              return null;
+            }
+            discarded.add(virtualHost);
+            return discarded;
+          }
+        });
+      } catch (IOException e) {
+        throw new ShutDownException("Could not release lease in " + leaseFile.getFile(), e);
+      }
+
+      if (virtualHostsToDelete != null) {
+        for (String virtualHostToDelete : virtualHostsToDelete) {
+          deleteVirtualHostQuietly(broker.getConfig(), virtualHostToDelete);
+        }
+        return;
+      }
+      LOGGER.info("Stopping shared RabbitMQ Server since its last lease was released");
+      try {
+        broker.stop();
+      } finally {
+        clearStoppingQuietly(stopping);
+      }
+    }
+
+    private void clearStoppingQuietly(final String stopping) {
+      try {
+        leaseFile.update(new LeaseFile.Update<Void>() {
+          @Override
+          public Void apply(Map<String, String> leases) {
+            if (stopping.equals(leases.get(STOPPING_KEY))) {
+              leases.remove(STOPPING_KEY);
+            }
+            return null;
+          }
+        });
+      } catch (IOException e) {
+        LOGGER.warn("Could not record that shared RabbitMQ Server stopped in {}", leaseFile.getFile(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,453 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.apache.commons.lang3.StopWatch;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommand;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl;
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+import io.arivera.oss.embedded.rabbitmq.util.DaemonThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a number of RabbitMQ brokers started in the background, ready to be handed out.
+ * <p>
+ * Each broker runs as its own node (with its own node name, AMQP port and distribution port) using a configuration
+ * derived from the one given to the pool. All brokers share the same installation, which is only downloaded and
+ * extracted once.
+ * <p>
+ * Example use:
+ * <pre>
+ * {@code
+ *   EmbeddedRabbitMqPool pool = new EmbeddedRabbitMqPool.Builder(config).minIdle(2).maxSize(4).build();
+ *   pool.start();
+ *   EmbeddedRabbitMq rabbitMq = pool.lease();
+ *   int port = rabbitMq.getConfig().getRabbitMqPort();
+ *   // ...
+ *   pool.release(rabbitMq);
+ *   // ...
+ *   pool.stop();
+ * }
+ * </pre>
+ * Released brokers are reset (using {@code rabbitmqctl reset}) in the background before being handed out again.
+ */
+public class EmbeddedRabbitMqPool {
+
+  /**
+   * How many brokers in a row may fail to start before the pool stops starting new ones, and those waiting for a lease
+   * are told about the failure instead of waiting for the lease timeout.
+   */
+  static final int MAX_CONSECUTIVE_BOOT_FAILURES = 3;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(EmbeddedRabbitMqPool.class);
+
+  private final EmbeddedRabbitMqConfig config;
+  private final int minIdle;
+  private final int maxSize;
+  private final long leaseTimeoutInMillis;
+
+  private final BlockingQueue<EmbeddedRabbitMq> idleBrokers;
+  private final Set<EmbeddedRabbitMq> leasedBrokers;
+  private final ExecutorService executor;
+
+  private final AtomicLong hitCount;
+  private final AtomicLong missCount;
+  private final AtomicLong totalWaitTimeInMillis;
+  private final AtomicLong maxWaitTimeInMillis;
+
+  private Future<?> preparation;
+  private int size;
+  private int booting;
+  private int waiting;
+  private int consecutiveBootFailures;
+  private Throwable lastBootFailure;
+  private boolean stopped;
+
+  EmbeddedRabbitMqPool(EmbeddedRabbitMqConfig config, int minIdle, int maxSize, long leaseTimeoutInMillis) {
+    this.config = config;
+    this.minIdle = minIdle;
+    this.maxSize = maxSize;
+    this.leaseTimeoutInMillis = leaseTimeoutInMillis;
+    this.idleBrokers = new LinkedBlockingQueue<>();
+    this.leasedBrokers = Collections.newSetFromMap(new ConcurrentHashMap<EmbeddedRabbitMq, Boolean>());
+    this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory("RabbitMQ-Pool"));
+    this.hitCount = new AtomicLong();
+    this.missCount = new AtomicLong();
+    this.totalWaitTimeInMillis = new AtomicLong();
+    this.maxWaitTimeInMillis = new AtomicLong();
+  }
+
+  /**
+   * Prepares the installation and starts booting the minimum amount of idle brokers, without blocking.
+   */
+  public synchronized void start() {
+    if (preparation != null) {
+      throw new IllegalStateException("Pool has already been started.");
+    }
+    preparation = executor.submit(new Runnable() {
+      @Override
+      public void run() {
+        createBroker(config).prepare();
+      }
+    });
+    replenish();
+  }
+
+  /**
+   * Hands out a running broker, waiting for one to become available if none is idle.
+   * <p>
+   * If there are no idle brokers and the pool hasn't reached its maximum size, a new broker will be started.
+   *
+   * @throws StartupException if no broker became available within the lease timeout.
+   */
+  public EmbeddedRabbitMq lease() throws StartupException {
+    StopWatch stopWatch = StopWatch.createStarted();
+    EmbeddedRabbitMq broker = idleBrokers.poll();
+    if (broker != null) {
+      hitCount.incrementAndGet();
+    } else {
+      missCount.incrementAndGet();
+      broker = waitForIdleBroker();
+    }
+    recordWaitTime(stopWatch.getTime());
+    synchronized (this) {
+      if (!stopped) {
+        leasedBrokers.add(broker);
+        replenish();
+        return broker;
+      }
+    }
+    discard(broker);
+    throw new IllegalStateException("Pool was stopped while waiting for a RabbitMQ broker.");
+  }
+
+  /**
+   * Waits for a broker to become idle, starting a new one if needed.
+   * <p>
+   * If brokers kept failing to start, each new lease gives starting them another chance, but fails as soon as they fail
+   * again {@link #MAX_CONSECUTIVE_BOOT_FAILURES} times in a row rather than waiting for the whole lease timeout.
+   */
+  private synchronized EmbeddedRabbitMq waitForIdleBroker() throws StartupException {
+    if (preparation == null || stopped) {
+      throw new IllegalStateException("Pool must be started before leasing brokers from it.");
+    }
+    if (hasGivenUpBooting()) {
+      consecutiveBootFailures = 0;
+    }
+    waiting++;
+    replenish();
+    try {
+      long deadline = System.currentTimeMillis() + leaseTimeoutInMillis;
+      EmbeddedRabbitMq broker = idleBrokers.poll();
+      while (broker == null) {
+        if (stopped) {
+          throw new IllegalStateException("Pool was stopped while waiting for a RabbitMQ broker.");
+        }
+        if (hasGivenUpBooting() && booting == 0) {
+          throw new StartupException("RabbitMQ brokers failed to start " + consecutiveBootFailures + " times in a row",
+              lastBootFailure);
+        }
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+          throw new StartupException("No RabbitMQ broker became available within " + leaseTimeoutInMillis + "ms");
+        }
+        wait(remaining);
+        broker = idleBrokers.poll();
+      }
+      return broker;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new StartupException("Interrupted while waiting for a RabbitMQ broker to become available", e);
+    } finally {
+      waiting--;
+    }
+  }
+
+  private boolean hasGivenUpBooting() {
+    return consecutiveBootFailures >= MAX_CONSECUTIVE_BOOT_FAILURES;
+  }
+
+  /**
+   * Hands the given broker to the next lease, waking up any lease waiting for it. Must be called holding this pool's
+   * lock.
+   */
+  private void offerIdle(EmbeddedRabbitMq broker) {
+    idleBrokers.offer(broker);
+    notifyAll();
+  }
+
+  private void recordWaitTime(long waitTimeInMillis) {
+    totalWaitTimeInMillis.addAndGet(waitTimeInMillis);
+    long max = maxWaitTimeInMillis.get();
+    while (waitTimeInMillis > max && !maxWaitTimeInMillis.compareAndSet(max, waitTimeInMillis)) {
+      max = maxWaitTimeInMillis.get();
+    }
+  }
+
+  /**
+   * Returns a leased broker to the pool.
+   * <p>
+   * The broker is reset in the background and only handed out again once that completes. Brokers that can't be reset
+   * are stopped and replaced.
+   *
+   * @throws IllegalArgumentException if the broker wasn't leased from this pool.
+   */
+  public void release(final EmbeddedRabbitMq broker) {
+    if (!leasedBrokers.remove(broker)) {
+      throw new IllegalArgumentException("Broker wasn't leased from this pool or has already been released.");
+    }
+    synchronized (this) {
+      if (!stopped) {
+        executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            recycle(broker);
+          }
+        });
+        return;
+      }
+    }
+    discard(broker);
+  }
+
+  private void recycle(EmbeddedRabbitMq broker) {
+    try {
+      final StopWatch stopWatch = StopWatch.createStarted();
+      RabbitMqCtl rabbitMqCtl = new RabbitMqCtl(broker.getConfig());
+      long timeout = config.getDefaultRabbitMqCtlTimeoutInMillis();
+      RabbitMqCommand.awaitSuccess(rabbitMqCtl.stopApp(), timeout, "stop_app");
+      RabbitMqCommand.awaitSuccess(rabbitMqCtl.reset(), timeout, "reset");
+      RabbitMqCommand.awaitSuccess(rabbitMqCtl.startApp(), timeout, "start_app");
+      LOGGER.debug("Reset RabbitMQ broker on port {} in {}ms", broker.getConfig().getRabbitMqPort(), stopWatch.getTime());
+    } catch (RabbitMqCommandException e) {
+      LOGGER.warn("Could not reset RabbitMQ broker on port {}. It will be replaced.",
+          broker.getConfig().getRabbitMqPort(), e);
+      discard(broker);
+      synchronized (this) {
+        replenish();
+      }
+      return;
+    }
+
+    synchronized (this) {
+      if (!stopped) {
+        offerIdle(broker);
+        return;
+      }
+    }
+    discard(broker);
+  }
+
+  /**
+   * Starts as many brokers as needed to satisfy the minimum idle count and those waiting, without exceeding the
+   * maximum size, unless too many brokers failed to start in a row.
+   */
+  private void replenish() {
+    while (!stopped && !hasGivenUpBooting() && size < maxSize
+        && idleBrokers.size() + booting < minIdle + waiting) {
+      size++;
+      booting++;
+      final EmbeddedRabbitMqConfig brokerConfig = NodeConfigs.deriveNodeConfig(config);
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          boot(brokerConfig);
+        }
+      });
+    }
+  }
+
+  private void boot(EmbeddedRabbitMqConfig brokerConfig) {
+    EmbeddedRabbitMq broker = createBroker(brokerConfig);
+    Throwable failure = null;
+    try {
+      preparation.get();
+      broker.startAsync(false).get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      failure = e;
+    } catch (ExecutionException e) {
+      LOGGER.error("Could not start RabbitMQ broker for the pool", e.getCause());
+      failure = e.getCause();
+    }
+
+    synchronized (this) {
+      booting--;
+      if (failure != null) {
+        size--;
+        consecutiveBootFailures++;
+        lastBootFailure = failure;
+        if (hasGivenUpBooting()) {
+          LOGGER.error("RabbitMQ brokers failed to start {} times in a row. Not starting more until the next lease.",
+              consecutiveBootFailures);
+        }
+        replenish();
+        notifyAll();
+        return;
+      }
+      consecutiveBootFailures = 0;
+      if (!stopped) {
+        offerIdle(broker);
+        return;
+      }
+    }
+    discard(broker);
+  }
+
+  /**
+   * Creates the instance representing a broker of this pool, before it's started.
+   */
+  EmbeddedRabbitMq createBroker(EmbeddedRabbitMqConfig brokerConfig) {
+    return new EmbeddedRabbitMq(brokerConfig);
+  }
+
+  private void discard(EmbeddedRabbitMq broker) {
+    synchronized (this) {
+      size--;
+    }
+    try {
+      broker.stop();
+    } catch (RuntimeException e) {
+      LOGGER.warn("Could not stop RabbitMQ broker on port {}", broker.getConfig().getRabbitMqPort(), e);
+    }
+  }
+
+  /**
+   * Stops all brokers, including those that are currently leased.
+   */
+  public void stop() {
+    List<EmbeddedRabbitMq> brokers = new ArrayList<>();
+    synchronized (this) {
+      stopped = true;
+      notifyAll();
+      idleBrokers.drainTo(brokers);
+      brokers.addAll(leasedBrokers);
+      leasedBrokers.clear();
+    }
+    executor.shutdown();
+    for (EmbeddedRabbitMq broker : brokers) {
+      discard(broker);
+    }
+  }
+
+  /**
+   * @return number of leases that were served right away by an idle broker.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return number of leases that had to wait for a broker to start or to be reset.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return sum of the time all leases spent waiting for a broker.
+   */
+  public long getTotalWaitTimeInMillis() {
+    return totalWaitTimeInMillis.get();
+  }
+
+  /**
+   * @return longest time a single lease spent waiting for a broker.
+   */
+  public long getMaxWaitTimeInMillis() {
+    return maxWaitTimeInMillis.get();
+  }
+
+  /**
+   * @return number of brokers ready to be leased.
+   */
+  public int getIdleCount() {
+    return idleBrokers.size();
+  }
+
+  /**
+   * @return number of brokers owned by this pool, whether they are idle, leased, starting or being reset.
+   */
+  public synchronized int getSize() {
+    return size;
+  }
+
+  /**
+   * A user-friendly way to create a new {@link EmbeddedRabbitMqPool} instance.
+   */
+  public static class Builder {
+
+    private final EmbeddedRabbitMqConfig config;
+    private int minIdle;
+    private int maxSize;
+    private long leaseTimeoutInMillis;
+
+    /**
+     * @param config the configuration every broker in the pool is derived from. The node name, port and distribution
+     *               port will be overridden for each broker.
+     */
+    public Builder(EmbeddedRabbitMqConfig config) {
+      this.config = config;
+      this.minIdle = 1;
+      this.maxSize = 4;
+      this.leaseTimeoutInMillis = TimeUnit.SECONDS.toMillis(30);
+    }
+
+    /**
+     * Defines how many started brokers should be kept ready to be leased.
+     * <p>
+     * Default value is {@code 1}
+     */
+    public Builder minIdle(int minIdle) {
+      this.minIdle = minIdle;
+      return this;
+    }
+
+    /**
+     * Defines the maximum amount of brokers this pool will ever run at the same time.
+     * <p>
+     * Default value is {@code 4}
+     */
+    public Builder maxSize(int maxSize) {
+      this.maxSize = maxSize;
+      return this;
+    }
+
+    /**
+     * Defines how long {@link EmbeddedRabbitMqPool#lease()} waits for a broker to become available.
+     * <p>
+     * Default value is 30 seconds.
+     */
+    public Builder leaseTimeoutInMillis(long leaseTimeoutInMillis) {
+      this.leaseTimeoutInMillis = leaseTimeoutInMillis;
+      return this;
+    }
+
+    /**
+     * Builds a new pool, which won't start any broker until {@link EmbeddedRabbitMqPool#start()} is called.
+     */
+    public EmbeddedRabbitMqPool build() {
+      if (minIdle < 0 || maxSize < 1 || minIdle > maxSize) {
+        throw new IllegalArgumentException(
+            "Invalid pool size. Expected 0 <= minIdle <= maxSize and maxSize >= 1 but got minIdle=" + minIdle
+                + " and maxSize=" + maxSize);
+      }
+      return new EmbeddedRabbitMqPool(config, minIdle, maxSize, leaseTimeoutInMillis);
+    }
+  }
+}
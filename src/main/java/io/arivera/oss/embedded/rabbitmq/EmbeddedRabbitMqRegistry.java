@@ -0,0 +1,148 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.download.DownloadException;
+import io.arivera.oss.embedded.rabbitmq.extract.ExtractionException;
+import io.arivera.oss.embedded.rabbitmq.helpers.ErlangVersionException;
+import io.arivera.oss.embedded.rabbitmq.helpers.ShutDownException;
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares RabbitMQ brokers among all users of identical configurations within this JVM.
+ * <p>
+ * Configurations are compared by their {@link ConfigFingerprint fingerprint}, made of the version,
+ * download source, folders and environment variables (which include the ports). The first
+ * {@link #acquire(EmbeddedRabbitMqConfig) acquisition} of a fingerprint starts a broker, further acquisitions reuse it,
+ * and the broker is stopped once the last {@link Handle} is closed or when the JVM exits (like any other running
+ * {@link EmbeddedRabbitMq}), whichever happens first.
+ * <p>
+ * Example use:
+ * <pre>
+ * {@code
+ *   try (EmbeddedRabbitMqRegistry.Handle handle = EmbeddedRabbitMqRegistry.acquire(config)) {
+ *     int port = handle.getBroker().getConfig().getRabbitMqPort();
+ *     // ...
+ *   }
+ * }
+ * </pre>
+ */
+public class EmbeddedRabbitMqRegistry {
+
+  private static final Map<String, Entry> ENTRIES = new HashMap<>();
+
+  private EmbeddedRabbitMqRegistry() {
+  }
+
+  /**
+   * Provides a handle to a running broker for the given configuration, starting it only if no other handle to an
+   * identically configured broker is open.
+   *
+   * @throws ErlangVersionException when there's an issue with the system's Erlang version
+   * @throws DownloadException    when there's an issue downloading the appropriate artifact
+   * @throws ExtractionException  when there's an issue extracting the files from the downloaded artifact
+   * @throws StartupException     when there's an issue starting the RabbitMQ server
+   */
+  public static Handle acquire(EmbeddedRabbitMqConfig config)
+      throws ErlangVersionException, DownloadException, ExtractionException, StartupException {
+    String fingerprint = ConfigFingerprint.of(config);
+    Entry entry;
+    synchronized (ENTRIES) {
+      entry = ENTRIES.get(fingerprint);
+      if (entry == null) {
+        entry = new Entry(fingerprint, new EmbeddedRabbitMq(config));
+        ENTRIES.put(fingerprint, entry);
+      }
+      entry.references++;
+    }
+
+    try {
+      entry.ensureStarted();
+    } catch (RuntimeException e) {
+      release(entry);
+      throw e;
+    }
+    return new Handle(entry);
+  }
+
+  /**
+   * @return number of distinct brokers currently shared through this registry.
+   */
+  public static int getBrokerCount() {
+    synchronized (ENTRIES) {
+      return ENTRIES.size();
+    }
+  }
+
+  private static void release(Entry entry) throws ShutDownException {
+    synchronized (ENTRIES) {
+      entry.references--;
+      if (entry.references > 0) {
+        return;
+      }
+      // Stopping while holding the lock prevents a new acquisition from starting a second broker with the same ports
+      // before this one has released them.
+      ENTRIES.remove(entry.fingerprint);
+      entry.stopIfStarted();
+    }
+  }
+
+  /**
+   * A reference to a shared broker. Closing it releases the reference, which stops the broker if it was the last one.
+   * Closing a handle more than once has no effect.
+   */
+  public static class Handle implements Closeable {
+
+    private final Entry entry;
+    private boolean closed = false;
+
+    private Handle(Entry entry) {
+      this.entry = entry;
+    }
+
+    /**
+     * @return running broker shared by all handles of the same configuration. It must not be stopped directly.
+     */
+    public EmbeddedRabbitMq getBroker() {
+      return entry.broker;
+    }
+
+    @Override
+    public synchronized void close() throws ShutDownException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      release(entry);
+    }
+  }
+
+  private static class Entry {
+
+    private final String fingerprint;
+    private final EmbeddedRabbitMq broker;
+    private int references = 0;
+    private boolean started = false;
+
+    private Entry(String fingerprint, EmbeddedRabbitMq broker) {
+      this.fingerprint = fingerprint;
+      this.broker = broker;
+    }
+
+    private synchronized void ensureStarted() {
+      if (!started) {
+        broker.start();
+        started = true;
+      }
+    }
+
+    private synchronized void stopIfStarted() throws ShutDownException {
+      if (started) {
+        started = false;
+        broker.stop();
+      }
+    }
+  }
+}
@@ -0,0 +1,91 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A repository made of several mirrors of the same artifacts, such as an internal mirror and the official repositories.
+ * <p>
+ * Before downloading, the latency of every mirror is probed with a {@code HEAD} request, and the artifact is downloaded
+ * from the fastest one first. If a download fails, or is slower than {@link
+ * EmbeddedRabbitMqConfig.Builder#minDownloadThroughput(long, long) accepted}, it continues from the next mirror. The
+ * ranking is kept for an hour next to the downloaded file, so it's shared by all processes using the same download
+ * folder, and a mirror that failed is only tried first again once it's probed anew.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * configBuilder.downloadFrom(new MirroredArtifactRepository(internalMirror, OfficialArtifactRepository.GITHUB));
+ * }</pre>
+ *
+ * @see EmbeddedRabbitMqConfig.Builder#downloadFrom(ArtifactRepository)
+ */
+public class MirroredArtifactRepository implements ArtifactRepository {
+
+  private final List<ArtifactRepository> mirrors;
+
+  /**
+   * @param mirrors repositories storing the same artifacts. The first one is preferred if they're equally fast.
+   */
+  public MirroredArtifactRepository(ArtifactRepository... mirrors) {
+    this(Arrays.asList(mirrors));
+  }
+
+  /**
+   * @param mirrors repositories storing the same artifacts. The first one is preferred if they're equally fast.
+   */
+  public MirroredArtifactRepository(List<? extends ArtifactRepository> mirrors) {
+    if (mirrors.isEmpty()) {
+      throw new IllegalArgumentException("At least one mirror is required");
+    }
+    this.mirrors = Collections.unmodifiableList(new ArrayList<>(mirrors));
+  }
+
+  /**
+   * Returns the URL of the artifact in the first mirror that stores it.
+   */
+  @Override
+  public URL getUrl(Version version, OperatingSystem operatingSystem) {
+    return getUrls(version, operatingSystem).get(0);
+  }
+
+  /**
+   * Returns the URL of the artifact in every mirror that stores it, in the order the mirrors were given. Mirrors that
+   * don't store the given version, such as {@link OfficialArtifactRepository#RABBITMQ} for recent ones, are left out.
+   *
+   * @throws IllegalStateException if none of the mirrors stores the artifact.
+   */
+  public List<URL> getUrls(Version version, OperatingSystem operatingSystem) {
+    List<URL> urls = new ArrayList<>(mirrors.size());
+    Set<String> distinctUrls = new HashSet<>();
+    IllegalStateException unsupported = null;
+    for (ArtifactRepository mirror : mirrors) {
+      try {
+        URL url = mirror.getUrl(version, operatingSystem);
+        if (distinctUrls.add(url.toString())) {
+          urls.add(url);
+        }
+      } catch (IllegalStateException e) {
+        if (unsupported == null) {
+          unsupported = e;
+        } else {
+          unsupported.addSuppressed(e);
+        }
+      }
+    }
+    if (urls.isEmpty()) {
+      throw unsupported;
+    }
+    return urls;
+  }
+
+  public List<ArtifactRepository> getMirrors() {
+    return mirrors;
+  }
+}
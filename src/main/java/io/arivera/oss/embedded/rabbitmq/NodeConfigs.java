@@ -0,0 +1,73 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.util.HostNameSupplier;
+import io.arivera.oss.embedded.rabbitmq.util.RandomPortSupplier;
+
+import java.net.InetAddress;
+
+/**
+ * Derives configurations for brokers that run side by side from the same installation.
+ */
+class NodeConfigs {
+
+  private NodeConfigs() {
+  }
+
+  /**
+   * Creates a copy of the given configuration with a random AMQP port, a random distribution port and a node name
+   * based on the AMQP port, so the resulting node doesn't conflict with any other node on this machine.
+   * <p>
+   * The node keeps its data, logs, enabled plugins and pid file in an {@link EmbeddedRabbitMqConfig#getInstanceFolder()
+   * instance folder} of its own. The data folder and pid file, if set explicitly, get the AMQP port appended instead.
+   * Since its name changes on every run, it doesn't use
+   * {@link EmbeddedRabbitMqConfig.Builder#dataTemplate(java.io.File) data templates}, and its folders are deleted once
+   * it's stopped or fails to start. It doesn't {@link EmbeddedRabbitMqConfig.Builder#keepWarmStandby(boolean) keep a
+   * warm standby} either, since pools and clusters wouldn't account for it.
+   */
+  static EmbeddedRabbitMqConfig deriveNodeConfig(EmbeddedRabbitMqConfig config) {
+    EmbeddedRabbitMqConfig.Builder builder = new EmbeddedRabbitMqConfig.Builder(config).randomPort();
+    int port = builder.build().getRabbitMqPort();
+    builder
+        .envVar(RabbitMqEnvVar.DIST_PORT, String.valueOf(new RandomPortSupplier().get()))
+        .envVar(RabbitMqEnvVar.NODENAME, "rabbit-" + port + "@" + new HostNameSupplier().get())
+        .useInstanceFolder(true)
+        .keepWarmStandby(false)
+        .derivedNode(true);
+    for (RabbitMqEnvVar pathVar : new RabbitMqEnvVar[] {RabbitMqEnvVar.MNESIA_DIR, RabbitMqEnvVar.PID_FILE}) {
+      String path = config.getExplicitEnvVars().get(pathVar.getEnvVarName());
+      if (path != null) {
+        builder.envVar(pathVar, path + "-" + port);
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Creates a copy of the given configuration for the server a {@link EmbeddedRabbitMq#startLazily() lazily started}
+   * broker forwards to, listening on the given internal port of the loopback interface.
+   * <p>
+   * The distribution port stays the one of the given configuration, rather than being derived from the internal port,
+   * which could put it out of range.
+   */
+  static EmbeddedRabbitMqConfig lazyBackendConfig(EmbeddedRabbitMqConfig config, int internalPort) {
+    return new EmbeddedRabbitMqConfig.Builder(config)
+        .port(internalPort)
+        .envVar(RabbitMqEnvVar.DIST_PORT, String.valueOf(config.getDistributionPort()))
+        .envVar(RabbitMqEnvVar.NODE_IP_ADDRESS, InetAddress.getLoopbackAddress().getHostAddress())
+        .build();
+  }
+
+  /**
+   * Creates a copy of the given configuration with a new random AMQP port and, if one was defined explicitly, a new
+   * random distribution port, for a server that couldn't start because one of its ports was taken.
+   * <p>
+   * Everything else, including the node name and data folder, stays the same.
+   */
+  static EmbeddedRabbitMqConfig reallocatePorts(EmbeddedRabbitMqConfig config) {
+    EmbeddedRabbitMqConfig.Builder builder = new EmbeddedRabbitMqConfig.Builder(config).randomPort();
+    if (config.getExplicitEnvVars().containsKey(RabbitMqEnvVar.DIST_PORT.getEnvVarName())) {
+      builder.envVar(RabbitMqEnvVar.DIST_PORT, String.valueOf(new RandomPortSupplier().get()));
+    }
+    return builder.build();
+  }
+}
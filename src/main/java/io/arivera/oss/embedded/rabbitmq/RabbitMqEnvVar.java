@@ -129,7 +129,57 @@ public enum RabbitMqEnvVar {
    *
    * <p>The value should not contain the suffix {@code .config} since Erlang will append it automatically.</p>
    */
-  CONFIG_FILE;
+  CONFIG_FILE,
+
+  /**
+   * The directory under which each node's Mnesia database directory is created, named after the node.
+   *
+   * <p>Defaults: <br/>
+   * Generic UNIX - {@code $RABBITMQ_HOME/var/lib/rabbitmq/mnesia}<br/>
+   * Windows      - {@code %APPDATA%\RabbitMQ\db}<br/>
+   * </p>
+   */
+  MNESIA_BASE,
+
+  /**
+   * The directory where this node's Mnesia database files (the broker's data) are stored.
+   *
+   * <p>Defaults: <br/>
+   * Generic UNIX - {@code $RABBITMQ_MNESIA_BASE/$RABBITMQ_NODENAME}<br/>
+   * Windows      - {@code %RABBITMQ_MNESIA_BASE%\%RABBITMQ_NODENAME%-mnesia}<br/>
+   * </p>
+   */
+  MNESIA_DIR,
+
+  /**
+   * The directory where the node's log files are written.
+   *
+   * <p>Defaults: <br/>
+   * Generic UNIX - {@code $RABBITMQ_HOME/var/log/rabbitmq}<br/>
+   * Windows      - {@code %APPDATA%\RabbitMQ\log}<br/>
+   * </p>
+   */
+  LOG_BASE,
+
+  /**
+   * File recording which plugins are enabled, as managed by {@code rabbitmq-plugins}.
+   *
+   * <p>Defaults: <br/>
+   * Generic UNIX - {@code $RABBITMQ_HOME/etc/rabbitmq/enabled_plugins}<br/>
+   * Windows      - {@code %APPDATA%\RabbitMQ\enabled_plugins}<br/>
+   * </p>
+   */
+  ENABLED_PLUGINS_FILE,
+
+  /**
+   * File in which the process id of the Erlang VM running the node is placed.
+   *
+   * <p>Defaults: <br/>
+   * Generic UNIX - {@code $RABBITMQ_MNESIA_DIR.pid}<br/>
+   * Windows      - {@code %RABBITMQ_MNESIA_DIR%.pid}<br/>
+   * </p>
+   */
+  PID_FILE;
 
   public static final int DEFAULT_NODE_PORT = 5672;
 
@@ -0,0 +1,126 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.apache.commons.lang3.StopWatch;
+import io.arivera.oss.embedded.rabbitmq.util.DaemonThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps track of every {@link EmbeddedRabbitMq} running in this JVM, so they can all be stopped when the JVM exits.
+ * <p>
+ * At exit, all brokers are stopped concurrently, sharing a single deadline. Those still running once the deadline
+ * passes are killed. Stopping them properly, instead of only killing them, leaves their data in a clean state, which
+ * makes starting them again faster.
+ */
+class ShutdownCoordinator {
+
+  static final long DEFAULT_DEADLINE_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ShutdownCoordinator.class);
+
+  private static final Set<EmbeddedRabbitMq> RUNNING_BROKERS =
+      Collections.newSetFromMap(new ConcurrentHashMap<EmbeddedRabbitMq, Boolean>());
+
+  static {
+    Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        stopAll(DEFAULT_DEADLINE_IN_MILLIS);
+      }
+    }, "RabbitMQ-Shutdown-Coordinator"));
+  }
+
+  private ShutdownCoordinator() {
+  }
+
+  static void register(EmbeddedRabbitMq broker) {
+    RUNNING_BROKERS.add(broker);
+  }
+
+  static void unregister(EmbeddedRabbitMq broker) {
+    RUNNING_BROKERS.remove(broker);
+  }
+
+  static int getRunningBrokerCount() {
+    return RUNNING_BROKERS.size();
+  }
+
+  /**
+   * Stops all running brokers concurrently and kills those that didn't stop within the deadline.
+   *
+   * @return how long it took to stop each broker, in milliseconds, or {@code -1} for those that had to be killed.
+   */
+  static Map<EmbeddedRabbitMq, Long> stopAll(long deadlineInMillis) {
+    List<EmbeddedRabbitMq> brokers = new ArrayList<>(RUNNING_BROKERS);
+    Map<EmbeddedRabbitMq, Long> durations = new LinkedHashMap<>();
+    if (brokers.isEmpty()) {
+      return durations;
+    }
+
+    LOGGER.info("Stopping {} RabbitMQ broker(s) still running", brokers.size());
+    ExecutorService executor =
+        Executors.newFixedThreadPool(brokers.size(), new DaemonThreadFactory("RabbitMQ-Shutdown"));
+    Map<EmbeddedRabbitMq, Future<Long>> stops = new LinkedHashMap<>();
+    for (final EmbeddedRabbitMq broker : brokers) {
+      stops.put(broker, executor.submit(new Callable<Long>() {
+        @Override
+        public Long call() {
+          StopWatch stopWatch = StopWatch.createStarted();
+          broker.stop();
+          return stopWatch.getTime();
+        }
+      }));
+    }
+    executor.shutdown();
+
+    long deadline = System.currentTimeMillis() + deadlineInMillis;
+    for (Map.Entry<EmbeddedRabbitMq, Future<Long>> stop : stops.entrySet()) {
+      EmbeddedRabbitMq broker = stop.getKey();
+      try {
+        long remaining = Math.max(0, deadline - System.currentTimeMillis());
+        durations.put(broker, stop.getValue().get(remaining, TimeUnit.MILLISECONDS));
+      } catch (TimeoutException e) {
+        LOGGER.warn("RabbitMQ node '{}' didn't stop in time. Killing it.", broker.getConfig().getNodeName());
+        broker.kill();
+        durations.put(broker, -1L);
+      } catch (ExecutionException e) {
+        LOGGER.warn("Could not stop RabbitMQ node '{}'. Killing it.", broker.getConfig().getNodeName(), e.getCause());
+        broker.kill();
+        durations.put(broker, -1L);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        broker.kill();
+        durations.put(broker, -1L);
+      }
+      unregister(broker);
+    }
+    logSummary(durations);
+    return durations;
+  }
+
+  private static void logSummary(Map<EmbeddedRabbitMq, Long> durations) {
+    StringBuilder summary = new StringBuilder("RabbitMQ brokers stopped at JVM exit:");
+    for (Map.Entry<EmbeddedRabbitMq, Long> duration : durations.entrySet()) {
+      summary.append("\n  ").append(duration.getKey().getConfig().getNodeName())
+          .append(" (port ").append(duration.getKey().getConfig().getRabbitMqPort()).append("): ")
+          .append(duration.getValue() < 0 ? "killed" : duration.getValue() + "ms");
+    }
+    LOGGER.info(summary.toString());
+  }
+}
@@ -0,0 +1,74 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long each of the stages involved in starting RabbitMQ took.
+ * <p>
+ * Since some stages run concurrently (see {@link EmbeddedRabbitMq#startAsync()}), the {@link #getTotalTimeInMillis()
+ * total time} is usually less than the sum of all the stages.
+ */
+public class StartupTimings {
+
+  /**
+   * The individual steps needed to get a RabbitMQ broker up and running.
+   */
+  public enum Stage {
+    ERLANG_CHECK, DOWNLOAD, EXTRACTION, DATA_TEMPLATE, SERVER_STARTUP
+  }
+
+  private final Map<Stage, Long> durations;
+  private final Map<String, Long> bootPhases;
+  private long totalTimeInMillis;
+
+  StartupTimings() {
+    this.durations = new EnumMap<>(Stage.class);
+    this.bootPhases = new LinkedHashMap<>();
+    this.totalTimeInMillis = -1;
+  }
+
+  synchronized void record(Stage stage, long durationInMillis) {
+    durations.put(stage, durationInMillis);
+  }
+
+  synchronized void recordBootPhases(Map<String, Long> bootPhases) {
+    this.bootPhases.clear();
+    this.bootPhases.putAll(bootPhases);
+  }
+
+  synchronized void recordTotal(long totalTimeInMillis) {
+    this.totalTimeInMillis = totalTimeInMillis;
+  }
+
+  /**
+   * @return milliseconds it took to complete the given stage or {@code -1} if the stage didn't complete.
+   */
+  public synchronized long getDurationInMillis(Stage stage) {
+    Long duration = durations.get(stage);
+    return duration == null ? -1 : duration;
+  }
+
+  /**
+   * Returns the milliseconds elapsed since the RabbitMQ Server was launched until each phase of its boot (such as
+   * {@code "broker starting"} or {@code "boot completed"}) was first reported in its output, in the order they were
+   * reached. Phases the server doesn't report, depending on its version and logging configuration, are missing.
+   */
+  public synchronized Map<String, Long> getBootPhaseTimesInMillis() {
+    return new LinkedHashMap<>(bootPhases);
+  }
+
+  /**
+   * @return milliseconds elapsed since the startup was requested until the RabbitMQ Server was confirmed to be running, or
+   *     {@code -1} if that never happened.
+   */
+  public synchronized long getTotalTimeInMillis() {
+    return totalTimeInMillis;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "StartupTimings{total=" + totalTimeInMillis + "ms, stages=" + durations + ", bootPhases=" + bootPhases + "}";
+  }
+}
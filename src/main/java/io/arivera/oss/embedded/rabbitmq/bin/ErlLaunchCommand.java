@@ -0,0 +1,435 @@
+package io.arivera.oss.embedded.rabbitmq.bin;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.RabbitMqEnvVar;
+import io.arivera.oss.embedded.rabbitmq.util.Digests;
+import io.arivera.oss.embedded.rabbitmq.util.DirectoryUtils;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code erl} command line and environment the {@code rabbitmq-server} script boots the RabbitMQ node with, so it
+ * can be executed directly, skipping the scripts and helper processes that run before it.
+ * <p>
+ * The command is recorded by running the script with a stand-in {@code erl} that writes down its arguments and
+ * environment instead of booting the node. Values specific to each node (ports, node name, data, log and pid file
+ * locations) are replaced with placeholders before caching it, so the same recording serves every node of the same
+ * installation. The script is run a second time with other values for them, and the recording is only used if both
+ * runs result in the same template, since a value may also appear in the command for unrelated reasons.
+ *
+ * @see EmbeddedRabbitMqConfig.Builder#launchErlDirectly(boolean)
+ */
+public class ErlLaunchCommand {
+
+  static final String CACHE_FOLDER = "erl-launch";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ErlLaunchCommand.class);
+
+  private static final String SERVER_COMMAND = "rabbitmq-server";
+  private static final String CAPTURE_VAR = "EMBEDDED_RABBITMQ_CAPTURE";
+  private static final String PATH_VAR = "EMBEDDED_RABBITMQ_PATH";
+  private static final String ERL_DIR_VAR = "ERL_DIR";
+  private static final String EXECUTABLE_KEY = "erl";
+  private static final String ARGUMENT_PREFIX = "arg.";
+  private static final String ENV_PREFIX = "env.";
+  private static final Pattern CAPTURED_ENV_VAR = Pattern.compile("^(RABBITMQ|ERL)_[A-Za-z0-9_]*=.*", Pattern.DOTALL);
+  private static final int HASH_LENGTH = 16;
+  private static final int MAX_PORT = 65535;
+  private static final String PROBE_SUFFIX = "-probe";
+
+  /**
+   * Stands in for {@code erl}. The invocation that boots the node (with {@code -s <module> boot}) is recorded, any
+   * other one is handed over to the real {@code erl}.
+   */
+  private static final String STUB_SCRIPT = "#!/bin/sh\n"
+      + "PATH=\"$" + PATH_VAR + "\"\n"
+      + "export PATH\n"
+      + "previous=\n"
+      + "booting=\n"
+      + "for arg in \"$@\"; do\n"
+      + "  if [ \"$previous\" = \"-s\" ]; then previous=module; elif [ \"$previous\" = module ] && [ \"$arg\" = boot ];"
+      + " then booting=true; else previous=\"$arg\"; fi\n"
+      + "done\n"
+      + "if [ -z \"$booting\" ]; then exec erl \"$@\"; fi\n"
+      + "command -v erl > \"$" + CAPTURE_VAR + ".erl\"\n"
+      + "printf '%s\\000' \"$@\" > \"$" + CAPTURE_VAR + ".args\"\n"
+      + "env > \"$" + CAPTURE_VAR + ".env\"\n";
+
+  /**
+   * Variables whose values end up in the command line but differ between nodes of the same installation.
+   */
+  private static final RabbitMqEnvVar[] NODE_SPECIFIC_VARS = {
+      RabbitMqEnvVar.NODE_PORT, RabbitMqEnvVar.DIST_PORT, RabbitMqEnvVar.NODENAME,
+      RabbitMqEnvVar.MNESIA_BASE, RabbitMqEnvVar.MNESIA_DIR, RabbitMqEnvVar.LOG_BASE,
+      RabbitMqEnvVar.ENABLED_PLUGINS_FILE, RabbitMqEnvVar.PID_FILE
+  };
+
+  private final File executable;
+  private final List<String> arguments;
+  private final Map<String, String> environment;
+
+  ErlLaunchCommand(File executable, List<String> arguments, Map<String, String> environment) {
+    this.executable = executable;
+    this.arguments = arguments;
+    this.environment = environment;
+  }
+
+  /**
+   * Returns the command to boot a node with the given configuration, recording it first if there's no recording for
+   * this installation yet.
+   *
+   * @return {@code null} if the command can't be recorded, in which case the {@code rabbitmq-server} script has to be
+   *     used.
+   */
+  public static ErlLaunchCommand resolve(EmbeddedRabbitMqConfig config) {
+    if (OperatingSystem.detect() == OperatingSystem.WINDOWS) {
+      LOGGER.warn("RabbitMQ Server can't be launched directly on Windows. Using the '{}' script instead.",
+          SERVER_COMMAND);
+      return null;
+    }
+    Map<String, String> nodeValues = getNodeSpecificValues(config);
+    File cacheFile = getCacheFile(config);
+    try {
+      Properties template = cacheFile.isFile() ? load(cacheFile) : record(config, nodeValues, cacheFile);
+      return fromTemplate(template, nodeValues, config.getEnvVars());
+    } catch (IOException | RabbitMqCommandException e) {
+      LOGGER.warn("Could not determine the command '{}' boots RabbitMQ with. Using the script instead.",
+          SERVER_COMMAND, e);
+      return null;
+    }
+  }
+
+  public File getExecutable() {
+    return executable;
+  }
+
+  public List<String> getArguments() {
+    return arguments;
+  }
+
+  /**
+   * Returns the environment variables the command has to run with, on top of those of this JVM.
+   */
+  public Map<String, String> getEnvironment() {
+    return environment;
+  }
+
+  /**
+   * Returns the file the recording for the installation of the given configuration is cached in.
+   * <p>
+   * Recordings depend on the installation folder, on the {@code PATH} the real {@code erl} is found in and on every
+   * environment variable that isn't node specific. Node specific variables only matter when defined, since that may
+   * change the command line.
+   */
+  static File getCacheFile(EmbeddedRabbitMqConfig config) {
+    StringBuilder key = new StringBuilder()
+        .append("app=").append(config.getAppFolder().getAbsolutePath())
+        .append("\npath=").append(getPath(config.getEnvVars()));
+    Map<String, String> nodeValues = getNodeSpecificValues(config);
+    for (Map.Entry<String, String> envVar : new TreeMap<>(config.getEnvVars()).entrySet()) {
+      key.append("\nenv.").append(envVar.getKey());
+      if (!nodeValues.containsKey(envVar.getKey())) {
+        key.append('=').append(envVar.getValue());
+      }
+    }
+    String hash = Digests.sha256Hex(key.toString().getBytes(StandardCharsets.UTF_8)).substring(0, HASH_LENGTH);
+    return new File(new File(config.getExtractionFolder(), CACHE_FOLDER),
+        config.getVersion().getVersionAsString() + "-" + hash + ".properties");
+  }
+
+  /**
+   * Returns the values of the node specific variables for the given configuration, longest first, so no value is
+   * replaced with a placeholder as part of a longer one (like a port inside a node name).
+   * <p>
+   * Ports and node name are always included, since the script derives them when not defined. Locations are only
+   * included when defined, since the script derives their defaults from the installation folder and node name.
+   */
+  static Map<String, String> getNodeSpecificValues(EmbeddedRabbitMqConfig config) {
+    Map<String, String> values = new HashMap<>();
+    for (RabbitMqEnvVar envVar : NODE_SPECIFIC_VARS) {
+      String value = config.getEnvVars().get(envVar.getEnvVarName());
+      if (value != null) {
+        values.put(envVar.getEnvVarName(), value);
+      }
+    }
+    values.put(RabbitMqEnvVar.NODE_PORT.getEnvVarName(), String.valueOf(config.getRabbitMqPort()));
+    values.put(RabbitMqEnvVar.DIST_PORT.getEnvVarName(), String.valueOf(config.getDistributionPort()));
+    values.put(RabbitMqEnvVar.NODENAME.getEnvVarName(), config.getNodeName());
+    return sortLongestFirst(values);
+  }
+
+  private static Map<String, String> sortLongestFirst(Map<String, String> values) {
+    List<Map.Entry<String, String>> entries = new ArrayList<>(values.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, String>>() {
+      @Override
+      public int compare(Map.Entry<String, String> entry1, Map.Entry<String, String> entry2) {
+        return entry2.getValue().length() - entry1.getValue().length();
+      }
+    });
+    Map<String, String> sortedValues = new LinkedHashMap<>();
+    for (Map.Entry<String, String> entry : entries) {
+      sortedValues.put(entry.getKey(), entry.getValue());
+    }
+    return sortedValues;
+  }
+
+  /**
+   * Replaces every occurrence of the given values with a placeholder named after its variable, as long as it's not part
+   * of a longer word or number.
+   */
+  static String insertPlaceholders(String text, Map<String, String> values) {
+    String template = text;
+    for (Map.Entry<String, String> value : values.entrySet()) {
+      template = replaceWholeWords(template, value.getValue(), placeholder(value.getKey()));
+    }
+    return template;
+  }
+
+  /**
+   * Replaces every placeholder with the value of its variable.
+   */
+  static String replacePlaceholders(String template, Map<String, String> values) {
+    String text = template;
+    for (Map.Entry<String, String> value : values.entrySet()) {
+      text = text.replace(placeholder(value.getKey()), value.getValue());
+    }
+    return text;
+  }
+
+  static ErlLaunchCommand fromTemplate(Properties template, Map<String, String> nodeValues,
+                                       Map<String, String> configEnvVars) {
+    File executable = new File(replacePlaceholders(template.getProperty(EXECUTABLE_KEY), nodeValues));
+    List<String> arguments = new ArrayList<>();
+    for (int i = 0; template.containsKey(ARGUMENT_PREFIX + i); i++) {
+      arguments.add(replacePlaceholders(template.getProperty(ARGUMENT_PREFIX + i), nodeValues));
+    }
+    Map<String, String> environment = new HashMap<>(configEnvVars);
+    for (String key : template.stringPropertyNames()) {
+      if (key.startsWith(ENV_PREFIX)) {
+        environment.put(key.substring(ENV_PREFIX.length()), replacePlaceholders(template.getProperty(key), nodeValues));
+      }
+    }
+    return new ErlLaunchCommand(executable, arguments, environment);
+  }
+
+  static Properties toTemplate(ErlLaunchCommand command, Map<String, String> nodeValues) {
+    Properties template = new Properties();
+    template.setProperty(EXECUTABLE_KEY, insertPlaceholders(command.executable.getPath(), nodeValues));
+    for (int i = 0; i < command.arguments.size(); i++) {
+      template.setProperty(ARGUMENT_PREFIX + i, insertPlaceholders(command.arguments.get(i), nodeValues));
+    }
+    for (Map.Entry<String, String> envVar : command.environment.entrySet()) {
+      template.setProperty(ENV_PREFIX + envVar.getKey(), insertPlaceholders(envVar.getValue(), nodeValues));
+    }
+    return template;
+  }
+
+  private static Properties record(EmbeddedRabbitMqConfig config, Map<String, String> nodeValues, File cacheFile)
+      throws IOException {
+    LOGGER.info("Recording the command '{}' boots RabbitMQ with into '{}'", SERVER_COMMAND, cacheFile);
+    File cacheFolder = cacheFile.getParentFile();
+    Files.createDirectories(cacheFolder.toPath());
+    File recordingFolder = new File(cacheFolder, "recording-" + UUID.randomUUID());
+    try {
+      ErlLaunchCommand recorded = runStub(config, config.getEnvVars(), recordingFolder);
+      Properties template = toTemplate(recorded, nodeValues);
+      ErlLaunchCommand replayed = fromTemplate(template, nodeValues, Collections.<String, String>emptyMap());
+      if (!replayed.arguments.equals(recorded.arguments) || !replayed.environment.equals(recorded.environment)) {
+        throw new IOException("Node specific values can't be told apart in the recorded command: " + recorded.arguments);
+      }
+      verifyTemplate(config, template, nodeValues, recordingFolder);
+      File temporaryFile = new File(recordingFolder, cacheFile.getName());
+      try (OutputStream output = Files.newOutputStream(temporaryFile.toPath())) {
+        template.store(output, "Command " + SERVER_COMMAND + " boots RabbitMQ with");
+      }
+      Files.move(temporaryFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      return template;
+    } finally {
+      DirectoryUtils.delete(recordingFolder);
+    }
+  }
+
+  /**
+   * Records the command again with other node specific values and checks it results in the same template. Otherwise,
+   * some value also appears in the command for reasons unrelated to its variable, and would be wrongly replaced for
+   * other nodes.
+   * <p>
+   * Every port is shifted by the same amount, so ports the script derives from others are still derived the same way.
+   * Variables that weren't defined for the first recording are defined for the second one, so they're left out of the
+   * environments being compared.
+   */
+  private static void verifyTemplate(EmbeddedRabbitMqConfig config, Properties template, Map<String, String> nodeValues,
+                                     File recordingFolder) throws IOException {
+    Map<String, String> probeValues = new HashMap<>();
+    for (Map.Entry<String, String> value : nodeValues.entrySet()) {
+      probeValues.put(value.getKey(), getProbeValue(value.getKey(), value.getValue(), recordingFolder));
+    }
+    Map<String, String> probeEnvVars = new HashMap<>(config.getEnvVars());
+    probeEnvVars.putAll(probeValues);
+    ErlLaunchCommand probe = runStub(config, probeEnvVars, recordingFolder);
+    Properties probeTemplate = toTemplate(probe, sortLongestFirst(probeValues));
+
+    Properties expected = new Properties();
+    expected.putAll(template);
+    for (String envVarName : nodeValues.keySet()) {
+      if (!config.getEnvVars().containsKey(envVarName)) {
+        expected.remove(ENV_PREFIX + envVarName);
+        probeTemplate.remove(ENV_PREFIX + envVarName);
+      }
+    }
+    if (!expected.equals(probeTemplate)) {
+      throw new IOException("Node specific values also appear for other reasons in the recorded command: "
+          + probe.arguments);
+    }
+  }
+
+  private static String getProbeValue(String envVarName, String value, File recordingFolder) {
+    if (envVarName.equals(RabbitMqEnvVar.NODE_PORT.getEnvVarName())
+        || envVarName.equals(RabbitMqEnvVar.DIST_PORT.getEnvVarName())) {
+      int port = Integer.parseInt(value);
+      return String.valueOf(port < MAX_PORT ? port + 1 : port - 1);
+    } else if (envVarName.equals(RabbitMqEnvVar.NODENAME.getEnvVarName())) {
+      int hostSeparator = value.indexOf('@');
+      return hostSeparator < 0
+          ? value + PROBE_SUFFIX
+          : value.substring(0, hostSeparator) + PROBE_SUFFIX + value.substring(hostSeparator);
+    } else {
+      // Locations are kept in the recording folder, in case the script creates them
+      return new File(recordingFolder, envVarName + PROBE_SUFFIX).getAbsolutePath();
+    }
+  }
+
+  private static ErlLaunchCommand runStub(EmbeddedRabbitMqConfig config, Map<String, String> nodeEnvVars,
+                                          File recordingFolder) throws IOException {
+    Files.createDirectories(recordingFolder.toPath());
+    File stub = new File(recordingFolder, "erl");
+    Files.write(stub.toPath(), STUB_SCRIPT.getBytes(StandardCharsets.UTF_8));
+    if (!stub.setExecutable(true)) {
+      throw new IOException("Could not make " + stub + " executable");
+    }
+
+    String capturePrefix = new File(recordingFolder, "capture").getAbsolutePath();
+    String path = getPath(nodeEnvVars);
+    Map<String, String> envVars = new HashMap<>(nodeEnvVars);
+    envVars.put(PATH_VAR, path);
+    envVars.put("PATH", recordingFolder.getAbsolutePath() + File.pathSeparator + path);
+    envVars.put(ERL_DIR_VAR, recordingFolder.getAbsolutePath() + File.separator);
+    envVars.put(CAPTURE_VAR, capturePrefix);
+
+    long timeout = config.getRabbitMqServerInitializationTimeoutInMillis();
+    Future<ProcessResult> script = new RabbitMqCommand(config.getProcessExecutorFactory(), envVars,
+        config.getAppFolder(), SERVER_COMMAND).call().getFuture();
+    try {
+      script.get(timeout, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+      script.cancel(true);
+      throw new IOException("Script '" + SERVER_COMMAND + "' didn't finish within " + timeout + "ms", e);
+    }
+
+    File executableFile = new File(capturePrefix + ".erl");
+    if (!executableFile.isFile()) {
+      throw new IOException("Script '" + SERVER_COMMAND + "' didn't boot RabbitMQ through 'erl' as expected");
+    }
+    String executable = read(executableFile).trim();
+    if (executable.isEmpty()) {
+      throw new IOException("Command 'erl' could not be found in " + path);
+    }
+
+    List<String> arguments = new ArrayList<>();
+    String argumentList = read(new File(capturePrefix + ".args"));
+    for (String argument : argumentList.split("\u0000")) {
+      arguments.add(argument);
+    }
+    return new ErlLaunchCommand(new File(executable), arguments, parseEnvironment(read(new File(capturePrefix + ".env"))));
+  }
+
+  /**
+   * Parses the output of {@code env}, keeping only the variables meant for RabbitMQ or Erlang, since the rest are
+   * inherited from this JVM anyway.
+   */
+  static Map<String, String> parseEnvironment(String output) {
+    Map<String, String> environment = new HashMap<>();
+    String lastKey = null;
+    for (String line : output.split("\n")) {
+      int separator = line.indexOf('=');
+      if (CAPTURED_ENV_VAR.matcher(line).matches()) {
+        lastKey = line.substring(0, separator);
+        environment.put(lastKey, line.substring(separator + 1));
+      } else if (separator > 0 && line.substring(0, separator).matches("[A-Za-z_][A-Za-z0-9_]*")) {
+        lastKey = null;
+      } else if (lastKey != null) {
+        environment.put(lastKey, environment.get(lastKey) + "\n" + line);
+      }
+    }
+    environment.remove(ERL_DIR_VAR);
+    return environment;
+  }
+
+  private static String replaceWholeWords(String text, String word, String replacement) {
+    if (word.isEmpty()) {
+      return text;
+    }
+    StringBuilder result = new StringBuilder();
+    int from = 0;
+    int index = text.indexOf(word);
+    while (index >= 0) {
+      int end = index + word.length();
+      boolean wholeWord = (index == 0 || !Character.isLetterOrDigit(text.charAt(index - 1)))
+          && (end == text.length() || !Character.isLetterOrDigit(text.charAt(end)));
+      if (wholeWord) {
+        result.append(text, from, index).append(replacement);
+        from = end;
+      }
+      index = text.indexOf(word, wholeWord ? end : index + 1);
+    }
+    return result.append(text.substring(from)).toString();
+  }
+
+  private static String placeholder(String envVarName) {
+    return "${" + envVarName + "}";
+  }
+
+  private static String getPath(Map<String, String> envVars) {
+    String path = envVars.get("PATH");
+    return path != null ? path : System.getenv("PATH");
+  }
+
+  private static Properties load(File file) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream input = Files.newInputStream(file.toPath())) {
+      properties.load(input);
+    }
+    return properties;
+  }
+
+  private static String read(File file) throws IOException {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}
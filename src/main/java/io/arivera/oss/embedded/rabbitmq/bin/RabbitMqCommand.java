@@ -9,6 +9,7 @@ import org.apache.commons.io.output.NullOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
 import org.zeroturnaround.exec.StartedProcess;
 import org.zeroturnaround.exec.listener.ProcessListener;
 import org.zeroturnaround.exec.stream.slf4j.Level;
@@ -22,6 +23,10 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A generic way of executing any of the commands found under the {@code sbin} folder of the RabbitMQ installation.
@@ -67,6 +72,7 @@ public class RabbitMqCommand implements Callable<StartedProcess> {
   private OutputStream errorOutputStream;
   private ProcessListener eventsListener;
   private boolean storeOutput;
+  private boolean destroyOnExit;
   private Level stdOutLogLevel;
   private Level stdErrLogLevel;
 
@@ -112,11 +118,27 @@ public class RabbitMqCommand implements Callable<StartedProcess> {
    */
   public RabbitMqCommand(ProcessExecutorFactory processExecutorFactory, Map<String, String> envVars, File appFolder,
                          String command, String... arguments) {
+    this(processExecutorFactory, envVars, appFolder,
+        new File(new File(appFolder, BINARIES_FOLDER), command + getCommandExtension()), command, arguments);
+  }
+
+  /**
+   * Same as {@link #RabbitMqCommand(ProcessExecutorFactory, Map, File, String, String...)}, but for an executable
+   * outside of the {@code sbin} folder, like the {@code erl} command the RabbitMQ Server runs on. It's still executed
+   * from the installation folder.
+   */
+  public RabbitMqCommand(ProcessExecutorFactory processExecutorFactory, Map<String, String> envVars, File appFolder,
+                         File executableFile, String... arguments) {
+    this(processExecutorFactory, envVars, appFolder, executableFile, executableFile.getName(), arguments);
+  }
+
+  private RabbitMqCommand(ProcessExecutorFactory processExecutorFactory, Map<String, String> envVars, File appFolder,
+                          File executableFile, String command, String... arguments) {
     this.processExecutorFactory = processExecutorFactory;
-    this.command = command + getCommandExtension();
+    this.command = executableFile.getName();
     this.envVars = envVars;
     this.appFolder = appFolder;
-    this.executableFile = new File(new File(this.appFolder, BINARIES_FOLDER), this.command);
+    this.executableFile = executableFile;
     if (!(executableFile.exists())) {
       throw new IllegalArgumentException("The given command could not be found using the path: " + executableFile);
     }
@@ -130,6 +152,7 @@ public class RabbitMqCommand implements Callable<StartedProcess> {
     this.eventsListener = NULL_LISTENER;
 
     this.storeOutput = true;
+    this.destroyOnExit = true;
     this.stdOutLogLevel = Level.INFO;
     this.stdErrLogLevel = Level.WARN;
   }
@@ -185,6 +208,16 @@ public class RabbitMqCommand implements Callable<StartedProcess> {
     return this;
   }
 
+  /**
+   * Used to define if the process should be destroyed when the JVM exits, in case it's still running by then.
+   * <p>
+   * Default is {@code true}
+   */
+  public RabbitMqCommand destroyOnExit(boolean destroyOnExit) {
+    this.destroyOnExit = destroyOnExit;
+    return this;
+  }
+
   /**
    * Defines which logging level to use for the process' standard output.
    * <p>
@@ -218,7 +251,6 @@ public class RabbitMqCommand implements Callable<StartedProcess> {
         .environment(envVars)
         .directory(appFolder)
         .command(fullCommand)
-        .destroyOnExit()
         .addListener(loggingListener)               // Logs process events (like start, stop...)
         .addListener(eventsListener)                // Notifies asynchronously of process events (start/finish/stop)
         .redirectError(loggingStream.as(stdErrLogLevel))     // Logging for output made to STDERR
@@ -227,6 +259,10 @@ public class RabbitMqCommand implements Callable<StartedProcess> {
         .redirectErrorAlsoTo(errorOutputStream)     // Pipe stderr to this stream for the application to process
         .readOutput(storeOutput);                   // Store the output in the ProcessResult as well.
 
+    if (destroyOnExit) {
+      processExecutor.destroyOnExit();
+    }
+
     try {
       return processExecutor.start();
     } catch (IOException e) {
@@ -234,6 +270,31 @@ public class RabbitMqCommand implements Callable<StartedProcess> {
     }
   }
 
+  /**
+   * Waits for a command to finish and checks that it succeeded.
+   *
+   * @param description what the command does, for error messages. For example: {@code "stop_app"}
+   * @return the result of the command, to read its output from.
+   * @throws RabbitMqCommandException if the command doesn't finish in time or finishes with a non-zero exit value.
+   */
+  public static ProcessResult awaitSuccess(Future<ProcessResult> command, long timeoutInMillis, String description)
+      throws RabbitMqCommandException {
+    ProcessResult result;
+    try {
+      result = command.get(timeoutInMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RabbitMqCommandException("Interrupted while waiting for '" + description + "' to finish", e);
+    } catch (ExecutionException | TimeoutException e) {
+      throw new RabbitMqCommandException(
+          "Error while waiting " + timeoutInMillis + "ms for '" + description + "' to finish", e);
+    }
+    if (result.getExitValue() != 0) {
+      throw new RabbitMqCommandException("'" + description + "' failed with exit value: " + result.getExitValue());
+    }
+    return result;
+  }
+
   public static class ProcessExecutorFactory {
     public ProcessExecutor createInstance() {
       return new ProcessExecutor();
@@ -5,6 +5,7 @@ import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
 import org.zeroturnaround.exec.ProcessResult;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Future;
@@ -37,6 +38,18 @@ public class RabbitMqCtl extends RabbitMqDiagnostics {
     super(processExecutorFactory, appFolder, envVars);
   }
 
+  @Override
+  public RabbitMqCtl writeOutputTo(OutputStream outputStream) {
+    super.writeOutputTo(outputStream);
+    return this;
+  }
+
+  @Override
+  public RabbitMqCtl destroyOnExit(boolean destroyOnExit) {
+    super.destroyOnExit(destroyOnExit);
+    return this;
+  }
+
   /**
    * Stops the Erlang node on which RabbitMQ is running.
    */
@@ -89,6 +102,44 @@ public class RabbitMqCtl extends RabbitMqDiagnostics {
     return execute("force_reset");
   }
 
+  /**
+   * Instructs the node to become a member of the cluster that the specified node is in.
+   * <p>
+   * Before clustering, the node is reset, so be careful when using this command. For this command to succeed the
+   * RabbitMQ application must have been stopped, e.g. with {@link #stopApp()}
+   *
+   * @param clusterNodeName name of a node already belonging to the cluster to join, like {@code rabbit@myhost}
+   */
+  public Future<ProcessResult> joinCluster(String clusterNodeName) throws RabbitMqCommandException {
+    return execute("join_cluster", clusterNodeName);
+  }
+
+  /**
+   * Creates a virtual host.
+   */
+  public Future<ProcessResult> addVhost(String vhost) throws RabbitMqCommandException {
+    return execute("add_vhost", vhost);
+  }
+
+  /**
+   * Deletes a virtual host, along with all its exchanges, queues, bindings, user permissions, etc.
+   */
+  public Future<ProcessResult> deleteVhost(String vhost) throws RabbitMqCommandException {
+    return execute("delete_vhost", vhost);
+  }
+
+  /**
+   * Grants a user access to a virtual host.
+   *
+   * @param configure regular expression matching the resources the user may configure, like {@code .*}
+   * @param write     regular expression matching the resources the user may write to.
+   * @param read      regular expression matching the resources the user may read from.
+   */
+  public Future<ProcessResult> setPermissions(String vhost, String user, String configure, String write, String read)
+      throws RabbitMqCommandException {
+    return execute("set_permissions", "-p", vhost, user, configure, write, read);
+  }
+
   @Override
   protected String getCommand() {
     return COMMAND;
@@ -2,9 +2,11 @@ package io.arivera.oss.embedded.rabbitmq.bin;
 
 import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
 
+import org.apache.commons.io.output.NullOutputStream;
 import org.zeroturnaround.exec.ProcessResult;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -30,6 +32,8 @@ public class RabbitMqDiagnostics {
   private RabbitMqCommand.ProcessExecutorFactory peFactory;
   private File appFolder;
   private Map<String, String> envVars;
+  private OutputStream outputStream;
+  private boolean destroyOnExit;
 
   public RabbitMqDiagnostics(EmbeddedRabbitMqConfig config) {
     this(config, Collections.EMPTY_MAP);
@@ -64,6 +68,8 @@ public class RabbitMqDiagnostics {
     this.peFactory = processExecutorFactory;
     this.appFolder = appFolder;
     this.envVars = envVars;
+    this.outputStream = new NullOutputStream();
+    this.destroyOnExit = true;
   }
 
   protected static Map<String, String> mapFilterAndAppend(Map<String, String> envVars,
@@ -80,6 +86,34 @@ public class RabbitMqDiagnostics {
     return tmpEnvVars;
   }
 
+  /**
+   * Use this method if you wish the output of the commands executed from now on is streamed somewhere as it happens.
+   *
+   * @return this same instance of the class to allow for chaining calls.
+   * @see RabbitMqCommand#writeOutputTo(OutputStream)
+   */
+  public RabbitMqDiagnostics writeOutputTo(OutputStream outputStream) {
+    this.outputStream = outputStream;
+    return this;
+  }
+
+  /**
+   * Defines whether the processes of the commands executed from now on should be destroyed if they are still running
+   * when the JVM exits.
+   * <p>
+   * Commands that may be executed while the JVM is exiting, such as from a shutdown hook, must not be, since no process
+   * can be registered to be destroyed at exit by then, and those that are get destroyed right away instead.
+   * <p>
+   * Default is {@code true}
+   *
+   * @return this same instance of the class to allow for chaining calls.
+   * @see RabbitMqCommand#destroyOnExit(boolean)
+   */
+  public RabbitMqDiagnostics destroyOnExit(boolean destroyOnExit) {
+    this.destroyOnExit = destroyOnExit;
+    return this;
+  }
+
   /**
    * This method exposes a way to invoke a command with any arguments. This is useful when the class methods
    * don't expose the desired functionality.
@@ -92,6 +126,8 @@ public class RabbitMqDiagnostics {
    */
   public Future<ProcessResult> execute(String... arguments) throws RabbitMqCommandException {
     return new RabbitMqCommand(peFactory, envVars, appFolder, getCommand(), arguments)
+        .writeOutputTo(outputStream)
+        .destroyOnExit(destroyOnExit)
         .call()
         .getFuture();
   }
@@ -19,7 +19,9 @@ public class RabbitMqServer {
   private final EmbeddedRabbitMqConfig config;
 
   private OutputStream outputStream;
+  private OutputStream errorOutputStream;
   private ProcessListener listener;
+  private boolean destroyOnExit;
 
   /**
    * Creates a new RabbitMqServer with NOOP settings for output capturing and event listening.
@@ -30,7 +32,9 @@ public class RabbitMqServer {
   public RabbitMqServer(EmbeddedRabbitMqConfig config) {
     this.config = config;
     this.outputStream = new NullOutputStream();
+    this.errorOutputStream = new NullOutputStream();
     this.listener = new NullProcessListener();
+    this.destroyOnExit = true;
   }
 
   /**
@@ -45,6 +49,18 @@ public class RabbitMqServer {
     return this;
   }
 
+  /**
+   * Same as {@link #writeOutputTo(OutputStream)}, but for the error output of the process.
+   *
+   * @return this same instance of the class to allow for chaining calls.
+   *
+   * @see RabbitMqCommand#writeErrorOutputTo(OutputStream)
+   */
+  public RabbitMqServer writeErrorOutputTo(OutputStream errorOutputStream) {
+    this.errorOutputStream = errorOutputStream;
+    return this;
+  }
+
   /**
    * Use this method to register a listener to be notified of process events, like start, stop, etc.
    */
@@ -53,6 +69,23 @@ public class RabbitMqServer {
     return this;
   }
 
+  /**
+   * Defines whether the server should be destroyed if it's still running when the JVM exits.
+   * <p>
+   * Only servers something else stops gracefully when the JVM exits, like {@link
+   * io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMq EmbeddedRabbitMq} does, should opt out. Otherwise, they're left
+   * running once the JVM is gone.
+   * <p>
+   * Default is {@code true}
+   *
+   * @return this same instance of the class to allow for chaining calls.
+   * @see RabbitMqCommand#destroyOnExit(boolean)
+   */
+  public RabbitMqServer destroyOnExit(boolean destroyOnExit) {
+    this.destroyOnExit = destroyOnExit;
+    return this;
+  }
+
   /**
    * Starts the RabbitMQ Server and keeps the process running until it's stopped.
    * <p>
@@ -60,6 +93,9 @@ public class RabbitMqServer {
    * sequence, concluding with the message "{@code completed with [N] plugins.}", indicating that the
    * RabbitMQ broker has been started successfully.
    * <p>
+   * If {@link EmbeddedRabbitMqConfig#shouldLaunchErlDirectly() enabled}, the {@code erl} command the script would end
+   * up running is executed directly instead. See {@link ErlLaunchCommand}.
+   * <p>
    * To read the output, either:
    * <ul>
    * <li> wait for the returning Future to finish and use {@link ProcessResult} output getter methods, or </li>
@@ -69,6 +105,13 @@ public class RabbitMqServer {
    * To be notified of process events, such as the process starting or finishing, provide a
    */
   public Future<ProcessResult> start() throws RabbitMqCommandException {
+    if (config.shouldLaunchErlDirectly()) {
+      ErlLaunchCommand launchCommand = ErlLaunchCommand.resolve(config);
+      if (launchCommand != null) {
+        return execute(new RabbitMqCommand(config.getProcessExecutorFactory(), launchCommand.getEnvironment(),
+            config.getAppFolder(), launchCommand.getExecutable(), launchCommand.getArguments().toArray(new String[0])));
+      }
+    }
     return execute();
   }
 
@@ -82,8 +125,14 @@ public class RabbitMqServer {
   }
 
   private Future<ProcessResult> execute(String... arguments) throws RabbitMqCommandException {
-    return new RabbitMqCommand(config, COMMAND, arguments)
+    return execute(new RabbitMqCommand(config, COMMAND, arguments));
+  }
+
+  private Future<ProcessResult> execute(RabbitMqCommand command) throws RabbitMqCommandException {
+    return command
+        .destroyOnExit(destroyOnExit)
         .writeOutputTo(outputStream)
+        .writeErrorOutputTo(errorOutputStream)
         .listenToEvents(listener)
         .call()
         .getFuture();
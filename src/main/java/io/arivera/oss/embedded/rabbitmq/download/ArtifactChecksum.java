@@ -0,0 +1,118 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.util.Digests;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+/**
+ * The digest of the downloaded artifact, recorded in a file next to it in the format of {@code sha256sum} and similar
+ * tools, such as {@code rabbitmq-server.tar.xz.sha256}.
+ * <p>
+ * Downloaders compute the digest while the bytes are written whenever possible, so verifying it doesn't require reading
+ * the artifact again.
+ *
+ * @see EmbeddedRabbitMqConfig#getDownloadChecksum()
+ */
+class ArtifactChecksum {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactChecksum.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final EmbeddedRabbitMqConfig config;
+
+  ArtifactChecksum(EmbeddedRabbitMqConfig config) {
+    this.config = config;
+  }
+
+  MessageDigest newDigest() {
+    return Digests.newDigest(config.getDownloadDigestAlgorithm());
+  }
+
+  /**
+   * Feeds the first bytes of the given file to the digest, as needed to continue a download that was interrupted.
+   */
+  static void update(MessageDigest digest, File file, long length) throws IOException {
+    byte[] buffer = new byte[BUFFER_SIZE];
+    long remaining = length;
+    try (InputStream input = Files.newInputStream(file.toPath())) {
+      while (remaining > 0) {
+        int read = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read == -1) {
+          throw new IOException("Expected " + length + " bytes but '" + file + "' has fewer");
+        }
+        digest.update(buffer, 0, read);
+        remaining -= read;
+      }
+    }
+  }
+
+  /**
+   * Computes the digest of the whole file.
+   */
+  MessageDigest compute(File file) throws IOException {
+    MessageDigest digest = newDigest();
+    update(digest, file, file.length());
+    return digest;
+  }
+
+  /**
+   * Compares the digest of the downloaded artifact with the expected one, if any, and records it.
+   *
+   * @throws DownloadException if the digest doesn't match the expected one or can't be recorded.
+   */
+  void verifyAndRecord(MessageDigest digest) throws DownloadException {
+    String actual = Digests.toHex(digest.digest());
+    File sidecar = getFile();
+    String expected = config.getDownloadChecksum();
+    if (expected != null && !expected.equalsIgnoreCase(actual)) {
+      if (sidecar.exists() && !sidecar.delete()) {
+        LOGGER.warn("Could not remove outdated checksum file. Please remove it manually: {}", sidecar);
+      }
+      throw new DownloadException("Checksum of '" + config.getDownloadTarget() + "' is " + actual + " but "
+          + expected.toLowerCase(Locale.ROOT) + " was expected (" + config.getDownloadDigestAlgorithm() + ")");
+    }
+    try {
+      Files.write(sidecar.toPath(),
+          (actual + "  " + config.getDownloadTarget().getName() + "\n").getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new DownloadException("Could not record checksum of '" + config.getDownloadTarget() + "'", e);
+    }
+    LOGGER.debug("{} of '{}' is {}", config.getDownloadDigestAlgorithm(), config.getDownloadTarget(), actual);
+  }
+
+  /**
+   * Returns the recorded digest, hex-encoded, or {@code null} if none was recorded.
+   */
+  String readRecorded() throws IOException {
+    File sidecar = getFile();
+    if (!sidecar.isFile()) {
+      return null;
+    }
+    String content = new String(Files.readAllBytes(sidecar.toPath()), StandardCharsets.UTF_8).trim();
+    int end = content.indexOf(' ');
+    return end == -1 ? content : content.substring(0, end);
+  }
+
+  /**
+   * Returns whether the recorded digest is the expected one, which is always the case if none is expected.
+   */
+  boolean isRecordedAsExpected() throws IOException {
+    String expected = config.getDownloadChecksum();
+    return expected == null || expected.equalsIgnoreCase(readRecorded());
+  }
+
+  File getFile() {
+    String extension = config.getDownloadDigestAlgorithm().toLowerCase(Locale.ROOT).replace("-", "");
+    return new File(config.getDownloadTarget().getPath() + "." + extension);
+  }
+}
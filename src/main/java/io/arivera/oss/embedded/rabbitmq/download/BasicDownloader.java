@@ -7,7 +7,12 @@ import io.arivera.oss.embedded.rabbitmq.apache.commons.lang3.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Semaphore;
@@ -57,14 +62,16 @@ class BasicDownloader implements Runnable, Downloader {
 
       try {
         stopWatch.start();
-        FileUtils.copyUrlToFile(
-            config.getDownloadSource(),
-            config.getDownloadTarget(),
-            (int) config.getDownloadConnectionTimeoutInMillis(),
-            (int) config.getDownloadReadTimeoutInMillis(),
-            config.getDownloadProxy());
+        ArtifactChecksum checksum = new ArtifactChecksum(config);
+        MessageDigest digest = checksum.newDigest();
+        File partialFile = PartialFile.of(config.getDownloadTarget());
+        URLConnection connection = DownloadConnections.open(config, config.getDownloadSource());
+        InputStream input = DownloadConnections.getInputStream(config, connection);
+        FileUtils.copyInputStreamToFile(new DigestInputStream(input, digest), partialFile);
         stopWatch.stop();
         LOGGER.info("Download finished in {}ms", stopWatch.getTime());
+        checksum.verifyAndRecord(digest);
+        PartialFile.publish(partialFile, config.getDownloadTarget());
       } catch (IOException e) {
         throw new DownloadException(
             "Could not download '" + config.getDownloadSource() + "' to '" + config.getDownloadTarget() + "'", e);
@@ -109,7 +116,7 @@ class BasicDownloader implements Runnable, Downloader {
       }
       while (!semaphore.tryAcquire()) {
         try {
-          LOGGER.debug("Downloaded {} bytes", config.getDownloadTarget().length());
+          LOGGER.debug("Downloaded {} bytes", PartialFile.of(config.getDownloadTarget()).length());
           Thread.sleep(500);
         } catch (InterruptedException e) {
           LOGGER.trace("Download indicator interrupted");
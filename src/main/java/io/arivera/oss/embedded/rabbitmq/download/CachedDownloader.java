@@ -1,14 +1,18 @@
 package io.arivera.oss.embedded.rabbitmq.download;
 
 import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.util.InterProcessLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 
 class CachedDownloader extends Downloader.Decorator {
 
+  static final String LOCK_FILE_SUFFIX = ".lock";
+
   private static final Logger LOGGER = LoggerFactory.getLogger(CachedDownloader.class);
 
   private final EmbeddedRabbitMqConfig config;
@@ -18,37 +22,109 @@ class CachedDownloader extends Downloader.Decorator {
     this.config = config;
   }
 
+  /**
+   * Downloads the artifact unless it's been downloaded before.
+   * <p>
+   * Processes sharing the download folder, such as parallel test forks, take turns through a lock file next to the
+   * artifact, so only the first of them downloads it while the others wait for it and then reuse it.
+   */
   @Override
   public void run() {
     if (isDownloadAlreadyCached()) {
       LOGGER.debug("RabbitMQ has been downloaded before. Using file: {}", config.getDownloadTarget());
-    } else {
-      download();
+      return;
+    }
+    try (InterProcessLock ignored = InterProcessLock.acquire(getLockFile(config.getDownloadTarget()))) {
+      if (isDownloadAlreadyCached()) {
+        LOGGER.info("RabbitMQ has been downloaded by another process in the meantime. Using file: {}",
+            config.getDownloadTarget());
+      } else {
+        download();
+      }
+    } catch (IOException e) {
+      throw new DownloadException("Could not lock the download of '" + config.getDownloadTarget() + "'", e);
     }
   }
 
+  static File getLockFile(File target) {
+    return new File(target.getPath() + LOCK_FILE_SUFFIX);
+  }
+
   private boolean isDownloadAlreadyCached() {
     File downloadTarget = config.getDownloadTarget();
-    return downloadTarget.exists() && downloadTarget.isFile() && downloadTarget.canRead() && downloadTarget.length() > 0;
+    if (!(downloadTarget.exists() && downloadTarget.isFile() && downloadTarget.canRead() && downloadTarget.length() > 0)) {
+      return false;
+    }
+    DownloadState state = loadState();
+    // Files downloaded before their state was recorded are assumed to be complete, as they always were.
+    if (state != null && !state.isCompletedBy(downloadTarget)) {
+      LOGGER.info("Found an incomplete download ({} of {} bytes): {}", downloadTarget.length(), state.getLength(),
+          downloadTarget);
+      return false;
+    }
+    if (!isChecksumAsExpected()) {
+      LOGGER.info("Previously downloaded file doesn't have the expected checksum: {}", downloadTarget);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Compares the recorded checksum with the expected one. Files downloaded before checksums were recorded are read once
+   * to compute it.
+   */
+  private boolean isChecksumAsExpected() {
+    ArtifactChecksum checksum = new ArtifactChecksum(config);
+    try {
+      if (config.getDownloadChecksum() != null && checksum.readRecorded() == null) {
+        checksum.verifyAndRecord(checksum.compute(config.getDownloadTarget()));
+      }
+      return checksum.isRecordedAsExpected();
+    } catch (IOException | DownloadException e) {
+      LOGGER.debug("Could not verify checksum of '{}'", config.getDownloadTarget(), e);
+      return false;
+    }
   }
 
   private void download() {
     try {
+      // Recorded first, so that a download that's interrupted by any means is never mistaken for a complete one.
+      DownloadState previous = loadState();
+      saveState(previous == null ? new DownloadState(-1, null, null, false) : previous.incomplete());
       innerDownloader.run();
+      DownloadState state = loadState();
+      saveState(state.completed(config.getDownloadTarget()));
     } catch (DownloadException e) {
-      if (config.shouldDeleteCachedFileOnErrors()) {
-        if (config.getDownloadTarget().exists()) {
-          boolean deleted = config.getDownloadTarget().delete();
-          if (deleted) {
-            LOGGER.info("Removed partially downloaded file: {}", config.getDownloadTarget());
-          } else {
-            LOGGER.warn("Could not remove partially downloaded file. Please remove it manually: {}", config.getDownloadTarget());
-          }
+      File partialFile = PartialFile.of(config.getDownloadTarget());
+      if (!partialFile.exists()) {
+        LOGGER.debug("No partially downloaded file was left behind: {}", partialFile);
+      } else if (config.shouldResumeDownloads()) {
+        LOGGER.info("Partially downloaded file will be resumed next time: {}", partialFile);
+      } else if (config.shouldDeleteCachedFileOnErrors()) {
+        PartialFile.discard(partialFile);
+        if (!partialFile.exists()) {
+          LOGGER.info("Removed partially downloaded file: {}", partialFile);
         }
       } else {
-        LOGGER.info("Partially downloaded file will not be deleted: {}", config.getDownloadTarget());
+        LOGGER.info("Partially downloaded file will not be deleted: {}", partialFile);
       }
       throw e;
     }
   }
+
+  private DownloadState loadState() {
+    try {
+      return DownloadState.load(config.getDownloadTarget());
+    } catch (IOException e) {
+      throw new DownloadException("Could not read download state of '" + config.getDownloadTarget() + "'", e);
+    }
+  }
+
+  private void saveState(DownloadState state) {
+    try {
+      state.save(config.getDownloadTarget());
+    } catch (IOException e) {
+      throw new DownloadException("Could not record download state of '" + config.getDownloadTarget() + "'", e);
+    }
+  }
 }
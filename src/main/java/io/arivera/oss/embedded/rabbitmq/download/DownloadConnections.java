@@ -0,0 +1,71 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Opens connections to download the artifact with, honoring the proxy and timeouts of the configuration.
+ */
+class DownloadConnections {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DownloadConnections.class);
+
+  private DownloadConnections() {
+  }
+
+  static URLConnection open(EmbeddedRabbitMqConfig config, URL url) throws IOException {
+    URLConnection connection = config.getDownloadProxy() == null
+        ? url.openConnection()
+        : url.openConnection(config.getDownloadProxy());
+    connection.setConnectTimeout((int) config.getDownloadConnectionTimeoutInMillis());
+    connection.setReadTimeout((int) config.getDownloadReadTimeoutInMillis());
+    return connection;
+  }
+
+  /**
+   * Returns a connection with the response to a {@code HEAD} request for the artifact, or {@code null} if it isn't an
+   * HTTP resource or the request wasn't successful.
+   */
+  static HttpURLConnection head(EmbeddedRabbitMqConfig config) throws IOException {
+    URLConnection connection = open(config, config.getDownloadSource());
+    if (!(connection instanceof HttpURLConnection)) {
+      return null;
+    }
+    HttpURLConnection head = (HttpURLConnection) connection;
+    head.setRequestMethod("HEAD");
+    int responseCode = head.getResponseCode();
+    if (responseCode != HttpURLConnection.HTTP_OK) {
+      LOGGER.debug("Server responded with HTTP {} to HEAD request", responseCode);
+      head.disconnect();
+      return null;
+    }
+    return head;
+  }
+
+  /**
+   * Returns the body of the response, which fails to be read once its throughput is below the least one accepted, if
+   * any.
+   *
+   * @see EmbeddedRabbitMqConfig#getMinDownloadBytesPerSecond()
+   */
+  static InputStream getInputStream(EmbeddedRabbitMqConfig config, URLConnection connection) throws IOException {
+    InputStream input = connection.getInputStream();
+    if (config.getMinDownloadBytesPerSecond() <= 0) {
+      return input;
+    }
+    return new ThroughputGuardInputStream(input, config.getMinDownloadBytesPerSecond(),
+        config.getDownloadThroughputWindowInMillis());
+  }
+
+  static boolean acceptsRanges(HttpURLConnection head) {
+    return "bytes".equalsIgnoreCase(head.getHeaderField("Accept-Ranges"));
+  }
+}
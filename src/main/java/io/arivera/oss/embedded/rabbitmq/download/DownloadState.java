@@ -0,0 +1,162 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.util.LockedPropertiesFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.util.Map;
+
+/**
+ * What's known about the download of an artifact, kept in a file next to it: how long the artifact is, the validators
+ * the server identified its version with ({@code ETag} and {@code Last-Modified}) and whether it was downloaded
+ * completely.
+ * <p>
+ * This allows telling an interrupted download apart from a complete one, and continuing it only if the artifact didn't
+ * change on the server in the meantime.
+ */
+class DownloadState {
+
+  static final String FILE_SUFFIX = ".download.properties";
+
+  private static final String LENGTH = "length";
+  private static final String ETAG = "etag";
+  private static final String LAST_MODIFIED = "lastModified";
+  private static final String COMPLETE = "complete";
+  private static final String MODIFIED = "modified";
+
+  private final long length;
+  private final String etag;
+  private final String lastModified;
+  private final boolean complete;
+  private final long modified;
+
+  DownloadState(long length, String etag, String lastModified, boolean complete) {
+    this(length, etag, lastModified, complete, -1);
+  }
+
+  private DownloadState(long length, String etag, String lastModified, boolean complete, long modified) {
+    this.length = length;
+    this.etag = etag;
+    this.lastModified = lastModified;
+    this.complete = complete;
+    this.modified = modified;
+  }
+
+  /**
+   * Returns the state of an artifact that's about to be downloaded, as described by the response to a {@code HEAD}
+   * request.
+   */
+  static DownloadState of(HttpURLConnection head) {
+    return new DownloadState(head.getContentLengthLong(), head.getHeaderField("ETag"),
+        head.getHeaderField("Last-Modified"), false);
+  }
+
+  /**
+   * Returns the recorded state of the download of the given file, or {@code null} if none was recorded.
+   */
+  static DownloadState load(File target) throws IOException {
+    File file = getFile(target);
+    if (!file.isFile()) {
+      return null;
+    }
+    return newPropertiesFile(target).update(new LockedPropertiesFile.Update<DownloadState>() {
+      @Override
+      public DownloadState apply(Map<String, String> properties) {
+        return new DownloadState(parseLong(properties.get(LENGTH)), properties.get(ETAG), properties.get(LAST_MODIFIED),
+            Boolean.parseBoolean(properties.get(COMPLETE)), parseLong(properties.get(MODIFIED)));
+      }
+    });
+  }
+
+  private static long parseLong(String value) {
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  static File getFile(File target) {
+    return new File(target.getPath() + FILE_SUFFIX);
+  }
+
+  private static LockedPropertiesFile newPropertiesFile(File target) {
+    return new LockedPropertiesFile(getFile(target), "Download state of " + target.getName());
+  }
+
+  /**
+   * Records this state for the given file, creating its folder if necessary.
+   */
+  void save(File target) throws IOException {
+    Files.createDirectories(target.getAbsoluteFile().getParentFile().toPath());
+    newPropertiesFile(target).update(new LockedPropertiesFile.Update<Void>() {
+      @Override
+      public Void apply(Map<String, String> properties) {
+        properties.clear();
+        properties.put(LENGTH, String.valueOf(length));
+        properties.put(COMPLETE, String.valueOf(complete));
+        if (etag != null) {
+          properties.put(ETAG, etag);
+        }
+        if (lastModified != null) {
+          properties.put(LAST_MODIFIED, lastModified);
+        }
+        if (modified > 0) {
+          properties.put(MODIFIED, String.valueOf(modified));
+        }
+        return null;
+      }
+    });
+  }
+
+  DownloadState incomplete() {
+    return new DownloadState(length, etag, lastModified, false);
+  }
+
+  /**
+   * Returns the state of the given file once it's been downloaded completely, recording its length and when it was last
+   * modified, so that any later change to it can be noticed without reading it.
+   */
+  DownloadState completed(File target) {
+    return new DownloadState(target.length(), etag, lastModified, true, target.lastModified());
+  }
+
+  /**
+   * Returns whether the given file is the complete artifact this state describes, and it hasn't changed since.
+   */
+  boolean isCompletedBy(File target) {
+    return complete && target.isFile() && target.length() == length
+        && (modified <= 0 || target.lastModified() == modified);
+  }
+
+  /**
+   * Returns whether both states describe the same version of the artifact, which requires them to have the same length
+   * and a validator in common.
+   */
+  boolean isSameVersionAs(DownloadState other) {
+    if (length <= 0 || length != other.length) {
+      return false;
+    }
+    if (etag != null || other.etag != null) {
+      return etag != null && etag.equals(other.etag);
+    }
+    return lastModified != null && lastModified.equals(other.lastModified);
+  }
+
+  /**
+   * Returns the value of an {@code If-Range} header that only allows continuing a download of this same version.
+   */
+  String getValidator() {
+    return etag != null ? etag : lastModified;
+  }
+
+  long getLength() {
+    return length;
+  }
+
+  boolean isComplete() {
+    return complete;
+  }
+}
@@ -14,11 +14,29 @@ public class DownloaderFactory {
    * @return an appropriate instance depending on the given configuration.
    */
   public Downloader getNewInstance() {
-    Downloader downloader = new BasicDownloader(config);
+    Downloader downloader = config.getDownloadMirrors().size() > 1
+        ? new MirroredDownloader(config)
+        : newSourceDownloader(config);
     if (config.shouldCachedDownload()) {
       downloader = new CachedDownloader(downloader, config);
     }
     return downloader;
   }
 
+  /**
+   * @return a downloader that fetches the artifact from the download source of the given configuration.
+   */
+  static Downloader newSourceDownloader(EmbeddedRabbitMqConfig config) {
+    return config.getParallelDownloadConnections() > 1
+        ? new ParallelDownloader(config)
+        : newSingleStreamDownloader(config);
+  }
+
+  /**
+   * @return a downloader that fetches the artifact over a single connection.
+   */
+  static Downloader newSingleStreamDownloader(EmbeddedRabbitMqConfig config) {
+    return config.shouldResumeDownloads() ? new ResumableDownloader(config) : new BasicDownloader(config);
+  }
+
 }
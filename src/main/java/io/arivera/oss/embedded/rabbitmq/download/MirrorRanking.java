@@ -0,0 +1,195 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.util.DaemonThreadFactory;
+import io.arivera.oss.embedded.rabbitmq.util.LockedPropertiesFile;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The order the mirrors of the artifact are tried in: fastest first, based on how long each of them takes to answer a
+ * {@code HEAD} request.
+ * <p>
+ * Latencies are kept in a file in the download folder for an hour, so processes sharing the folder don't probe the
+ * mirrors again. A mirror a download failed from is recorded as unreachable, which makes it the last one tried until
+ * it's probed anew. Mirrors are identified by their URL as text, since comparing {@link URL URLs} resolves their host.
+ */
+class MirrorRanking {
+
+  static final String FILE_NAME = "download-mirrors.properties";
+  static final long TTL_IN_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MirrorRanking.class);
+
+  private static final long UNREACHABLE = -1;
+  private static final String SEPARATOR = ",";
+
+  private final EmbeddedRabbitMqConfig config;
+  private final LockedPropertiesFile file;
+
+  MirrorRanking(EmbeddedRabbitMqConfig config) {
+    this.config = config;
+    this.file = new LockedPropertiesFile(new File(getFolder(config), FILE_NAME),
+        "Latency of download mirrors in milliseconds, -1 if unreachable. Value: latency,recordedAt");
+  }
+
+  private static File getFolder(EmbeddedRabbitMqConfig config) {
+    return config.getDownloadTarget().getAbsoluteFile().getParentFile();
+  }
+
+  /**
+   * Returns the mirrors in the order they should be tried in, probing those whose latency isn't known or is outdated.
+   * Mirrors that are equally fast, or unreachable, keep the order they were given in.
+   */
+  List<URL> rank() throws IOException {
+    List<URL> mirrors = config.getDownloadMirrors();
+    final Map<String, Long> latencies = read(mirrors);
+    List<URL> unknown = new ArrayList<>();
+    for (URL mirror : mirrors) {
+      if (!latencies.containsKey(mirror.toString())) {
+        unknown.add(mirror);
+      }
+    }
+    if (!unknown.isEmpty()) {
+      Map<String, Long> probed = probe(unknown);
+      record(probed);
+      latencies.putAll(probed);
+    }
+
+    List<URL> ranking = new ArrayList<>(mirrors);
+    Collections.sort(ranking, new Comparator<URL>() {
+      @Override
+      public int compare(URL first, URL second) {
+        return Long.compare(sortKey(latencies.get(first.toString())), sortKey(latencies.get(second.toString())));
+      }
+    });
+    LOGGER.debug("Download mirrors ranked by latency: {}", ranking);
+    return ranking;
+  }
+
+  private static long sortKey(long latency) {
+    return latency == UNREACHABLE ? Long.MAX_VALUE : latency;
+  }
+
+  /**
+   * Records that a download from the given mirror failed, so it's tried last until it's probed again.
+   */
+  void demote(URL mirror) throws IOException {
+    record(Collections.singletonMap(mirror.toString(), UNREACHABLE));
+  }
+
+  private Map<String, Long> read(final List<URL> mirrors) throws IOException {
+    Files.createDirectories(getFolder(config).toPath());
+    final long now = System.currentTimeMillis();
+    return file.update(new LockedPropertiesFile.Update<Map<String, Long>>() {
+      @Override
+      public Map<String, Long> apply(Map<String, String> properties) {
+        Map<String, Long> latencies = new HashMap<>();
+        for (URL mirror : mirrors) {
+          String[] values = String.valueOf(properties.get(mirror.toString())).split(SEPARATOR);
+          try {
+            if (values.length == 2 && now - Long.parseLong(values[1]) < TTL_IN_MILLIS) {
+              latencies.put(mirror.toString(), Long.parseLong(values[0]));
+            }
+          } catch (NumberFormatException e) {
+            LOGGER.debug("Ignoring invalid latency of '{}' in '{}'", mirror, file.getFile());
+          }
+        }
+        return latencies;
+      }
+    });
+  }
+
+  private void record(final Map<String, Long> latencies) throws IOException {
+    Files.createDirectories(getFolder(config).toPath());
+    final long now = System.currentTimeMillis();
+    file.update(new LockedPropertiesFile.Update<Void>() {
+      @Override
+      public Void apply(Map<String, String> properties) {
+        for (Map.Entry<String, Long> latency : latencies.entrySet()) {
+          properties.put(latency.getKey(), latency.getValue() + SEPARATOR + now);
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Sends a {@code HEAD} request to every given mirror at once and measures how long each of them takes to answer.
+   * Mirrors other than HTTP ones, such as local files, aren't probed and are considered the fastest.
+   */
+  private Map<String, Long> probe(List<URL> mirrors) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(mirrors.size(),
+        new DaemonThreadFactory("RabbitMQ-Mirror-Probe"));
+    try {
+      Map<String, Future<Long>> probes = new LinkedHashMap<>();
+      for (final URL mirror : mirrors) {
+        probes.put(mirror.toString(), executor.submit(new Callable<Long>() {
+          @Override
+          public Long call() {
+            return probe(mirror);
+          }
+        }));
+      }
+      Map<String, Long> latencies = new HashMap<>();
+      for (Map.Entry<String, Future<Long>> probe : probes.entrySet()) {
+        try {
+          latencies.put(probe.getKey(), probe.getValue().get());
+        } catch (ExecutionException e) {
+          LOGGER.debug("Could not probe mirror '{}'", probe.getKey(), e.getCause());
+          latencies.put(probe.getKey(), UNREACHABLE);
+        }
+      }
+      return latencies;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while probing download mirrors");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private long probe(URL mirror) {
+    long start = System.nanoTime();
+    try {
+      URLConnection connection = DownloadConnections.open(config, mirror);
+      if (!(connection instanceof HttpURLConnection)) {
+        return 0;
+      }
+      HttpURLConnection head = (HttpURLConnection) connection;
+      head.setRequestMethod("HEAD");
+      int responseCode = head.getResponseCode();
+      head.disconnect();
+      if (responseCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+        LOGGER.debug("Mirror '{}' responded with HTTP {} to HEAD request", mirror, responseCode);
+        return UNREACHABLE;
+      }
+      return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    } catch (IOException e) {
+      LOGGER.debug("Mirror '{}' is unreachable", mirror, e);
+      return UNREACHABLE;
+    }
+  }
+}
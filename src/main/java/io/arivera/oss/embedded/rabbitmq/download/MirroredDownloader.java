@@ -0,0 +1,85 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.ArtifactRepository;
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.Version;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Downloads the artifact from the fastest of its mirrors, and continues from the next one whenever a download fails
+ * or is slower than accepted.
+ *
+ * @see MirrorRanking
+ * @see io.arivera.oss.embedded.rabbitmq.MirroredArtifactRepository
+ */
+class MirroredDownloader implements Downloader {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(MirroredDownloader.class);
+
+  private final EmbeddedRabbitMqConfig config;
+  private final MirrorRanking ranking;
+
+  MirroredDownloader(EmbeddedRabbitMqConfig config) {
+    this.config = config;
+    this.ranking = new MirrorRanking(config);
+  }
+
+  @Override
+  public void run() throws DownloadException {
+    List<URL> mirrors;
+    try {
+      mirrors = ranking.rank();
+    } catch (IOException e) {
+      LOGGER.warn("Could not rank download mirrors. Trying them in the given order.", e);
+      mirrors = config.getDownloadMirrors();
+    }
+
+    DownloadException failure = null;
+    for (URL mirror : mirrors) {
+      LOGGER.debug("Downloading from mirror '{}'...", mirror);
+      try {
+        DownloaderFactory.newSourceDownloader(configFor(mirror)).run();
+        return;
+      } catch (DownloadException e) {
+        LOGGER.warn("Download from mirror '{}' failed", mirror, e);
+        demote(mirror);
+        if (failure == null) {
+          failure = new DownloadException(
+              "Could not download '" + config.getDownloadTarget() + "' from any of its mirrors: " + mirrors, e);
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    throw failure;
+  }
+
+  private void demote(URL mirror) {
+    try {
+      ranking.demote(mirror);
+    } catch (IOException e) {
+      LOGGER.debug("Could not record that mirror '{}' failed", mirror, e);
+    }
+  }
+
+  /**
+   * Returns the same configuration, but for downloading from the given mirror only.
+   */
+  private EmbeddedRabbitMqConfig configFor(final URL mirror) {
+    return new EmbeddedRabbitMqConfig.Builder(config)
+        .downloadFrom(new ArtifactRepository() {
+          @Override
+          public URL getUrl(Version version, OperatingSystem operatingSystem) {
+            return mirror;
+          }
+        })
+        .build();
+  }
+}
@@ -0,0 +1,193 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.apache.commons.lang3.StopWatch;
+import io.arivera.oss.embedded.rabbitmq.util.DaemonThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads the artifact over several concurrent connections, each fetching a range of its bytes and writing them
+ * straight to their position in the target file.
+ * <p>
+ * The size of the artifact and whether the server supports range requests is found out with a {@code HEAD} request
+ * first. If it doesn't, or the artifact is too small to be worth splitting, it's downloaded as a single stream
+ * instead.
+ * <p>
+ * Bytes are written to a {@link PartialFile} next to the target, which is only moved into place once every range has
+ * been downloaded, so a failed download never looks like a complete one.
+ */
+class ParallelDownloader implements Downloader {
+
+  static final long MIN_RANGE_SIZE = 256 * 1024;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ParallelDownloader.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final EmbeddedRabbitMqConfig config;
+
+  ParallelDownloader(EmbeddedRabbitMqConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public void run() throws DownloadException {
+    try {
+      HttpURLConnection head = DownloadConnections.head(config);
+      if (head == null) {
+        LOGGER.debug("Size of '{}' is unknown. Downloading it as a single stream.", config.getDownloadSource());
+        DownloaderFactory.newSingleStreamDownloader(config).run();
+        return;
+      }
+      long length = head.getContentLengthLong();
+      boolean acceptsRanges = DownloadConnections.acceptsRanges(head);
+      URL location = head.getURL();
+      head.disconnect();
+
+      int rangeCount = countRanges(length, acceptsRanges);
+      if (rangeCount <= 1) {
+        LOGGER.debug("'{}' can't be downloaded in ranges (size: {}, accepts ranges: {}). Downloading it as a single "
+            + "stream.", config.getDownloadSource(), length, acceptsRanges);
+        DownloaderFactory.newSingleStreamDownloader(config).run();
+        return;
+      }
+      download(location, length, rangeCount);
+    } catch (IOException e) {
+      throw new DownloadException(
+          "Could not download '" + config.getDownloadSource() + "' to '" + config.getDownloadTarget() + "'", e);
+    }
+  }
+
+  /**
+   * Returns how many ranges to split a download of the given length in, so that no range is smaller than
+   * {@value MIN_RANGE_SIZE} bytes.
+   */
+  int countRanges(long length, boolean acceptsRanges) {
+    if (!acceptsRanges || length <= 0) {
+      return 1;
+    }
+    return (int) Math.max(1, Math.min(config.getParallelDownloadConnections(), length / MIN_RANGE_SIZE));
+  }
+
+  private void download(URL location, long length, int rangeCount) throws IOException {
+    File target = config.getDownloadTarget();
+    File partialFile = PartialFile.of(target);
+    LOGGER.info("Downloading '{}' in {} ranges...", config.getDownloadSource(), rangeCount);
+    final StopWatch stopWatch = StopWatch.createStarted();
+
+    File parent = target.getAbsoluteFile().getParentFile();
+    Files.createDirectories(parent.toPath());
+    boolean completed = false;
+    try (RandomAccessFile file = new RandomAccessFile(partialFile, "rw")) {
+      file.setLength(length);
+      downloadRanges(location, file.getChannel(), length, rangeCount);
+      // Ranges arrive out of order, so the digest can only be computed once all of them are written.
+      ArtifactChecksum checksum = new ArtifactChecksum(config);
+      checksum.verifyAndRecord(checksum.compute(partialFile));
+      completed = true;
+    } finally {
+      if (!completed) {
+        PartialFile.discard(partialFile);
+      }
+    }
+    PartialFile.publish(partialFile, target);
+    LOGGER.info("Download finished in {}ms", stopWatch.getTime());
+  }
+
+  private void downloadRanges(URL location, FileChannel channel, long length, int rangeCount) throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(rangeCount, new DaemonThreadFactory("RabbitMQ-Download"));
+    List<Future<Void>> ranges = new ArrayList<>();
+    long rangeSize = length / rangeCount;
+    for (int i = 0; i < rangeCount; i++) {
+      long first = i * rangeSize;
+      long last = i == rangeCount - 1 ? length - 1 : first + rangeSize - 1;
+      ranges.add(executor.submit(new RangeTask(location, channel, first, last)));
+    }
+    executor.shutdown();
+
+    try {
+      for (Future<Void> range : ranges) {
+        range.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while downloading", e);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof IOException
+          ? (IOException) e.getCause()
+          : new IOException("Could not download range", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Fetches the bytes between two positions, both inclusive, and writes them at the same position of the file.
+   */
+  private class RangeTask implements Callable<Void> {
+
+    private final URL location;
+    private final FileChannel channel;
+    private final long first;
+    private final long last;
+
+    RangeTask(URL location, FileChannel channel, long first, long last) {
+      this.location = location;
+      this.channel = channel;
+      this.first = first;
+      this.last = last;
+    }
+
+    @Override
+    public Void call() throws IOException {
+      HttpURLConnection connection = (HttpURLConnection) DownloadConnections.open(config, location);
+      connection.setRequestProperty("Range", "bytes=" + first + "-" + last);
+      try {
+        int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+          throw new IOException("Server responded with HTTP " + responseCode + " to request for bytes " + first + "-"
+              + last);
+        }
+        long position = first;
+        try (InputStream input = DownloadConnections.getInputStream(config, connection);
+             ReadableByteChannel source = Channels.newChannel(input)) {
+          ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+          while (position <= last && source.read(buffer) != -1) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+              position += channel.write(buffer, position);
+            }
+            buffer.clear();
+          }
+        }
+        if (position != last + 1) {
+          throw new IOException("Expected bytes " + first + "-" + last + " but the download ended at " + position);
+        }
+        LOGGER.debug("Downloaded bytes {}-{}", first, last);
+        return null;
+      } finally {
+        connection.disconnect();
+      }
+    }
+  }
+}
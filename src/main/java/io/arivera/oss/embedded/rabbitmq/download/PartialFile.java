@@ -0,0 +1,48 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The file an artifact is downloaded into, next to its download target, such as {@code rabbitmq-server.tar.xz.part}.
+ * <p>
+ * It's only published at the download target once it's complete and verified, with an atomic rename, so no process
+ * ever sees, or extracts, an incomplete target. Processes that already opened a previous version of it keep reading it.
+ */
+class PartialFile {
+
+  static final String SUFFIX = ".part";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(PartialFile.class);
+
+  private PartialFile() {
+  }
+
+  static File of(File target) {
+    return new File(target.getPath() + SUFFIX);
+  }
+
+  /**
+   * Replaces the target with the given partial file, atomically unless the file system doesn't support it.
+   */
+  static void publish(File partialFile, File target) throws IOException {
+    try {
+      Files.move(partialFile.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      LOGGER.debug("File system doesn't support atomic moves. Replacing '{}' in place.", target);
+      Files.move(partialFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  static void discard(File partialFile) {
+    if (partialFile.exists() && !partialFile.delete()) {
+      LOGGER.warn("Could not remove partially downloaded file. Please remove it manually: {}", partialFile);
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.apache.commons.lang3.StopWatch;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+
+/**
+ * Downloads the artifact as a single stream, continuing from where a previous, interrupted download of the same file
+ * stopped instead of starting over.
+ * <p>
+ * The length and validators of the artifact are recorded in a {@link DownloadState} before any byte is written. A
+ * partial file is only continued, using a {@code Range: bytes=N-} request, if the server still describes the artifact
+ * the same way. Otherwise, or if the server ignores the range, it's downloaded from the beginning.
+ * <p>
+ * Bytes are written to a {@link PartialFile}, which is kept if the download is interrupted and published at the target
+ * once it's complete.
+ */
+class ResumableDownloader implements Downloader {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ResumableDownloader.class);
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final EmbeddedRabbitMqConfig config;
+
+  ResumableDownloader(EmbeddedRabbitMqConfig config) {
+    this.config = config;
+  }
+
+  @Override
+  public void run() throws DownloadException {
+    File target = config.getDownloadTarget();
+    try {
+      HttpURLConnection head = DownloadConnections.head(config);
+      if (head == null) {
+        LOGGER.debug("Download of '{}' can't be resumed. Downloading it as a single stream.", config.getDownloadSource());
+        new BasicDownloader(config).run();
+        return;
+      }
+      DownloadState remote = DownloadState.of(head);
+      boolean acceptsRanges = DownloadConnections.acceptsRanges(head);
+      final URL location = head.getURL();
+      head.disconnect();
+
+      DownloadState previous = DownloadState.load(target);
+      File partialFile = PartialFile.of(target);
+      long offset = 0;
+      if (acceptsRanges && previous != null && !previous.isComplete() && remote.isSameVersionAs(previous)
+          && partialFile.isFile() && partialFile.length() < remote.getLength()) {
+        offset = partialFile.length();
+      }
+      remote.save(target);
+
+      final StopWatch stopWatch = StopWatch.createStarted();
+      ArtifactChecksum checksum = new ArtifactChecksum(config);
+      MessageDigest digest = checksum.newDigest();
+      download(location, partialFile, offset, remote, digest);
+      LOGGER.info("Download finished in {}ms", stopWatch.getTime());
+      try {
+        checksum.verifyAndRecord(digest);
+      } catch (DownloadException e) {
+        // Resuming a file with unexpected content would only lead to the same result.
+        PartialFile.discard(partialFile);
+        throw e;
+      }
+      PartialFile.publish(partialFile, target);
+      remote.completed(target).save(target);
+    } catch (IOException e) {
+      throw new DownloadException(
+          "Could not download '" + config.getDownloadSource() + "' to '" + config.getDownloadTarget() + "'", e);
+    }
+  }
+
+  /**
+   * Downloads the artifact into the given file, starting at the given offset if the server allows it, and feeds
+   * every byte of the file to the given digest.
+   */
+  private void download(URL location, File file, long offset, DownloadState remote, MessageDigest digest)
+      throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) DownloadConnections.open(config, location);
+    if (offset > 0) {
+      connection.setRequestProperty("Range", "bytes=" + offset + "-");
+      if (remote.getValidator() != null) {
+        connection.setRequestProperty("If-Range", remote.getValidator());
+      }
+    }
+    try {
+      int responseCode = connection.getResponseCode();
+      long position;
+      if (offset > 0 && responseCode == HttpURLConnection.HTTP_PARTIAL
+          && String.valueOf(connection.getHeaderField("Content-Range")).startsWith("bytes " + offset + "-")) {
+        LOGGER.info("Resuming download of '{}' from byte {} of {}...", config.getDownloadSource(), offset,
+            remote.getLength());
+        position = offset;
+        ArtifactChecksum.update(digest, file, offset);
+      } else if (responseCode == HttpURLConnection.HTTP_OK) {
+        LOGGER.info("Downloading '{}'...", config.getDownloadSource());
+        position = 0;
+      } else {
+        throw new IOException("Server responded with HTTP " + responseCode);
+      }
+
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+           InputStream input = DownloadConnections.getInputStream(config, connection);
+           ReadableByteChannel source = Channels.newChannel(new DigestInputStream(input, digest))) {
+        channel.truncate(position);
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        while (source.read(buffer) != -1) {
+          buffer.flip();
+          while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+          }
+          buffer.clear();
+        }
+      }
+      if (remote.getLength() > 0 && position != remote.getLength()) {
+        throw new IOException("Expected " + remote.getLength() + " bytes but the download ended at " + position);
+      }
+    } finally {
+      connection.disconnect();
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of a download over consecutive windows of time and fails the next read once it's below the
+ * least one accepted, so a slow connection is given up on instead of holding up the whole download.
+ * <p>
+ * The throughput is only measured when reads return, so a connection that stalls completely is left to the read
+ * timeout.
+ */
+class ThroughputGuardInputStream extends FilterInputStream {
+
+  private final long minBytesPerSecond;
+  private final long windowInNanos;
+  private long windowStart;
+  private long windowBytes;
+
+  ThroughputGuardInputStream(InputStream input, long minBytesPerSecond, long windowInMillis) {
+    super(input);
+    this.minBytesPerSecond = minBytesPerSecond;
+    this.windowInNanos = TimeUnit.MILLISECONDS.toNanos(windowInMillis);
+    this.windowStart = System.nanoTime();
+  }
+
+  @Override
+  public int read() throws IOException {
+    int value = super.read();
+    measure(value == -1 ? -1 : 1);
+    return value;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    int read = super.read(buffer, offset, length);
+    measure(read);
+    return read;
+  }
+
+  private void measure(int read) throws IOException {
+    if (read == -1) {
+      return;
+    }
+    windowBytes += read;
+    long elapsed = System.nanoTime() - windowStart;
+    if (elapsed < windowInNanos) {
+      return;
+    }
+    long bytesPerSecond = windowBytes * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    if (bytesPerSecond < minBytesPerSecond) {
+      throw new IOException("Download throughput of " + bytesPerSecond + " bytes/s is below the least accepted "
+          + minBytesPerSecond + " bytes/s");
+    }
+    windowStart = System.nanoTime();
+    windowBytes = 0;
+  }
+}
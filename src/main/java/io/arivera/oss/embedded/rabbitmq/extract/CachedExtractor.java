@@ -1,12 +1,21 @@
 package io.arivera.oss.embedded.rabbitmq.extract;
 
 import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.util.InterProcessLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
 class CachedExtractor extends Extractor.Decorator {
 
+  static final String LOCK_FILE_SUFFIX = ".lock";
+  static final String MARKER_FILE_SUFFIX = ".extracted";
+
   private static final Logger LOGGER = LoggerFactory.getLogger(CachedExtractor.class);
 
   private final EmbeddedRabbitMqConfig config;
@@ -16,8 +25,42 @@ class CachedExtractor extends Extractor.Decorator {
     this.config = config;
   }
 
+  /**
+   * Extracts the downloaded file unless it's been extracted before into the same folder.
+   * <p>
+   * Processes sharing the extraction folder take turns through a lock file next to the extracted installation, so it's
+   * never overwritten while another process extracts it, and only the first of them extracts a given download. Which
+   * download was extracted is recorded once the extraction completed.
+   */
   @Override
   public void run() throws ExtractionException {
+    File appFolder = config.getAppFolder();
+    try (InterProcessLock ignored = InterProcessLock.acquire(new File(appFolder.getPath() + LOCK_FILE_SUFFIX))) {
+      File marker = new File(appFolder.getPath() + MARKER_FILE_SUFFIX);
+      String download = describeDownload();
+      if (appFolder.isDirectory() && marker.isFile()
+          && download.equals(new String(Files.readAllBytes(marker.toPath()), StandardCharsets.UTF_8))) {
+        LOGGER.debug("RabbitMQ has been extracted before. Using folder: {}", appFolder);
+        return;
+      }
+      Files.deleteIfExists(marker.toPath());
+      extract();
+      Files.write(marker.toPath(), download.getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new ExtractionException("Could not extract '" + config.getDownloadTarget() + "' to '" + appFolder + "'", e);
+    }
+  }
+
+  /**
+   * Identifies the downloaded file without reading it. A new download is published with a rename, so it's always told
+   * apart from the previous one by its modification time at least.
+   */
+  private String describeDownload() {
+    File download = config.getDownloadTarget();
+    return download.getName() + " " + download.length() + " " + download.lastModified();
+  }
+
+  private void extract() throws ExtractionException {
     try {
       innerExtractor.run();
     } catch (ExtractionException e) {
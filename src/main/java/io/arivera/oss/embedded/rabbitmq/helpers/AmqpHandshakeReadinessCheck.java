@@ -0,0 +1,157 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.RabbitMqEnvVar;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Considers the RabbitMQ Server ready once it answers an AMQP 0-9-1 protocol header with a {@code Connection.Start}
+ * method, which is the earliest moment clients can successfully connect.
+ * <p>
+ * The AMQP port is polled with short, increasing intervals. Unlike {@link LogPatternReadinessCheck}, this doesn't
+ * depend on the format of the logs nor on the server's output.
+ * <p>
+ * A handshake only proves the server is ready if it can't have come from another process. Checks are created right
+ * before the server is launched, so if something already listens on the port by then, such as a broker left running by
+ * another test, no handshake is trusted and the check waits for the server to report the port conflict instead. A
+ * handshake answered after the process finished, or after its output reported a boot failure, isn't trusted either.
+ */
+public class AmqpHandshakeReadinessCheck implements ReadinessCheck {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(AmqpHandshakeReadinessCheck.class);
+
+  private static final byte[] PROTOCOL_HEADER = {'A', 'M', 'Q', 'P', 0, 0, 9, 1};
+  private static final int METHOD_FRAME_TYPE = 1;
+  private static final int CONNECTION_CLASS_ID = 10;
+  private static final int CONNECTION_START_METHOD_ID = 10;
+
+  private static final int SOCKET_TIMEOUT_IN_MILLIS = 500;
+  private static final long INITIAL_BACKOFF_IN_MILLIS = 10;
+  private static final long MAX_BACKOFF_IN_MILLIS = 200;
+
+  private final InetSocketAddress address;
+  private final boolean portTakenAtLaunch;
+  private volatile boolean processFinished;
+
+  /**
+   * Must be created right before the server is launched, since it checks whether the port is free at that moment.
+   */
+  public AmqpHandshakeReadinessCheck(InetSocketAddress address) {
+    this.address = address;
+    this.portTakenAtLaunch = isListening(address);
+    this.processFinished = false;
+    if (portTakenAtLaunch) {
+      LOGGER.warn("Another process already listens on {}. Its AMQP handshakes won't be taken as a sign of readiness.",
+          address);
+    }
+  }
+
+  private static boolean isListening(InetSocketAddress address) {
+    try (Socket socket = new Socket()) {
+      socket.connect(address, SOCKET_TIMEOUT_IN_MILLIS);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public OutputStream getProcessOutputStream() {
+    return new NullOutputStream();
+  }
+
+  /**
+   * Invoked as well, with a negative exit value, as soon as the output of the process reports a boot failure.
+   */
+  @Override
+  public void processFinished(int exitValue) {
+    LOGGER.debug("Server won't become ready since process finished (exit code: {})", exitValue);
+    processFinished = true;
+  }
+
+  @Override
+  public boolean awaitReadiness(long duration, TimeUnit timeUnit) {
+    long deadline = System.currentTimeMillis() + timeUnit.toMillis(duration);
+    long backoff = INITIAL_BACKOFF_IN_MILLIS;
+    while (!processFinished) {
+      if (!portTakenAtLaunch && isHandshakeAnswered() && !processFinished) {
+        return true;
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        LOGGER.info("Waited for {} {} for {} to answer an AMQP handshake but it didn't.", duration, timeUnit, address);
+        return false;
+      }
+      try {
+        Thread.sleep(Math.min(backoff, remaining));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        LOGGER.warn("Interrupted while waiting for {} to answer an AMQP handshake", address);
+        return false;
+      }
+      backoff = Math.min(backoff * 2, MAX_BACKOFF_IN_MILLIS);
+    }
+    return false;
+  }
+
+  boolean isHandshakeAnswered() {
+    return isHandshakeAnswered(address);
+  }
+
+  /**
+   * Sends the protocol header and checks the first frame received is a {@code Connection.Start} method on channel 0.
+   * <p>
+   * Unlike a check, this trusts any process listening on the address, so it's only meant for servers already known
+   * to be running, such as detached ones being adopted.
+   */
+  static boolean isHandshakeAnswered(InetSocketAddress address) {
+    try (Socket socket = new Socket()) {
+      socket.connect(address, SOCKET_TIMEOUT_IN_MILLIS);
+      socket.setSoTimeout(SOCKET_TIMEOUT_IN_MILLIS);
+      socket.getOutputStream().write(PROTOCOL_HEADER);
+      socket.getOutputStream().flush();
+
+      DataInputStream input = new DataInputStream(socket.getInputStream());
+      int frameType = input.readUnsignedByte();
+      int channel = input.readUnsignedShort();
+      input.readInt(); // payload size
+      int classId = input.readUnsignedShort();
+      int methodId = input.readUnsignedShort();
+      return frameType == METHOD_FRAME_TYPE && channel == 0
+          && classId == CONNECTION_CLASS_ID && methodId == CONNECTION_START_METHOD_ID;
+    } catch (IOException e) {
+      LOGGER.trace("No AMQP handshake from {} yet: {}", address, e.toString());
+      return false;
+    }
+  }
+
+  public static class Factory implements ReadinessCheck.Factory {
+
+    /**
+     * Creates a check that connects to the {@link EmbeddedRabbitMqConfig#getRabbitMqPort() AMQP port} on the
+     * {@link RabbitMqEnvVar#NODE_IP_ADDRESS configured interface}, or on the loopback interface if none is.
+     */
+    @Override
+    public ReadinessCheck create(EmbeddedRabbitMqConfig config) {
+      return new AmqpHandshakeReadinessCheck(getAddress(config));
+    }
+
+    static InetSocketAddress getAddress(EmbeddedRabbitMqConfig config) {
+      String ipAddress = config.getEnvVars().get(RabbitMqEnvVar.NODE_IP_ADDRESS.getEnvVarName());
+      return ipAddress == null || ipAddress.isEmpty()
+          ? new InetSocketAddress(InetAddress.getLoopbackAddress(), config.getRabbitMqPort())
+          : new InetSocketAddress(ipAddress, config.getRabbitMqPort());
+    }
+  }
+}
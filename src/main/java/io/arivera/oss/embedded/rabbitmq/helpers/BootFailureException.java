@@ -0,0 +1,34 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+/**
+ * Thrown when the RabbitMQ Server reports a known failure in its output while booting, in which case it's stopped right
+ * away instead of waiting for the initialization timeout to expire.
+ */
+public class BootFailureException extends StartupException {
+
+  private final String failure;
+  private final String outputLine;
+
+  /**
+   * Creates an exception for the given kind of failure, found in the given line of output.
+   */
+  public BootFailureException(String msg, String failure, String outputLine) {
+    super(msg);
+    this.failure = failure;
+    this.outputLine = outputLine;
+  }
+
+  /**
+   * Returns a short description of the kind of failure, such as {@code "port conflict"} or {@code "erlang crash"}.
+   */
+  public String getFailure() {
+    return failure;
+  }
+
+  /**
+   * Returns the line of output of the RabbitMQ Server the failure was found in.
+   */
+  public String getOutputLine() {
+    return outputLine;
+  }
+}
@@ -0,0 +1,210 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.util.HostNameSupplier;
+import io.arivera.oss.embedded.rabbitmq.util.LockedPropertiesFile;
+import io.arivera.oss.embedded.rabbitmq.util.StringUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How long the RabbitMQ Server took to boot in the past, for a given version on this host.
+ * <p>
+ * The most recent boot durations are kept in a file in the download folder, shared by every process on the host, and
+ * used to derive how long to wait for the next boot, as well as to tell unusually slow boots apart. Boots that timed out
+ * are kept as well, as having taken at least as long as the timeout, so a timeout that's too short grows instead of
+ * being derived from successful boots only.
+ *
+ * @see EmbeddedRabbitMqConfig.Builder#adaptiveStartupTimeout(boolean)
+ */
+public class BootHistory {
+
+  static final String FILE_NAME = "boot-history.properties";
+  static final int MAX_SAMPLES = 100;
+  static final int MIN_SAMPLES = 5;
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(BootHistory.class);
+
+  private static final String SEPARATOR = ",";
+  private static final String TIMED_OUT_MARK = "+";
+  private static final double PERCENTILE = 0.99;
+
+  private final EmbeddedRabbitMqConfig config;
+  private final LockedPropertiesFile file;
+  private final String key;
+  private final List<Long> durations;
+  private final int timedOutBoots;
+
+  private BootHistory(EmbeddedRabbitMqConfig config, LockedPropertiesFile file, String key, List<String> samples) {
+    this.config = config;
+    this.file = file;
+    this.key = key;
+    this.durations = new ArrayList<>(samples.size());
+    int timedOut = 0;
+    for (String sample : samples) {
+      if (sample.endsWith(TIMED_OUT_MARK)) {
+        timedOut++;
+      }
+      durations.add(getDuration(sample));
+    }
+    this.timedOutBoots = timedOut;
+  }
+
+  /**
+   * Reads the history of the version of the given configuration on this host. If it can't be read, the history is
+   * considered empty.
+   */
+  public static BootHistory load(EmbeddedRabbitMqConfig config) {
+    File folder = config.getDownloadTarget().getAbsoluteFile().getParentFile();
+    LockedPropertiesFile file = new LockedPropertiesFile(new File(folder, FILE_NAME),
+        "Recent RabbitMQ Server boot durations in milliseconds, followed by + if timed out. Key: version@host");
+    final String key = config.getVersion().getVersionAsString() + "@" + new HostNameSupplier().get();
+    List<String> samples;
+    try {
+      Files.createDirectories(folder.toPath());
+      samples = file.update(new LockedPropertiesFile.Update<List<String>>() {
+        @Override
+        public List<String> apply(Map<String, String> properties) {
+          return parse(properties.get(key));
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.debug("Could not read boot history from '{}'", file.getFile(), e);
+      samples = new ArrayList<>();
+    }
+    return new BootHistory(config, file, key, samples);
+  }
+
+  /**
+   * Adds a successful boot to the history, keeping only the {@value MAX_SAMPLES} most recent ones, and logs it if it
+   * was unusually slow.
+   */
+  public void record(long durationInMillis) {
+    if (isOutlier(durationInMillis)) {
+      LOGGER.warn("RabbitMQ Server {} took {}ms to boot, which is unusually slow ({})",
+          config.getVersion().getVersionAsString(), durationInMillis, describe());
+    }
+    append(String.valueOf(durationInMillis));
+  }
+
+  /**
+   * Adds a boot that didn't complete within the given timeout to the history, as one that took exactly that long. It's
+   * a lower bound of how long the boot would have taken, which is enough to raise the timeout derived from the history
+   * once such boots reach its 99th percentile.
+   */
+  public void recordTimeout(long timeoutInMillis) {
+    append(timeoutInMillis + TIMED_OUT_MARK);
+  }
+
+  private void append(final String sample) {
+    try {
+      file.update(new LockedPropertiesFile.Update<Void>() {
+        @Override
+        public Void apply(Map<String, String> properties) {
+          List<String> recorded = parse(properties.get(key));
+          recorded.add(sample);
+          if (recorded.size() > MAX_SAMPLES) {
+            recorded = recorded.subList(recorded.size() - MAX_SAMPLES, recorded.size());
+          }
+          properties.put(key, StringUtils.join(recorded, SEPARATOR));
+          return null;
+        }
+      });
+    } catch (IOException e) {
+      LOGGER.debug("Could not record boot duration in '{}'", file.getFile(), e);
+    }
+  }
+
+  /**
+   * Returns how long to wait for the server to boot: the 99th percentile of previous boots times the safety factor,
+   * within the configured bounds, or the fixed initialization timeout if there aren't enough previous boots yet.
+   *
+   * @see EmbeddedRabbitMqConfig#getStartupTimeoutSafetyFactor()
+   * @see EmbeddedRabbitMqConfig#getRabbitMqServerInitializationTimeoutInMillis()
+   */
+  public long getTimeoutInMillis() {
+    if (durations.size() < MIN_SAMPLES) {
+      return config.getRabbitMqServerInitializationTimeoutInMillis();
+    }
+    long timeout = (long) (getPercentile(PERCENTILE) * config.getStartupTimeoutSafetyFactor());
+    return Math.max(config.getMinStartupTimeoutInMillis(), Math.min(config.getMaxStartupTimeoutInMillis(), timeout));
+  }
+
+  /**
+   * Returns whether a boot took longer than the 99th percentile of previous boots, provided there are enough of them.
+   */
+  public boolean isOutlier(long durationInMillis) {
+    return durations.size() >= MIN_SAMPLES && durationInMillis > getPercentile(PERCENTILE);
+  }
+
+  /**
+   * Returns the duration below which the given fraction of previous boots completed, using the nearest-rank method.
+   */
+  public long getPercentile(double fraction) {
+    if (durations.isEmpty()) {
+      return 0;
+    }
+    List<Long> sorted = new ArrayList<>(durations);
+    Collections.sort(sorted);
+    int rank = (int) Math.ceil(fraction * sorted.size());
+    return sorted.get(Math.max(rank, 1) - 1);
+  }
+
+  /**
+   * Returns the durations of previous boots, oldest first. Boots that timed out count as the timeout they exceeded.
+   */
+  public List<Long> getDurations() {
+    return Collections.unmodifiableList(durations);
+  }
+
+  public int getTimedOutBoots() {
+    return timedOutBoots;
+  }
+
+  /**
+   * Summarizes the history, to be included in log and error messages.
+   */
+  public String describe() {
+    if (durations.isEmpty()) {
+      return "no previous boots recorded";
+    }
+    return "median " + getPercentile(0.5) + "ms, p99 " + getPercentile(PERCENTILE) + "ms over the last "
+        + durations.size() + " boots" + (timedOutBoots > 0 ? ", " + timedOutBoots + " of which timed out" : "");
+  }
+
+  /**
+   * Returns the valid samples of the given recorded value: durations, followed by {@value TIMED_OUT_MARK} for boots
+   * that timed out.
+   */
+  private static List<String> parse(String value) {
+    List<String> samples = new ArrayList<>();
+    if (value == null || value.isEmpty()) {
+      return samples;
+    }
+    for (String sample : value.split(SEPARATOR)) {
+      String trimmed = sample.trim();
+      try {
+        getDuration(trimmed);
+        samples.add(trimmed);
+      } catch (NumberFormatException e) {
+        LOGGER.debug("Ignoring invalid boot duration '{}'", sample);
+      }
+    }
+    return samples;
+  }
+
+  private static long getDuration(String sample) {
+    return Long.parseLong(sample.endsWith(TIMED_OUT_MARK)
+        ? sample.substring(0, sample.length() - TIMED_OUT_MARK.length())
+        : sample);
+  }
+}
@@ -0,0 +1,12 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+public class DataSnapshotException extends RuntimeException {
+
+  public DataSnapshotException(String message) {
+    super(message);
+  }
+
+  public DataSnapshotException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -0,0 +1,111 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommand;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl;
+import io.arivera.oss.embedded.rabbitmq.util.DirectoryUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A helper class used to copy the data folder (the Mnesia database) of a RabbitMQ node aside and to later put it back.
+ * <p>
+ * Snapshots are full copies rather than hard links, since RabbitMQ modifies some of its data files in place, which
+ * would alter the snapshot too.
+ *
+ * @see EmbeddedRabbitMqConfig#getMnesiaFolder()
+ */
+public class DataSnapshotHelper {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DataSnapshotHelper.class);
+
+  private final EmbeddedRabbitMqConfig config;
+  private final File mnesiaFolder;
+
+  public DataSnapshotHelper(EmbeddedRabbitMqConfig config) {
+    this.config = config;
+    this.mnesiaFolder = config.getMnesiaFolder();
+  }
+
+  /**
+   * Copies the data folder of the running node into the given folder, replacing any previous snapshot in it.
+   * <p>
+   * The RabbitMQ application is stopped while the files are copied, so they are in a consistent state, and started
+   * again afterwards. The Erlang node keeps running throughout.
+   *
+   * @throws RabbitMqCommandException if the RabbitMQ application can't be stopped or started.
+   * @throws DataSnapshotException    if the files can't be copied.
+   */
+  public void createSnapshot(File snapshotFolder) throws RabbitMqCommandException, DataSnapshotException {
+    copyWhileAppStopped(mnesiaFolder, snapshotFolder);
+  }
+
+  /**
+   * Replaces the data folder of the running node with a copy of the given snapshot.
+   * <p>
+   * Just like when {@link #createSnapshot(File) creating} it, only the RabbitMQ application is stopped while the files
+   * are copied, and the data is loaded again when it starts. The Erlang node keeps running throughout.
+   *
+   * @throws RabbitMqCommandException if the RabbitMQ application can't be stopped or started.
+   * @throws DataSnapshotException    if the snapshot doesn't exist or the files can't be copied.
+   */
+  public void restoreSnapshot(File snapshotFolder) throws RabbitMqCommandException, DataSnapshotException {
+    if (!snapshotFolder.isDirectory()) {
+      throw new DataSnapshotException("Snapshot folder doesn't exist: " + snapshotFolder);
+    }
+    copyWhileAppStopped(snapshotFolder, mnesiaFolder);
+  }
+
+  /**
+   * Replaces the data folder of a node that isn't running with a copy of the given folder, such as a data template.
+   *
+   * @throws DataSnapshotException if the folder doesn't exist or the files can't be copied.
+   */
+  public void seedFrom(File folder) throws DataSnapshotException {
+    if (!folder.isDirectory()) {
+      throw new DataSnapshotException("Folder to seed data from doesn't exist: " + folder);
+    }
+    try {
+      copy(folder, mnesiaFolder);
+    } catch (IOException e) {
+      throw new DataSnapshotException("Could not copy '" + folder + "' to '" + mnesiaFolder + "'", e);
+    }
+  }
+
+  /**
+   * Replaces the target folder with a copy of the source one while the RabbitMQ application is stopped. The application
+   * is started again even if the copy fails, in which case a failure to start it is reported along with the copy's.
+   */
+  private void copyWhileAppStopped(File source, File target) throws RabbitMqCommandException, DataSnapshotException {
+    RabbitMqCtl rabbitMqCtl = new RabbitMqCtl(config);
+    long timeout = config.getDefaultRabbitMqCtlTimeoutInMillis();
+    RabbitMqCommand.awaitSuccess(rabbitMqCtl.stopApp(), timeout, "stop_app");
+    DataSnapshotException copyFailure = null;
+    try {
+      copy(source, target);
+    } catch (IOException e) {
+      copyFailure = new DataSnapshotException("Could not copy '" + source + "' to '" + target + "'", e);
+      throw copyFailure;
+    } finally {
+      try {
+        RabbitMqCommand.awaitSuccess(rabbitMqCtl.startApp(), timeout, "start_app");
+      } catch (RabbitMqCommandException e) {
+        if (copyFailure == null) {
+          throw e;
+        }
+        copyFailure.addSuppressed(e);
+      }
+    }
+  }
+
+  private static void copy(File source, File target) throws IOException {
+    LOGGER.debug("Replacing '{}' with a copy of '{}'", target, source);
+    DirectoryUtils.delete(target);
+    DirectoryUtils.copy(source, target);
+  }
+}
@@ -0,0 +1,161 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl;
+import io.arivera.oss.embedded.rabbitmq.util.Digests;
+import io.arivera.oss.embedded.rabbitmq.util.DirectoryUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A helper class used to seed the data folder of a node from a template initialized with a set of definitions, creating
+ * the template first if needed.
+ * <p>
+ * Nodes that can't use a template, since their name changes on every run, can be initialized with the definitions
+ * directly instead, using {@link #resetData()} before booting and {@link #importDefinitions()} once they're running.
+ * <p>
+ * Templates are never modified once created. They are created under a temporary name and moved into place atomically,
+ * so concurrent processes creating the same template never see a partial one.
+ *
+ * @see EmbeddedRabbitMqConfig.Builder#dataTemplate(File)
+ */
+public class DataTemplateHelper {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DataTemplateHelper.class);
+
+  private static final String TEMPLATES_FOLDER = "data-templates";
+  private static final int HASH_LENGTH = 16;
+
+  private final EmbeddedRabbitMqConfig config;
+  private final File definitionsFile;
+
+  public DataTemplateHelper(EmbeddedRabbitMqConfig config) {
+    this.config = config;
+    this.definitionsFile = config.getDataTemplateDefinitions();
+  }
+
+  /**
+   * Returns the folder holding the template for the configured version, node name and definitions.
+   *
+   * @throws StartupException if the definitions file can't be read.
+   */
+  public File getTemplateFolder() throws StartupException {
+    byte[] definitions;
+    try {
+      definitions = Files.readAllBytes(definitionsFile.toPath());
+    } catch (IOException e) {
+      throw new StartupException("Could not read definitions file " + definitionsFile, e);
+    }
+    String name = config.getVersion().getVersionAsString() + "-" + config.getNodeName() + "-"
+        + Digests.sha256Hex(definitions).substring(0, HASH_LENGTH);
+    return new File(new File(config.getExtractionFolder(), TEMPLATES_FOLDER), name);
+  }
+
+  /**
+   * Replaces the data folder of the node with a copy of the template, creating the template first if it doesn't exist.
+   * <p>
+   * The node must not be running while this happens.
+   *
+   * @return whether the template had to be created.
+   * @throws StartupException if the template can't be created or copied.
+   */
+  public boolean seed() throws StartupException {
+    File templateFolder = getTemplateFolder();
+    boolean created = false;
+    if (!templateFolder.isDirectory()) {
+      createTemplate(templateFolder);
+      created = true;
+    }
+    try {
+      new DataSnapshotHelper(config).seedFrom(templateFolder);
+    } catch (DataSnapshotException e) {
+      throw new StartupException("Could not seed data folder from template " + templateFolder, e);
+    }
+    return created;
+  }
+
+  /**
+   * Empties the data folder of the node, which must not be running, so nothing is left from a previous run.
+   *
+   * @throws StartupException if the data folder can't be emptied.
+   */
+  public void resetData() throws StartupException {
+    File mnesiaFolder = config.getMnesiaFolder();
+    try {
+      DirectoryUtils.delete(mnesiaFolder);
+    } catch (IOException e) {
+      throw new StartupException("Could not empty data folder " + mnesiaFolder, e);
+    }
+  }
+
+  private void createTemplate(File templateFolder) throws StartupException {
+    LOGGER.info("Creating data template '{}' from definitions '{}'", templateFolder, definitionsFile);
+    File mnesiaFolder = config.getMnesiaFolder();
+    resetData();
+
+    Future<ProcessResult> rabbitMqProcess = new StartupHelper(config).call();
+    try {
+      importDefinitions();
+    } finally {
+      new ShutdownHelper(config, rabbitMqProcess).run();
+    }
+
+    File temporaryFolder = new File(templateFolder.getParentFile(), templateFolder.getName() + "-" + UUID.randomUUID());
+    try {
+      DirectoryUtils.copy(mnesiaFolder, temporaryFolder);
+      Files.move(temporaryFolder.toPath(), templateFolder.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (FileAlreadyExistsException e) {
+      LOGGER.debug("Data template '{}' was created concurrently. Discarding this copy.", templateFolder);
+    } catch (IOException e) {
+      if (!templateFolder.isDirectory()) {
+        throw new StartupException("Could not store data template in " + templateFolder, e);
+      }
+      LOGGER.debug("Data template '{}' was created concurrently. Discarding this copy.", templateFolder);
+    } finally {
+      deleteQuietly(temporaryFolder);
+    }
+  }
+
+  /**
+   * Imports the definitions into the running node.
+   *
+   * @throws StartupException if the definitions can't be imported.
+   */
+  public void importDefinitions() throws StartupException {
+    long timeout = config.getDefaultRabbitMqCtlTimeoutInMillis();
+    int exitValue;
+    try {
+      Future<ProcessResult> command =
+          new RabbitMqCtl(config).execute("import_definitions", definitionsFile.getAbsolutePath());
+      exitValue = command.get(timeout, TimeUnit.MILLISECONDS).getExitValue();
+    } catch (RabbitMqCommandException | InterruptedException | ExecutionException | TimeoutException e) {
+      throw new StartupException("Could not import definitions from " + definitionsFile, e);
+    }
+    if (exitValue != 0) {
+      throw new StartupException("Importing definitions from " + definitionsFile + " failed with exit value "
+          + exitValue + ". Note it requires RabbitMQ 3.8.2 or later.");
+    }
+  }
+
+  private static void deleteQuietly(File folder) {
+    try {
+      DirectoryUtils.delete(folder);
+    } catch (IOException e) {
+      LOGGER.warn("Could not delete temporary folder '{}'", folder, e);
+    }
+  }
+}
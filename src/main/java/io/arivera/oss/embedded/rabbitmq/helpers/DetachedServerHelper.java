@@ -0,0 +1,353 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.RabbitMqEnvVar;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommand;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqServer;
+import io.arivera.oss.embedded.rabbitmq.util.Digests;
+import io.arivera.oss.embedded.rabbitmq.util.ProcessIds;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessOutput;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A helper class used to run a RabbitMQ Server detached from the JVM, so it can be reused by later JVMs.
+ * <p>
+ * When started, a descriptor of the server is written to the extraction folder, holding the fingerprint of the
+ * configuration it was started with, the process id of its Erlang VM, its ports, a hash of the Erlang cookie it trusts
+ * and when it expires. A later JVM with an identical configuration adopts the server if all of them still hold and the
+ * server answers an AMQP handshake.
+ * <p>
+ * The server stops itself once it expires, since no JVM might be around by then to stop it. Adopting it pushes its
+ * expiration back by the configured time-to-live, as if it had just been started.
+ */
+public class DetachedServerHelper {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(DetachedServerHelper.class);
+
+  private static final String FINGERPRINT = "fingerprint";
+  private static final String PID = "pid";
+  private static final String PORT = "port";
+  private static final String DIST_PORT = "distPort";
+  private static final String NODE_NAME = "nodeName";
+  private static final String COOKIE_HASH = "cookieHash";
+  private static final String EXPIRES_AT = "expiresAtMillis";
+
+  /**
+   * Key of the {@code rabbit} application environment that holds the timer stopping the node once it expires, so it
+   * can be cancelled when the expiration is pushed back.
+   */
+  private static final String EXPIRATION_TIMER_ENV_KEY = "embedded_rabbitmq_expiration_timer";
+  private static final Pattern PID_PATTERN = Pattern.compile("\"?(\\d+)\"?");
+
+  private final EmbeddedRabbitMqConfig config;
+  private final String fingerprint;
+
+  /**
+   * @param fingerprint canonical representation of the configuration, used to tell whether a running server was started
+   *                    with an identical one.
+   */
+  public DetachedServerHelper(EmbeddedRabbitMqConfig config, String fingerprint) {
+    this.config = config;
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Returns the file describing the detached server running for the configured node, if any.
+   */
+  public File getDescriptorFile() {
+    return new File(config.getExtractionFolder(), "embedded-rabbitmq-" + config.getNodeName() + ".properties");
+  }
+
+  /**
+   * Returns the process id of the Erlang VM of the detached server described for the configured node, or {@code null}
+   * if there's none.
+   */
+  public String getServerPid() {
+    Properties descriptor = readDescriptor();
+    return descriptor == null ? null : descriptor.getProperty(PID);
+  }
+
+  /**
+   * Looks for a live server started with an identical configuration by a previous JVM.
+   *
+   * @return a future that completes once the adopted server exits, or {@code null} if there's no server to adopt.
+   */
+  public Future<ProcessResult> adopt() {
+    Properties descriptor = readDescriptor();
+    if (descriptor == null) {
+      return null;
+    }
+    String pid = descriptor.getProperty(PID);
+    String reason = null;
+    if (!fingerprint.equals(descriptor.getProperty(FINGERPRINT))) {
+      reason = "it was started with a different configuration";
+    } else if (System.currentTimeMillis() >= Long.parseLong(descriptor.getProperty(EXPIRES_AT, "0"))) {
+      reason = "it has expired";
+    } else if (pid == null || !ProcessIds.isAlive(pid)) {
+      reason = "its process (pid " + pid + ") isn't running";
+    } else if (!getCookieHash().equals(descriptor.getProperty(COOKIE_HASH))) {
+      reason = "it trusts a different Erlang cookie";
+    } else if (!AmqpHandshakeReadinessCheck.isHandshakeAnswered(AmqpHandshakeReadinessCheck.Factory.getAddress(config))) {
+      reason = "it doesn't answer an AMQP handshake";
+    } else {
+      reason = extendExpiration(pid);
+    }
+
+    if (reason != null) {
+      LOGGER.info("Not reusing detached RabbitMQ Server described in '{}' since {}", getDescriptorFile(), reason);
+      return null;
+    }
+    LOGGER.info("Reusing detached RabbitMQ Server (pid {}) described in '{}', which will now stop itself in {}ms "
+        + "unless stopped before", pid, getDescriptorFile(), config.getDetachedServerTtlInMillis());
+    return new DetachedProcessFuture(pid);
+  }
+
+  /**
+   * Reschedules the expiration of an adopted server a whole time-to-live from now, so it doesn't stop itself while it's
+   * still in use.
+   *
+   * @return why the server can't be adopted, or {@code null} if its expiration was extended.
+   */
+  private String extendExpiration(String pid) {
+    long ttl = config.getDetachedServerTtlInMillis();
+    try {
+      scheduleExpiration(ttl);
+      writeDescriptor(pid, System.currentTimeMillis() + ttl);
+      return null;
+    } catch (StartupException e) {
+      LOGGER.debug("Could not extend the expiration of detached RabbitMQ Server (pid {})", pid, e);
+      return "its expiration couldn't be extended";
+    }
+  }
+
+  /**
+   * Starts the RabbitMQ Server detached from this JVM and blocks the current thread until it answers an AMQP handshake.
+   * <p>
+   * Readiness is always checked with an AMQP handshake, regardless of the configured check, since the output of a
+   * detached server can't be followed.
+   *
+   * @return a future that completes once the server exits.
+   * @throws StartupException if the server can't be started, confirmed to be running or described.
+   */
+  public Future<ProcessResult> start() throws StartupException {
+    deleteDescriptor();
+    final ReadinessCheck readinessCheck = new AmqpHandshakeReadinessCheck.Factory().create(config);
+    try {
+      RabbitMqCommand.awaitSuccess(new RabbitMqServer(config).startDetached(),
+          config.getDefaultRabbitMqCtlTimeoutInMillis(), "rabbitmq-server -detached");
+    } catch (RabbitMqCommandException e) {
+      throw new StartupException("Could not start detached RabbitMQ Server", e);
+    }
+
+    long timeout = config.getRabbitMqServerInitializationTimeoutInMillis();
+    if (!readinessCheck.awaitReadiness(timeout, TimeUnit.MILLISECONDS)) {
+      throw new StartupException(
+          "Could not confirm detached RabbitMQ Server initialization completed successfully within " + timeout + "ms");
+    }
+
+    long ttl = config.getDetachedServerTtlInMillis();
+    String pid = scheduleExpiration(ttl);
+    writeDescriptor(pid, System.currentTimeMillis() + ttl);
+    LOGGER.info("Started detached RabbitMQ Server (pid {}), which will stop itself in {}ms unless stopped before",
+        pid, ttl);
+    return new DetachedProcessFuture(pid);
+  }
+
+  /**
+   * Stops the detached server and removes its descriptor, so no other JVM attempts to adopt it.
+   *
+   * @param rabbitMqProcess the future returned when the server was started or adopted.
+   */
+  public void stop(Future<ProcessResult> rabbitMqProcess) throws ShutDownException {
+    deleteDescriptor();
+    new ShutdownHelper(config, rabbitMqProcess).run();
+  }
+
+  /**
+   * Has the node stop itself once the given time elapses, so it doesn't outlive its usefulness if no JVM ever stops it.
+   * The expiration scheduled before, if any, is cancelled.
+   *
+   * @return the process id of the node's Erlang VM.
+   */
+  private String scheduleExpiration(long ttlInMillis) throws StartupException {
+    String expression = "case application:get_env(rabbit, " + EXPIRATION_TIMER_ENV_KEY + ") of "
+        + "{ok, PreviousTimer} -> timer:cancel(PreviousTimer); undefined -> ok end, "
+        + "{ok, Timer} = timer:apply_after(" + ttlInMillis + ", init, stop, []), "
+        + "application:set_env(rabbit, " + EXPIRATION_TIMER_ENV_KEY + ", Timer), "
+        + "os:getpid().";
+    String output;
+    try {
+      output = RabbitMqCommand.awaitSuccess(new RabbitMqCtl(config).execute("eval", expression),
+          config.getDefaultRabbitMqCtlTimeoutInMillis(), "eval").outputUTF8().trim();
+    } catch (RabbitMqCommandException e) {
+      throw new StartupException("Could not schedule the expiration of detached RabbitMQ Server", e);
+    }
+    Matcher matcher = PID_PATTERN.matcher(output);
+    if (!matcher.matches()) {
+      throw new StartupException("Could not tell the process id of detached RabbitMQ Server from: " + output);
+    }
+    return matcher.group(1);
+  }
+
+  void writeDescriptor(String pid, long expiresAtMillis) throws StartupException {
+    Properties descriptor = new Properties();
+    descriptor.setProperty(FINGERPRINT, fingerprint);
+    descriptor.setProperty(PID, pid);
+    descriptor.setProperty(PORT, String.valueOf(config.getRabbitMqPort()));
+    String distPort = config.getEnvVars().get(RabbitMqEnvVar.DIST_PORT.getEnvVarName());
+    if (distPort != null) {
+      descriptor.setProperty(DIST_PORT, distPort);
+    }
+    descriptor.setProperty(NODE_NAME, config.getNodeName());
+    descriptor.setProperty(COOKIE_HASH, getCookieHash());
+    descriptor.setProperty(EXPIRES_AT, String.valueOf(expiresAtMillis));
+
+    File descriptorFile = getDescriptorFile();
+    try (OutputStream output = Files.newOutputStream(descriptorFile.toPath())) {
+      descriptor.store(output, "Detached RabbitMQ Server started by embedded-rabbitmq");
+    } catch (IOException e) {
+      throw new StartupException("Could not write descriptor of detached RabbitMQ Server to " + descriptorFile, e);
+    }
+  }
+
+  Properties readDescriptor() {
+    File descriptorFile = getDescriptorFile();
+    if (!descriptorFile.isFile()) {
+      return null;
+    }
+    Properties descriptor = new Properties();
+    try (InputStream input = Files.newInputStream(descriptorFile.toPath())) {
+      descriptor.load(input);
+      return descriptor;
+    } catch (IOException | IllegalArgumentException e) {
+      LOGGER.warn("Could not read descriptor of detached RabbitMQ Server from '{}'", descriptorFile, e);
+      return null;
+    }
+  }
+
+  private void deleteDescriptor() {
+    try {
+      Files.deleteIfExists(getDescriptorFile().toPath());
+    } catch (IOException e) {
+      LOGGER.warn("Could not delete descriptor of detached RabbitMQ Server '{}'", getDescriptorFile(), e);
+    }
+  }
+
+  /**
+   * Only a hash of the cookie is stored, since the descriptor usually lives in a world-readable folder and the cookie
+   * grants full control over the node.
+   *
+   * @return hex-encoded SHA-256 hash of the Erlang cookie in the user's home folder, or an empty string if there's none.
+   */
+  static String getCookieHash() {
+    File cookieFile = new File(System.getProperty("user.home"), ".erlang.cookie");
+    byte[] cookie;
+    try {
+      cookie = cookieFile.isFile() ? Files.readAllBytes(cookieFile.toPath()) : new byte[0];
+    } catch (IOException e) {
+      LOGGER.debug("Could not read Erlang cookie from '{}'", cookieFile, e);
+      cookie = new byte[0];
+    }
+    if (cookie.length == 0) {
+      return "";
+    }
+    return Digests.sha256Hex(cookie);
+  }
+
+  /**
+   * Represents a process not started by this JVM, which is only known by its process id. It completes once the process
+   * exits, with an exit value of {@code 0} and no output, since neither of them can be known.
+   */
+  static class DetachedProcessFuture implements Future<ProcessResult> {
+
+    private static final long POLL_INTERVAL_IN_MILLIS = 50;
+
+    private final String pid;
+    private volatile boolean cancelled;
+
+    DetachedProcessFuture(String pid) {
+      this.pid = pid;
+      this.cancelled = false;
+    }
+
+    /**
+     * Kills the process if {@code mayInterruptIfRunning} is {@code true}. Otherwise, the process is left running and
+     * only this future is cancelled.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      if (isDone()) {
+        return false;
+      }
+      if (mayInterruptIfRunning) {
+        try {
+          new ProcessExecutor("kill", "-KILL", pid).exitValueAny().execute();
+        } catch (IOException | TimeoutException e) {
+          LOGGER.warn("Could not kill detached RabbitMQ Server (pid {})", pid, e);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+      cancelled = true;
+      return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public boolean isDone() {
+      return cancelled || !ProcessIds.isAlive(pid);
+    }
+
+    @Override
+    public ProcessResult get() throws InterruptedException, ExecutionException {
+      while (!isDone()) {
+        Thread.sleep(POLL_INTERVAL_IN_MILLIS);
+      }
+      return exited();
+    }
+
+    @Override
+    public ProcessResult get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+      long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+      while (!isDone()) {
+        if (System.currentTimeMillis() >= deadline) {
+          throw new TimeoutException("Process " + pid + " still running after " + timeout + " " + unit);
+        }
+        Thread.sleep(POLL_INTERVAL_IN_MILLIS);
+      }
+      return exited();
+    }
+
+    private ProcessResult exited() {
+      if (cancelled) {
+        throw new CancellationException("Waiting for process " + pid + " was cancelled");
+      }
+      return new ProcessResult(0, new ProcessOutput(new byte[0]));
+    }
+  }
+}
@@ -0,0 +1,330 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.util.DaemonThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Listens on a port on behalf of a server that hasn't been started yet, starting it when the first client connects and
+ * forwarding all traffic between clients and the server from then on.
+ * <p>
+ * All connections are handled by a single thread using non-blocking I/O. Data is relayed through direct buffers, which
+ * is the closest Java gets to splicing two sockets together. The server is started on a thread of its own, so clients
+ * connecting meanwhile are still accepted, and they are all forwarded to the server once it's up.
+ * <p>
+ * When either side of a connection closes its output, whatever it sent before is still delivered to the other side,
+ * and only then is its output closed too. The connection is closed once both sides have done so.
+ */
+public class LazyStartProxy implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(LazyStartProxy.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final InetSocketAddress listenAddress;
+  private final InetSocketAddress backendAddress;
+  private final Runnable backendStarter;
+
+  private final List<SocketChannel> waitingClients;
+  private final Queue<Runnable> selectorTasks;
+
+  private Selector selector;
+  private ServerSocketChannel serverChannel;
+  private Thread thread;
+  private Thread backendStarterThread;
+  private volatile boolean backendStarted;
+  private volatile boolean closing;
+
+  /**
+   * @param listenAddress  address clients will connect to.
+   * @param backendAddress address the server will listen on once started.
+   * @param backendStarter blocks until the server has been started. If it fails, it will be invoked again for the next
+   *                       client that connects.
+   */
+  public LazyStartProxy(InetSocketAddress listenAddress, InetSocketAddress backendAddress, Runnable backendStarter) {
+    this.listenAddress = listenAddress;
+    this.backendAddress = backendAddress;
+    this.backendStarter = backendStarter;
+    this.waitingClients = new ArrayList<>();
+    this.selectorTasks = new ConcurrentLinkedQueue<>();
+    this.backendStarted = false;
+  }
+
+  /**
+   * Binds the listening address and starts accepting connections in the background.
+   *
+   * @throws IOException if the address can't be bound.
+   */
+  public synchronized void start() throws IOException {
+    if (selector != null) {
+      throw new IllegalStateException("Proxy has already been started.");
+    }
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    try {
+      serverChannel.bind(listenAddress);
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      serverChannel.close();
+      selector.close();
+      throw e;
+    }
+    thread = new DaemonThreadFactory("RabbitMQ-Lazy-Proxy").newThread(new Runnable() {
+      @Override
+      public void run() {
+        serve();
+      }
+    });
+    thread.start();
+    LOGGER.info("Listening on {} and will start RabbitMQ once a client connects", listenAddress);
+  }
+
+  /**
+   * @return whether the server has been started because of a client connecting.
+   */
+  public boolean isBackendStarted() {
+    return backendStarted;
+  }
+
+  private void serve() {
+    try {
+      while (!closing) {
+        selector.select();
+        for (Runnable task = selectorTasks.poll(); task != null; task = selectorTasks.poll()) {
+          task.run();
+        }
+        for (SelectionKey key : selector.selectedKeys()) {
+          handle(key);
+        }
+        selector.selectedKeys().clear();
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      LOGGER.error("Proxy on {} stopped unexpectedly", listenAddress, e);
+    } finally {
+      closeAll();
+    }
+  }
+
+  private void closeAll() {
+    for (SocketChannel client : waitingClients) {
+      closeQuietly(client);
+    }
+    for (SelectionKey key : selector.keys()) {
+      try {
+        key.channel().close();
+      } catch (IOException e) {
+        LOGGER.debug("Could not close channel", e);
+      }
+    }
+    try {
+      selector.close();
+    } catch (IOException e) {
+      LOGGER.debug("Could not close selector", e);
+    }
+  }
+
+  private void handle(SelectionKey key) throws IOException {
+    if (!key.isValid()) {
+      return;
+    }
+    if (key.isAcceptable()) {
+      accept();
+      return;
+    }
+    Endpoint endpoint = (Endpoint) key.attachment();
+    try {
+      if (key.isReadable()) {
+        read(endpoint);
+      } else if (key.isWritable()) {
+        flush(endpoint.peer);
+      }
+    } catch (IOException e) {
+      LOGGER.debug("Closing proxied connection due to: {}", e.toString());
+      closeQuietly(endpoint);
+    }
+  }
+
+  private void accept() throws IOException {
+    SocketChannel client = serverChannel.accept();
+    if (client == null) {
+      return;
+    }
+    if (backendStarted) {
+      connectToBackend(client);
+      return;
+    }
+    waitingClients.add(client);
+    if (waitingClients.size() == 1) {
+      startBackend();
+    }
+  }
+
+  /**
+   * Starts the server in the background, and lets the selector thread forward the clients waiting for it once it's up,
+   * or disconnect them if it failed to start.
+   */
+  private void startBackend() {
+    backendStarterThread = new DaemonThreadFactory("RabbitMQ-Lazy-Start").newThread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          backendStarter.run();
+          backendStarted = true;
+        } catch (RuntimeException e) {
+          LOGGER.error("Could not start RabbitMQ for the clients connecting to {}", listenAddress, e);
+        }
+        selectorTasks.add(new Runnable() {
+          @Override
+          public void run() {
+            backendStartFinished();
+          }
+        });
+        selector.wakeup();
+      }
+    });
+    backendStarterThread.start();
+  }
+
+  private void backendStartFinished() {
+    List<SocketChannel> clients = new ArrayList<>(waitingClients);
+    waitingClients.clear();
+    for (SocketChannel client : clients) {
+      if (backendStarted) {
+        connectToBackend(client);
+      } else {
+        closeQuietly(client);
+      }
+    }
+  }
+
+  private void connectToBackend(SocketChannel client) {
+    SocketChannel backend;
+    try {
+      backend = SocketChannel.open(backendAddress);
+    } catch (IOException e) {
+      LOGGER.error("Could not connect to RabbitMQ on {}", backendAddress, e);
+      closeQuietly(client);
+      return;
+    }
+    try {
+      Endpoint clientEndpoint = register(client);
+      Endpoint backendEndpoint = register(backend);
+      clientEndpoint.peer = backendEndpoint;
+      backendEndpoint.peer = clientEndpoint;
+    } catch (IOException e) {
+      LOGGER.debug("Could not forward client connection to RabbitMQ", e);
+      closeQuietly(client);
+      closeQuietly(backend);
+    }
+  }
+
+  private Endpoint register(SocketChannel channel) throws IOException {
+    channel.configureBlocking(false);
+    Endpoint endpoint = new Endpoint(channel);
+    endpoint.key = channel.register(selector, SelectionKey.OP_READ, endpoint);
+    return endpoint;
+  }
+
+  private void read(Endpoint endpoint) throws IOException {
+    if (endpoint.channel.read(endpoint.inbound) < 0) {
+      endpoint.endOfStream = true;
+      endpoint.key.interestOps(endpoint.key.interestOps() & ~SelectionKey.OP_READ);
+    }
+    flush(endpoint);
+  }
+
+  /**
+   * Writes whatever was read from the given endpoint into its peer. Reading from the endpoint is paused until the peer
+   * has accepted all of it. Once the endpoint reached the end of its stream and all of it was written, the output of the
+   * peer is closed, and the connection is closed once that happened in both directions.
+   */
+  private void flush(Endpoint from) throws IOException {
+    Endpoint to = from.peer;
+    from.inbound.flip();
+    to.channel.write(from.inbound);
+    boolean drained = !from.inbound.hasRemaining();
+    from.inbound.compact();
+    if (!drained) {
+      to.key.interestOps(to.key.interestOps() | SelectionKey.OP_WRITE);
+      from.key.interestOps(from.key.interestOps() & ~SelectionKey.OP_READ);
+      return;
+    }
+    to.key.interestOps(to.key.interestOps() & ~SelectionKey.OP_WRITE);
+    if (!from.endOfStream) {
+      from.key.interestOps(from.key.interestOps() | SelectionKey.OP_READ);
+    } else if (!to.outputShutdown) {
+      to.channel.shutdownOutput();
+      to.outputShutdown = true;
+      if (from.outputShutdown) {
+        closeQuietly(from);
+      }
+    }
+  }
+
+  private static void closeQuietly(Endpoint endpoint) {
+    closeQuietly(endpoint.channel);
+    closeQuietly(endpoint.peer.channel);
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOGGER.debug("Could not close proxied connection", e);
+    }
+  }
+
+  /**
+   * Stops accepting connections and closes all the ones that were being proxied. The server, if started, is left
+   * running. If it's being started, this waits for it to finish starting, so {@link #isBackendStarted()} tells whether
+   * it has to be stopped.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (thread == null || closing) {
+      return;
+    }
+    closing = true;
+    selector.wakeup();
+    try {
+      thread.join();
+      if (backendStarterThread != null) {
+        backendStarterThread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for proxy on " + listenAddress + " to close", e);
+    }
+  }
+
+  private static class Endpoint {
+
+    private final SocketChannel channel;
+    private final ByteBuffer inbound;
+    private SelectionKey key;
+    private Endpoint peer;
+    private boolean endOfStream;
+    private boolean outputShutdown;
+
+    private Endpoint(SocketChannel channel) {
+      this.channel = channel;
+      this.inbound = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+  }
+}
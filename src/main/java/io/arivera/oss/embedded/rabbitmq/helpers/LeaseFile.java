@@ -0,0 +1,21 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.util.LockedPropertiesFile;
+
+import java.io.File;
+
+/**
+ * A file recording who holds a lease on a resource shared by several processes, like a RabbitMQ Server shared by
+ * several JVMs running on the same host.
+ * <p>
+ * Each lease is identified by a key and records the id of the process holding it, optionally followed by details of
+ * what it was granted on. All changes happen while holding an exclusive lock on the file, so they are serialized
+ * across processes as well as across threads of the same JVM.
+ */
+public class LeaseFile extends LockedPropertiesFile {
+
+  public LeaseFile(File file) {
+    super(file, "Leases on a shared RabbitMQ Server. Key: lease id, or 'stopping' for the server being stopped, value: "
+        + "pid of its holder[@pid of the server].");
+  }
+}
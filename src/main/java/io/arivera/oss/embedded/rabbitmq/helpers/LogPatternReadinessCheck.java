@@ -0,0 +1,56 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Considers the RabbitMQ Server ready once a line of its output matches a pattern, which by default is the
+ * "{@code completed with [N] plugins.}" message RabbitMQ prints at the end of its startup sequence.
+ * <p>
+ * This depends on the format of the logs and on them being written to the console.
+ *
+ * @see StartupHelper#BROKER_STARTUP_COMPLETED
+ */
+public class LogPatternReadinessCheck implements ReadinessCheck {
+
+  private final StartupHelper.PatternFinderOutputStream patternFinder;
+
+  public LogPatternReadinessCheck(String pattern) {
+    this.patternFinder = new StartupHelper.PatternFinderOutputStream(pattern);
+  }
+
+  @Override
+  public OutputStream getProcessOutputStream() {
+    return patternFinder;
+  }
+
+  @Override
+  public void processFinished(int exitValue) {
+    patternFinder.processFinished(exitValue);
+  }
+
+  @Override
+  public boolean awaitReadiness(long duration, TimeUnit timeUnit) {
+    return patternFinder.waitForMatch(duration, timeUnit);
+  }
+
+  public static class Factory implements ReadinessCheck.Factory {
+
+    private final String pattern;
+
+    public Factory() {
+      this(StartupHelper.BROKER_STARTUP_COMPLETED);
+    }
+
+    public Factory(String pattern) {
+      this.pattern = pattern;
+    }
+
+    @Override
+    public ReadinessCheck create(EmbeddedRabbitMqConfig config) {
+      return new LogPatternReadinessCheck(pattern);
+    }
+  }
+}
@@ -0,0 +1,11 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+/**
+ * Thrown when the RabbitMQ Server can't start because one of its ports is already in use by another process.
+ */
+public class PortConflictException extends BootFailureException {
+
+  public PortConflictException(String msg, String failure, String outputLine) {
+    super(msg, failure, outputLine);
+  }
+}
@@ -0,0 +1,40 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines when a freshly started RabbitMQ Server is ready to be used.
+ * <p>
+ * A new instance is {@link Factory#create(EmbeddedRabbitMqConfig) created} every time the server is started.
+ *
+ * @see AmqpHandshakeReadinessCheck
+ * @see LogPatternReadinessCheck
+ */
+public interface ReadinessCheck {
+
+  /**
+   * @return stream that will receive the output of the {@code rabbitmq-server} process as it happens.
+   */
+  OutputStream getProcessOutputStream();
+
+  /**
+   * Invoked if the {@code rabbitmq-server} process finishes, in which case the server will never become ready.
+   */
+  void processFinished(int exitValue);
+
+  /**
+   * Blocks the current thread until the server is ready or the given amount of time has passed.
+   *
+   * @return {@code true} if the server is ready, {@code false} otherwise.
+   */
+  boolean awaitReadiness(long duration, TimeUnit timeUnit);
+
+  interface Factory {
+
+    ReadinessCheck create(EmbeddedRabbitMqConfig config);
+
+  }
+}
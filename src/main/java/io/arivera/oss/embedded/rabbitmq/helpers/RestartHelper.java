@@ -0,0 +1,69 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommand;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCtl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A helper class used to restart the RabbitMQ application within an already running Erlang node, and wait until it's
+ * ready to be used again.
+ * <p>
+ * Readiness is confirmed using the same {@link ReadinessCheck} used when the server is started, unless it's a
+ * {@link LogPatternReadinessCheck}: the server's logs aren't written to the output of {@code start_app}, so the pattern
+ * would never be found, and an {@link AmqpHandshakeReadinessCheck} is used instead. Other checks are fed with the output
+ * of {@code start_app}.
+ */
+public class RestartHelper implements Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(RestartHelper.class);
+
+  private final EmbeddedRabbitMqConfig config;
+
+  public RestartHelper(EmbeddedRabbitMqConfig config) {
+    this.config = config;
+  }
+
+  /**
+   * @throws ShutDownException if the application can't be stopped.
+   * @throws StartupException  if the application can't be started or isn't confirmed to be ready in time.
+   */
+  @Override
+  public void run() throws ShutDownException, StartupException {
+    try {
+      RabbitMqCommand.awaitSuccess(new RabbitMqCtl(config).stopApp(), config.getDefaultRabbitMqCtlTimeoutInMillis(),
+          "stop_app");
+    } catch (RabbitMqCommandException e) {
+      throw new ShutDownException("Could not stop RabbitMQ application", e);
+    }
+    LOGGER.debug("RabbitMQ application stopped.");
+
+    ReadinessCheck readinessCheck = createReadinessCheck();
+    long timeout = config.getRabbitMqServerInitializationTimeoutInMillis();
+    try {
+      RabbitMqCommand.awaitSuccess(
+          new RabbitMqCtl(config).writeOutputTo(readinessCheck.getProcessOutputStream()).startApp(), timeout, "start_app");
+    } catch (RabbitMqCommandException e) {
+      throw new StartupException("Could not start RabbitMQ application", e);
+    }
+
+    if (!readinessCheck.awaitReadiness(timeout, TimeUnit.MILLISECONDS)) {
+      throw new StartupException(
+          "Could not confirm RabbitMQ application restart completed successfully within " + timeout + "ms");
+    }
+  }
+
+  private ReadinessCheck createReadinessCheck() {
+    ReadinessCheck.Factory factory = config.getReadinessCheckFactory();
+    if (factory instanceof LogPatternReadinessCheck.Factory) {
+      LOGGER.debug("Confirming restart with an AMQP handshake, since the server's logs aren't part of start_app's output");
+      factory = new AmqpHandshakeReadinessCheck.Factory();
+    }
+    return factory.create(config);
+  }
+}
@@ -15,6 +15,9 @@ import java.util.concurrent.TimeoutException;
 
 /**
  * A helper class used to shut down a specific RabbitMQ Process and wait until it's the process is stopped.
+ * <p>
+ * The command to stop it isn't destroyed when the JVM exits, since it's also used while the JVM is exiting, to stop the
+ * servers still running by then.
  */
 public class ShutdownHelper implements Runnable {
 
@@ -44,7 +47,7 @@ public class ShutdownHelper implements Runnable {
   private void submitShutdownRequest() throws ShutDownException {
     Future<ProcessResult> resultFuture;
     try {
-      resultFuture = new RabbitMqCtl(config).stop();
+      resultFuture = new RabbitMqCtl(config).destroyOnExit(false).stop();
     } catch (RabbitMqCommandException e) {
       throw new ShutDownException("Could not successfully execute command to stop RabbitMQ Server", e);
     }
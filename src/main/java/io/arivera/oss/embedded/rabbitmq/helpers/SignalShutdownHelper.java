@@ -0,0 +1,166 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A helper class used to shut down a specific RabbitMQ Process by signaling its Erlang VM directly, instead of
+ * launching {@code rabbitmqctl stop}.
+ * <p>
+ * The VM is sent a {@code SIGTERM}, which it handles by stopping gracefully, and a {@code SIGKILL} if it didn't exit
+ * within the {@link EmbeddedRabbitMqConfig#getSignalShutdownGracePeriodInMillis() grace period}. The shutdown is only
+ * considered complete once the process has exited and its ports can be bound again.
+ * <p>
+ * If signals aren't supported (i.e. on Windows) or the process id of the VM is unknown, {@link ShutdownHelper} is used
+ * instead.
+ *
+ * @see EmbeddedRabbitMqConfig#getPidFile()
+ */
+public class SignalShutdownHelper implements Runnable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(SignalShutdownHelper.class);
+
+  private static final long PORT_CHECK_INTERVAL_IN_MILLIS = 20;
+  private static final int MAX_PORT = 65535;
+
+  private final EmbeddedRabbitMqConfig config;
+  private final Future<ProcessResult> rabbitMqProcess;
+
+  public SignalShutdownHelper(EmbeddedRabbitMqConfig config, Future<ProcessResult> rabbitMqProcess) {
+    this.config = config;
+    this.rabbitMqProcess = rabbitMqProcess;
+  }
+
+  @Override
+  public void run() throws ShutDownException {
+    if (OperatingSystem.detect() == OperatingSystem.WINDOWS) {
+      LOGGER.debug("Signals aren't supported on Windows. Using rabbitmqctl to stop RabbitMQ Server instead.");
+      new ShutdownHelper(config, rabbitMqProcess).run();
+      return;
+    }
+
+    String pid = readPid(config.getPidFile());
+    if (pid == null) {
+      LOGGER.warn("Process id of RabbitMQ Server is unknown. Using rabbitmqctl to stop it instead.");
+      new ShutdownHelper(config, rabbitMqProcess).run();
+      return;
+    }
+
+    long gracePeriod = config.getSignalShutdownGracePeriodInMillis();
+    signal("TERM", pid);
+    if (!awaitExit(gracePeriod)) {
+      LOGGER.warn("RabbitMQ Server (pid {}) didn't stop within {}ms. Killing it.", pid, gracePeriod);
+      signal("KILL", pid);
+      long timeout = config.getDefaultRabbitMqCtlTimeoutInMillis();
+      if (!awaitExit(timeout)) {
+        throw new ShutDownException("RabbitMQ Server (pid " + pid + ") didn't exit within " + timeout + "ms of being "
+            + "killed", null);
+      }
+    }
+    awaitPortsReleased();
+    LOGGER.debug("RabbitMQ Server (pid {}) stopped successfully.", pid);
+  }
+
+  /**
+   * Sends a {@code SIGKILL} to the Erlang VM, if its process id is known, and destroys the {@code rabbitmq-server}
+   * process, without waiting for either of them to exit.
+   */
+  public void kill() {
+    String pid = OperatingSystem.detect() == OperatingSystem.WINDOWS ? null : readPid(config.getPidFile());
+    if (pid != null) {
+      try {
+        signal("KILL", pid);
+      } catch (ShutDownException e) {
+        LOGGER.warn("Could not kill RabbitMQ Server (pid {})", pid, e);
+      }
+    }
+    rabbitMqProcess.cancel(true);
+  }
+
+  private static String readPid(File pidFile) {
+    try {
+      String pid = new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+      return pid.matches("\\d+") ? pid : null;
+    } catch (IOException e) {
+      LOGGER.debug("Could not read pid file '{}'", pidFile, e);
+      return null;
+    }
+  }
+
+  private void signal(String signal, String pid) throws ShutDownException {
+    try {
+      int exitValue = new ProcessExecutor("kill", "-" + signal, pid).exitValueAny().execute().getExitValue();
+      if (exitValue != 0) {
+        LOGGER.debug("Sending SIG{} to pid {} failed with exit value {}. Process might have exited already.",
+            signal, pid, exitValue);
+      }
+    } catch (IOException | InterruptedException | TimeoutException e) {
+      throw new ShutDownException("Could not send SIG" + signal + " to RabbitMQ Server (pid " + pid + ")", e);
+    }
+  }
+
+  private boolean awaitExit(long timeoutInMillis) {
+    try {
+      rabbitMqProcess.get(timeoutInMillis, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (ExecutionException e) {
+      LOGGER.debug("RabbitMQ Server process finished with an error", e.getCause());
+      return true;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ShutDownException("Interrupted while waiting for RabbitMQ Server to exit", e);
+    }
+  }
+
+  private void awaitPortsReleased() throws ShutDownException {
+    List<Integer> ports = Arrays.asList(config.getRabbitMqPort(), config.getDistributionPort());
+
+    long timeout = config.getDefaultRabbitMqCtlTimeoutInMillis();
+    long deadline = System.currentTimeMillis() + timeout;
+    for (int port : ports) {
+      // The default distribution port of a high AMQP port is out of range, so the server can't have bound it
+      while (port <= MAX_PORT && !isPortFree(port)) {
+        if (System.currentTimeMillis() > deadline) {
+          throw new ShutDownException("Port " + port + " wasn't released within " + timeout + "ms of RabbitMQ Server "
+              + "exiting", null);
+        }
+        try {
+          Thread.sleep(PORT_CHECK_INTERVAL_IN_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ShutDownException("Interrupted while waiting for port " + port + " to be released", e);
+        }
+      }
+    }
+  }
+
+  private static boolean isPortFree(int port) {
+    try (ServerSocket socket = new ServerSocket()) {
+      socket.setReuseAddress(true);
+      socket.bind(new InetSocketAddress(port));
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
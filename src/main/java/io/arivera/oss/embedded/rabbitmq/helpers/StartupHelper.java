@@ -1,32 +1,81 @@
 package io.arivera.oss.embedded.rabbitmq.helpers;
 
 import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.apache.commons.lang3.StopWatch;
 import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommand;
 import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
 import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqServer;
 
+import org.apache.commons.io.output.TeeOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.zeroturnaround.exec.ProcessResult;
 import org.zeroturnaround.exec.listener.ProcessListener;
 import org.zeroturnaround.exec.stream.LogOutputStream;
 
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class StartupHelper implements Callable<Future<ProcessResult>> {
 
   public static final String BROKER_STARTUP_COMPLETED = ".*completed with \\d+ plugins.*";
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(StartupHelper.class);
+
   private final EmbeddedRabbitMqConfig config;
+  private final List<PublishingProcessListener.Subscriber> exitSubscribers;
+  private boolean destroyOnExit = true;
+  private volatile BootOutputMonitor bootOutputMonitor;
 
   public StartupHelper(EmbeddedRabbitMqConfig config) {
     this.config = config;
+    this.exitSubscribers = new ArrayList<>();
+  }
+
+  /**
+   * Defines whether the server should be destroyed if it's still running when the JVM exits. Default is {@code true}.
+   *
+   * @return this same instance of the class to allow for chaining calls.
+   * @see RabbitMqServer#destroyOnExit(boolean)
+   */
+  public StartupHelper destroyOnExit(boolean destroyOnExit) {
+    this.destroyOnExit = destroyOnExit;
+    return this;
+  }
+
+  /**
+   * Registers a subscriber to be notified whenever the process started by this helper finishes, whether it's during
+   * startup, after a shutdown or unexpectedly.
+   * <p>
+   * Subscribers are notified before the future returned by {@link #call()} completes, so they must not block waiting
+   * for it.
+   *
+   * @return this same instance of the class to allow for chaining calls.
+   */
+  public StartupHelper onProcessFinished(PublishingProcessListener.Subscriber subscriber) {
+    exitSubscribers.add(subscriber);
+    return this;
+  }
+
+  /**
+   * Returns the milliseconds elapsed since the server was launched until each phase of its boot was first reported in
+   * its output, in the order they were reached. It's empty until {@link #call()} is invoked.
+   */
+  public Map<String, Long> getBootPhaseTimings() {
+    BootOutputMonitor outputMonitor = bootOutputMonitor;
+    return outputMonitor == null ? Collections.<String, Long>emptyMap() : outputMonitor.getPhaseTimings();
   }
 
   /**
@@ -35,29 +84,60 @@ public class StartupHelper implements Callable<Future<ProcessResult>> {
    * This is useful to ensure no other interactions happen with the RabbitMQ Server until it's safe to do so
    *
    * @return an unfinished future representing the eventual result of the {@code rabbitmq-server} process running in "foreground".
-   * @throws StartupException if anything fails while attempting to start and confirm successful initialization.
+   * @throws StartupException if anything fails while attempting to start and confirm successful initialization. A
+   *     {@link BootFailureException} is thrown as soon as the server reports a known failure, such as a
+   *     {@link PortConflictException port conflict}, in which case the process is stopped without waiting for the
+   *     initialization timeout to expire.
    * @see ShutdownHelper
+   * @see EmbeddedRabbitMqConfig#getReadinessCheckFactory()
    */
   @Override
   public Future<ProcessResult> call() throws StartupException {
-    PatternFinderOutputStream initializationWatcher = new PatternFinderOutputStream(BROKER_STARTUP_COMPLETED);
+    final ReadinessCheck readinessCheck = config.getReadinessCheckFactory().create(config);
+    final AtomicReference<Integer> finalExitValue = new AtomicReference<>();
 
-    // Inform the initializationWatcher if the process ends before the expected output is produced.
+    // Inform the readinessCheck if the process ends before the server becomes ready.
     PublishingProcessListener rabbitMqProcessListener = new PublishingProcessListener();
-    rabbitMqProcessListener.addSubscriber(initializationWatcher);
+    rabbitMqProcessListener.addSubscriber(new PublishingProcessListener.Subscriber() {
+      @Override
+      public void processFinished(int exitValue) {
+        finalExitValue.set(exitValue);
+        readinessCheck.processFinished(exitValue);
+      }
+    });
+    for (PublishingProcessListener.Subscriber subscriber : exitSubscribers) {
+      rabbitMqProcessListener.addSubscriber(subscriber);
+    }
+
+    // A server that reports a known failure will never become ready, and is stopped right after this is detected.
+    BootOutputMonitor outputMonitor = new BootOutputMonitor(new PublishingProcessListener.Subscriber() {
+      @Override
+      public void processFinished(int exitValue) {
+        readinessCheck.processFinished(exitValue);
+      }
+    });
+    bootOutputMonitor = outputMonitor;
 
-    Future<ProcessResult> resultFuture = startProcess(initializationWatcher, rabbitMqProcessListener);
-    waitForConfirmation(initializationWatcher);
+    BootHistory bootHistory = BootHistory.load(config);
+    Future<ProcessResult> resultFuture = startProcess(readinessCheck, rabbitMqProcessListener, outputMonitor);
+    final StopWatch stopWatch = StopWatch.createStarted();
+    waitForConfirmation(readinessCheck, resultFuture, outputMonitor, finalExitValue, bootHistory);
+    bootHistory.record(stopWatch.getTime());
+    LOGGER.debug("RabbitMQ Server boot phases reached after (ms): {}", outputMonitor.getPhaseTimings());
 
     return resultFuture;
   }
 
-  private Future<ProcessResult> startProcess(PatternFinderOutputStream initializationWatcher,
-                                             PublishingProcessListener rabbitMqProcessListener) {
+  private Future<ProcessResult> startProcess(ReadinessCheck readinessCheck,
+                                             PublishingProcessListener rabbitMqProcessListener,
+                                             BootOutputMonitor outputMonitor) {
     Future<ProcessResult> resultFuture;
     try {
       resultFuture = new RabbitMqServer(config)
-          .writeOutputTo(initializationWatcher)
+          .destroyOnExit(destroyOnExit)
+          .writeOutputTo(new TeeOutputStream(readinessCheck.getProcessOutputStream(),
+              outputMonitor.newOutputStream()))
+          .writeErrorOutputTo(outputMonitor.newOutputStream())
           .listeningToEventsWith(rabbitMqProcessListener)
           .start();
     } catch (RabbitMqCommandException e) {
@@ -66,23 +146,45 @@ public class StartupHelper implements Callable<Future<ProcessResult>> {
     return resultFuture;
   }
 
-  private void waitForConfirmation(PatternFinderOutputStream initializationWatcher) {
-    long timeout = config.getRabbitMqServerInitializationTimeoutInMillis();
-    boolean match = initializationWatcher.waitForMatch(timeout, TimeUnit.MILLISECONDS);
+  private void waitForConfirmation(ReadinessCheck readinessCheck, Future<ProcessResult> resultFuture,
+                                   BootOutputMonitor outputMonitor, AtomicReference<Integer> exitValue,
+                                   BootHistory bootHistory) {
+    long timeout = config.shouldUseAdaptiveStartupTimeout()
+        ? bootHistory.getTimeoutInMillis()
+        : config.getRabbitMqServerInitializationTimeoutInMillis();
+    boolean ready = readinessCheck.awaitReadiness(timeout, TimeUnit.MILLISECONDS);
 
-    if (!match) {
-      throw new StartupException(
-          "Could not confirm RabbitMQ Server initialization completed successfully within " + timeout + "ms");
+    if (ready) {
+      return;
+    }
+    BootOutputMonitor.Signature failure = outputMonitor.getFailure();
+    if (failure != null) {
+      resultFuture.cancel(true);
+      String line = outputMonitor.getFailureLine();
+      if (BootOutputMonitor.PORT_CONFLICT.equals(failure.getName())) {
+        throw new PortConflictException("RabbitMQ Server could not bind its ports (AMQP port " + config.getRabbitMqPort()
+            + ", distribution port " + config.getDistributionPort() + "): " + line, failure.getName(), line);
+      }
+      throw new BootFailureException("RabbitMQ Server failed to boot (" + failure.getName() + "): " + line,
+          failure.getName(), line);
     }
+    if (exitValue.get() != null) {
+      throw new StartupException("RabbitMQ Server process finished with exit code " + exitValue.get()
+          + " before its initialization completed");
+    }
+    bootHistory.recordTimeout(timeout);
+    throw new StartupException("Could not confirm RabbitMQ Server initialization completed successfully within "
+        + timeout + "ms (boot phases reached: " + outputMonitor.getPhaseTimings() + ", previous boots: "
+        + bootHistory.describe() + ")");
   }
 
   /**
    * Notifies subscribers of process termination so they don't have to rely on blocking {@link Future#get()} of
    * {@link ProcessResult}s, which is returned by {@link RabbitMqCommand}s.
    */
-  static class PublishingProcessListener extends ProcessListener {
+  public static class PublishingProcessListener extends ProcessListener {
 
-    interface Subscriber {
+    public interface Subscriber {
       void processFinished(int exitValue);
     }
 
@@ -166,4 +268,167 @@ public class StartupHelper implements Callable<Future<ProcessResult>> {
       return matchFound;
     }
   }
+
+  /**
+   * Watches the output of the process for known success, failure and progress signatures, checking all of them in a
+   * single pass over each line by combining them into one pattern.
+   * <p>
+   * The first failure found is reported to the subscriber right away, so the startup can be aborted. Success and
+   * progress signatures mark boot phases, recording when each of them was first reached.
+   * <p>
+   * Each output of the process needs an {@link #newOutputStream() output stream} of its own, since they are written by
+   * different threads.
+   */
+  static class BootOutputMonitor {
+
+    static final int BOOT_FAILURE_EXIT_VALUE = -1;
+    static final String PORT_CONFLICT = "port conflict";
+
+    /**
+     * Known signatures, in order of precedence when more than one failure is found in the same line.
+     */
+    static final List<Signature> DEFAULT_SIGNATURES = Collections.unmodifiableList(Arrays.asList(
+        new Signature(Signature.Kind.FAILURE, PORT_CONFLICT, "eaddrinuse"),
+        new Signature(Signature.Kind.FAILURE, "cookie mismatch",
+            "Cookie file \\S+ must be accessible by owner only|Invalid challenge reply"
+                + "|Connection attempt from (disallowed )?node \\S+ rejected"
+                + "|Authentication failed \\(rejected by the remote node\\)"),
+        new Signature(Signature.Kind.FAILURE, "distribution error",
+            "epmd error|register/listen error|could not start distribution|seems to be in use by another Erlang node"
+                + "|node with name \\S+ already running"),
+        new Signature(Signature.Kind.FAILURE, "missing dependency",
+            "erl: (command )?not found|missing_dependencies|\\{undef,\\[\\{rabbit_prelaunch"),
+        new Signature(Signature.Kind.FAILURE, "erlang crash",
+            "init terminating in do_boot|Kernel pid terminated|Crash dump is being written|BOOT FAILED"),
+        new Signature(Signature.Kind.PROGRESS, "vm started", "RabbitMQ \\d+\\.\\d+\\.\\d+"),
+        new Signature(Signature.Kind.PROGRESS, "broker starting", "Starting broker"),
+        new Signature(Signature.Kind.PROGRESS, "listener started", "started TCP listener"),
+        new Signature(Signature.Kind.SUCCESS, "boot completed", "completed with \\d+ plugins|Server startup complete")
+    ));
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BootOutputMonitor.class);
+
+    private final List<Signature> signatures;
+    private final Pattern combinedPattern;
+    private final int[] signatureGroups;
+    private final PublishingProcessListener.Subscriber subscriber;
+    private final StopWatch stopWatch;
+    private final Map<String, Long> phaseTimings;
+    private volatile Signature failure;
+    private volatile String failureLine;
+
+    public BootOutputMonitor(PublishingProcessListener.Subscriber subscriber) {
+      this(DEFAULT_SIGNATURES, subscriber);
+    }
+
+    public BootOutputMonitor(List<Signature> signatures, PublishingProcessListener.Subscriber subscriber) {
+      this.signatures = signatures;
+      this.signatureGroups = new int[signatures.size()];
+      StringBuilder combined = new StringBuilder();
+      int group = 1;
+      for (int i = 0; i < signatures.size(); i++) {
+        Pattern pattern = Pattern.compile(signatures.get(i).getRegex());
+        combined.append(i == 0 ? "" : "|").append('(').append(pattern.pattern()).append(')');
+        signatureGroups[i] = group;
+        group += 1 + pattern.matcher("").groupCount();
+      }
+      this.combinedPattern = Pattern.compile(combined.toString(), Pattern.CASE_INSENSITIVE);
+      this.subscriber = subscriber;
+      this.stopWatch = StopWatch.createStarted();
+      this.phaseTimings = new LinkedHashMap<>();
+    }
+
+    public OutputStream newOutputStream() {
+      return new LogOutputStream() {
+        @Override
+        protected void processLine(String line) {
+          inspect(line);
+        }
+      };
+    }
+
+    synchronized void inspect(String line) {
+      Signature lineFailure = null;
+      Matcher matcher = combinedPattern.matcher(line);
+      while (matcher.find()) {
+        Signature signature = matchedSignature(matcher);
+        if (signature.getKind() != Signature.Kind.FAILURE) {
+          if (!phaseTimings.containsKey(signature.getName())) {
+            phaseTimings.put(signature.getName(), stopWatch.getTime());
+          }
+        } else if (lineFailure == null || signatures.indexOf(signature) < signatures.indexOf(lineFailure)) {
+          lineFailure = signature;
+        }
+      }
+      if (lineFailure != null && failure == null) {
+        LOGGER.debug("Boot failure ({}) found in line: {}", lineFailure.getName(), line);
+        failureLine = line;
+        failure = lineFailure;
+        subscriber.processFinished(BOOT_FAILURE_EXIT_VALUE);
+      }
+    }
+
+    private Signature matchedSignature(Matcher matcher) {
+      for (int i = 0; i < signatureGroups.length; i++) {
+        if (matcher.start(signatureGroups[i]) != -1) {
+          return signatures.get(i);
+        }
+      }
+      throw new IllegalStateException("No signature matched '" + matcher.group() + "'");
+    }
+
+    /**
+     * Returns the first failure found, or {@code null} if none has been found.
+     */
+    public Signature getFailure() {
+      return failure;
+    }
+
+    /**
+     * Returns the line of output the {@link #getFailure() failure} was found in, or {@code null} if none has been found.
+     */
+    public String getFailureLine() {
+      return failureLine;
+    }
+
+    /**
+     * Returns the milliseconds elapsed since the monitor was created until each boot phase was first reached, in the
+     * order they were reached.
+     */
+    public synchronized Map<String, Long> getPhaseTimings() {
+      return new LinkedHashMap<>(phaseTimings);
+    }
+
+    /**
+     * A regular expression that identifies a line of output as a sign of success, failure or progress of the boot.
+     */
+    static class Signature {
+
+      enum Kind {
+        SUCCESS, FAILURE, PROGRESS
+      }
+
+      private final Kind kind;
+      private final String name;
+      private final String regex;
+
+      Signature(Kind kind, String name, String regex) {
+        this.kind = kind;
+        this.name = name;
+        this.regex = regex;
+      }
+
+      public Kind getKind() {
+        return kind;
+      }
+
+      public String getName() {
+        return name;
+      }
+
+      public String getRegex() {
+        return regex;
+      }
+    }
+  }
 }
@@ -0,0 +1,42 @@
+package io.arivera.oss.embedded.rabbitmq.util;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A future that has already completed with the given value, for results that are known right away but have to be
+ * handed out the same way as those computed in the background.
+ */
+public class CompletedFuture<T> implements Future<T> {
+
+  private final T value;
+
+  public CompletedFuture(T value) {
+    this.value = value;
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return false;
+  }
+
+  @Override
+  public boolean isDone() {
+    return true;
+  }
+
+  @Override
+  public T get() {
+    return value;
+  }
+
+  @Override
+  public T get(long timeout, TimeUnit unit) {
+    return value;
+  }
+}
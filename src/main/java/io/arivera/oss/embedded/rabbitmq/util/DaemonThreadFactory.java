@@ -0,0 +1,29 @@
+package io.arivera.oss.embedded.rabbitmq.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads with a recognizable name so background work never prevents the JVM from exiting.
+ */
+public class DaemonThreadFactory implements ThreadFactory {
+
+  private final String namePrefix;
+  private final AtomicInteger threadCount;
+
+  /**
+   * @param namePrefix the prefix of every thread name, to which a sequence number is appended. For example:
+   *                   {@code "RabbitMQ-Startup"} results in threads like {@code "RabbitMQ-Startup-1"}
+   */
+  public DaemonThreadFactory(String namePrefix) {
+    this.namePrefix = namePrefix;
+    this.threadCount = new AtomicInteger(0);
+  }
+
+  @Override
+  public Thread newThread(Runnable runnable) {
+    Thread thread = new Thread(runnable, namePrefix + "-" + threadCount.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  }
+}
@@ -0,0 +1,54 @@
+package io.arivera.oss.embedded.rabbitmq.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+public class Digests {
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  private Digests() {
+  }
+
+  /**
+   * @return a new SHA-256 digest, which every Java platform is required to support.
+   */
+  public static MessageDigest newSha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is supported by every Java platform", e);
+    }
+  }
+
+  /**
+   * @return a new digest that uses the given algorithm, as named by {@link MessageDigest#getInstance(String)}.
+   * @throws IllegalArgumentException if the algorithm isn't supported by this Java platform.
+   */
+  public static MessageDigest newDigest(String algorithm) {
+    try {
+      return MessageDigest.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalArgumentException("Digest algorithm '" + algorithm + "' is not supported", e);
+    }
+  }
+
+  /**
+   * @return hex-encoded SHA-256 hash of the given content, in lower case.
+   */
+  public static String sha256Hex(byte[] content) {
+    return toHex(newSha256().digest(content));
+  }
+
+  /**
+   * Encodes the given bytes as hexadecimal digits, in lower case.
+   */
+  public static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+      hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+    }
+    return new String(hex);
+  }
+}
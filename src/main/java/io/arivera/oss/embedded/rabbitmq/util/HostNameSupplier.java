@@ -0,0 +1,34 @@
+package io.arivera.oss.embedded.rabbitmq.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Provides the short host name of this machine, just like RabbitMQ does (by means of {@code hostname -s}) when
+ * building the default node name, like {@code rabbit@myhost}.
+ */
+public class HostNameSupplier {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(HostNameSupplier.class);
+
+  private static final String FALLBACK_HOST_NAME = "localhost";
+
+  /**
+   * @return host name of this machine without the domain part, or {@value FALLBACK_HOST_NAME} if it can't be
+   *     determined.
+   */
+  public String get() {
+    String hostName;
+    try {
+      hostName = InetAddress.getLocalHost().getHostName();
+    } catch (UnknownHostException e) {
+      LOGGER.warn("Could not determine the host name of this machine. Will use '{}' instead.", FALLBACK_HOST_NAME, e);
+      return FALLBACK_HOST_NAME;
+    }
+    int domainStart = hostName.indexOf('.');
+    return domainStart > 0 ? hostName.substring(0, domainStart) : hostName;
+  }
+}
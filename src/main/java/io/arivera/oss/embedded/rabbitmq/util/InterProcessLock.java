@@ -0,0 +1,111 @@
+package io.arivera.oss.embedded.rabbitmq.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An exclusive lock shared by all processes on the same host, held through a {@link FileChannel#lock() lock} on a
+ * dedicated file until it's closed. Threads of the same JVM take turns as well, since a JVM can't lock a file twice.
+ * <p>
+ * The lock file is left in place when the lock is released. Removing it would allow a process to lock a new file with
+ * the same name while another one is still waiting on the old one.
+ */
+public class InterProcessLock implements Closeable {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(InterProcessLock.class);
+
+  private static final ConcurrentMap<String, Semaphore> JVM_LOCKS = new ConcurrentHashMap<>();
+
+  private final File file;
+  private final Semaphore jvmLock;
+  private final FileChannel channel;
+  private boolean released;
+
+  private InterProcessLock(File file, Semaphore jvmLock, FileChannel channel) {
+    this.file = file;
+    this.jvmLock = jvmLock;
+    this.channel = channel;
+  }
+
+  /**
+   * Blocks until the lock is acquired, creating the lock file and its folder if necessary.
+   *
+   * @throws IOException if the file can't be created or locked, or the thread is interrupted while waiting.
+   */
+  public static InterProcessLock acquire(File file) throws IOException {
+    Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+    Semaphore jvmLock = getJvmLock(file);
+    if (!jvmLock.tryAcquire()) {
+      LOGGER.info("Waiting for another thread to release lock: {}", file);
+      try {
+        jvmLock.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for lock: " + file);
+      }
+    }
+    try {
+      FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      try {
+        FileLock lock = channel.tryLock();
+        if (lock == null) {
+          LOGGER.info("Waiting for another process to release lock: {}", file);
+          channel.lock();
+        }
+        return new InterProcessLock(file, jvmLock, channel);
+      } catch (IOException | RuntimeException e) {
+        channel.close();
+        throw e;
+      }
+    } catch (IOException | RuntimeException e) {
+      jvmLock.release();
+      throw e;
+    }
+  }
+
+  private static Semaphore getJvmLock(File file) throws IOException {
+    // Canonical, so the same file reached through a link is locked only once by this JVM
+    String key = file.getCanonicalPath();
+    Semaphore jvmLock = JVM_LOCKS.get(key);
+    if (jvmLock == null) {
+      Semaphore newLock = new Semaphore(1);
+      jvmLock = JVM_LOCKS.putIfAbsent(key, newLock);
+      if (jvmLock == null) {
+        jvmLock = newLock;
+      }
+    }
+    return jvmLock;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Releases the lock. Closing it again has no effect.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (released) {
+      return;
+    }
+    released = true;
+    try {
+      channel.close();
+    } finally {
+      jvmLock.release();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package io.arivera.oss.embedded.rabbitmq.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * A properties file shared by several processes on the same host, which is only read and changed while holding an
+ * {@link InterProcessLock} on a lock file next to it, so changes are serialized across processes as well as across
+ * threads of the same JVM. Updates of different files don't wait for each other.
+ */
+public class LockedPropertiesFile {
+
+  private static final String LOCK_FILE_SUFFIX = ".lock";
+
+  private final File file;
+  private final String comment;
+
+  /**
+   * @param comment description written at the top of the file.
+   */
+  public LockedPropertiesFile(File file, String comment) {
+    this.file = file;
+    this.comment = comment;
+  }
+
+  /**
+   * Applies the given update to the properties while holding the lock, and saves them afterwards, even if the update
+   * failed.
+   *
+   * @return whatever the update returned.
+   * @throws IOException if the file can't be locked, read or written.
+   */
+  public <T> T update(Update<T> update) throws IOException {
+    try (InterProcessLock ignored = InterProcessLock.acquire(new File(file.getPath() + LOCK_FILE_SUFFIX));
+         RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      Map<String, String> properties = read(randomAccessFile);
+      try {
+        return update.apply(properties);
+      } finally {
+        write(randomAccessFile, properties);
+      }
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  private static Map<String, String> read(RandomAccessFile randomAccessFile) throws IOException {
+    byte[] content = new byte[(int) randomAccessFile.length()];
+    randomAccessFile.seek(0);
+    randomAccessFile.readFully(content);
+    Properties properties = new Properties();
+    properties.load(new ByteArrayInputStream(content));
+    Map<String, String> values = new HashMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      values.put(key, properties.getProperty(key));
+    }
+    return values;
+  }
+
+  private void write(RandomAccessFile randomAccessFile, Map<String, String> values) throws IOException {
+    Properties properties = new Properties();
+    properties.putAll(values);
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    properties.store(content, comment);
+    randomAccessFile.setLength(0);
+    randomAccessFile.seek(0);
+    randomAccessFile.write(content.toByteArray());
+    randomAccessFile.getChannel().force(false);
+  }
+
+  /**
+   * A change to the properties, applied while no other process or thread can see or change them.
+   */
+  public interface Update<T> {
+
+    /**
+     * @param properties current content of the file. Any change made to it is saved once this method returns.
+     */
+    T apply(Map<String, String> properties);
+  }
+}
@@ -0,0 +1,46 @@
+package io.arivera.oss.embedded.rabbitmq.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.exec.ProcessExecutor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Utilities to deal with processes known only by their process id, like those started by other JVMs.
+ * <p>
+ * Only supported on UNIX-like systems.
+ */
+public class ProcessIds {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(ProcessIds.class);
+
+  private ProcessIds() {
+  }
+
+  /**
+   * @return process id of this JVM.
+   */
+  public static String current() {
+    // The name of the runtime is "<pid>@<hostname>" on every JVM in use today, although it's not guaranteed to be.
+    String runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+    return runtimeName.substring(0, runtimeName.indexOf('@'));
+  }
+
+  /**
+   * @return whether a process with the given id is running.
+   */
+  public static boolean isAlive(String pid) {
+    try {
+      return new ProcessExecutor("kill", "-0", pid).exitValueAny().execute().getExitValue() == 0;
+    } catch (IOException | TimeoutException e) {
+      LOGGER.debug("Could not tell whether process {} is alive", pid, e);
+      return false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class BrokerWatchdogTest {
+
+  private Future<ProcessResult> process;
+  private List<String> events;
+  private CountDownLatch restarted;
+
+  @Before
+  public void setUp() throws Exception {
+    process = new FutureTask<>(new Callable<ProcessResult>() {
+      @Override
+      public ProcessResult call() throws Exception {
+        return null;
+      }
+    });
+    events = Collections.synchronizedList(new ArrayList<String>());
+    restarted = new CountDownLatch(1);
+  }
+
+  @Test
+  public void crashedBrokerIsRestartedUntilAnAttemptSucceeds() throws Exception {
+    final AtomicInteger attempts = new AtomicInteger();
+    EmbeddedRabbitMq broker = new EmbeddedRabbitMq(new EmbeddedRabbitMqConfig.Builder()
+        .restartOnCrash(true)
+        .restartBackoffInMillis(1)
+        .build()) {
+      @Override
+      synchronized boolean isRunning(Future<ProcessResult> finishedProcess) {
+        return true;
+      }
+
+      @Override
+      synchronized boolean relaunch(Future<ProcessResult> finishedProcess) throws StartupException {
+        if (attempts.incrementAndGet() == 1) {
+          throw new StartupException("Port still in use");
+        }
+        return true;
+      }
+    };
+    BrokerWatchdog watchdog = broker.getWatchdog();
+    watchdog.addListener(new RecordingListener());
+
+    watchdog.processFinished(process, 137);
+
+    assertThat(restarted.await(5, TimeUnit.SECONDS), equalTo(true));
+    assertThat(events, equalTo(Arrays.asList("crashed:137", "restartFailed", "restarted")));
+    assertThat(watchdog.getCrashCount(), equalTo(1L));
+    assertThat(watchdog.getFailedRestartCount(), equalTo(1L));
+    assertThat(watchdog.getRestartCount(), equalTo(1L));
+    assertThat(watchdog.isRestarting(), equalTo(false));
+  }
+
+  @Test
+  public void finishedProcessIsIgnoredUnlessEnabled() throws Exception {
+    EmbeddedRabbitMq broker = new EmbeddedRabbitMq(new EmbeddedRabbitMqConfig.Builder().build()) {
+      @Override
+      synchronized boolean isRunning(Future<ProcessResult> finishedProcess) {
+        return true;
+      }
+    };
+    BrokerWatchdog watchdog = broker.getWatchdog();
+    watchdog.addListener(new RecordingListener());
+
+    watchdog.processFinished(process, 137);
+
+    assertThat(restarted.await(100, TimeUnit.MILLISECONDS), equalTo(false));
+    assertThat(events.isEmpty(), equalTo(true));
+    assertThat(watchdog.getCrashCount(), equalTo(0L));
+    assertThat(watchdog.getTotalDowntimeInMillis(), equalTo(0L));
+  }
+
+  private class RecordingListener implements BrokerWatchdog.Listener {
+
+    @Override
+    public void brokerCrashed(EmbeddedRabbitMqConfig config, int exitValue) {
+      events.add("crashed:" + exitValue);
+    }
+
+    @Override
+    public void brokerRestarted(EmbeddedRabbitMqConfig config, long downtimeInMillis) {
+      events.add("restarted");
+      restarted.countDown();
+    }
+
+    @Override
+    public void restartFailed(EmbeddedRabbitMqConfig config, StartupException exception) {
+      events.add("restartFailed");
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class ConfigFingerprintTest {
+
+  @Test
+  public void identicalConfigsShareFingerprint() throws Exception {
+    EmbeddedRabbitMqConfig config1 = new EmbeddedRabbitMqConfig.Builder().port(5673).build();
+    EmbeddedRabbitMqConfig config2 = new EmbeddedRabbitMqConfig.Builder().port(5673).build();
+
+    assertThat(ConfigFingerprint.of(config1), equalTo(ConfigFingerprint.of(config2)));
+  }
+
+  @Test
+  public void timeoutsDontAffectFingerprint() throws Exception {
+    EmbeddedRabbitMqConfig config1 = new EmbeddedRabbitMqConfig.Builder().rabbitMqServerInitializationTimeoutInMillis(1000).build();
+    EmbeddedRabbitMqConfig config2 = new EmbeddedRabbitMqConfig.Builder().rabbitMqServerInitializationTimeoutInMillis(2000).build();
+
+    assertThat(ConfigFingerprint.of(config1), equalTo(ConfigFingerprint.of(config2)));
+  }
+
+  @Test
+  public void differentPortsChangeFingerprint() throws Exception {
+    EmbeddedRabbitMqConfig config1 = new EmbeddedRabbitMqConfig.Builder().port(5673).build();
+    EmbeddedRabbitMqConfig config2 = new EmbeddedRabbitMqConfig.Builder().port(5674).build();
+
+    assertThat(ConfigFingerprint.of(config1), not(equalTo(ConfigFingerprint.of(config2))));
+  }
+
+  @Test
+  public void differentVersionsChangeFingerprint() throws Exception {
+    EmbeddedRabbitMqConfig config1 = new EmbeddedRabbitMqConfig.Builder().version(PredefinedVersion.V3_7_7).build();
+    EmbeddedRabbitMqConfig config2 = new EmbeddedRabbitMqConfig.Builder().version(PredefinedVersion.V3_6_16).build();
+
+    assertThat(ConfigFingerprint.of(config1), not(equalTo(ConfigFingerprint.of(config2))));
+  }
+}
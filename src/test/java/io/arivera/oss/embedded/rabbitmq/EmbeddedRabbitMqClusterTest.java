@@ -0,0 +1,49 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class EmbeddedRabbitMqClusterTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void clusterRequiresAtLeastOneNode() throws Exception {
+    expectedException.expect(IllegalArgumentException.class);
+    new EmbeddedRabbitMqCluster.Builder(new EmbeddedRabbitMqConfig.Builder().build()).nodeCount(0).build();
+  }
+
+  @Test
+  public void nodesHaveDistinctNamesAndPorts() throws Exception {
+    EmbeddedRabbitMqCluster cluster =
+        new EmbeddedRabbitMqCluster.Builder(new EmbeddedRabbitMqConfig.Builder().build()).nodeCount(3).build();
+
+    Set<String> nodeNames = new HashSet<>();
+    Set<String> ports = new HashSet<>();
+    for (EmbeddedRabbitMq node : cluster.getNodes()) {
+      nodeNames.add(node.getConfig().getNodeName());
+      ports.add(String.valueOf(node.getConfig().getRabbitMqPort()));
+      ports.add(node.getConfig().getEnvVars().get(RabbitMqEnvVar.DIST_PORT.getEnvVarName()));
+    }
+
+    assertThat(cluster.getNodes().size(), equalTo(3));
+    assertThat(nodeNames.size(), equalTo(3));
+    assertThat(ports.size(), equalTo(6));
+  }
+
+  @Test
+  public void stopRequiresStartedCluster() throws Exception {
+    EmbeddedRabbitMqCluster cluster = new EmbeddedRabbitMqCluster.Builder(new EmbeddedRabbitMqConfig.Builder().build()).build();
+
+    expectedException.expect(IllegalStateException.class);
+    cluster.stop();
+  }
+}
@@ -0,0 +1,39 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class EmbeddedRabbitMqConfigTest {
+
+  @Test
+  public void instanceFolderHoldsEverythingRabbitMqWrites() throws Exception {
+    EmbeddedRabbitMqConfig instanceConfig = new EmbeddedRabbitMqConfig.Builder()
+        .extractionFolder(new File("/tmp/rabbitmq"))
+        .envVar(RabbitMqEnvVar.NODENAME, "node@localhost")
+        .envVar(RabbitMqEnvVar.LOG_BASE, "/var/log/node")
+        .useInstanceFolder(true)
+        .build();
+
+    File instanceFolder = new File("/tmp/rabbitmq/instances/node@localhost");
+    Map<String, String> envVars = instanceConfig.getEnvVars();
+    assertThat(instanceConfig.getInstanceFolder(), equalTo(instanceFolder));
+    assertThat(instanceConfig.getMnesiaFolder(), equalTo(new File(instanceFolder, "mnesia/node@localhost")));
+    assertThat(instanceConfig.getPidFile(), equalTo(new File(instanceFolder, "rabbitmq.pid")));
+    assertThat(envVars.get(RabbitMqEnvVar.ENABLED_PLUGINS_FILE.getEnvVarName()),
+        equalTo(new File(instanceFolder, "enabled_plugins").getPath()));
+    assertThat(envVars.get(RabbitMqEnvVar.LOG_BASE.getEnvVarName()), equalTo("/var/log/node"));
+  }
+
+  @Test
+  public void explicitPortIsNotRandom() throws Exception {
+    EmbeddedRabbitMqConfig.Builder builder = new EmbeddedRabbitMqConfig.Builder().randomPort();
+    assertThat(builder.build().hasRandomPort(), equalTo(true));
+    assertThat(builder.port(5673).build().hasRandomPort(), equalTo(false));
+    assertThat(builder.build().getDistributionPort(), equalTo(25673));
+  }
+}
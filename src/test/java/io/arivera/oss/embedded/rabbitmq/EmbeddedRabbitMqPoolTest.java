@@ -0,0 +1,169 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EmbeddedRabbitMqPoolTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private EmbeddedRabbitMqConfig config;
+
+  @Before
+  public void setUp() throws Exception {
+    config = new EmbeddedRabbitMqConfig.Builder().build();
+  }
+
+  @Test
+  public void minIdleCantExceedMaxSize() throws Exception {
+    expectedException.expect(IllegalArgumentException.class);
+    new EmbeddedRabbitMqPool.Builder(config).minIdle(3).maxSize(2).build();
+  }
+
+  @Test
+  public void leaseRequiresStartedPool() throws Exception {
+    EmbeddedRabbitMqPool pool = new EmbeddedRabbitMqPool.Builder(config).build();
+
+    expectedException.expect(IllegalStateException.class);
+    pool.lease();
+  }
+
+  @Test
+  public void releaseRequiresLeasedBroker() throws Exception {
+    EmbeddedRabbitMqPool pool = new EmbeddedRabbitMqPool.Builder(config).build();
+
+    expectedException.expect(IllegalArgumentException.class);
+    pool.release(new EmbeddedRabbitMq(config));
+  }
+
+  @Test
+  public void newPoolHasNoMetrics() throws Exception {
+    EmbeddedRabbitMqPool pool = new EmbeddedRabbitMqPool.Builder(config).build();
+
+    assertThat(pool.getSize(), equalTo(0));
+    assertThat(pool.getIdleCount(), equalTo(0));
+    assertThat(pool.getHitCount(), equalTo(0L));
+    assertThat(pool.getMissCount(), equalTo(0L));
+    assertThat(pool.getTotalWaitTimeInMillis(), equalTo(0L));
+  }
+
+  @Test
+  public void failedBootIsRetried() throws Exception {
+    StubPool pool = new StubPool(1);
+    pool.start();
+
+    EmbeddedRabbitMq broker = pool.lease();
+
+    assertThat(pool.boots.get(), equalTo(2));
+    assertThat(pool.getSize(), equalTo(1));
+    pool.release(broker);
+    pool.stop();
+  }
+
+  @Test
+  public void leaseFailsOnceBrokersKeepFailingToStart() throws Exception {
+    StubPool pool = new StubPool(Integer.MAX_VALUE);
+    pool.start();
+
+    long start = System.nanoTime();
+    try {
+      pool.lease();
+      fail("Lease should have failed");
+    } catch (StartupException e) {
+      assertThat(e.getCause(), sameInstance((Throwable) StubPool.FAILURE));
+    }
+    assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < TimeUnit.SECONDS.toMillis(30));
+    assertThat(pool.boots.get(), equalTo(EmbeddedRabbitMqPool.MAX_CONSECUTIVE_BOOT_FAILURES));
+    assertThat(pool.getSize(), equalTo(0));
+
+    expectedException.expect(StartupException.class);
+    try {
+      pool.lease();
+    } finally {
+      assertThat(pool.boots.get(), equalTo(2 * EmbeddedRabbitMqPool.MAX_CONSECUTIVE_BOOT_FAILURES));
+      pool.stop();
+    }
+  }
+
+  @Test
+  public void derivedConfigKeepsOriginalValues() throws Exception {
+    EmbeddedRabbitMqConfig original = new EmbeddedRabbitMqConfig.Builder()
+        .version(PredefinedVersion.V3_7_7)
+        .downloadReadTimeoutInMillis(123)
+        .downloadConnectionTimeoutInMillis(456)
+        .port(1234)
+        .build();
+
+    EmbeddedRabbitMqConfig derived = new EmbeddedRabbitMqConfig.Builder(original).port(5678).build();
+
+    assertThat(derived.getRabbitMqPort(), equalTo(5678));
+    assertThat(derived.getDownloadSource(), equalTo(original.getDownloadSource()));
+    assertThat(derived.getDownloadTarget(), equalTo(original.getDownloadTarget()));
+    assertThat(derived.getAppFolder(), equalTo(original.getAppFolder()));
+    assertThat(derived.getDownloadReadTimeoutInMillis(), equalTo(123L));
+    assertThat(derived.getDownloadConnectionTimeoutInMillis(), equalTo(456L));
+    assertThat(original.getRabbitMqPort(), equalTo(1234));
+  }
+
+  /**
+   * A pool whose brokers don't run any process, and whose first few brokers fail to start.
+   */
+  private static class StubPool extends EmbeddedRabbitMqPool {
+
+    static final StartupException FAILURE = new StartupException("Stub broker failed to start");
+
+    final AtomicInteger boots = new AtomicInteger();
+    private final int failingBoots;
+
+    StubPool(int failingBoots) {
+      super(new EmbeddedRabbitMqConfig.Builder().build(), 0, 1, TimeUnit.MINUTES.toMillis(1));
+      this.failingBoots = failingBoots;
+    }
+
+    @Override
+    EmbeddedRabbitMq createBroker(EmbeddedRabbitMqConfig brokerConfig) {
+      return new EmbeddedRabbitMq(brokerConfig) {
+        @Override
+        void prepare() {
+        }
+
+        @Override
+        synchronized Future<StartupTimings> startAsync(boolean prepareInstallation) {
+          final boolean fail = boots.incrementAndGet() <= failingBoots;
+          FutureTask<StartupTimings> startup = new FutureTask<>(new Callable<StartupTimings>() {
+            @Override
+            public StartupTimings call() {
+              if (fail) {
+                throw FAILURE;
+              }
+              return new StartupTimings();
+            }
+          });
+          startup.run();
+          return startup;
+        }
+
+        @Override
+        public synchronized void stop() {
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,181 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqStartupTest.StubBroker;
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class EmbeddedRabbitMqStandbyTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private EmbeddedRabbitMqConfig config;
+  private List<String> stages;
+
+  @Before
+  public void setUp() throws Exception {
+    config = new EmbeddedRabbitMqConfig.Builder()
+        .extractionFolder(temporaryFolder.getRoot())
+        .keepWarmStandby(true)
+        .build();
+    stages = Collections.synchronizedList(new ArrayList<String>());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ShutdownCoordinator.stopAll(TimeUnit.SECONDS.toMillis(1));
+  }
+
+  @Test
+  public void standbyTakesOverOnNextStart() throws Exception {
+    StubBroker broker = new StubBroker(config, stages);
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    StubBroker standby = broker.standbys.get(0);
+    broker.stop();
+
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+
+    assertThat(stages, equalTo(Collections.singletonList("server")));
+    assertThat(broker.getConfig(), equalTo(standby.getConfig()));
+    assertThat(broker.getConfig().getNodeName(), not(equalTo(config.getNodeName())));
+    assertThat(broker.isRunning(standby.process), equalTo(true));
+    assertThat(standby.stopped, equalTo(false));
+  }
+
+  @Test
+  public void anotherStandbyIsBootedOnceOneTakesOver() throws Exception {
+    StubBroker broker = new StubBroker(config, stages);
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    broker.stop();
+
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    broker.stopStandby();
+
+    assertThat(broker.standbys.size(), equalTo(2));
+    assertThat(broker.standbyStages, equalTo(Arrays.asList("server", "server")));
+    assertThat(broker.standbys.get(1).getConfig().getNodeName(),
+        not(equalTo(broker.standbys.get(0).getConfig().getNodeName())));
+  }
+
+  @Test
+  public void newServerIsStartedWhenStandbyFailedToBoot() throws Exception {
+    StubBroker broker = new StubBroker(config, stages) {
+      @Override
+      EmbeddedRabbitMq createStandby(EmbeddedRabbitMqConfig standbyConfig) {
+        StubBroker standby = new StubBroker(standbyConfig, standbyStages, false) {
+          @Override
+          Future<ProcessResult> startOnAvailablePorts(StartupTimings timings) {
+            throw new StartupException("Stub standby boot failure");
+          }
+        };
+        standbys.add(standby);
+        return standby;
+      }
+    };
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    broker.stop();
+
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+
+    assertThat(stages, equalTo(Arrays.asList("server", "server")));
+    assertThat(broker.getConfig(), equalTo(config));
+  }
+
+  @Test
+  public void foldersOfStandbyThatFailedToBootAreDeleted() throws Exception {
+    StubBroker broker = new StubBroker(config, stages) {
+      @Override
+      EmbeddedRabbitMq createStandby(EmbeddedRabbitMqConfig standbyConfig) {
+        StubBroker standby = new StubBroker(standbyConfig, standbyStages, false) {
+          @Override
+          Future<ProcessResult> startOnAvailablePorts(StartupTimings timings) {
+            assertThat(getConfig().getInstanceFolder().isDirectory(), equalTo(true));
+            throw new StartupException("Stub standby boot failure");
+          }
+        };
+        standbys.add(standby);
+        return standby;
+      }
+    };
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    broker.stop();
+
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+
+    assertThat(broker.standbys.get(0).getConfig().getInstanceFolder().exists(), equalTo(false));
+  }
+
+  @Test
+  public void foldersOfStandbyThatTookOverAreDeletedOnceStopped() throws Exception {
+    StubBroker broker = new StubBroker(config, stages);
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    broker.stop();
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    File instanceFolder = broker.getConfig().getInstanceFolder();
+    assertThat(instanceFolder.isDirectory(), equalTo(true));
+
+    broker.stop();
+
+    assertThat(instanceFolder.exists(), equalTo(false));
+  }
+
+  @Test
+  public void stoppedStandbyDoesNotTakeOver() throws Exception {
+    StubBroker broker = new StubBroker(config, stages);
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    StubBroker standby = broker.standbys.get(0);
+
+    broker.stopStandby();
+    broker.stop();
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+
+    assertThat(standby.stopped, equalTo(true));
+    assertThat(stages, equalTo(Arrays.asList("server", "server")));
+    assertThat(broker.getConfig(), equalTo(config));
+  }
+
+  @Test
+  public void crashOfStandbyThatTookOverIsHandledByTheWatchdogOfItsNewOwner() throws Exception {
+    config = new EmbeddedRabbitMqConfig.Builder(config)
+        .restartOnCrash(true)
+        .restartBackoffInMillis(1)
+        .build();
+    final CountDownLatch relaunched = new CountDownLatch(1);
+    StubBroker broker = new StubBroker(config, stages) {
+      @Override
+      synchronized boolean relaunch(Future<ProcessResult> finishedProcess) {
+        relaunched.countDown();
+        return true;
+      }
+    };
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    StubBroker standby = broker.standbys.get(0);
+    broker.stop();
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+
+    standby.processFinished(standby.process, 137);
+
+    assertThat(relaunched.await(5, TimeUnit.SECONDS), equalTo(true));
+    assertThat(broker.getWatchdog().getCrashCount(), equalTo(1L));
+    assertThat(standby.getWatchdog().getCrashCount(), equalTo(0L));
+  }
+}
@@ -0,0 +1,336 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.bin.StubCommands;
+import io.arivera.oss.embedded.rabbitmq.download.DownloadException;
+import io.arivera.oss.embedded.rabbitmq.helpers.AmqpHandshakeReadinessCheck;
+import io.arivera.oss.embedded.rabbitmq.helpers.ErlangVersionException;
+import io.arivera.oss.embedded.rabbitmq.helpers.LogPatternReadinessCheck;
+import io.arivera.oss.embedded.rabbitmq.helpers.ReadinessCheck;
+import io.arivera.oss.embedded.rabbitmq.helpers.StartupException;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+import io.arivera.oss.embedded.rabbitmq.util.RandomPortSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeThat;
+
+public class EmbeddedRabbitMqStartupTest {
+
+  private static final byte[] CONNECTION_START_FRAME_START = {1, 0, 0, 0, 0, 0, 4, 0, 10, 0, 10};
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private EmbeddedRabbitMqConfig config;
+  private List<String> stages;
+  private volatile ServerSocket fakeServer;
+
+  @Before
+  public void setUp() throws Exception {
+    config = new EmbeddedRabbitMqConfig.Builder().build();
+    stages = Collections.synchronizedList(new ArrayList<String>());
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    ShutdownCoordinator.stopAll(TimeUnit.SECONDS.toMillis(1));
+    if (fakeServer != null) {
+      fakeServer.close();
+    }
+  }
+
+  @Test
+  public void erlangCheckOverlapsDownloadAndExtraction() throws Exception {
+    final CountDownLatch bothRunning = new CountDownLatch(2);
+    StubBroker broker = new StubBroker(config, stages) {
+      @Override
+      void checkErlangVersion() {
+        awaitOther(bothRunning);
+        super.checkErlangVersion();
+      }
+
+      @Override
+      void downloadArtifact() {
+        awaitOther(bothRunning);
+        super.downloadArtifact();
+      }
+    };
+
+    broker.startAsync().get(5, TimeUnit.SECONDS);
+
+    assertTrue(stages.indexOf("download") < stages.indexOf("extraction"));
+    assertThat(stages.get(stages.size() - 1), equalTo("server"));
+    assertThat(stages.size(), equalTo(4));
+  }
+
+  @Test
+  public void stageFailureIsUnwrappedFromTheFuture() throws Exception {
+    StubBroker broker = new StubBroker(config, stages) {
+      @Override
+      void downloadArtifact() {
+        throw new DownloadException("Stub download failure");
+      }
+    };
+
+    try {
+      broker.startAsync().get(5, TimeUnit.SECONDS);
+      fail("Startup should have failed");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(DownloadException.class));
+    }
+    assertThat(stages.contains("server"), equalTo(false));
+  }
+
+  @Test
+  public void startThrowsTheStageFailureItself() throws Exception {
+    StubBroker broker = new StubBroker(config, stages) {
+      @Override
+      void checkErlangVersion() {
+        throw new ErlangVersionException("Stub Erlang check failure");
+      }
+    };
+
+    expectedException.expect(ErlangVersionException.class);
+    broker.start();
+  }
+
+  @Test
+  public void timingsOfEveryStageAreRecorded() throws Exception {
+    StubBroker broker = new StubBroker(config, stages);
+
+    StartupTimings timings = broker.startAsync().get(5, TimeUnit.SECONDS);
+
+    assertTrue(timings.getDurationInMillis(StartupTimings.Stage.ERLANG_CHECK) >= 0);
+    assertTrue(timings.getDurationInMillis(StartupTimings.Stage.DOWNLOAD) >= 0);
+    assertTrue(timings.getDurationInMillis(StartupTimings.Stage.EXTRACTION) >= 0);
+    assertTrue(timings.getDurationInMillis(StartupTimings.Stage.SERVER_STARTUP) >= 0);
+    assertThat(timings.getDurationInMillis(StartupTimings.Stage.DATA_TEMPLATE), equalTo(-1L));
+    assertTrue(timings.getTotalTimeInMillis() >= timings.getDurationInMillis(StartupTimings.Stage.SERVER_STARTUP));
+  }
+
+  @Test
+  public void stagesAreSkippedForAnInstallationAlreadyPrepared() throws Exception {
+    StubBroker broker = new StubBroker(config, stages);
+
+    StartupTimings timings = broker.startAsync(false).get(5, TimeUnit.SECONDS);
+
+    assertThat(stages, equalTo(Collections.singletonList("server")));
+    assertThat(timings.getDurationInMillis(StartupTimings.Stage.DOWNLOAD), equalTo(-1L));
+  }
+
+  @Test
+  public void restartAppIsConfirmedByAmqpHandshake() throws Exception {
+    StubCommands commands = stubRabbitMqCtl(new AmqpHandshakeReadinessCheck.Factory());
+    StubBroker broker = new StubBroker(config, stages);
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    answerHandshakesOnceAppStarts(commands);
+
+    broker.restartApp();
+
+    assertThat(commands.getInvocations(), equalTo(Arrays.asList("rabbitmqctl stop_app", "rabbitmqctl start_app")));
+  }
+
+  @Test
+  public void restartAppIsConfirmedByAmqpHandshakeWhenServerStartupIsConfirmedByLogs() throws Exception {
+    StubCommands commands = stubRabbitMqCtl(new LogPatternReadinessCheck.Factory());
+    StubBroker broker = new StubBroker(config, stages);
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+    answerHandshakesOnceAppStarts(commands);
+
+    broker.restartApp();
+
+    assertThat(commands.getInvocations(), equalTo(Arrays.asList("rabbitmqctl stop_app", "rabbitmqctl start_app")));
+  }
+
+  @Test
+  public void restartAppFailsWhenAppIsNotConfirmedReady() throws Exception {
+    stubRabbitMqCtl(new LogPatternReadinessCheck.Factory());
+    config = new EmbeddedRabbitMqConfig.Builder(config).rabbitMqServerInitializationTimeoutInMillis(300).build();
+    StubBroker broker = new StubBroker(config, stages);
+    broker.startAsync(false).get(5, TimeUnit.SECONDS);
+
+    expectedException.expect(StartupException.class);
+    broker.restartApp();
+  }
+
+  @Test
+  public void derivedNodeImportsDefinitionsInsteadOfUsingDataTemplate() throws Exception {
+    StubCommands commands = stubRabbitMqCtl(new AmqpHandshakeReadinessCheck.Factory());
+    File definitions = temporaryFolder.newFile("definitions.json");
+    config = NodeConfigs.deriveNodeConfig(new EmbeddedRabbitMqConfig.Builder(config).dataTemplate(definitions).build());
+    File leftover = new File(config.getMnesiaFolder(), "leftover.DAT");
+    Files.createDirectories(leftover.getParentFile().toPath());
+    Files.createFile(leftover.toPath());
+    StubBroker broker = new StubBroker(config, stages);
+
+    StartupTimings timings = broker.startAsync(false).get(5, TimeUnit.SECONDS);
+
+    assertThat(commands.getInvocations(),
+        equalTo(Collections.singletonList("rabbitmqctl import_definitions " + definitions.getAbsolutePath())));
+    assertThat(leftover.exists(), equalTo(false));
+    assertThat(new File(temporaryFolder.getRoot(), "data-templates").exists(), equalTo(false));
+    assertTrue(timings.getDurationInMillis(StartupTimings.Stage.DATA_TEMPLATE) >= 0);
+  }
+
+  private StubCommands stubRabbitMqCtl(ReadinessCheck.Factory readinessCheck) throws Exception {
+    assumeThat(OperatingSystem.detect() == OperatingSystem.WINDOWS, equalTo(false));
+    config = new EmbeddedRabbitMqConfig.Builder()
+        .extractionFolder(temporaryFolder.getRoot())
+        .port(new RandomPortSupplier().get())
+        .readinessCheck(readinessCheck)
+        .rabbitMqServerInitializationTimeoutInMillis(TimeUnit.SECONDS.toMillis(5))
+        .build();
+    return new StubCommands(config).install("rabbitmqctl", "exit 0");
+  }
+
+  /**
+   * Answers AMQP handshakes on the configured port once {@code start_app} has been invoked, like the RabbitMQ
+   * application does once it's started.
+   */
+  private void answerHandshakesOnceAppStarts(final StubCommands commands) {
+    Thread server = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          while (!commands.getInvocations().contains("rabbitmqctl start_app")) {
+            Thread.sleep(5);
+          }
+          fakeServer = new ServerSocket(config.getRabbitMqPort(), 10, InetAddress.getLoopbackAddress());
+          while (!fakeServer.isClosed()) {
+            try (Socket socket = fakeServer.accept()) {
+              new DataInputStream(socket.getInputStream()).readFully(new byte[8]);
+              socket.getOutputStream().write(CONNECTION_START_FRAME_START);
+            } catch (IOException e) {
+              // Client went away or server socket was closed
+            }
+          }
+        } catch (IOException | InterruptedException e) {
+          // Test finished
+        }
+      }
+    });
+    server.setDaemon(true);
+    server.start();
+  }
+
+  private static void awaitOther(CountDownLatch bothRunning) {
+    bothRunning.countDown();
+    try {
+      if (!bothRunning.await(2, TimeUnit.SECONDS)) {
+        throw new IllegalStateException("Stage didn't run concurrently with the other one");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * A broker whose stages only record that they ran, and whose server is a process that only finishes once stopped.
+   * Its standbys are stub brokers as well, which record their stages separately.
+   */
+  static class StubBroker extends EmbeddedRabbitMq {
+
+    private final List<String> stages;
+    final List<String> standbyStages = Collections.synchronizedList(new ArrayList<String>());
+    final List<StubBroker> standbys = Collections.synchronizedList(new ArrayList<StubBroker>());
+    volatile boolean stopped;
+    volatile FutureTask<ProcessResult> process;
+
+    StubBroker(EmbeddedRabbitMqConfig config, List<String> stages) {
+      this(config, stages, true);
+    }
+
+    StubBroker(EmbeddedRabbitMqConfig config, List<String> stages, boolean standbyAllowed) {
+      super(config, standbyAllowed);
+      this.stages = stages;
+    }
+
+    @Override
+    void checkErlangVersion() {
+      stages.add("erlang");
+    }
+
+    @Override
+    void downloadArtifact() {
+      stages.add("download");
+    }
+
+    @Override
+    void extractArtifact() {
+      stages.add("extraction");
+    }
+
+    @Override
+    Future<ProcessResult> startOnAvailablePorts(StartupTimings timings) {
+      stages.add("server");
+      process = new FutureTask<>(new Callable<ProcessResult>() {
+        @Override
+        public ProcessResult call() {
+          return null;
+        }
+      });
+      return process;
+    }
+
+    @Override
+    EmbeddedRabbitMq createStandby(EmbeddedRabbitMqConfig standbyConfig) {
+      StubBroker standby = new StubBroker(standbyConfig, standbyStages, false);
+      standbys.add(standby);
+      return standby;
+    }
+
+    /**
+     * Finishes the process of the server, which is the one of a standby once it took over, before stopping for real.
+     */
+    @Override
+    public synchronized void stop() {
+      stopped = true;
+      List<FutureTask<ProcessResult>> processes = new ArrayList<>();
+      processes.add(process);
+      synchronized (standbys) {
+        for (StubBroker standby : standbys) {
+          processes.add(standby.process);
+        }
+      }
+      for (FutureTask<ProcessResult> candidate : processes) {
+        if (candidate != null && isRunning(candidate)) {
+          candidate.cancel(false);
+        }
+      }
+      super.stop();
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MirroredArtifactRepositoryTest {
+
+  @Test
+  public void mirrorsThatDontStoreTheVersionAreLeftOut() throws Exception {
+    MirroredArtifactRepository repository = new MirroredArtifactRepository(
+        OfficialArtifactRepository.RABBITMQ, OfficialArtifactRepository.GITHUB, OfficialArtifactRepository.GITHUB);
+
+    assertThat(repository.getUrls(PredefinedVersion.V3_7_0, OperatingSystem.UNIX), equalTo(Collections.singletonList(
+        OfficialArtifactRepository.GITHUB.getUrl(PredefinedVersion.V3_7_0, OperatingSystem.UNIX))));
+  }
+
+  @Test
+  public void configDownloadsFromFirstMirrorAndKeepsTheOthers() throws Exception {
+    EmbeddedRabbitMqConfig config = new EmbeddedRabbitMqConfig.Builder()
+        .version(PredefinedVersion.V3_7_0)
+        .downloadFrom(new MirroredArtifactRepository(OfficialArtifactRepository.GITHUB, OfficialArtifactRepository.BINTRAY))
+        .build();
+    URL github = OfficialArtifactRepository.GITHUB.getUrl(PredefinedVersion.V3_7_0, OperatingSystem.detect());
+    URL bintray = OfficialArtifactRepository.BINTRAY.getUrl(PredefinedVersion.V3_7_0, OperatingSystem.detect());
+
+    assertThat(config.getDownloadSource(), equalTo(github));
+    assertThat(config.getDownloadMirrors(), equalTo(Arrays.asList(github, bintray)));
+    assertThat(new EmbeddedRabbitMqConfig.Builder(config).build().getDownloadMirrors(),
+        equalTo(Arrays.asList(github, bintray)));
+  }
+}
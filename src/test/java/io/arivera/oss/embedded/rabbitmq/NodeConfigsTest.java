@@ -0,0 +1,76 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class NodeConfigsTest {
+
+  private EmbeddedRabbitMqConfig config;
+
+  @Before
+  public void setUp() throws Exception {
+    config = new EmbeddedRabbitMqConfig.Builder().build();
+  }
+
+  @Test
+  public void derivedNodeConfigDoesNotShareDataFolderNorPidFile() throws Exception {
+    EmbeddedRabbitMqConfig original = new EmbeddedRabbitMqConfig.Builder()
+        .envVar(RabbitMqEnvVar.MNESIA_DIR, "/tmp/rabbit-data")
+        .envVar(RabbitMqEnvVar.PID_FILE, "/tmp/rabbit.pid")
+        .keepWarmStandby(true)
+        .build();
+
+    EmbeddedRabbitMqConfig derived = NodeConfigs.deriveNodeConfig(original);
+
+    int port = derived.getRabbitMqPort();
+    assertThat(derived.getMnesiaFolder().getPath(), equalTo("/tmp/rabbit-data-" + port));
+    assertThat(derived.getPidFile().getPath(), equalTo("/tmp/rabbit.pid-" + port));
+    assertThat(derived.shouldKeepWarmStandby(), equalTo(false));
+    assertThat(original.shouldKeepWarmStandby(), equalTo(true));
+    assertThat(original.getMnesiaFolder().getPath(), equalTo("/tmp/rabbit-data"));
+    assertThat(derived.isDerivedNode(), equalTo(true));
+    assertThat(original.isDerivedNode(), equalTo(false));
+  }
+
+  @Test
+  public void derivedNodeConfigsHaveSeparateInstanceFolders() throws Exception {
+    EmbeddedRabbitMqConfig derived1 = NodeConfigs.deriveNodeConfig(config);
+    EmbeddedRabbitMqConfig derived2 = NodeConfigs.deriveNodeConfig(derived1);
+
+    assertThat(config.getInstanceFolder(), equalTo(null));
+    assertThat(derived1.getInstanceFolder(), not(equalTo(derived2.getInstanceFolder())));
+    assertThat(derived1.getPidFile(), not(equalTo(derived2.getPidFile())));
+    assertThat(derived1.getEnvVars().get(RabbitMqEnvVar.LOG_BASE.getEnvVarName()),
+        not(equalTo(derived2.getEnvVars().get(RabbitMqEnvVar.LOG_BASE.getEnvVarName()))));
+  }
+
+  @Test
+  public void lazyBackendKeepsDistributionPortOfHighInternalPort() throws Exception {
+    EmbeddedRabbitMqConfig backend = NodeConfigs.lazyBackendConfig(config, 60000);
+
+    assertThat(backend.getRabbitMqPort(), equalTo(60000));
+    assertThat(backend.getDistributionPort(), equalTo(config.getDistributionPort()));
+    assertThat(backend.getEnvVars().get(RabbitMqEnvVar.NODE_IP_ADDRESS.getEnvVarName()),
+        equalTo(InetAddress.getLoopbackAddress().getHostAddress()));
+  }
+
+  @Test
+  public void reallocatedPortsKeepNodeNameAndDataFolder() throws Exception {
+    EmbeddedRabbitMqConfig derived = NodeConfigs.deriveNodeConfig(config);
+
+    EmbeddedRabbitMqConfig reallocated = NodeConfigs.reallocatePorts(derived);
+
+    assertThat(derived.hasRandomPort(), equalTo(true));
+    assertThat(reallocated.hasRandomPort(), equalTo(true));
+    assertThat(reallocated.getRabbitMqPort(), not(equalTo(derived.getRabbitMqPort())));
+    assertThat(reallocated.getDistributionPort(), not(equalTo(derived.getDistributionPort())));
+    assertThat(reallocated.getNodeName(), equalTo(derived.getNodeName()));
+    assertThat(reallocated.getMnesiaFolder(), equalTo(derived.getMnesiaFolder()));
+  }
+}
@@ -0,0 +1,162 @@
+package io.arivera.oss.embedded.rabbitmq;
+
+import io.arivera.oss.embedded.rabbitmq.bin.StubCommands;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeThat;
+
+public class ShutdownCoordinatorTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private EmbeddedRabbitMqConfig config;
+
+  @Before
+  public void setUp() throws Exception {
+    config = new EmbeddedRabbitMqConfig.Builder().build();
+  }
+
+  @Test
+  public void brokersAreStoppedConcurrently() throws Exception {
+    CountDownLatch allStopping = new CountDownLatch(2);
+    FakeBroker broker1 = new FakeBroker(config, allStopping);
+    FakeBroker broker2 = new FakeBroker(config, allStopping);
+    ShutdownCoordinator.register(broker1);
+    ShutdownCoordinator.register(broker2);
+
+    Map<EmbeddedRabbitMq, Long> durations = ShutdownCoordinator.stopAll(TimeUnit.SECONDS.toMillis(5));
+
+    assertThat(durations.size(), equalTo(2));
+    assertThat(broker1.stopped, equalTo(true));
+    assertThat(broker2.stopped, equalTo(true));
+    assertThat(broker1.killed || broker2.killed, equalTo(false));
+    assertThat(ShutdownCoordinator.getRunningBrokerCount(), equalTo(0));
+  }
+
+  @Test
+  public void brokersNotStoppedByDeadlineAreKilled() throws Exception {
+    FakeBroker broker = new FakeBroker(config, new CountDownLatch(2));
+    ShutdownCoordinator.register(broker);
+
+    Map<EmbeddedRabbitMq, Long> durations = ShutdownCoordinator.stopAll(100);
+
+    assertThat(durations.get(broker), equalTo(-1L));
+    assertThat(broker.killed, equalTo(true));
+    assertThat(ShutdownCoordinator.getRunningBrokerCount(), equalTo(0));
+  }
+
+  @Test
+  public void brokersAreStoppedByCommandWhenJvmExits() throws Exception {
+    assumeThat(OperatingSystem.detect() == OperatingSystem.WINDOWS, equalTo(false));
+    File folder = temporaryFolder.getRoot();
+    StubCommands commands = new StubCommands(ExitingJvm.configFor(folder))
+        .install("rabbitmqctl", "[ \"$1\" != stop ] || { sleep 0.5; touch '" + new File(folder, ExitingJvm.STOPPED) + "'; }");
+
+    ProcessResult result = new ProcessExecutor(
+        new File(System.getProperty("java.home"), "bin/java").getPath(),
+        "-cp", System.getProperty("java.class.path"),
+        ExitingJvm.class.getName(), folder.getPath())
+        .readOutput(true)
+        .timeout(30, TimeUnit.SECONDS)
+        .execute();
+
+    assertThat(result.outputUTF8(), result.getExitValue(), equalTo(0));
+    assertThat(commands.getInvocations().contains("rabbitmqctl stop"), equalTo(true));
+    assertThat(new File(folder, ExitingJvm.KILLED).exists(), equalTo(false));
+  }
+
+  /**
+   * A JVM that starts a broker and exits right away, leaving it to be stopped by the shutdown hook. Its server is a
+   * process that runs until the stubbed {@code rabbitmqctl stop} creates a marker file, which it only does after a
+   * while, so it doesn't get to if it's destroyed as soon as it starts.
+   */
+  static class ExitingJvm {
+
+    static final String STOPPED = "stopped";
+    static final String KILLED = "killed";
+
+    static EmbeddedRabbitMqConfig configFor(File folder) {
+      return new EmbeddedRabbitMqConfig.Builder()
+          .extractionFolder(folder)
+          .defaultRabbitMqCtlTimeoutInMillis(TimeUnit.SECONDS.toMillis(10))
+          .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+      final File folder = new File(args[0]);
+      EmbeddedRabbitMq broker = new EmbeddedRabbitMq(configFor(folder)) {
+        @Override
+        Future<ProcessResult> startOnAvailablePorts(StartupTimings timings) {
+          try {
+            return new ProcessExecutor("sh", "-c",
+                "while [ ! -f '" + new File(folder, STOPPED) + "' ]; do sleep 0.05; done")
+                .start()
+                .getFuture();
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+
+        @Override
+        void kill() {
+          try {
+            Files.createFile(new File(folder, KILLED).toPath());
+          } catch (IOException e) {
+            throw new IllegalStateException(e);
+          }
+        }
+      };
+      broker.startAsync(false).get();
+    }
+  }
+
+  /**
+   * A broker whose stop only completes once the given latch is counted down by all other brokers stopping.
+   */
+  private static class FakeBroker extends EmbeddedRabbitMq {
+
+    private final CountDownLatch allStopping;
+    private volatile boolean stopped;
+    private volatile boolean killed;
+
+    FakeBroker(EmbeddedRabbitMqConfig config, CountDownLatch allStopping) {
+      super(config);
+      this.allStopping = allStopping;
+    }
+
+    @Override
+    public void stop() {
+      allStopping.countDown();
+      try {
+        if (allStopping.await(1, TimeUnit.SECONDS)) {
+          stopped = true;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    @Override
+    void kill() {
+      killed = true;
+    }
+  }
+}
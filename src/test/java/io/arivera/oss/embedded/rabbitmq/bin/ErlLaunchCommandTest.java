@@ -0,0 +1,123 @@
+package io.arivera.oss.embedded.rabbitmq.bin;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.PredefinedVersion;
+import io.arivera.oss.embedded.rabbitmq.RabbitMqEnvVar;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeThat;
+
+public class ErlLaunchCommandTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File erl;
+  private File script;
+  private EmbeddedRabbitMqConfig.Builder configBuilder;
+
+  @Before
+  public void setUp() throws Exception {
+    assumeThat(OperatingSystem.detect() == OperatingSystem.WINDOWS, equalTo(false));
+    File extractionFolder = temporaryFolder.newFolder("extraction");
+    File binFolder = temporaryFolder.newFolder("bin");
+    erl = new File(binFolder, "erl");
+    writeExecutable(erl, "#!/bin/sh\nexit 0\n");
+
+    configBuilder = new EmbeddedRabbitMqConfig.Builder()
+        .version(PredefinedVersion.V3_8_0)
+        .extractionFolder(extractionFolder)
+        .envVar("PATH", binFolder.getAbsolutePath() + File.pathSeparator + System.getenv("PATH"))
+        .envVar(RabbitMqEnvVar.NODENAME, "rabbit-5999@localhost")
+        .port(5999);
+
+    File sbinFolder = new File(configBuilder.build().getAppFolder(), RabbitMqCommand.BINARIES_FOLDER);
+    assertThat(sbinFolder.mkdirs(), equalTo(true));
+    script = new File(sbinFolder, "rabbitmq-server");
+    writeExecutable(script, "#!/bin/sh\n"
+        + "erl -noshell -eval 'halt().' || exit 1\n"
+        + "RABBITMQ_DIST_PORT=$((RABBITMQ_NODE_PORT + 20000))\n"
+        + "export RABBITMQ_DIST_PORT\n"
+        + "exec erl -pa ebin -sname \"$RABBITMQ_NODENAME\" -rabbit tcp_listeners \"[{\\\"auto\\\",$RABBITMQ_NODE_PORT}]\""
+        + " +P 1059990 -kernel inet_dist_listen_min $RABBITMQ_DIST_PORT -s rabbit boot\n");
+  }
+
+  @Test
+  public void recordedCommandIsReusedByNodesWithOtherPortsAndNames() throws Exception {
+    ErlLaunchCommand recorded = ErlLaunchCommand.resolve(configBuilder.build());
+
+    assertThat(recorded, notNullValue());
+    assertThat(recorded.getExecutable().getCanonicalFile(), equalTo(erl.getCanonicalFile()));
+    assertThat(recorded.getArguments(), equalTo(Arrays.asList("-pa", "ebin", "-sname", "rabbit-5999@localhost",
+        "-rabbit", "tcp_listeners", "[{\"auto\",5999}]", "+P", "1059990",
+        "-kernel", "inet_dist_listen_min", "25999", "-s", "rabbit", "boot")));
+    assertThat(recorded.getEnvironment().get("RABBITMQ_DIST_PORT"), equalTo("25999"));
+
+    assertThat(script.delete(), equalTo(true));
+    EmbeddedRabbitMqConfig otherNode = configBuilder
+        .envVar(RabbitMqEnvVar.NODENAME, "rabbit-6001@localhost")
+        .port(6001)
+        .build();
+    ErlLaunchCommand cached = ErlLaunchCommand.resolve(otherNode);
+
+    assertThat(cached, notNullValue());
+    assertThat(cached.getArguments(), equalTo(Arrays.asList("-pa", "ebin", "-sname", "rabbit-6001@localhost",
+        "-rabbit", "tcp_listeners", "[{\"auto\",6001}]", "+P", "1059990",
+        "-kernel", "inet_dist_listen_min", "26001", "-s", "rabbit", "boot")));
+    assertThat(cached.getEnvironment().get("RABBITMQ_DIST_PORT"), equalTo("26001"));
+  }
+
+  @Test
+  public void commandIsNotRecordedWhenPortAlsoAppearsForOtherReasons() throws Exception {
+    writeExecutable(script, "#!/bin/sh\n"
+        + "exec erl -sname \"$RABBITMQ_NODENAME\" -rabbit tcp_listeners \"[{\\\"auto\\\",$RABBITMQ_NODE_PORT}]\""
+        + " +P 5999 -s rabbit boot\n");
+    EmbeddedRabbitMqConfig config = configBuilder.build();
+
+    assertThat(ErlLaunchCommand.resolve(config), nullValue());
+    assertThat(ErlLaunchCommand.getCacheFile(config).exists(), equalTo(false));
+  }
+
+  @Test
+  public void onlyWholeWordsAreReplacedWithPlaceholders() throws Exception {
+    Map<String, String> values = Collections.singletonMap("RABBITMQ_NODE_PORT", "5999");
+
+    String template = ErlLaunchCommand.insertPlaceholders("{\"auto\",5999} +P 1059990 x5999", values);
+
+    assertThat(template, equalTo("{\"auto\",${RABBITMQ_NODE_PORT}} +P 1059990 x5999"));
+    assertThat(ErlLaunchCommand.replacePlaceholders(template, values), equalTo("{\"auto\",5999} +P 1059990 x5999"));
+  }
+
+  @Test
+  public void environmentKeepsOnlyRabbitMqAndErlangVariables() throws Exception {
+    Map<String, String> environment = ErlLaunchCommand.parseEnvironment(
+        "HOME=/root\nRABBITMQ_SERVER_ERL_ARGS=+K true\n  +A 30\nERL_DIR=/tmp/\nERL_LIBS=/lib\nPATH=/bin\n");
+
+    Map<String, String> expected = new HashMap<>();
+    expected.put("RABBITMQ_SERVER_ERL_ARGS", "+K true\n  +A 30");
+    expected.put("ERL_LIBS", "/lib");
+    assertThat(environment, equalTo(expected));
+  }
+
+  private static void writeExecutable(File file, String content) throws Exception {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    assertThat(file.setExecutable(true), equalTo(true));
+  }
+}
@@ -0,0 +1,57 @@
+package io.arivera.oss.embedded.rabbitmq.bin;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Installs shell scripts in place of the RabbitMQ commands of a configuration's installation, which record how they
+ * were invoked before running the given script. Only usable on UNIX-like systems.
+ */
+public class StubCommands {
+
+  private final File binariesFolder;
+  private final File invocationsFile;
+
+  public StubCommands(EmbeddedRabbitMqConfig config) {
+    this.binariesFolder = new File(config.getAppFolder(), "sbin");
+    this.invocationsFile = new File(config.getAppFolder(), "invocations.log");
+  }
+
+  /**
+   * @param command the command to replace, such as {@code "rabbitmqctl"}
+   * @param script  shell code run after the invocation is recorded, such as {@code "exit 1"}
+   */
+  public StubCommands install(String command, String script) throws IOException {
+    Files.createDirectories(binariesFolder.toPath());
+    File executable = new File(binariesFolder, command);
+    String content = "#!/bin/sh\n"
+        + "echo \"" + command + " $*\" >> '" + invocationsFile.getAbsolutePath() + "'\n"
+        + script + "\n";
+    Files.write(executable.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    if (!executable.setExecutable(true)) {
+      throw new IOException("Could not make " + executable + " executable");
+    }
+    return this;
+  }
+
+  /**
+   * @return every invocation of the stubbed commands so far, such as {@code "rabbitmqctl stop_app"}, in order.
+   */
+  public List<String> getInvocations() throws IOException {
+    if (!invocationsFile.isFile()) {
+      return Collections.emptyList();
+    }
+    List<String> invocations = new ArrayList<>();
+    for (String line : Files.readAllLines(invocationsFile.toPath(), StandardCharsets.UTF_8)) {
+      invocations.add(line.trim());
+    }
+    return invocations;
+  }
+}
@@ -0,0 +1,133 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class CachedDownloaderTest {
+
+  private static final int FORKS = 4;
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private HttpServer server;
+  private byte[] artifact;
+  private AtomicInteger downloads;
+  private File target;
+  private EmbeddedRabbitMqConfig config;
+
+  @Before
+  public void setUp() throws Exception {
+    artifact = new byte[100000];
+    new Random(42).nextBytes(artifact);
+    downloads = new AtomicInteger();
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/rabbitmq.tar.xz", new SlowArtifactHandler());
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+
+    File downloadFolder = new File(temporaryFolder.getRoot(), "downloads");
+    target = new File(downloadFolder, "rabbitmq.tar.xz");
+    config = new EmbeddedRabbitMqConfig.Builder()
+        .downloadFrom(new URL("http://localhost:" + server.getAddress().getPort() + "/rabbitmq.tar.xz"), "rabbitmq")
+        .downloadFolder(downloadFolder)
+        .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop(0);
+  }
+
+  @Test
+  public void concurrentDownloadsOfTheSameArtifactAreDoneOnce() throws Exception {
+    ExecutorService forks = Executors.newFixedThreadPool(FORKS);
+    try {
+      List<Future<Void>> results = new ArrayList<>();
+      for (int i = 0; i < FORKS; i++) {
+        results.add(forks.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            new DownloaderFactory(config).getNewInstance().run();
+            assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), artifact), equalTo(true));
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      forks.shutdownNow();
+    }
+
+    assertThat(downloads.get(), equalTo(1));
+    assertThat(PartialFile.of(target).exists(), equalTo(false));
+    assertThat(CachedDownloader.getLockFile(target).exists(), equalTo(true));
+  }
+
+  @Test
+  public void failedDownloadNeverReplacesTheCachedFile() throws Exception {
+    EmbeddedRabbitMqConfig config = new EmbeddedRabbitMqConfig.Builder(this.config)
+        .downloadChecksum("0000")
+        .build();
+    Files.createDirectories(target.getParentFile().toPath());
+    Files.write(target.toPath(), new byte[] {1, 2, 3});
+
+    try {
+      new DownloaderFactory(config).getNewInstance().run();
+      fail("Download should have failed");
+    } catch (DownloadException e) {
+      assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), new byte[] {1, 2, 3}), equalTo(true));
+    }
+    assertThat(downloads.get(), equalTo(1));
+    assertThat(PartialFile.of(target).exists(), equalTo(false));
+  }
+
+  private class SlowArtifactHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      downloads.incrementAndGet();
+      try {
+        // Gives every fork the chance to find the artifact missing while it's being downloaded.
+        Thread.sleep(300);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      exchange.sendResponseHeaders(200, artifact.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(artifact);
+      }
+    }
+  }
+}
@@ -35,4 +35,14 @@ public class DownloaderFactoryTest {
 
     assertTrue(downloader.getClass().equals(BasicDownloader.class));
   }
+
+  @Test
+  public void downloaderWithParallelConnections() throws Exception {
+    configBuilder.useCachedDownload(false).parallelDownloadConnections(4);
+
+    DownloaderFactory downloaderFactory = new DownloaderFactory(configBuilder.build());
+    Downloader downloader = downloaderFactory.getNewInstance();
+
+    assertTrue(downloader.getClass().equals(ParallelDownloader.class));
+  }
 }
\ No newline at end of file
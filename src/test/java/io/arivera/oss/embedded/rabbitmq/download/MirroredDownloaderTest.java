@@ -0,0 +1,171 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.ArtifactRepository;
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.MirroredArtifactRepository;
+import io.arivera.oss.embedded.rabbitmq.Version;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class MirroredDownloaderTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private byte[] artifact;
+  private Mirror first;
+  private Mirror second;
+  private File target;
+  private EmbeddedRabbitMqConfig.Builder builder;
+
+  @Before
+  public void setUp() throws Exception {
+    artifact = new byte[100000];
+    new Random(42).nextBytes(artifact);
+    first = new Mirror();
+    second = new Mirror();
+
+    File downloadFolder = new File(temporaryFolder.getRoot(), "downloads");
+    target = new File(downloadFolder, "rabbitmq.tar.xz");
+    builder = new EmbeddedRabbitMqConfig.Builder()
+        .downloadFrom(new MirroredArtifactRepository(first, second))
+        .downloadFolder(downloadFolder)
+        .useCachedDownload(false);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    first.stop();
+    second.stop();
+  }
+
+  @Test
+  public void fastestMirrorIsUsedAndItsRankingReused() throws Exception {
+    first.headDelayInMillis = 300;
+
+    new DownloaderFactory(builder.build()).getNewInstance().run();
+    new DownloaderFactory(builder.build()).getNewInstance().run();
+
+    assertThat(first.requests, equalTo(Collections.singletonList("HEAD")));
+    assertThat(second.requests, equalTo(Arrays.asList("HEAD", "GET", "GET")));
+    assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), artifact), equalTo(true));
+  }
+
+  @Test
+  public void downloadContinuesFromNextMirrorOnErrors() throws Exception {
+    first.failDownloads = true;
+    second.headDelayInMillis = 300;
+
+    new DownloaderFactory(builder.build()).getNewInstance().run();
+    assertThat(first.requests, equalTo(Arrays.asList("HEAD", "GET")));
+    assertThat(second.requests, equalTo(Arrays.asList("HEAD", "GET")));
+    assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), artifact), equalTo(true));
+
+    new DownloaderFactory(builder.build()).getNewInstance().run();
+    assertThat(first.requests, equalTo(Arrays.asList("HEAD", "GET")));
+    assertThat(second.requests, equalTo(Arrays.asList("HEAD", "GET", "GET")));
+  }
+
+  @Test
+  public void downloadContinuesFromNextMirrorWhenTooSlow() throws Exception {
+    first.bytesPerChunk = 1000;
+    second.headDelayInMillis = 300;
+
+    new DownloaderFactory(builder.minDownloadThroughput(200000, 300).build()).getNewInstance().run();
+
+    assertThat(first.requests, equalTo(Arrays.asList("HEAD", "GET")));
+    assertThat(second.requests, equalTo(Arrays.asList("HEAD", "GET")));
+    assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), artifact), equalTo(true));
+  }
+
+  /**
+   * A local stand-in for a mirror, which can be made slow to answer, to fail or to send the artifact slowly.
+   */
+  private class Mirror implements ArtifactRepository, HttpHandler {
+
+    private final HttpServer server;
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+    private volatile long headDelayInMillis;
+    private volatile boolean failDownloads;
+    private volatile int bytesPerChunk = artifact.length;
+
+    Mirror() throws IOException {
+      server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+      server.createContext("/rabbitmq.tar.xz", this);
+      server.start();
+    }
+
+    @Override
+    public URL getUrl(Version version, OperatingSystem operatingSystem) {
+      try {
+        return new URL("http://localhost:" + server.getAddress().getPort() + "/rabbitmq.tar.xz");
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      requests.add(exchange.getRequestMethod());
+      if ("HEAD".equals(exchange.getRequestMethod())) {
+        sleep(headDelayInMillis);
+        exchange.getResponseHeaders().add("Content-Length", String.valueOf(artifact.length));
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+        return;
+      }
+      if (failDownloads) {
+        exchange.sendResponseHeaders(500, -1);
+        exchange.close();
+        return;
+      }
+      exchange.sendResponseHeaders(200, artifact.length);
+      try (OutputStream body = exchange.getResponseBody()) {
+        for (int offset = 0; offset < artifact.length; offset += bytesPerChunk) {
+          body.write(artifact, offset, Math.min(bytesPerChunk, artifact.length - offset));
+          body.flush();
+          if (bytesPerChunk < artifact.length) {
+            sleep(50);
+          }
+        }
+      } catch (IOException e) {
+        // The client gave up on this mirror.
+      }
+    }
+
+    private void sleep(long millis) {
+      try {
+        Thread.sleep(millis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    void stop() {
+      server.stop(0);
+    }
+  }
+}
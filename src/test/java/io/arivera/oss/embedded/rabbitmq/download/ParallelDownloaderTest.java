@@ -0,0 +1,136 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.util.Digests;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class ParallelDownloaderTest {
+
+  private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d+)");
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private HttpServer server;
+  private byte[] artifact;
+  private volatile boolean acceptRanges;
+  private AtomicInteger rangeRequests;
+  private AtomicInteger fullRequests;
+  private File target;
+  private EmbeddedRabbitMqConfig.Builder configBuilder;
+
+  @Before
+  public void setUp() throws Exception {
+    artifact = new byte[(int) (ParallelDownloader.MIN_RANGE_SIZE * 4 + 123)];
+    new Random(42).nextBytes(artifact);
+    acceptRanges = true;
+    rangeRequests = new AtomicInteger();
+    fullRequests = new AtomicInteger();
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/rabbitmq.tar.xz", new ArtifactHandler());
+    server.start();
+
+    File downloadFolder = new File(temporaryFolder.getRoot(), "downloads");
+    target = new File(downloadFolder, "rabbitmq.tar.xz");
+    configBuilder = new EmbeddedRabbitMqConfig.Builder()
+        .downloadFrom(new URL("http://localhost:" + server.getAddress().getPort() + "/rabbitmq.tar.xz"), "rabbitmq")
+        .downloadFolder(downloadFolder)
+        .parallelDownloadConnections(4);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop(0);
+  }
+
+  @Test
+  public void artifactIsDownloadedInRanges() throws Exception {
+    new DownloaderFactory(configBuilder.build()).getNewInstance().run();
+
+    assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), artifact), equalTo(true));
+    assertThat(rangeRequests.get(), equalTo(4));
+    assertThat(fullRequests.get(), equalTo(0));
+    assertThat(PartialFile.of(target).exists(), equalTo(false));
+    assertThat(new ArtifactChecksum(configBuilder.build()).readRecorded(), equalTo(Digests.sha256Hex(artifact)));
+  }
+
+  @Test
+  public void artifactIsDownloadedAsSingleStreamIfRangesAreNotSupported() throws Exception {
+    acceptRanges = false;
+
+    new DownloaderFactory(configBuilder.build()).getNewInstance().run();
+
+    assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), artifact), equalTo(true));
+    assertThat(rangeRequests.get(), equalTo(0));
+    assertThat(fullRequests.get(), equalTo(1));
+  }
+
+  @Test
+  public void rangesAreNeverSmallerThanTheMinimum() throws Exception {
+    ParallelDownloader downloader = new ParallelDownloader(configBuilder.parallelDownloadConnections(8).build());
+
+    assertThat(downloader.countRanges(ParallelDownloader.MIN_RANGE_SIZE * 3, true), equalTo(3));
+    assertThat(downloader.countRanges(ParallelDownloader.MIN_RANGE_SIZE * 100, true), equalTo(8));
+    assertThat(downloader.countRanges(ParallelDownloader.MIN_RANGE_SIZE / 2, true), equalTo(1));
+    assertThat(downloader.countRanges(-1, true), equalTo(1));
+    assertThat(downloader.countRanges(ParallelDownloader.MIN_RANGE_SIZE * 100, false), equalTo(1));
+  }
+
+  private class ArtifactHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      if (acceptRanges) {
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+      }
+      if ("HEAD".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().add("Content-Length", String.valueOf(artifact.length));
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+        return;
+      }
+
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      Matcher matcher = range == null ? null : RANGE.matcher(range);
+      int first = 0;
+      int last = artifact.length - 1;
+      if (acceptRanges && matcher != null && matcher.matches()) {
+        rangeRequests.incrementAndGet();
+        first = Integer.parseInt(matcher.group(1));
+        last = Integer.parseInt(matcher.group(2));
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + first + "-" + last + "/" + artifact.length);
+        exchange.sendResponseHeaders(206, last - first + 1);
+      } else {
+        fullRequests.incrementAndGet();
+        exchange.sendResponseHeaders(200, artifact.length);
+      }
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(artifact, first, last - first + 1);
+      }
+    }
+  }
+}
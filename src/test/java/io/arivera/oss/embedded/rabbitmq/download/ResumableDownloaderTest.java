@@ -0,0 +1,168 @@
+package io.arivera.oss.embedded.rabbitmq.download;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.util.Digests;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class ResumableDownloaderTest {
+
+  private static final String ETAG = "\"v1\"";
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private HttpServer server;
+  private byte[] artifact;
+  private List<String> requests;
+  private File target;
+  private EmbeddedRabbitMqConfig config;
+
+  @Before
+  public void setUp() throws Exception {
+    artifact = new byte[100000];
+    new Random(42).nextBytes(artifact);
+    requests = Collections.synchronizedList(new ArrayList<String>());
+
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/rabbitmq.tar.xz", new ArtifactHandler());
+    server.start();
+
+    File downloadFolder = new File(temporaryFolder.getRoot(), "downloads");
+    target = new File(downloadFolder, "rabbitmq.tar.xz");
+    config = new EmbeddedRabbitMqConfig.Builder()
+        .downloadFrom(new URL("http://localhost:" + server.getAddress().getPort() + "/rabbitmq.tar.xz"), "rabbitmq")
+        .downloadFolder(downloadFolder)
+        .resumeDownloads(true)
+        .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    server.stop(0);
+  }
+
+  @Test
+  public void partialDownloadIsResumed() throws Exception {
+    writePartialDownload(30000, ETAG);
+
+    new DownloaderFactory(config).getNewInstance().run();
+
+    assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), artifact), equalTo(true));
+    assertThat(requests, equalTo(Arrays.asList("HEAD", "GET bytes=30000-")));
+    assertThat(PartialFile.of(target).exists(), equalTo(false));
+    assertThat(DownloadState.load(target).isCompletedBy(target), equalTo(true));
+    assertThat(new ArtifactChecksum(config).readRecorded(), equalTo(Digests.sha256Hex(artifact)));
+  }
+
+  @Test
+  public void partialDownloadOfAnotherVersionIsDownloadedAgain() throws Exception {
+    writePartialDownload(30000, "\"v0\"");
+
+    new DownloaderFactory(config).getNewInstance().run();
+
+    assertThat(Arrays.equals(Files.readAllBytes(target.toPath()), artifact), equalTo(true));
+    assertThat(requests, equalTo(Arrays.asList("HEAD", "GET")));
+  }
+
+  @Test
+  public void onlyCompleteDownloadIsConsideredCached() throws Exception {
+    new DownloaderFactory(config).getNewInstance().run();
+    new DownloaderFactory(config).getNewInstance().run();
+    assertThat(requests, equalTo(Arrays.asList("HEAD", "GET")));
+
+    new DownloadState(artifact.length, ETAG, null, false).save(target);
+    new DownloaderFactory(config).getNewInstance().run();
+    assertThat(requests, equalTo(Arrays.asList("HEAD", "GET", "HEAD", "GET")));
+  }
+
+  @Test
+  public void downloadWithUnexpectedChecksumFails() throws Exception {
+    EmbeddedRabbitMqConfig config = new EmbeddedRabbitMqConfig.Builder(this.config)
+        .downloadChecksum(Digests.sha256Hex(new byte[0]))
+        .build();
+
+    try {
+      new DownloaderFactory(config).getNewInstance().run();
+      fail("Download should have failed");
+    } catch (DownloadException e) {
+      assertThat(e.getMessage().contains(Digests.sha256Hex(artifact)), equalTo(true));
+    }
+    assertThat(new ArtifactChecksum(config).getFile().exists(), equalTo(false));
+  }
+
+  @Test
+  public void cachedDownloadIsOnlyReusedIfItsChecksumIsExpected() throws Exception {
+    new DownloaderFactory(config).getNewInstance().run();
+
+    EmbeddedRabbitMqConfig.Builder builder = new EmbeddedRabbitMqConfig.Builder(config);
+    new DownloaderFactory(builder.downloadChecksum(Digests.sha256Hex(artifact)).build()).getNewInstance().run();
+    assertThat(requests, equalTo(Arrays.asList("HEAD", "GET")));
+
+    Files.write(new ArtifactChecksum(config).getFile().toPath(), "0000  rabbitmq.tar.xz\n".getBytes(StandardCharsets.UTF_8));
+    new DownloaderFactory(builder.build()).getNewInstance().run();
+    assertThat(requests, equalTo(Arrays.asList("HEAD", "GET", "HEAD", "GET")));
+  }
+
+  private void writePartialDownload(int length, String etag) throws Exception {
+    Files.createDirectories(target.getParentFile().toPath());
+    Files.write(PartialFile.of(target).toPath(), Arrays.copyOf(artifact, length));
+    new DownloadState(artifact.length, etag, null, false).save(target);
+  }
+
+  private class ArtifactHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+      exchange.getResponseHeaders().add("ETag", ETAG);
+      if ("HEAD".equals(exchange.getRequestMethod())) {
+        requests.add("HEAD");
+        exchange.getResponseHeaders().add("Content-Length", String.valueOf(artifact.length));
+        exchange.sendResponseHeaders(200, -1);
+        exchange.close();
+        return;
+      }
+
+      String range = exchange.getRequestHeaders().getFirst("Range");
+      int first = 0;
+      if (range != null && ETAG.equals(exchange.getRequestHeaders().getFirst("If-Range"))) {
+        requests.add("GET " + range);
+        first = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+        exchange.getResponseHeaders().add("Content-Range",
+            "bytes " + first + "-" + (artifact.length - 1) + "/" + artifact.length);
+        exchange.sendResponseHeaders(206, artifact.length - first);
+      } else {
+        requests.add("GET");
+        exchange.sendResponseHeaders(200, artifact.length);
+      }
+      try (OutputStream body = exchange.getResponseBody()) {
+        body.write(artifact, first, artifact.length - first);
+      }
+    }
+  }
+}
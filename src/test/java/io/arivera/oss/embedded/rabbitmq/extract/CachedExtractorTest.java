@@ -0,0 +1,78 @@
+package io.arivera.oss.embedded.rabbitmq.extract;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class CachedExtractorTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private EmbeddedRabbitMqConfig config;
+  private File extractedFile;
+
+  @Before
+  public void setUp() throws Exception {
+    config = new EmbeddedRabbitMqConfig.Builder()
+        .downloadFrom(new URL("http://localhost/rabbitmq.zip"), "rabbitmq")
+        .downloadFolder(temporaryFolder.newFolder("downloads"))
+        .extractionFolder(temporaryFolder.newFolder("extracted"))
+        .useCachedDownload(true)
+        .build();
+    extractedFile = new File(config.getAppFolder(), "sbin/rabbitmq-server");
+
+    try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(config.getDownloadTarget().toPath()))) {
+      zip.putNextEntry(new ZipEntry("rabbitmq/"));
+      zip.putNextEntry(new ZipEntry("rabbitmq/sbin/"));
+      zip.putNextEntry(new ZipEntry("rabbitmq/sbin/rabbitmq-server"));
+      zip.write("original".getBytes(StandardCharsets.UTF_8));
+      zip.closeEntry();
+    }
+  }
+
+  @Test
+  public void extractionOfTheSameDownloadIsReused() throws Exception {
+    new ExtractorFactory(config).getNewInstance().run();
+    assertThat(read(extractedFile), equalTo("original"));
+
+    write(extractedFile, "changed");
+    new ExtractorFactory(config).getNewInstance().run();
+    assertThat(read(extractedFile), equalTo("changed"));
+  }
+
+  @Test
+  public void newDownloadIsExtractedAgain() throws Exception {
+    new ExtractorFactory(config).getNewInstance().run();
+    write(extractedFile, "changed");
+
+    File download = config.getDownloadTarget();
+    assertThat(download.setLastModified(download.lastModified() - 60000), equalTo(true));
+    new ExtractorFactory(config).getNewInstance().run();
+    assertThat(read(extractedFile), equalTo("original"));
+  }
+
+  private static String read(File file) throws Exception {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+
+  private static void write(File file, String content) throws Exception {
+    try (OutputStream output = Files.newOutputStream(file.toPath())) {
+      output.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
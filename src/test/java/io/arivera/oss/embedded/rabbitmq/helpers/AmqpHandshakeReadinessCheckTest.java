@@ -0,0 +1,116 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class AmqpHandshakeReadinessCheckTest {
+
+  private static final byte[] CONNECTION_START_FRAME_START = {1, 0, 0, 0, 0, 0, 4, 0, 10, 0, 10};
+  private static final byte[] CONNECTION_CLOSE_FRAME_START = {1, 0, 0, 0, 0, 0, 4, 0, 10, 0, 50};
+
+  private int port;
+  private ServerSocket serverSocket;
+
+  @Before
+  public void setUp() throws Exception {
+    try (ServerSocket freePort = new ServerSocket(0, 10, InetAddress.getLoopbackAddress())) {
+      port = freePort.getLocalPort();
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (serverSocket != null) {
+      serverSocket.close();
+    }
+  }
+
+  @Test
+  public void readyWhenConnectionStartIsReceived() throws Exception {
+    AmqpHandshakeReadinessCheck readinessCheck = newReadinessCheck();
+    answerWith(CONNECTION_START_FRAME_START);
+
+    assertThat(readinessCheck.awaitReadiness(2, TimeUnit.SECONDS), equalTo(true));
+  }
+
+  @Test
+  public void notReadyWhenAnswerIsNotConnectionStart() throws Exception {
+    AmqpHandshakeReadinessCheck readinessCheck = newReadinessCheck();
+    answerWith(CONNECTION_CLOSE_FRAME_START);
+
+    assertThat(readinessCheck.awaitReadiness(300, TimeUnit.MILLISECONDS), equalTo(false));
+  }
+
+  @Test
+  public void notReadyWhenNothingIsListening() throws Exception {
+    assertThat(newReadinessCheck().awaitReadiness(300, TimeUnit.MILLISECONDS), equalTo(false));
+  }
+
+  @Test
+  public void notReadyWhenAnotherServerListenedBeforeLaunch() throws Exception {
+    answerWith(CONNECTION_START_FRAME_START);
+    AmqpHandshakeReadinessCheck readinessCheck = newReadinessCheck();
+
+    assertThat(readinessCheck.awaitReadiness(300, TimeUnit.MILLISECONDS), equalTo(false));
+  }
+
+  @Test
+  public void notReadyOnceBootFailureIsReported() throws Exception {
+    AmqpHandshakeReadinessCheck readinessCheck = newReadinessCheck();
+    answerWith(CONNECTION_START_FRAME_START);
+    readinessCheck.processFinished(StartupHelper.BootOutputMonitor.BOOT_FAILURE_EXIT_VALUE);
+
+    assertThat(readinessCheck.awaitReadiness(2, TimeUnit.SECONDS), equalTo(false));
+  }
+
+  @Test
+  public void notReadyOnceProcessFinished() throws Exception {
+    AmqpHandshakeReadinessCheck readinessCheck = newReadinessCheck();
+    readinessCheck.processFinished(1);
+
+    assertThat(readinessCheck.awaitReadiness(1, TimeUnit.MINUTES), equalTo(false));
+  }
+
+  private AmqpHandshakeReadinessCheck newReadinessCheck() {
+    return new AmqpHandshakeReadinessCheck(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+  }
+
+  /**
+   * Accepts connections in the background, expecting an AMQP 0-9-1 protocol header and replying with the given bytes.
+   */
+  private void answerWith(final byte[] answer) throws IOException {
+    serverSocket = new ServerSocket(port, 10, InetAddress.getLoopbackAddress());
+    Thread server = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!serverSocket.isClosed()) {
+          try (Socket socket = serverSocket.accept()) {
+            byte[] header = new byte[8];
+            new DataInputStream(socket.getInputStream()).readFully(header);
+            if (Arrays.equals(header, new byte[]{'A', 'M', 'Q', 'P', 0, 0, 9, 1})) {
+              socket.getOutputStream().write(answer);
+              socket.getOutputStream().flush();
+            }
+          } catch (IOException e) {
+            // Server socket was closed
+          }
+        }
+      }
+    });
+    server.setDaemon(true);
+    server.start();
+  }
+}
@@ -0,0 +1,106 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.PredefinedVersion;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class BootHistoryTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private EmbeddedRabbitMqConfig.Builder configBuilder;
+
+  @Before
+  public void setUp() throws Exception {
+    configBuilder = new EmbeddedRabbitMqConfig.Builder()
+        .version(PredefinedVersion.V3_8_0)
+        .downloadFolder(temporaryFolder.newFolder("downloads"))
+        .rabbitMqServerInitializationTimeoutInMillis(7000)
+        .startupTimeoutSafetyFactor(2)
+        .minStartupTimeoutInMillis(1000)
+        .maxStartupTimeoutInMillis(10000);
+  }
+
+  @Test
+  public void fixedTimeoutIsUsedUntilThereAreEnoughBoots() throws Exception {
+    EmbeddedRabbitMqConfig config = configBuilder.build();
+    for (int i = 0; i < BootHistory.MIN_SAMPLES - 1; i++) {
+      BootHistory.load(config).record(100);
+    }
+    assertThat(BootHistory.load(config).getTimeoutInMillis(), equalTo(7000L));
+
+    BootHistory.load(config).record(900);
+
+    BootHistory history = BootHistory.load(config);
+    assertThat(history.getDurations(), equalTo(Arrays.asList(100L, 100L, 100L, 100L, 900L)));
+    assertThat(history.getTimeoutInMillis(), equalTo(1800L));
+  }
+
+  @Test
+  public void timeoutStaysWithinBounds() throws Exception {
+    EmbeddedRabbitMqConfig config = configBuilder.build();
+    recordAll(config, 100, 100, 100, 100, 100);
+    assertThat(BootHistory.load(config).getTimeoutInMillis(), equalTo(1000L));
+
+    recordAll(config, 9000);
+    assertThat(BootHistory.load(config).getTimeoutInMillis(), equalTo(10000L));
+  }
+
+  @Test
+  public void historyIsKeptPerVersionAndLimited() throws Exception {
+    EmbeddedRabbitMqConfig config = configBuilder.build();
+    for (int i = 0; i < BootHistory.MAX_SAMPLES + 10; i++) {
+      BootHistory.load(config).record(i);
+    }
+
+    BootHistory history = BootHistory.load(config);
+    assertThat(history.getDurations().size(), equalTo(BootHistory.MAX_SAMPLES));
+    assertThat(history.getDurations().get(0), equalTo(10L));
+    assertThat(BootHistory.load(configBuilder.version(PredefinedVersion.V3_7_7).build()).getDurations().isEmpty(),
+        equalTo(true));
+  }
+
+  @Test
+  public void slowBootIsAnOutlier() throws Exception {
+    EmbeddedRabbitMqConfig config = configBuilder.build();
+    recordAll(config, 800, 900, 1000, 1100, 1200);
+
+    BootHistory history = BootHistory.load(config);
+    assertThat(history.isOutlier(1200), equalTo(false));
+    assertThat(history.isOutlier(5000), equalTo(true));
+    assertThat(history.describe(), equalTo("median 1000ms, p99 1200ms over the last 5 boots"));
+  }
+
+  @Test
+  public void timedOutBootsRaiseTheTimeout() throws Exception {
+    EmbeddedRabbitMqConfig config = configBuilder.build();
+    recordAll(config, 100, 100, 100, 100, 100);
+    assertThat(BootHistory.load(config).getTimeoutInMillis(), equalTo(1000L));
+
+    BootHistory.load(config).recordTimeout(1000);
+    assertThat(BootHistory.load(config).getTimeoutInMillis(), equalTo(2000L));
+
+    BootHistory.load(config).recordTimeout(2000);
+    BootHistory history = BootHistory.load(config);
+    assertThat(history.getTimeoutInMillis(), equalTo(4000L));
+    assertThat(history.getDurations(), equalTo(Arrays.asList(100L, 100L, 100L, 100L, 100L, 1000L, 2000L)));
+    assertThat(history.getTimedOutBoots(), equalTo(2));
+    assertThat(history.describe(), equalTo("median 100ms, p99 2000ms over the last 7 boots, 2 of which timed out"));
+  }
+
+  private static void recordAll(EmbeddedRabbitMqConfig config, long... durations) {
+    for (long duration : durations) {
+      BootHistory.load(config).record(duration);
+    }
+  }
+}
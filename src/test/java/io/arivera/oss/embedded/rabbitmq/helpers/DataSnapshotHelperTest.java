@@ -0,0 +1,139 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.RabbitMqEnvVar;
+import io.arivera.oss.embedded.rabbitmq.bin.RabbitMqCommandException;
+import io.arivera.oss.embedded.rabbitmq.bin.StubCommands;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeThat;
+
+public class DataSnapshotHelperTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File mnesiaFolder;
+  private File snapshotFolder;
+  private EmbeddedRabbitMqConfig config;
+  private StubCommands commands;
+
+  @Before
+  public void setUp() throws Exception {
+    assumeThat(OperatingSystem.detect() == OperatingSystem.WINDOWS, equalTo(false));
+    mnesiaFolder = new File(temporaryFolder.getRoot(), "mnesia");
+    snapshotFolder = new File(temporaryFolder.getRoot(), "mnesia-snapshot");
+    config = new EmbeddedRabbitMqConfig.Builder()
+        .extractionFolder(temporaryFolder.newFolder("extraction"))
+        .envVar(RabbitMqEnvVar.MNESIA_DIR, mnesiaFolder.getPath())
+        .build();
+    commands = new StubCommands(config).install("rabbitmqctl", "exit 0");
+  }
+
+  @Test
+  public void snapshotIsCopiedWhileAppIsStopped() throws Exception {
+    write(new File(mnesiaFolder, "queues.dat"), "queues");
+    write(new File(snapshotFolder, "stale.dat"), "stale");
+
+    new DataSnapshotHelper(config).createSnapshot(snapshotFolder);
+
+    assertThat(read(new File(snapshotFolder, "queues.dat")), equalTo("queues"));
+    assertThat(new File(snapshotFolder, "stale.dat").exists(), equalTo(false));
+    assertThat(commands.getInvocations(), equalTo(Arrays.asList("rabbitmqctl stop_app", "rabbitmqctl start_app")));
+  }
+
+  @Test
+  public void snapshotIsRestoredWithoutRestartingTheNode() throws Exception {
+    write(new File(snapshotFolder, "queues.dat"), "snapshot");
+    write(new File(mnesiaFolder, "queues.dat"), "modified");
+    write(new File(mnesiaFolder, "new.dat"), "new");
+
+    new DataSnapshotHelper(config).restoreSnapshot(snapshotFolder);
+
+    assertThat(read(new File(mnesiaFolder, "queues.dat")), equalTo("snapshot"));
+    assertThat(new File(mnesiaFolder, "new.dat").exists(), equalTo(false));
+    assertThat(commands.getInvocations(), equalTo(Arrays.asList("rabbitmqctl stop_app", "rabbitmqctl start_app")));
+  }
+
+  @Test
+  public void missingSnapshotIsNotRestored() throws Exception {
+    try {
+      new DataSnapshotHelper(config).restoreSnapshot(snapshotFolder);
+      fail("Restoring a missing snapshot should have failed");
+    } catch (DataSnapshotException e) {
+      assertThat(commands.getInvocations(), equalTo(Collections.<String>emptyList()));
+    }
+  }
+
+  @Test
+  public void appIsStartedAgainWhenCopyFails() throws Exception {
+    File notAFolder = temporaryFolder.newFile("not-a-folder");
+    write(new File(snapshotFolder, "queues.dat"), "snapshot");
+    EmbeddedRabbitMqConfig unwritableConfig = new EmbeddedRabbitMqConfig.Builder(config)
+        .envVar(RabbitMqEnvVar.MNESIA_DIR, new File(notAFolder, "mnesia").getPath())
+        .build();
+
+    try {
+      new DataSnapshotHelper(unwritableConfig).restoreSnapshot(snapshotFolder);
+      fail("Copying into a file should have failed");
+    } catch (DataSnapshotException e) {
+      assertThat(e.getSuppressed().length, equalTo(0));
+    }
+    assertThat(commands.getInvocations(), equalTo(Arrays.asList("rabbitmqctl stop_app", "rabbitmqctl start_app")));
+  }
+
+  @Test
+  public void failureToStartAppIsReportedAlongWithCopyFailure() throws Exception {
+    commands.install("rabbitmqctl", "[ \"$1\" != start_app ]");
+    File notAFolder = temporaryFolder.newFile("not-a-folder");
+    write(new File(snapshotFolder, "queues.dat"), "snapshot");
+    EmbeddedRabbitMqConfig unwritableConfig = new EmbeddedRabbitMqConfig.Builder(config)
+        .envVar(RabbitMqEnvVar.MNESIA_DIR, new File(notAFolder, "mnesia").getPath())
+        .build();
+
+    try {
+      new DataSnapshotHelper(unwritableConfig).restoreSnapshot(snapshotFolder);
+      fail("Copying into a file should have failed");
+    } catch (DataSnapshotException e) {
+      assertThat(e.getSuppressed().length, equalTo(1));
+      assertThat(e.getSuppressed()[0], instanceOf(RabbitMqCommandException.class));
+    }
+  }
+
+  @Test
+  public void failureToStartAppIsReportedAfterSuccessfulCopy() throws Exception {
+    commands.install("rabbitmqctl", "[ \"$1\" != start_app ]");
+    write(new File(mnesiaFolder, "queues.dat"), "queues");
+
+    try {
+      new DataSnapshotHelper(config).createSnapshot(snapshotFolder);
+      fail("Starting the application should have failed");
+    } catch (RabbitMqCommandException e) {
+      assertThat(read(new File(snapshotFolder, "queues.dat")), equalTo("queues"));
+    }
+  }
+
+  private static void write(File file, String content) throws Exception {
+    Files.createDirectories(file.getParentFile().toPath());
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(File file) throws Exception {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}
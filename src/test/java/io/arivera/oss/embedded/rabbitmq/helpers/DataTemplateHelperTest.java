@@ -0,0 +1,93 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.PredefinedVersion;
+import io.arivera.oss.embedded.rabbitmq.RabbitMqEnvVar;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class DataTemplateHelperTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private File definitions;
+  private File mnesiaFolder;
+  private EmbeddedRabbitMqConfig.Builder configBuilder;
+
+  @Before
+  public void setUp() throws Exception {
+    definitions = temporaryFolder.newFile("definitions.json");
+    write(definitions, "{\"queues\": []}");
+    mnesiaFolder = new File(temporaryFolder.getRoot(), "mnesia");
+    configBuilder = new EmbeddedRabbitMqConfig.Builder()
+        .version(PredefinedVersion.V3_8_0)
+        .extractionFolder(temporaryFolder.newFolder("extraction"))
+        .envVar(RabbitMqEnvVar.MNESIA_DIR, mnesiaFolder.getAbsolutePath())
+        .dataTemplate(definitions);
+  }
+
+  @Test
+  public void templateIsKeyedByDefinitionsContent() throws Exception {
+    File otherDefinitions = temporaryFolder.newFile("other-definitions.json");
+    write(otherDefinitions, "{\"queues\": []}");
+    File templateFolder = new DataTemplateHelper(configBuilder.build()).getTemplateFolder();
+
+    assertThat(new DataTemplateHelper(configBuilder.dataTemplate(otherDefinitions).build()).getTemplateFolder(),
+        equalTo(templateFolder));
+
+    write(otherDefinitions, "{\"queues\": [{\"name\": \"q\"}]}");
+    assertThat(new DataTemplateHelper(configBuilder.build()).getTemplateFolder(), not(equalTo(templateFolder)));
+  }
+
+  @Test
+  public void templateIsKeyedByVersionAndNodeName() throws Exception {
+    EmbeddedRabbitMqConfig config = configBuilder.build();
+    File templateFolder = new DataTemplateHelper(config).getTemplateFolder();
+
+    EmbeddedRabbitMqConfig otherVersion = new EmbeddedRabbitMqConfig.Builder(config)
+        .version(PredefinedVersion.V3_7_7)
+        .build();
+    EmbeddedRabbitMqConfig otherNodeName = new EmbeddedRabbitMqConfig.Builder(config)
+        .envVar(RabbitMqEnvVar.NODENAME, "other@localhost")
+        .build();
+    assertThat(new DataTemplateHelper(otherVersion).getTemplateFolder(), not(equalTo(templateFolder)));
+    assertThat(new DataTemplateHelper(otherNodeName).getTemplateFolder(), not(equalTo(templateFolder)));
+  }
+
+  @Test
+  public void dataFolderIsReplacedWithExistingTemplate() throws Exception {
+    DataTemplateHelper helper = new DataTemplateHelper(configBuilder.build());
+    File templateFolder = helper.getTemplateFolder();
+    assertThat(templateFolder.mkdirs(), equalTo(true));
+    write(new File(templateFolder, "schema.DAT"), "template");
+    assertThat(mnesiaFolder.mkdirs(), equalTo(true));
+    write(new File(mnesiaFolder, "leftover.DAT"), "previous run");
+
+    boolean created = helper.seed();
+
+    assertThat(created, equalTo(false));
+    assertThat(read(new File(mnesiaFolder, "schema.DAT")), equalTo("template"));
+    assertThat(new File(mnesiaFolder, "leftover.DAT").exists(), equalTo(false));
+    assertThat(read(new File(templateFolder, "schema.DAT")), equalTo("template"));
+  }
+
+  private static void write(File file, String content) throws Exception {
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String read(File file) throws Exception {
+    return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+  }
+}
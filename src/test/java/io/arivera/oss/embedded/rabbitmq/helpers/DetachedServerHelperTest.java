@@ -0,0 +1,194 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.bin.StubCommands;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+import io.arivera.oss.embedded.rabbitmq.util.RandomPortSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.StartedProcess;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeThat;
+
+public class DetachedServerHelperTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private static final byte[] CONNECTION_START_FRAME_START = {1, 0, 0, 0, 0, 0, 4, 0, 10, 0, 10};
+
+  private EmbeddedRabbitMqConfig config;
+  private ServerSocket fakeServer;
+
+  @Before
+  public void setUp() throws Exception {
+    assumeThat(OperatingSystem.detect() == OperatingSystem.WINDOWS, equalTo(false));
+    config = new EmbeddedRabbitMqConfig.Builder()
+        .port(new RandomPortSupplier().get())
+        .extractionFolder(temporaryFolder.getRoot())
+        .reuseDetachedServer(true)
+        .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (fakeServer != null) {
+      fakeServer.close();
+    }
+  }
+
+  @Test
+  public void descriptorIsWrittenAndRead() throws Exception {
+    DetachedServerHelper helper = new DetachedServerHelper(config, "fingerprint");
+
+    helper.writeDescriptor("1234", 5678L);
+
+    assertThat(helper.getDescriptorFile().getParentFile(), equalTo(temporaryFolder.getRoot()));
+    assertThat(helper.readDescriptor().getProperty("fingerprint"), equalTo("fingerprint"));
+    assertThat(helper.readDescriptor().getProperty("pid"), equalTo("1234"));
+    assertThat(helper.readDescriptor().getProperty("port"), equalTo(String.valueOf(config.getRabbitMqPort())));
+    assertThat(helper.readDescriptor().getProperty("expiresAtMillis"), equalTo("5678"));
+  }
+
+  @Test
+  public void nothingIsAdoptedWithoutDescriptor() throws Exception {
+    assertThat(new DetachedServerHelper(config, "fingerprint").adopt(), nullValue());
+  }
+
+  @Test
+  public void serverStartedWithDifferentConfigurationIsNotAdopted() throws Exception {
+    StartedProcess process = startProcess("exec sleep 60");
+    try {
+      new DetachedServerHelper(config, "other fingerprint").writeDescriptor(readPid(), Long.MAX_VALUE);
+
+      assertThat(new DetachedServerHelper(config, "fingerprint").adopt(), nullValue());
+    } finally {
+      process.getProcess().destroy();
+    }
+  }
+
+  @Test
+  public void expiredServerIsNotAdopted() throws Exception {
+    StartedProcess process = startProcess("exec sleep 60");
+    try {
+      DetachedServerHelper helper = new DetachedServerHelper(config, "fingerprint");
+      helper.writeDescriptor(readPid(), System.currentTimeMillis() - 1);
+
+      assertThat(helper.adopt(), nullValue());
+    } finally {
+      process.getProcess().destroy();
+    }
+  }
+
+  @Test
+  public void serverWhoseProcessExitedIsNotAdopted() throws Exception {
+    startProcess("exit 0").getFuture().get();
+    DetachedServerHelper helper = new DetachedServerHelper(config, "fingerprint");
+    helper.writeDescriptor(readPid(), Long.MAX_VALUE);
+
+    assertThat(helper.adopt(), nullValue());
+  }
+
+  @Test
+  public void expirationOfAdoptedServerIsPushedBack() throws Exception {
+    StubCommands commands = new StubCommands(config).install("rabbitmqctl", "echo '\"1\"'");
+    answerHandshakes();
+    StartedProcess process = startProcess("exec sleep 60");
+    try {
+      DetachedServerHelper helper = new DetachedServerHelper(config, "fingerprint");
+      long expiresAt = System.currentTimeMillis() + 1000;
+      helper.writeDescriptor(readPid(), expiresAt);
+
+      assertThat(helper.adopt(), notNullValue());
+
+      assertThat(commands.getInvocations().size(), equalTo(1));
+      assertThat(commands.getInvocations().get(0), containsString("timer:cancel"));
+      assertThat(commands.getInvocations().get(0), containsString("timer:apply_after(" + config.getDetachedServerTtlInMillis()));
+      assertTrue(Long.parseLong(helper.readDescriptor().getProperty("expiresAtMillis")) > expiresAt);
+    } finally {
+      process.getProcess().destroy();
+    }
+  }
+
+  @Test
+  public void serverWhoseExpirationCannotBePushedBackIsNotAdopted() throws Exception {
+    new StubCommands(config).install("rabbitmqctl", "exit 1");
+    answerHandshakes();
+    StartedProcess process = startProcess("exec sleep 60");
+    try {
+      DetachedServerHelper helper = new DetachedServerHelper(config, "fingerprint");
+      helper.writeDescriptor(readPid(), Long.MAX_VALUE);
+
+      assertThat(helper.adopt(), nullValue());
+    } finally {
+      process.getProcess().destroy();
+    }
+  }
+
+  @Test
+  public void detachedProcessFutureCompletesOnceProcessExits() throws Exception {
+    startProcess("exec sleep 0.3");
+    DetachedServerHelper.DetachedProcessFuture future = new DetachedServerHelper.DetachedProcessFuture(readPid());
+
+    assertThat(future.get(5, TimeUnit.SECONDS).getExitValue(), equalTo(0));
+    assertThat(future.isDone(), equalTo(true));
+  }
+
+  /**
+   * Answers AMQP handshakes on the configured port, like the detached server being adopted does.
+   */
+  private void answerHandshakes() throws IOException {
+    fakeServer = new ServerSocket(config.getRabbitMqPort(), 10, InetAddress.getLoopbackAddress());
+    final ServerSocket server = fakeServer;
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!server.isClosed()) {
+          try (Socket socket = server.accept()) {
+            new DataInputStream(socket.getInputStream()).readFully(new byte[8]);
+            socket.getOutputStream().write(CONNECTION_START_FRAME_START);
+          } catch (IOException e) {
+            // Client went away or server socket was closed
+          }
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private StartedProcess startProcess(String script) throws Exception {
+    File pidFile = new File(temporaryFolder.getRoot(), "process.pid");
+    return new ProcessExecutor("sh", "-c", "echo $$ > '" + pidFile + ".tmp'; mv '" + pidFile + ".tmp' '" + pidFile
+        + "'; " + script).start();
+  }
+
+  private String readPid() throws Exception {
+    File pidFile = new File(temporaryFolder.getRoot(), "process.pid");
+    while (!pidFile.exists()) {
+      Thread.sleep(10);
+    }
+    return new String(Files.readAllBytes(pidFile.toPath()), StandardCharsets.US_ASCII).trim();
+  }
+}
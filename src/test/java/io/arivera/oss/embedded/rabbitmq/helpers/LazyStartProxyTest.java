@@ -0,0 +1,183 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.util.RandomPortSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThat;
+
+public class LazyStartProxyTest {
+
+  private final AtomicInteger startCount = new AtomicInteger();
+  private final AtomicReference<String> starterThreadName = new AtomicReference<>();
+  private volatile CountDownLatch startAllowed = new CountDownLatch(0);
+  private ServerSocket echoServer;
+  private LazyStartProxy proxy;
+  private InetSocketAddress proxyAddress;
+
+  @Before
+  public void setUp() throws Exception {
+    echoServer = new ServerSocket(0, 10, InetAddress.getLoopbackAddress());
+    proxyAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), new RandomPortSupplier().get());
+    proxy = new LazyStartProxy(proxyAddress, (InetSocketAddress) echoServer.getLocalSocketAddress(), new Runnable() {
+      @Override
+      public void run() {
+        startCount.incrementAndGet();
+        starterThreadName.set(Thread.currentThread().getName());
+        try {
+          startAllowed.await();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        startEchoing();
+      }
+    });
+    proxy.start();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    proxy.close();
+    echoServer.close();
+  }
+
+  @Test
+  public void backendIsNotStartedUntilClientConnects() throws Exception {
+    assertThat(proxy.isBackendStarted(), equalTo(false));
+    assertThat(startCount.get(), equalTo(0));
+  }
+
+  @Test
+  public void trafficIsForwardedToBackend() throws Exception {
+    byte[] message = new byte[200 * 1024];
+    for (int i = 0; i < message.length; i++) {
+      message[i] = (byte) i;
+    }
+
+    try (Socket client = new Socket(proxyAddress.getAddress(), proxyAddress.getPort())) {
+      client.getOutputStream().write(message);
+      byte[] echoed = new byte[message.length];
+      new DataInputStream(client.getInputStream()).readFully(echoed);
+
+      assertArrayEquals(message, echoed);
+    }
+    assertThat(proxy.isBackendStarted(), equalTo(true));
+  }
+
+  @Test
+  public void backendIsStartedOnlyOnce() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      try (Socket client = new Socket(proxyAddress.getAddress(), proxyAddress.getPort())) {
+        client.getOutputStream().write(i);
+        assertThat(client.getInputStream().read(), equalTo(i));
+      }
+    }
+    assertThat(startCount.get(), equalTo(1));
+  }
+
+  @Test
+  public void backendIsStartedOutsideTheProxyThread() throws Exception {
+    try (Socket client = new Socket(proxyAddress.getAddress(), proxyAddress.getPort())) {
+      client.getOutputStream().write(1);
+      assertThat(client.getInputStream().read(), equalTo(1));
+    }
+    assertThat(starterThreadName.get().startsWith("RabbitMQ-Lazy-Start"), equalTo(true));
+  }
+
+  @Test
+  public void clientsConnectingWhileBackendStartsAreForwardedOnceItIsUp() throws Exception {
+    startAllowed = new CountDownLatch(1);
+    try (Socket client1 = new Socket(proxyAddress.getAddress(), proxyAddress.getPort());
+         Socket client2 = new Socket(proxyAddress.getAddress(), proxyAddress.getPort())) {
+      client1.getOutputStream().write(1);
+      client2.getOutputStream().write(2);
+      Thread.sleep(100);
+      assertThat(proxy.isBackendStarted(), equalTo(false));
+
+      startAllowed.countDown();
+
+      assertThat(client1.getInputStream().read(), equalTo(1));
+      assertThat(client2.getInputStream().read(), equalTo(2));
+    }
+    assertThat(startCount.get(), equalTo(1));
+  }
+
+  @Test
+  public void pendingDataIsDeliveredBeforeConnectionIsClosed() throws Exception {
+    byte[] message = new byte[1024 * 1024];
+    for (int i = 0; i < message.length; i++) {
+      message[i] = (byte) (i * 31);
+    }
+
+    try (Socket client = new Socket(proxyAddress.getAddress(), proxyAddress.getPort())) {
+      client.getOutputStream().write(message);
+      client.shutdownOutput();
+
+      ByteArrayOutputStream echoed = new ByteArrayOutputStream();
+      InputStream input = client.getInputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = input.read(buffer)) >= 0) {
+        echoed.write(buffer, 0, read);
+      }
+
+      assertArrayEquals(message, echoed.toByteArray());
+    }
+  }
+
+  private void startEchoing() {
+    Thread server = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        while (!echoServer.isClosed()) {
+          try {
+            final Socket socket = echoServer.accept();
+            Thread echo = new Thread(new Runnable() {
+              @Override
+              public void run() {
+                echo(socket);
+              }
+            });
+            echo.setDaemon(true);
+            echo.start();
+          } catch (IOException e) {
+            // Server socket was closed
+          }
+        }
+      }
+    });
+    server.setDaemon(true);
+    server.start();
+  }
+
+  private static void echo(Socket socket) {
+    try (Socket autoClosed = socket) {
+      InputStream input = autoClosed.getInputStream();
+      OutputStream output = autoClosed.getOutputStream();
+      byte[] buffer = new byte[8192];
+      int read;
+      while ((read = input.read(buffer)) >= 0) {
+        output.write(buffer, 0, read);
+      }
+    } catch (IOException e) {
+      // Client went away
+    }
+  }
+}
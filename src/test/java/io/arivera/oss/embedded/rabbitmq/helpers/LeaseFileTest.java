@@ -0,0 +1,126 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class LeaseFileTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void leasesAreSavedAfterEachUpdate() throws Exception {
+    LeaseFile leaseFile = new LeaseFile(new File(temporaryFolder.getRoot(), "broker.leases"));
+
+    leaseFile.update(new LeaseFile.Update<Void>() {
+      @Override
+      public Void apply(Map<String, String> leases) {
+        leases.put("lease-1", "100");
+        leases.put("lease-2", "200");
+        return null;
+      }
+    });
+    Map<String, String> leases = leaseFile.update(new LeaseFile.Update<Map<String, String>>() {
+      @Override
+      public Map<String, String> apply(Map<String, String> leases) {
+        leases.remove("lease-1");
+        return leases;
+      }
+    });
+
+    assertThat(leases.size(), equalTo(1));
+    assertThat(leases.get("lease-2"), equalTo("200"));
+    assertThat(readLeases(leaseFile), equalTo(leases));
+  }
+
+  @Test
+  public void concurrentUpdatesAreSerialized() throws Exception {
+    final LeaseFile leaseFile = new LeaseFile(new File(temporaryFolder.getRoot(), "broker.leases"));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Void>> updates = new ArrayList<>();
+    for (int i = 0; i < 50; i++) {
+      final String leaseId = "lease-" + i;
+      updates.add(executor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          return leaseFile.update(new LeaseFile.Update<Void>() {
+            @Override
+            public Void apply(Map<String, String> leases) {
+              leases.put(leaseId, "1");
+              return null;
+            }
+          });
+        }
+      }));
+    }
+    for (Future<Void> update : updates) {
+      update.get();
+    }
+    executor.shutdown();
+
+    assertThat(readLeases(leaseFile).size(), equalTo(50));
+  }
+
+  @Test
+  public void updatesOfOtherFilesDoNotWait() throws Exception {
+    final LeaseFile leaseFile = new LeaseFile(new File(temporaryFolder.getRoot(), "broker.leases"));
+    final LeaseFile otherLeaseFile = new LeaseFile(new File(temporaryFolder.getRoot(), "other-broker.leases"));
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    final CountDownLatch slowUpdateStarted = new CountDownLatch(1);
+    final CountDownLatch otherFileUpdated = new CountDownLatch(1);
+
+    Future<Boolean> slowUpdate = executor.submit(new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return leaseFile.update(new LeaseFile.Update<Boolean>() {
+          @Override
+          public Boolean apply(Map<String, String> leases) {
+            slowUpdateStarted.countDown();
+            try {
+              return otherFileUpdated.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+              return false;
+            }
+          }
+        });
+      }
+    });
+    assertThat(slowUpdateStarted.await(5, TimeUnit.SECONDS), equalTo(true));
+    otherLeaseFile.update(new LeaseFile.Update<Void>() {
+      @Override
+      public Void apply(Map<String, String> leases) {
+        leases.put("lease-1", "100");
+        return null;
+      }
+    });
+    otherFileUpdated.countDown();
+    executor.shutdown();
+
+    assertThat(slowUpdate.get(), equalTo(true));
+  }
+
+  private static Map<String, String> readLeases(LeaseFile leaseFile) throws Exception {
+    return leaseFile.update(new LeaseFile.Update<Map<String, String>>() {
+      @Override
+      public Map<String, String> apply(Map<String, String> leases) {
+        return leases;
+      }
+    });
+  }
+}
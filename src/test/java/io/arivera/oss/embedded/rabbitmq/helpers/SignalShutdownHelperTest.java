@@ -0,0 +1,100 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import io.arivera.oss.embedded.rabbitmq.EmbeddedRabbitMqConfig;
+import io.arivera.oss.embedded.rabbitmq.RabbitMqEnvVar;
+import io.arivera.oss.embedded.rabbitmq.util.OperatingSystem;
+import io.arivera.oss.embedded.rabbitmq.util.RandomPortSupplier;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.exec.ProcessExecutor;
+import org.zeroturnaround.exec.ProcessResult;
+
+import java.io.File;
+import java.net.ServerSocket;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeThat;
+
+public class SignalShutdownHelperTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private File pidFile;
+  private EmbeddedRabbitMqConfig config;
+
+  @Before
+  public void setUp() throws Exception {
+    assumeThat(OperatingSystem.detect() == OperatingSystem.WINDOWS, equalTo(false));
+    pidFile = new File(temporaryFolder.getRoot(), "rabbit.pid");
+    config = new EmbeddedRabbitMqConfig.Builder()
+        .port(new RandomPortSupplier().get())
+        .envVar(RabbitMqEnvVar.PID_FILE, pidFile.getAbsolutePath())
+        .useSignalShutdown(true)
+        .signalShutdownGracePeriodInMillis(300)
+        .build();
+  }
+
+  @Test
+  public void processIsTerminated() throws Exception {
+    Future<ProcessResult> process = startProcess("echo $$ > '" + pidFile + "'; exec sleep 60");
+
+    new SignalShutdownHelper(config, process).run();
+
+    assertThat(process.isDone(), equalTo(true));
+    assertThat(process.get().getExitValue(), equalTo(128 + 15));
+  }
+
+  @Test
+  public void outOfRangeDefaultDistributionPortIsNotAwaited() throws Exception {
+    config = new EmbeddedRabbitMqConfig.Builder(config).port(60000).build();
+    Future<ProcessResult> process = startProcess("echo $$ > '" + pidFile + "'; exec sleep 60");
+
+    new SignalShutdownHelper(config, process).run();
+
+    assertThat(process.isDone(), equalTo(true));
+  }
+
+  @Test
+  public void processIgnoringTermIsKilled() throws Exception {
+    Future<ProcessResult> process = startProcess("trap '' TERM; echo $$ > '" + pidFile + "'; while true; do sleep 0.05; done");
+
+    new SignalShutdownHelper(config, process).run();
+
+    assertThat(process.isDone(), equalTo(true));
+    assertThat(process.get().getExitValue(), equalTo(128 + 9));
+  }
+
+  @Test
+  public void defaultDistributionPortMustBeReleased() throws Exception {
+    try (ServerSocket distributionPort = new ServerSocket(0)) {
+      EmbeddedRabbitMqConfig defaultDistributionPortConfig = new EmbeddedRabbitMqConfig.Builder(config)
+          .port(distributionPort.getLocalPort() - 20000)
+          .defaultRabbitMqCtlTimeoutInMillis(300)
+          .build();
+      assertThat(defaultDistributionPortConfig.getDistributionPort(), equalTo(distributionPort.getLocalPort()));
+      Future<ProcessResult> process = startProcess("echo $$ > '" + pidFile + "'; exec sleep 60");
+
+      expectedException.expect(ShutDownException.class);
+      expectedException.expectMessage("Port " + distributionPort.getLocalPort());
+      new SignalShutdownHelper(defaultDistributionPortConfig, process).run();
+    }
+  }
+
+  private Future<ProcessResult> startProcess(String script) throws Exception {
+    Future<ProcessResult> process = new ProcessExecutor("sh", "-c", script).start().getFuture();
+    while (pidFile.length() == 0) {
+      Thread.sleep(10);
+    }
+    return process;
+  }
+}
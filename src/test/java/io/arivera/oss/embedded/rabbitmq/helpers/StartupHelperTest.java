@@ -0,0 +1,86 @@
+package io.arivera.oss.embedded.rabbitmq.helpers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class StartupHelperTest {
+
+  private List<Integer> notifications;
+  private StartupHelper.BootOutputMonitor monitor;
+
+  @Before
+  public void setUp() throws Exception {
+    notifications = new ArrayList<>();
+    monitor = new StartupHelper.BootOutputMonitor(new StartupHelper.PublishingProcessListener.Subscriber() {
+      @Override
+      public void processFinished(int exitValue) {
+        notifications.add(exitValue);
+      }
+    });
+  }
+
+  @Test
+  public void portConflictIsDetectedInAnyOutput() throws Exception {
+    OutputStream output = monitor.newOutputStream();
+    OutputStream errorOutput = monitor.newOutputStream();
+
+    write(output, "  Starting broker...\n");
+    assertThat(monitor.getFailure(), nullValue());
+
+    String line = "BOOT FAILED: {could_not_start,rabbit,{{shutdown,{failed_to_start_child,'rabbit_tcp_listener_sup',"
+        + "{listen_error,{0,0,0,0},eaddrinuse}}}}}";
+    write(errorOutput, line + "\n");
+    write(output, "ERROR: eaddrinuse\n");
+
+    assertThat(monitor.getFailure().getName(), equalTo(StartupHelper.BootOutputMonitor.PORT_CONFLICT));
+    assertThat(monitor.getFailureLine(), equalTo(line));
+    assertThat(notifications, equalTo(Arrays.asList(StartupHelper.BootOutputMonitor.BOOT_FAILURE_EXIT_VALUE)));
+  }
+
+  @Test
+  public void otherFailuresAreDetected() throws Exception {
+    assertFailure("Connection attempt from disallowed node 'rabbit@other' rejected", "cookie mismatch");
+    assertFailure("ERROR: epmd error for host localhost: address (cannot connect to host/port)", "distribution error");
+    assertFailure("{\"init terminating in do_boot\",{undef,[{rabbit_prelaunch,start,[]}]}}", "missing dependency");
+    assertFailure("Kernel pid terminated (application_controller) ({application_start_failure,rabbit})", "erlang crash");
+  }
+
+  @Test
+  public void bootPhasesAreRecordedInOrder() throws Exception {
+    OutputStream output = monitor.newOutputStream();
+
+    write(output, "  ##  ##      RabbitMQ 3.8.0\n");
+    write(output, "  Starting broker...\n");
+    write(output, "started TCP listener on [::]:5672\n");
+    write(output, " completed with 0 plugins.\n");
+    write(output, "  Starting broker...\n");
+
+    assertThat(new ArrayList<>(monitor.getPhaseTimings().keySet()),
+        equalTo(Arrays.asList("vm started", "broker starting", "listener started", "boot completed")));
+    assertThat(monitor.getFailure(), nullValue());
+    assertThat(notifications.isEmpty(), equalTo(true));
+  }
+
+  private void assertFailure(String line, String failure) throws Exception {
+    setUp();
+    write(monitor.newOutputStream(), line + "\n");
+
+    assertThat(monitor.getFailure().getName(), equalTo(failure));
+    assertThat(monitor.getFailureLine(), equalTo(line));
+  }
+
+  private static void write(OutputStream outputStream, String text) throws Exception {
+    outputStream.write(text.getBytes(StandardCharsets.UTF_8));
+    outputStream.flush();
+  }
+}
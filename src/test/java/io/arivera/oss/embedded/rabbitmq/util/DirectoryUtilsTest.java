@@ -0,0 +1,49 @@
+package io.arivera.oss.embedded.rabbitmq.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+public class DirectoryUtilsTest {
+
+  @Rule
+  public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void copyIncludesNestedFiles() throws Exception {
+    File source = temporaryFolder.newFolder("source");
+    File nested = new File(source, "nested");
+    assertThat(nested.mkdir(), equalTo(true));
+    Files.write(new File(nested, "data.txt").toPath(), "data".getBytes(StandardCharsets.UTF_8));
+
+    File target = new File(temporaryFolder.getRoot(), "target");
+    DirectoryUtils.copy(source, target);
+
+    byte[] copied = Files.readAllBytes(new File(target, "nested/data.txt").toPath());
+    assertThat(new String(copied, StandardCharsets.UTF_8), equalTo("data"));
+  }
+
+  @Test
+  public void deleteRemovesNestedFiles() throws Exception {
+    File directory = temporaryFolder.newFolder("directory");
+    File nested = new File(directory, "nested");
+    assertThat(nested.mkdir(), equalTo(true));
+    Files.write(new File(nested, "data.txt").toPath(), "data".getBytes(StandardCharsets.UTF_8));
+
+    DirectoryUtils.delete(directory);
+
+    assertThat(directory.exists(), equalTo(false));
+  }
+
+  @Test
+  public void deleteIgnoresMissingDirectory() throws Exception {
+    DirectoryUtils.delete(new File(temporaryFolder.getRoot(), "missing"));
+  }
+}